@@ -1,6 +1,6 @@
 #!/bin/bash
 
-[[ $# -le 1 ]] && echo -e "Usage:\n\t$0 [jar|test] [arguments to mvn]" && exit 1
+[[ $# -le 1 ]] && echo -e "Usage:\n\t$0 [jar|test|bench] [arguments to mvn]" && exit 1
 
 case $1 in
   jar)
@@ -11,6 +11,11 @@ case $1 in
     mvn test ${@:2}
     exit $?
     ;;
+  bench)
+    # arguments are passed to JMH, e.g. "ShortestPath -prof gc" or "-p graph=/path/to/graph.dump"
+    mvn -P benchmark package -DskipTests && java -jar target/benchmarks.jar ${@:2}
+    exit $?
+    ;;
   *)
     echo "$1 not supported by this script"
     ;;
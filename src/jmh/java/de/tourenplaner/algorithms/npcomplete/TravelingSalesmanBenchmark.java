@@ -0,0 +1,70 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.tourenplaner.algorithms.npcomplete;
+
+import de.tourenplaner.algorithms.ComputeCancelledException;
+import de.tourenplaner.algorithms.DijkstraStructs;
+import de.tourenplaner.benchmarks.BenchmarkGraph;
+import de.tourenplaner.computecore.RequestPoints;
+import de.tourenplaner.graphrep.GraphRep;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Distance matrix computation of the TravelingSalesman for pointCount random points,
+ * lives in the algorithms package as computeDistMatrix is package private
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TravelingSalesmanBenchmark {
+
+    @Param({"10", "50", "200"})
+    public int pointCount;
+
+    private TravelingSalesman tsp;
+    private RequestPoints points;
+
+    @Setup
+    public void setup(BenchmarkGraph benchmarkGraph) {
+        GraphRep graph = benchmarkGraph.graphRep;
+        tsp = new TravelingSalesman(graph, new DijkstraStructs(graph.getNodeCount(), graph.getEdgeCount()));
+        int[] ids = new int[pointCount];
+        System.arraycopy(benchmarkGraph.nodeIds, 0, ids, 0, pointCount);
+        points = benchmarkGraph.createPoints(ids);
+    }
+
+    @Benchmark
+    public int[][] computeDistMatrix() throws ComputeCancelledException {
+        return tsp.computeDistMatrix(points);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.tourenplaner.benchmarks;
+
+import de.tourenplaner.algorithms.ComputeException;
+import de.tourenplaner.algorithms.bbbundle.BBBundle;
+import de.tourenplaner.algorithms.bbbundle.BBBundleRequestData;
+import de.tourenplaner.algorithms.bbbundle.BoundingBox;
+import de.tourenplaner.computecore.ComputeRequest;
+import de.tourenplaner.computecore.FormattedStreamWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BBBundle requests for the central part of the graph's bounding box covering
+ * 1/zoom of its width and height, the level is chosen by the node count hint
+ * just like the clients do
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class BBBundleBenchmark {
+
+    @Param({"1", "4"})
+    public int zoom;
+
+    @Param({"2000"})
+    public int nodeCountHint;
+
+    private BBBundle bbBundle;
+    private BoundingBox bbox;
+
+    @Setup
+    public void setup(BenchmarkGraph benchmarkGraph) {
+        bbBundle = new BBBundle(benchmarkGraph.graphRep);
+        BoundingBox graphBBox = benchmarkGraph.graphRep.getBbox();
+        int width = graphBBox.width / zoom;
+        int height = graphBBox.height / zoom;
+        bbox = new BoundingBox(graphBBox.x + (graphBBox.width - width) / 2,
+                graphBBox.y + (graphBBox.height - height) / 2, width, height);
+    }
+
+    @Benchmark
+    public FormattedStreamWriter compute() throws ComputeException {
+        // The request data is modified by compute so we need a fresh one
+        BBBundleRequestData requestData = new BBBundleRequestData("bbbundle", false, bbox,
+                BBBundleRequestData.LevelMode.HINTED, 0.0, 0.0, 0.0, nodeCountHint, 0, 0);
+        ComputeRequest request = new ComputeRequest(null, requestData);
+        bbBundle.compute(request);
+        return request.getResultObject();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.benchmarks;
+
+import de.tourenplaner.computecore.RequestPoints;
+import de.tourenplaner.graphrep.GraphRep;
+import de.tourenplaner.graphrep.GraphRepMappedReader;
+import de.tourenplaner.graphrep.GraphRepTextReader;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.logging.Logger;
+
+/**
+ * The graph all benchmarks run on, shared by all benchmark threads.
+ * <p/>
+ * By default this is the synthetic grid graph the benchmark profile generates at
+ * build time, a real graph can be used with -p graph=/path/to/graph where text
+ * graphs (*.txt) are read with the GraphRepTextReader and everything else is
+ * treated as dump and loaded with the GraphRepMappedReader.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+@State(Scope.Benchmark)
+public class BenchmarkGraph {
+    /**
+     * Where the benchmark profile puts the generated grid graph
+     */
+    public static final String DEFAULT_GRAPH = "target/benchmark/grid.txt";
+
+    // Number of precomputed random queries, the benchmarks cycle through them
+    public static final int QUERY_COUNT = 1024;
+
+    // Keeps the per query info logging of the algorithms out of the measurements,
+    // we need to hold the reference as the LogManager only keeps weak ones
+    private static final Logger algorithmsLog = Logger.getLogger("de.tourenplaner.algorithms");
+
+    static {
+        algorithmsLog.setLevel(java.util.logging.Level.WARNING);
+    }
+
+    @Param({""})
+    public String graph;
+
+    // Whether to build the SearchGraph like the server does by default
+    @Param({"true"})
+    public boolean searchGraph;
+
+    // Keeps this many highest ranked nodes and renumbers all others by locality,
+    // negative values keep the order of the graph file. Only works for text graphs,
+    // the queries stay the same as they are mapped to the new ids
+    @Param({"-1"})
+    public int renumberCoreSize;
+
+    // Whether to compact the graph like the server does with compactgraph, compare
+    // -p compact=false,true -p searchGraph=false to see what the compact accessors
+    // cost the searches running on the GraphRep itself
+    @Param({"false"})
+    public boolean compact;
+
+    public GraphRep graphRep;
+
+    // Random node ids, used pairwise as source and target
+    public int[] nodeIds;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        String fileName = graph.isEmpty() ? DEFAULT_GRAPH : graph;
+        if (fileName.endsWith(".txt")) {
+            graphRep = new GraphRepTextReader().createGraphRep(new FileInputStream(fileName));
+        } else {
+            graphRep = new GraphRepMappedReader().createGraphRep(new FileInputStream(fileName));
+        }
+
+        // Fixed seed so runs before and after a change use the same queries
+        Random random = new Random(1337);
+        nodeIds = new int[2 * QUERY_COUNT];
+        for (int i = 0; i < nodeIds.length; i++) {
+            nodeIds[i] = random.nextInt(graphRep.getNodeCount());
+        }
+
+        if (renumberCoreSize >= 0) {
+            int[] newIds = graphRep.renumberNodesByLocality(renumberCoreSize, Runtime.getRuntime().availableProcessors());
+            for (int i = 0; i < nodeIds.length; i++) {
+                nodeIds[i] = newIds[nodeIds[i]];
+            }
+        }
+        if (compact) {
+            graphRep.compact();
+        }
+        if (searchGraph) {
+            graphRep.setupSearchGraph();
+        }
+    }
+
+    /**
+     * Creates RequestPoints for the given node ids with their ids already set
+     */
+    public RequestPoints createPoints(int... ids) {
+        RequestPoints points = new RequestPoints();
+        for (int i = 0; i < ids.length; i++) {
+            points.addPoint(graphRep.getLat(ids[i]), graphRep.getLon(ids[i]), new HashMap<String, Object>());
+            points.setPointId(i, ids[i]);
+        }
+        return points;
+    }
+}
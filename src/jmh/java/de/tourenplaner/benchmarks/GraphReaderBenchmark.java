@@ -0,0 +1,93 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.tourenplaner.benchmarks;
+
+import de.tourenplaner.graphrep.GraphRep;
+import de.tourenplaner.graphrep.GraphRepBinaryReader;
+import de.tourenplaner.graphrep.GraphRepBinaryWriter;
+import de.tourenplaner.graphrep.GraphRepMappedReader;
+import de.tourenplaner.graphrep.GraphRepMappedWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading the benchmark graph from a version 2 dump with the GraphRepBinaryReader
+ * and from a version 3 dump with the GraphRepMappedReader. Both dumps are written
+ * to temporary files once per trial.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GraphReaderBenchmark {
+
+    private File binaryDump;
+    private File mappedDump;
+
+    @Setup
+    public void setup(BenchmarkGraph benchmarkGraph) throws IOException {
+        binaryDump = File.createTempFile("tourenplaner-benchmark", ".v2.dump");
+        OutputStream out = new FileOutputStream(binaryDump);
+        try {
+            new GraphRepBinaryWriter().writeGraphRep(out, benchmarkGraph.graphRep);
+        } finally {
+            out.close();
+        }
+        mappedDump = File.createTempFile("tourenplaner-benchmark", ".v3.dump");
+        out = new FileOutputStream(mappedDump);
+        try {
+            new GraphRepMappedWriter().writeGraphRep(out, benchmarkGraph.graphRep);
+        } finally {
+            out.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        binaryDump.delete();
+        mappedDump.delete();
+    }
+
+    @Benchmark
+    public GraphRep binaryReader() throws IOException {
+        return new GraphRepBinaryReader().createGraphRep(new FileInputStream(binaryDump));
+    }
+
+    @Benchmark
+    public GraphRep mappedReader() throws IOException {
+        return new GraphRepMappedReader().createGraphRep(new FileInputStream(mappedDump));
+    }
+}
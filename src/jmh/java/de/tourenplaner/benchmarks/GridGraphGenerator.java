@@ -0,0 +1,353 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.benchmarks;
+
+import com.carrotsearch.hppc.IntArrayList;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.logging.Logger;
+
+/**
+ * Generates a synthetic contraction hierarchy on a width x height grid and writes it
+ * in the text format read by the GraphRepTextReader. The benchmark profile runs this
+ * at build time so the benchmarks have a reproducible graph without any real data.
+ * <p/>
+ * Neighbouring grid nodes are connected in both directions with the same randomly
+ * stretched euclidian distance, the random generator is seeded so the same arguments
+ * always produce the same graph. Nodes are contracted greedily by edge difference
+ * with witness searches to avoid most superfluous shortcuts. Ranks are CH levels, so every edge between two nodes of different
+ * rank is an up or down edge just like in graphs from the chconstructor.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public final class GridGraphGenerator {
+    private static Logger log = Logger.getLogger("de.tourenplaner.benchmarks");
+
+    // Roughly 20 m between neighbouring nodes, positioned around Stuttgart
+    private static final int BASE_LAT = 487000000;
+    private static final int BASE_LON = 91000000;
+    private static final int LAT_STEP = 1800;
+    private static final int LON_STEP = 2700;
+
+    // Bounds the witness searches, a missed witness only costs an unneeded shortcut
+    private static final int MAX_WITNESS_SETTLED = 500;
+
+    private final int width;
+    private final int height;
+    private final int nodeCount;
+
+    private final int[] lat;
+    private final int[] lon;
+    private final int[] level;
+    private final boolean[] contracted;
+
+    // Edges, original ones first and then the shortcuts in creation order
+    private final IntArrayList src = new IntArrayList();
+    private final IntArrayList trgt = new IntArrayList();
+    private final IntArrayList dist = new IntArrayList();
+    private final IntArrayList euclidianDist = new IntArrayList();
+    private final IntArrayList shortedEdge1 = new IntArrayList();
+    private final IntArrayList shortedEdge2 = new IntArrayList();
+
+    // Edge ids of the out edges of each node to not yet contracted nodes,
+    // as all edges are symmetric this doubles as the in edge list
+    private final ArrayList<IntArrayList> outEdges;
+
+    // Witness search state, reset via touched
+    private final int[] witnessDist;
+    private final IntArrayList touched = new IntArrayList();
+
+    public GridGraphGenerator(int width, int height, long seed) {
+        this.width = width;
+        this.height = height;
+        this.nodeCount = width * height;
+        lat = new int[nodeCount];
+        lon = new int[nodeCount];
+        level = new int[nodeCount];
+        contracted = new boolean[nodeCount];
+        witnessDist = new int[nodeCount];
+        Arrays.fill(witnessDist, Integer.MAX_VALUE);
+        outEdges = new ArrayList<IntArrayList>(nodeCount);
+
+        Random random = new Random(seed);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int nodeId = y * width + x;
+                lat[nodeId] = BASE_LAT + y * LAT_STEP;
+                lon[nodeId] = BASE_LON + x * LON_STEP;
+                outEdges.add(new IntArrayList(8));
+            }
+        }
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int nodeId = y * width + x;
+                if (x + 1 < width) {
+                    connect(nodeId, nodeId + 1, random);
+                }
+                if (y + 1 < height) {
+                    connect(nodeId, nodeId + width, random);
+                }
+            }
+        }
+    }
+
+    private void connect(int a, int b, Random random) {
+        int euclid = euclidianDistance(a, b);
+        // Stretch by up to 50% so there are unique shortest paths
+        int d = euclid + random.nextInt(euclid / 2 + 1);
+        outEdges.get(a).add(addEdge(a, b, d, euclid, -1, -1));
+        outEdges.get(b).add(addEdge(b, a, d, euclid, -1, -1));
+    }
+
+    private int addEdge(int source, int target, int d, int euclid, int shortcutted1, int shortcutted2) {
+        src.add(source);
+        trgt.add(target);
+        dist.add(d);
+        euclidianDist.add(euclid);
+        shortedEdge1.add(shortcutted1);
+        shortedEdge2.add(shortcutted2);
+        return src.size() - 1;
+    }
+
+    private int euclidianDistance(int a, int b) {
+        // Equirectangular approximation is plenty for a few kilometers
+        double latMeters = (lat[a] - lat[b]) / 10000000.0 * 111195.0;
+        double lonMeters = (lon[a] - lon[b]) / 10000000.0 * 111195.0 * Math.cos(Math.toRadians(lat[a] / 10000000.0));
+        return Math.max(1, (int) Math.round(Math.sqrt(latMeters * latMeters + lonMeters * lonMeters)));
+    }
+
+    /**
+     * Contracts all nodes adding the needed shortcuts, the next node to contract is
+     * the one with the smallest edge difference plus number of contracted neighbours
+     * with lazy updates of the priorities
+     */
+    public void contract() {
+        int[] deletedNeighbours = new int[nodeCount];
+        PriorityQueue<Long> queue = new PriorityQueue<Long>();
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+            queue.add(queueEntry(priority(nodeId, deletedNeighbours), nodeId));
+        }
+
+        int originalEdges = src.size();
+        while (!queue.isEmpty()) {
+            int nodeId = (int) (long) queue.poll();
+            int prio = priority(nodeId, deletedNeighbours);
+            if (!queue.isEmpty() && queueEntry(prio, nodeId) > queue.peek()) {
+                queue.add(queueEntry(prio, nodeId));
+                continue;
+            }
+            IntArrayList nodeEdges = outEdges.get(nodeId);
+            for (int i = 0; i < nodeEdges.size(); i++) {
+                deletedNeighbours[trgt.get(nodeEdges.get(i))]++;
+            }
+            contractNode(nodeId, false);
+        }
+        log.info("Contracted " + nodeCount + " nodes adding " + (src.size() - originalEdges) + " shortcuts");
+    }
+
+    private static long queueEntry(int prio, int nodeId) {
+        // Shift the priority so negative edge differences still sort correctly
+        return ((long) (prio + (1 << 20)) << 32) | nodeId;
+    }
+
+    private int priority(int nodeId, int[] deletedNeighbours) {
+        int shortcuts = contractNode(nodeId, true);
+        return 2 * shortcuts - outEdges.get(nodeId).size() + deletedNeighbours[nodeId];
+    }
+
+    /**
+     * Contracts v or with simulate set only counts the shortcuts that would be added
+     *
+     * @return the number of shortcuts (in one direction)
+     */
+    private int contractNode(int v, boolean simulate) {
+        IntArrayList vEdges = outEdges.get(v);
+        contracted[v] = true;
+
+        int maxDist = 0;
+        for (int i = 0; i < vEdges.size(); i++) {
+            maxDist = Math.max(maxDist, dist.get(vEdges.get(i)));
+        }
+
+        // The graph stays symmetric so we only look at pairs u, w with i < j
+        // and add the shortcuts for both directions
+        int shortcuts = 0;
+        for (int i = 0; i < vEdges.size(); i++) {
+            int vuEdge = vEdges.get(i);
+            int u = trgt.get(vuEdge);
+            int uvEdge = reverseEdge(u, v, dist.get(vuEdge));
+            witnessSearch(u, dist.get(uvEdge) + maxDist);
+
+            for (int j = i + 1; j < vEdges.size(); j++) {
+                int vwEdge = vEdges.get(j);
+                int w = trgt.get(vwEdge);
+                if (w == u) {
+                    continue;
+                }
+                int viaDist = dist.get(uvEdge) + dist.get(vwEdge);
+                if (witnessDist[w] <= viaDist) {
+                    continue;
+                }
+                shortcuts++;
+                if (!simulate) {
+                    int wvEdge = reverseEdge(w, v, dist.get(vwEdge));
+                    int euclid = euclidianDist.get(uvEdge) + euclidianDist.get(vwEdge);
+                    outEdges.get(u).add(addEdge(u, w, viaDist, euclid, uvEdge, vwEdge));
+                    outEdges.get(w).add(addEdge(w, u, viaDist, euclid, wvEdge, vuEdge));
+                }
+            }
+            resetWitnessSearch();
+        }
+
+        if (simulate) {
+            contracted[v] = false;
+            return shortcuts;
+        }
+
+        // Remove v from the graph and lift its neighbours above it
+        for (int i = 0; i < vEdges.size(); i++) {
+            int u = trgt.get(vEdges.get(i));
+            level[u] = Math.max(level[u], level[v] + 1);
+            IntArrayList uEdges = outEdges.get(u);
+            for (int j = uEdges.size() - 1; j >= 0; j--) {
+                if (trgt.get(uEdges.get(j)) == v) {
+                    uEdges.remove(j);
+                }
+            }
+        }
+        vEdges.clear();
+        return shortcuts;
+    }
+
+    /**
+     * Finds the edge from u to v with the given dist, it exists as all edges are symmetric
+     */
+    private int reverseEdge(int u, int v, int d) {
+        IntArrayList uEdges = outEdges.get(u);
+        for (int i = 0; i < uEdges.size(); i++) {
+            int edgeId = uEdges.get(i);
+            if (trgt.get(edgeId) == v && dist.get(edgeId) == d) {
+                return edgeId;
+            }
+        }
+        throw new IllegalStateException("Missing reverse edge from " + u + " to " + v);
+    }
+
+    /**
+     * Dijkstra from u on the not yet contracted nodes up to maxDist
+     */
+    private void witnessSearch(int u, int maxDist) {
+        PriorityQueue<Long> queue = new PriorityQueue<Long>();
+        witnessDist[u] = 0;
+        touched.add(u);
+        queue.add((long) u);
+        int settled = 0;
+        while (!queue.isEmpty() && settled < MAX_WITNESS_SETTLED) {
+            long entry = queue.poll();
+            int nodeId = (int) entry;
+            int nodeDist = (int) (entry >>> 32);
+            if (nodeDist > witnessDist[nodeId]) {
+                continue;
+            }
+            if (nodeDist > maxDist) {
+                break;
+            }
+            settled++;
+            IntArrayList edges = outEdges.get(nodeId);
+            for (int i = 0; i < edges.size(); i++) {
+                int edgeId = edges.get(i);
+                int target = trgt.get(edgeId);
+                if (contracted[target]) {
+                    // only the node being contracted
+                    continue;
+                }
+                int newDist = nodeDist + dist.get(edgeId);
+                if (newDist < witnessDist[target]) {
+                    if (witnessDist[target] == Integer.MAX_VALUE) {
+                        touched.add(target);
+                    }
+                    witnessDist[target] = newDist;
+                    queue.add(((long) newDist << 32) | target);
+                }
+            }
+        }
+    }
+
+    private void resetWitnessSearch() {
+        for (int i = 0; i < touched.size(); i++) {
+            witnessDist[touched.get(i)] = Integer.MAX_VALUE;
+        }
+        touched.clear();
+    }
+
+    /**
+     * Writes the graph in the text format of the GraphRepTextReader
+     */
+    public void write(Writer out) throws IOException {
+        out.write("# Synthetic " + width + "x" + height + " grid graph\n");
+        out.write(nodeCount + "\n");
+        out.write(src.size() + "\n");
+        for (int i = 0; i < nodeCount; i++) {
+            out.write(lat[i] + " " + lon[i] + " 0 " + level[i] + "\n");
+        }
+        for (int i = 0; i < src.size(); i++) {
+            out.write(src.get(i) + " " + trgt.get(i) + " " + dist.get(i) + " " + euclidianDist.get(i) + " "
+                    + shortedEdge1.get(i) + " " + shortedEdge2.get(i) + "\n");
+        }
+    }
+
+    /**
+     * Usage: GridGraphGenerator outputFile [width] [height]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: GridGraphGenerator outputFile [width] [height]");
+            System.exit(1);
+        }
+        File outFile = new File(args[0]);
+        int width = (args.length > 1) ? Integer.parseInt(args[1]) : 200;
+        int height = (args.length > 2) ? Integer.parseInt(args[2]) : width;
+        if (outFile.exists()) {
+            log.info(outFile + " already exists, not generating it again");
+            return;
+        }
+        File parent = outFile.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Could not create " + parent);
+        }
+
+        GridGraphGenerator generator = new GridGraphGenerator(width, height, 1337);
+        generator.contract();
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outFile), Charset.forName("UTF-8")));
+        try {
+            generator.write(out);
+        } finally {
+            out.close();
+        }
+        log.info("Wrote " + width + "x" + height + " grid graph to " + outFile);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.tourenplaner.benchmarks;
+
+import de.tourenplaner.graphrep.BBoxPriorityTree;
+import de.tourenplaner.graphrep.GraphRep;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Nearest neighbour lookups with the BBoxPriorityTree for random coordinates
+ * inside the graph's bounding box
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class NNSearchBenchmark {
+
+    private BBoxPriorityTree tree;
+    private int[] lats;
+    private int[] lons;
+    private int query;
+
+    @Setup
+    public void setup(BenchmarkGraph benchmarkGraph) {
+        GraphRep graph = benchmarkGraph.graphRep;
+        tree = graph.getLatLonBBoxSearchTree();
+
+        int minLat = Integer.MAX_VALUE, maxLat = Integer.MIN_VALUE;
+        int minLon = Integer.MAX_VALUE, maxLon = Integer.MIN_VALUE;
+        for (int i = 0; i < graph.getNodeCount(); i++) {
+            minLat = Math.min(minLat, graph.getLat(i));
+            maxLat = Math.max(maxLat, graph.getLat(i));
+            minLon = Math.min(minLon, graph.getLon(i));
+            maxLon = Math.max(maxLon, graph.getLon(i));
+        }
+        Random random = new Random(1337);
+        lats = new int[BenchmarkGraph.QUERY_COUNT];
+        lons = new int[BenchmarkGraph.QUERY_COUNT];
+        for (int i = 0; i < lats.length; i++) {
+            lats[i] = minLat + (int) (random.nextDouble() * ((long) maxLat - minLat));
+            lons[i] = minLon + (int) (random.nextDouble() * ((long) maxLon - minLon));
+        }
+    }
+
+    @Benchmark
+    public int getIDForCoordinates() {
+        query = (query + 1) % BenchmarkGraph.QUERY_COUNT;
+        return tree.getIDForCoordinates(lats[query], lons[query]);
+    }
+}
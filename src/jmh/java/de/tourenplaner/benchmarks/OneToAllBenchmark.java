@@ -0,0 +1,108 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.benchmarks;
+
+import de.tourenplaner.algorithms.DijkstraStructs;
+import de.tourenplaner.algorithms.IndexedHeap;
+import de.tourenplaner.algorithms.distmatrix.PHAST;
+import de.tourenplaner.graphrep.GraphRep;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One-to-all queries with PHAST compared to a heap based Dijkstra on the
+ * original edges, each invocation starts at the next of the precomputed random nodes.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class OneToAllBenchmark {
+
+    private GraphRep graph;
+    private int[] nodeIds;
+    private PHAST phast;
+    private IndexedHeap heap;
+    private int[] dists;
+    private int query;
+
+    @Setup
+    public void setup(BenchmarkGraph benchmarkGraph) {
+        graph = benchmarkGraph.graphRep;
+        if (graph.getSweepGraph() == null) {
+            graph.setupSweepGraph();
+        }
+        nodeIds = benchmarkGraph.nodeIds;
+        phast = new PHAST(graph, new DijkstraStructs(graph.getNodeCount(), graph.getEdgeCount()));
+        heap = new IndexedHeap(graph.getNodeCount());
+        dists = new int[graph.getNodeCount()];
+    }
+
+    private int nextSource() {
+        query = (query + 1) % nodeIds.length;
+        return nodeIds[query];
+    }
+
+    @Benchmark
+    public int phast() {
+        int srcId = nextSource();
+        phast.oneToAll(srcId, dists);
+        return dists[nodeIds[0]];
+    }
+
+    @Benchmark
+    public int dijkstra() {
+        int srcId = nextSource();
+        Arrays.fill(dists, Integer.MAX_VALUE);
+        dists[srcId] = 0;
+        heap.resetHeap();
+        heap.insertOrDecrease(srcId, 0);
+        while (!heap.isEmpty()) {
+            int nodeId = heap.peekMinId();
+            int nodeDist = heap.peekMinDist();
+            heap.removeMin();
+            for (int i = 0; i < graph.getOutEdgeCount(nodeId); i++) {
+                int edgeId = graph.getOutEdgeId(nodeId, i);
+                if (graph.getFirstShortcuttedEdge(edgeId) >= 0) {
+                    continue;
+                }
+                int targetId = graph.getTarget(edgeId);
+                int tempDist = nodeDist + graph.getDist(edgeId);
+                if (tempDist < dists[targetId]) {
+                    dists[targetId] = tempDist;
+                    heap.insertOrDecrease(targetId, tempDist);
+                }
+            }
+        }
+        return dists[nodeIds[0]];
+    }
+}
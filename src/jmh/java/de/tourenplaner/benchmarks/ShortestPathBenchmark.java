@@ -0,0 +1,130 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.benchmarks;
+
+import de.tourenplaner.algorithms.ComputeException;
+import de.tourenplaner.algorithms.DijkstraStructs;
+import de.tourenplaner.algorithms.shortestpath.ShortestPathBDCH;
+import de.tourenplaner.algorithms.shortestpath.ShortestPathCH;
+import de.tourenplaner.computecore.RequestPoints;
+import de.tourenplaner.computecore.Way;
+import de.tourenplaner.graphrep.GraphRep;
+import de.tourenplaner.graphrep.HubLabels;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point to point queries with the bidirectional CH search, the hub labels and the
+ * ShortestPathCH, each invocation answers the next of the precomputed random queries.
+ * Run with -prof gc to see the allocation rate per query. The hub labels are only built
+ * for hubLabelDistance so the other benchmarks run without their memory. Run with
+ * -p compact=false,true to compare the queries and path unpacking on a compact graph.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ShortestPathBenchmark {
+
+    private ShortestPathBDCH bdch;
+    private ShortestPathCH ch;
+    private RequestPoints[] points;
+    private int query;
+
+    @Setup
+    public void setup(BenchmarkGraph benchmarkGraph) {
+        GraphRep graph = benchmarkGraph.graphRep;
+        bdch = new ShortestPathBDCH(graph, new DijkstraStructs(graph.getNodeCount(), graph.getEdgeCount()));
+        ch = new ShortestPathCH(graph, new DijkstraStructs(graph.getNodeCount(), graph.getEdgeCount()));
+        points = new RequestPoints[BenchmarkGraph.QUERY_COUNT];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = benchmarkGraph.createPoints(benchmarkGraph.nodeIds[2 * i], benchmarkGraph.nodeIds[2 * i + 1]);
+        }
+    }
+
+    /**
+     * The hub labels of the benchmark graph, built once for all threads
+     */
+    @State(Scope.Benchmark)
+    public static class BenchmarkHubLabels {
+        public HubLabels hubLabels;
+
+        @Setup
+        public void setup(BenchmarkGraph benchmarkGraph) {
+            GraphRep graph = benchmarkGraph.graphRep;
+            if (graph.getHubLabels() == null) {
+                graph.setupHubLabels(Runtime.getRuntime().availableProcessors());
+            }
+            hubLabels = graph.getHubLabels();
+        }
+    }
+
+    private int nextQuery() {
+        query = (query + 1) % BenchmarkGraph.QUERY_COUNT;
+        return query;
+    }
+
+    @Benchmark
+    public int bddijkstra() throws IllegalAccessException, ComputeException {
+        RequestPoints queryPoints = points[nextQuery()];
+        return bdch.bddijkstra(queryPoints.getPointId(0), queryPoints.getPointId(1));
+    }
+
+    @Benchmark
+    public int hubLabelDistance(BenchmarkHubLabels labels) {
+        RequestPoints queryPoints = points[nextQuery()];
+        return labels.hubLabels.distance(queryPoints.getPointId(0), queryPoints.getPointId(1));
+    }
+
+    @Benchmark
+    public int shortestPathBDCH() throws IllegalAccessException {
+        List<Way> ways = new ArrayList<Way>(1);
+        try {
+            return bdch.shortestPath(points[nextQuery()], ways, false);
+        } catch (ComputeException e) {
+            // Real graphs may not be strongly connected
+            return -1;
+        }
+    }
+
+    @Benchmark
+    public int shortestPathCH() throws IllegalAccessException {
+        List<Way> ways = new ArrayList<Way>(1);
+        try {
+            return ch.shortestPath(points[nextQuery()], ways, false);
+        } catch (ComputeException e) {
+            // Real graphs may not be strongly connected
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.algorithms;
+
+/**
+ * Lets long running computations give up early, a token is cancelled when
+ * {@link #cancel()} was called on it or one of its parents or when its deadline
+ * has passed.<br /><br />
+ *
+ * Algorithms poll it with {@link #check()} every {@link #CHECK_INTERVAL} steps
+ * of their search loops, which is cheap enough to not show up in the timings.
+ * The server uses one token per connection that is cancelled when the connection
+ * is closed and one token per request with that as parent and the request's deadline.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class CancellationToken {
+
+	/**
+	 * The number of steps (e.g. settled nodes) after which search loops
+	 * should call {@link #check()}, a power of 2
+	 */
+	public static final int CHECK_INTERVAL = 1024;
+
+	/**
+	 * Mask to test whether a step counter is a multiple of {@link #CHECK_INTERVAL}
+	 */
+	public static final int CHECK_MASK = CHECK_INTERVAL - 1;
+
+	/**
+	 * Token that is never cancelled, used by algorithms called outside of a request
+	 */
+	public static final CancellationToken NONE = new CancellationToken();
+
+	private final CancellationToken parent;
+	private final boolean hasDeadline;
+	private final long deadline;
+	private final long timeout;
+	private volatile boolean cancelled;
+
+	/**
+	 * Creates a token without a parent and without a deadline, it's only
+	 * cancelled by {@link #cancel()}
+	 */
+	public CancellationToken() {
+		this(null, 0);
+	}
+
+	/**
+	 * Creates a token that is cancelled when parent is or after timeout
+	 * milliseconds from now have passed
+	 *
+	 * @param parent  may be null
+	 * @param timeout in milliseconds, values <= 0 mean no deadline
+	 */
+	public CancellationToken(CancellationToken parent, long timeout) {
+		this.parent = parent;
+		this.hasDeadline = timeout > 0;
+		this.timeout = timeout;
+		this.deadline = hasDeadline ? System.nanoTime() + timeout * 1000000L : 0;
+		this.cancelled = false;
+	}
+
+	/**
+	 * Cancels this token and all tokens having it as parent
+	 */
+	public void cancel() {
+		if (this != NONE) {
+			cancelled = true;
+		}
+	}
+
+	/**
+	 * Checks whether this token or one of its parents was cancelled explicitly
+	 *
+	 * @return
+	 */
+	public boolean isCancelled() {
+		return cancelled || (parent != null && parent.isCancelled());
+	}
+
+	/**
+	 * Checks whether the deadline of this token or one of its parents has passed
+	 *
+	 * @return
+	 */
+	public boolean isTimedOut() {
+		return (hasDeadline && System.nanoTime() - deadline >= 0) || (parent != null && parent.isTimedOut());
+	}
+
+	/**
+	 * Checks whether the computation should stop because the token was cancelled
+	 * or timed out, use this if something needs to be cleaned up before {@link #check()}
+	 *
+	 * @return
+	 */
+	public boolean shouldStop() {
+		return isCancelled() || isTimedOut();
+	}
+
+	/**
+	 * Throws a ComputeCancelledException if the token was cancelled or timed out
+	 *
+	 * @throws ComputeCancelledException
+	 */
+	public void check() throws ComputeCancelledException {
+		if (isCancelled()) {
+			throw new ComputeCancelledException("Computation cancelled");
+		}
+		if (isTimedOut()) {
+			throw new ComputeCancelledException("Computation took longer than " + timeout + " ms");
+		}
+	}
+}
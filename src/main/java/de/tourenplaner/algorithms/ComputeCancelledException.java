@@ -14,23 +14,20 @@
  *    limitations under the License.
  */
 
-package de.tourenplaner.graphrep;
-
-import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.io.OutputStream;
-import java.util.logging.Logger;
+package de.tourenplaner.algorithms;
 
 /**
+ * Thrown by algorithms that gave up because their {@link CancellationToken} was
+ * cancelled, either because the client is gone or the request ran out of time.
+ *
  * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
  */
-public class GraphSerializer implements GraphRepWriter{
+public class ComputeCancelledException extends ComputeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public ComputeCancelledException(String message) {
+		super(message);
+	}
 
-    @Override
-    public void writeGraphRep(OutputStream out, GraphRep graphRep) throws IOException {
-        ObjectOutputStream oos = new ObjectOutputStream(out);
-        oos.writeObject(graphRep);
-        oos.close();
-        Logger.getLogger("de.tourenplaner.server").fine("Successfully dumped graph");
-    }
 }
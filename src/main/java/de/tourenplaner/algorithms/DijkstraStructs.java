@@ -36,6 +36,9 @@ public class DijkstraStructs {
 	// Heap used as priority queue in Dijkstra
 	private final Heap heap;
 
+	// Heap with decrease key, used as priority queue in the CH searches
+	private final IndexedHeap indexedHeap;
+
 	// Used to mark nodes with BFS
 	private final BitSet marked;
 	private final BitSet visited;
@@ -43,20 +46,22 @@ public class DijkstraStructs {
 	// Dequeue used as fifo and stack
 	private final IntArrayDeque deque;
 
-	// dists in this array are stored with the multiplier applied. They also are
-	// rounded and are stored as integers
-	private final int[] dists;
+	// Dists and the edges leading to the nodes in the shortest path tree,
+	// reset by bumping their stamp so returning them is O(1)
+	private final SearchLabels labels;
 
-	// Stores at position i the edge leading to the node i in the shortest path
-	// tree
-	private final int[] prevEdges;
+	// Per node heads of the many-to-many buckets, -1 for empty buckets. Only
+	// allocated on first use as most algorithms never need them
+	private final int numNodes;
+	private int[] bucketHeads;
 
 	private boolean heapBorrowed;
+	private boolean indexedHeapBorrowed;
 	private boolean markedBorrowed;
 	private boolean visitedBorrowed;
 	private boolean dequeBorrowed;
-	private boolean distsBorrowed;
-	private boolean prevsBorrowed;
+	private boolean labelsBorrowed;
+	private boolean bucketHeadsBorrowed;
 
 	/**
 	 * Creates a new DijkstraStructs instance usable for a new thread. This
@@ -68,41 +73,64 @@ public class DijkstraStructs {
 	 */
 	public DijkstraStructs(int numNodes, int numEdges) {
 		heap = new Heap(8000);
+		indexedHeap = new IndexedHeap(numNodes, 4000);
 		marked = new BitSet(numEdges);
 		visited = new BitSet(numNodes);
 		deque = new IntArrayDeque(1000);
-		dists = new int[numNodes];
-		prevEdges = new int[numNodes];
-		Arrays.fill(dists, Integer.MAX_VALUE);
+		labels = new SearchLabels(numNodes);
+		this.numNodes = numNodes;
 	}
 
 	/**
-	 * Borrows the dist array which is filled with Integer.MAX_VALUE before
-	 * calling this method again the dist array have must have been returned
+	 * Borrows the node sized bucket heads, all entries are -1. They are
+	 * allocated when they are borrowed for the first time. Before calling this
+	 * method again the bucket heads must have been returned
 	 * 
 	 * @return
-	 * @throws IllegalAccessException
 	 */
-	public int[] borrowDistArray() {
-		if (distsBorrowed)
-			throw new ConcurrentModificationException("Dist Array borrowed again");
-		distsBorrowed = true;
-		return dists;
+	public int[] borrowBucketHeads() {
+		if (bucketHeadsBorrowed)
+			throw new ConcurrentModificationException("BucketHeads borrowed again");
+		bucketHeadsBorrowed = true;
+		if (bucketHeads == null) {
+			bucketHeads = new int[numNodes];
+			Arrays.fill(bucketHeads, -1);
+		}
+		return bucketHeads;
+	}
+
+	/**
+	 * Returns the bucket heads to this DijkstraStructs instance declaring them
+	 * ready for reuse. The caller MUST have set all entries it changed back
+	 * to -1 before, they are not reset here. It's the callers responsibility
+	 * to not use the bucket heads after they have been returned.
+	 */
+	public void returnBucketHeads() {
+		bucketHeadsBorrowed = false;
 	}
 
 	/**
-	 * Returns the dist array to this DijstraStructs instance declaring it ready
-	 * for reuse. If alreadyReset is true the array will not be reset to
-	 * Integer.MAX_VALUE it's the callers responsibility to not use the array
-	 * after it has been returned and to make sure it's really reset to
-	 * Integer.MAX_VALUE when alreadyReset is true
+	 * Borrows the search labels, all nodes are unreached. Before calling this
+	 * method again the labels must have been returned
 	 * 
-	 * @param alreadyReset
+	 * @return
+	 */
+	public SearchLabels borrowSearchLabels() {
+		if (labelsBorrowed)
+			throw new ConcurrentModificationException("SearchLabels borrowed again");
+		labelsBorrowed = true;
+		return labels;
+	}
+
+	/**
+	 * Returns the search labels to this DijkstraStructs instance declaring them
+	 * ready for reuse, they are reset in constant time so there is no need to
+	 * clean up touched nodes before. It's the callers responsibility to not use
+	 * the labels after they have been returned.
 	 */
-	public void returnDistArray(boolean alreadyReset) {
-		if (!alreadyReset)
-			Arrays.fill(dists, Integer.MAX_VALUE);
-		distsBorrowed = false;
+	public void returnSearchLabels() {
+		labelsBorrowed = false;
+		labels.reset();
 	}
 
 	/**
@@ -131,26 +159,27 @@ public class DijkstraStructs {
 	}
 
 	/**
-	 * Borrows the int array used to store predecessor edges this array has no
-	 * guaranteed content when newly borrowed (i.e. is not reset)
+	 * Borrows the indexed heap. Before calling this method again the indexed
+	 * heap must have been returned
 	 * 
 	 * @return
-	 * @throws IllegalAccessException
 	 */
-	public int[] borrowPrevArray() {
-		if (prevsBorrowed)
-			throw new ConcurrentModificationException("PrevArray borrowed again");
-		prevsBorrowed = true;
-		return prevEdges;
+	public IndexedHeap borrowIndexedHeap() {
+		if (indexedHeapBorrowed)
+			throw new ConcurrentModificationException("IndexedHeap borrowed again");
+		indexedHeapBorrowed = true;
+		return indexedHeap;
 	}
 
 	/**
-	 * Returns the prev array to this DijkstraStucts instance declaring it ready
-	 * for reuse. It's the callers responsibility to not use the array after it
-	 * has been returned.
+	 * Returns the indexed heap to this DijkstraStucts instance declaring it
+	 * ready for reuse, the heap will be reset so there is no need to have it
+	 * reset before. It's the callers responsibility to not use the heap after
+	 * it has been returned.
 	 */
-	public void returnPrevArray() {
-		prevsBorrowed = false;
+	public void returnIndexedHeap() {
+		indexedHeapBorrowed = false;
+		indexedHeap.resetHeap();
 	}
 
 	/**
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.tourenplaner.algorithms;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A thread safe pool of DijkstraStructs for work that is spread over several
+ * threads, e.g. the rows of one distance matrix. Every thread borrows its own
+ * instance so the single thread rule of DijkstraStructs still holds.<br /><br />
+ *
+ * Instances are created on demand, but at most maxStructs of them, which should
+ * be the number of worker threads. Borrowing blocks while all of them are borrowed,
+ * so the memory use stays bounded even if more threads than expected borrow.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class DijkstraStructsPool {
+	private final int numNodes;
+	private final int numEdges;
+
+	private final ConcurrentLinkedQueue<DijkstraStructs> idle;
+	// One permit per instance that may still be borrowed
+	private final Semaphore available;
+
+	/**
+	 * Creates a pool handing out at most maxStructs DijkstraStructs for a graph
+	 * with numNodes nodes and numEdges edges
+	 *
+	 * @param numNodes
+	 * @param numEdges
+	 * @param maxStructs
+	 */
+	public DijkstraStructsPool(int numNodes, int numEdges, int maxStructs) {
+		if (maxStructs < 1) {
+			throw new IllegalArgumentException("maxStructs must be at least 1");
+		}
+		this.numNodes = numNodes;
+		this.numEdges = numEdges;
+		this.idle = new ConcurrentLinkedQueue<DijkstraStructs>();
+		this.available = new Semaphore(maxStructs);
+	}
+
+	/**
+	 * Borrows a DijkstraStructs instance, blocking until one is returned if all
+	 * of them are borrowed. It must be returned with {@link #returnStructs(DijkstraStructs)}
+	 * by the same thread after use and with all its structures returned
+	 *
+	 * @return
+	 */
+	public DijkstraStructs borrowStructs() {
+		available.acquireUninterruptibly();
+		DijkstraStructs ds = idle.poll();
+		if (ds == null) {
+			try {
+				ds = new DijkstraStructs(numNodes, numEdges);
+			} finally {
+				// don't lose the permit if the allocation failed
+				if (ds == null) {
+					available.release();
+				}
+			}
+		}
+		return ds;
+	}
+
+	/**
+	 * Returns the DijkstraStructs to the pool, it's the callers responsibility
+	 * to not use it afterwards
+	 *
+	 * @param ds
+	 */
+	public void returnStructs(DijkstraStructs ds) {
+		idle.offer(ds);
+		available.release();
+	}
+}
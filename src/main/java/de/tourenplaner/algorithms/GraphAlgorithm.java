@@ -28,8 +28,24 @@ import de.tourenplaner.graphrep.GraphRep;
 public abstract class GraphAlgorithm implements Algorithm {
 	final protected GraphRep graph;
 
+	/**
+	 * Polled by long running searches, algorithms set it from the ComputeRequest
+	 * they compute
+	 */
+	protected CancellationToken cancellation = CancellationToken.NONE;
+
 	public GraphAlgorithm(GraphRep graph) {
 		this.graph = graph;
 	}
 
+	/**
+	 * Sets the CancellationToken checked by the searches of this algorithm,
+	 * used when an algorithm runs other algorithms for its request
+	 *
+	 * @param cancellation
+	 */
+	public void setCancellation(CancellationToken cancellation) {
+		this.cancellation = cancellation;
+	}
+
 }
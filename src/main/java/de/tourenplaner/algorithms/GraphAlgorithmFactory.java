@@ -31,6 +31,7 @@ import io.netty.buffer.ByteBufInputStream;
 import io.netty.handler.codec.http.FullHttpRequest;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -60,6 +61,43 @@ public abstract class GraphAlgorithmFactory extends AlgorithmFactory {
 	 */
 	public abstract List<Map<String, Object>> getPointConstraints();
 
+    /**
+     * Returns whether the constructed Algorithms compute a result for a single
+     * pair of points read as ClassicRequestData, only those may be used for
+     * the pairs of batch requests (/batch + URLSuffix)
+     *
+     * @return false unless overridden
+     */
+    public boolean isBatchable() {
+        return false;
+    }
+
+    /**
+     * Reads the elements of a JSON array of points like {"lt":..., "ln":..., ...} into points,
+     * the parser has to be on the START_ARRAY and is left on the END_ARRAY
+     */
+    protected static void readPoints(JsonParser jp, RequestPoints points) throws IOException {
+        String fieldname;
+        Map<String, Object> pconsts;
+        int lat = 0, lon = 0;
+        while (jp.nextToken() != JsonToken.END_ARRAY) {
+            pconsts = new HashMap<String, Object>();
+            while (jp.nextToken() != JsonToken.END_OBJECT) {
+                fieldname = jp.getCurrentName();
+                jp.nextToken();
+
+                if ("lt".equals(fieldname)) {
+                    lat = jp.getIntValue();
+                } else if ("ln".equals(fieldname)) {
+                    lon = jp.getIntValue();
+                } else {
+                    pconsts.put(fieldname, jp.readValueAs(Object.class));
+                }
+            }
+            points.addPoint(lat, lon, pconsts);
+        }
+    }
+
     /**
      * Reads ClassicRequestData unless overridden
      */
@@ -78,8 +116,6 @@ public abstract class GraphAlgorithmFactory extends AlgorithmFactory {
 
             String fieldname;
             JsonToken token;
-            Map<String, Object> pconsts;
-            int lat = 0, lon = 0;
             boolean finished = false;
             while (!finished) {
                 //move to next field or END_OBJECT/EOF
@@ -93,23 +129,7 @@ public abstract class GraphAlgorithmFactory extends AlgorithmFactory {
                         if (token != JsonToken.START_ARRAY) {
                             throw new JsonParseException("points is no array", jp.getCurrentLocation());
                         }
-                        // Read array elements
-                        while (jp.nextToken() != JsonToken.END_ARRAY) {
-                            pconsts = new HashMap<String, Object>();
-                            while (jp.nextToken() != JsonToken.END_OBJECT) {
-                                fieldname = jp.getCurrentName();
-                                token = jp.nextToken();
-
-                                if ("lt".equals(fieldname)) {
-                                    lat = jp.getIntValue();
-                                } else if ("ln".equals(fieldname)) {
-                                    lon = jp.getIntValue();
-                                } else {
-                                    pconsts.put(fieldname, jp.readValueAs(Object.class));
-                                }
-                            }
-                            points.addPoint(lat, lon, pconsts);
-                        }
+                        readPoints(jp, points);
 
                     } else if ("constraints".equals(fieldname)) {
                         // Should be on START_OBJECT
@@ -141,4 +161,76 @@ public abstract class GraphAlgorithmFactory extends AlgorithmFactory {
         }
         return new ClassicRequestData(this.getURLSuffix(), points, constraints);
     }
+
+    /**
+     * Reads the pairs of points of a batch request like
+     * {"pairs": [[{"lt":..., "ln":...}, {"lt":..., "ln":...}], ...], "constraints": {...}}
+     * into one ClassicRequestData per pair, all of them get a copy of the constraints.
+     * Only used if the factory {@link #isBatchable()}
+     *
+     * @param maxPairs the request is rejected as soon as it has more pairs than this
+     * @return the RequestData of the pairs or null if an error was written
+     */
+    public List<RequestData> readBatchRequestData(ObjectMapper mapper, Responder responder, FullHttpRequest request,
+                                                  int maxPairs) throws IOException {
+        final ByteBuf content = request.content();
+        if (content.readableBytes() == 0) {
+            responder.writeErrorMessage(ErrorMessage.EBADJSON_NOCONTENT);
+            return null;
+        }
+        final JsonParser jp = mapper.getFactory().createParser(new ByteBufInputStream(content));
+        jp.setCodec(mapper);
+
+        if (jp.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException("Request contains no json object", jp.getCurrentLocation());
+        }
+
+        List<RequestPoints> pairs = new ArrayList<RequestPoints>();
+        Map<String, Object> constraints = null;
+        JsonToken token;
+        while ((token = jp.nextToken()) != JsonToken.END_OBJECT) {
+            if (token != JsonToken.FIELD_NAME) {
+                throw new JsonParseException("Unexpected token " + token, jp.getCurrentLocation());
+            }
+            String fieldname = jp.getCurrentName();
+            token = jp.nextToken();
+            if ("pairs".equals(fieldname)) {
+                if (token != JsonToken.START_ARRAY) {
+                    responder.writeErrorMessage(ErrorMessage.EBADJSON_PAIRS);
+                    return null;
+                }
+                while (jp.nextToken() != JsonToken.END_ARRAY) {
+                    if (pairs.size() >= maxPairs) {
+                        responder.writeErrorMessage(ErrorMessage.ETOOMANYPAIRS, "at most " + maxPairs + " pairs are accepted");
+                        return null;
+                    }
+                    RequestPoints points = new RequestPoints();
+                    if (jp.getCurrentToken() != JsonToken.START_ARRAY) {
+                        responder.writeErrorMessage(ErrorMessage.EBADJSON_PAIRS);
+                        return null;
+                    }
+                    readPoints(jp, points);
+                    if (points.size() != 2) {
+                        responder.writeErrorMessage(ErrorMessage.EBADJSON_PAIRS);
+                        return null;
+                    }
+                    pairs.add(points);
+                }
+            } else if ("constraints".equals(fieldname)) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new JsonParseException("constraints is not an object", jp.getCurrentLocation());
+                }
+                constraints = jp.readValueAs(JSONOBJECT);
+            } else if ((token == JsonToken.START_ARRAY) || (token == JsonToken.START_OBJECT)) {
+                jp.skipChildren();
+            }
+        }
+
+        List<RequestData> requests = new ArrayList<RequestData>(pairs.size());
+        for (RequestPoints points : pairs) {
+            Map<String, Object> pairConstraints = (constraints != null) ? new HashMap<String, Object>(constraints) : null;
+            requests.add(new ClassicRequestData(this.getURLSuffix(), points, pairConstraints));
+        }
+        return requests;
+    }
 }
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.algorithms;
+
+import com.carrotsearch.hppc.ArraySizingStrategy;
+
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Minimum heap for ids in [0, numIds) supporting decrease key, so unlike {@link Heap}
+ * every id is contained at most once and there are no stale entries to skip.
+ * Nothing is allocated after construction unless the heap needs to grow.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class IndexedHeap {
+	private static Logger log = Logger.getLogger("de.tourenplaner.algorithms");
+
+	/* d-ary heap structure with d = ARITY.
+	 *
+	 * Index calculations (in entries, each entry takes two array slots [2*i, 2*i+1]
+	 * for id and dist just like in Heap):
+	 *   - the children of entry i are the entries ARITY*i+1 ... ARITY*i+ARITY
+	 *   - the parent of entry i > 0 is (i - 1) / ARITY
+	 * positions[id] stores the entry index of id or -1 if id is not in the heap
+	 */
+	public static final int ARITY = 4;
+
+	/** the {@link #resizer} is applied to the actual number of ints in the array, not
+	 * the number of entries in the heap.
+	 */
+	protected final ArraySizingStrategy resizer;
+
+	private final int[] positions;
+	private int[] heaparr;
+	private int heapentries;
+
+	/**
+	 * initializes a heap for ids in [0, numIds) with room for
+	 * {@value Heap#DEFAULT_CAPACITY} entries
+	 *
+	 * @param numIds
+	 */
+	public IndexedHeap(int numIds) {
+		this(numIds, Heap.DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * initializes a heap for ids in [0, numIds) with room for initialCapacity entries
+	 *
+	 * @param numIds
+	 * @param initialCapacity number of items to reserve space for
+	 */
+	public IndexedHeap(int numIds, int initialCapacity) {
+		this.resizer = new com.carrotsearch.hppc.BoundedProportionalArraySizingStrategy();
+		positions = new int[numIds];
+		Arrays.fill(positions, -1);
+		heaparr = new int[resizer.round(2 * Math.max(1, Math.min(initialCapacity, numIds)))];
+		heapentries = 0;
+	}
+
+	/**
+	 * Inserts id with the given dist or decreases its dist if it's already
+	 * contained with a larger dist
+	 *
+	 * @param id
+	 * @param dist
+	 * @return true if the heap was changed
+	 */
+	public final boolean insertOrDecrease(int id, int dist) {
+		int entry = positions[id];
+		if (entry < 0) {
+			ensureBufferSpace(1);
+			entry = heapentries++;
+		} else if (dist >= heaparr[2 * entry + 1]) {
+			return false;
+		}
+		bubbleUp(entry, id, dist);
+		return true;
+	}
+
+	/**
+	 * checks whether id is in the heap
+	 *
+	 * @param id
+	 * @return
+	 */
+	public final boolean contains(int id) {
+		return positions[id] >= 0;
+	}
+
+	/**
+	 * check for empty heap
+	 *
+	 * @return
+	 */
+	public final boolean isEmpty() {
+		return heapentries <= 0;
+	}
+
+	/**
+	 * gets the number of entries in the heap
+	 *
+	 * @return
+	 */
+	public final int size() {
+		return heapentries;
+	}
+
+	/**
+	 * peeks the id of the minimum of the heap
+	 *
+	 * @return
+	 */
+	public final int peekMinId() {
+		assert heapentries > 0;
+		return heaparr[0];
+	}
+
+	/**
+	 * peeks the dist of the minimum of the heap
+	 *
+	 * @return
+	 */
+	public final int peekMinDist() {
+		assert heapentries > 0;
+		return heaparr[1];
+	}
+
+	/**
+	 * removes the min element of the heap
+	 */
+	public final void removeMin() {
+		assert heapentries > 0;
+		positions[heaparr[0]] = -1;
+		--heapentries;
+		if (heapentries > 0) {
+			siftDown(0, heaparr[heapentries * 2], heaparr[heapentries * 2 + 1]);
+		}
+	}
+
+	/**
+	 * resets the heap, this only touches the ids still in the heap
+	 */
+	public final void resetHeap() {
+		for (int i = 0; i < heapentries; i++) {
+			positions[heaparr[i * 2]] = -1;
+		}
+		heapentries = 0;
+	}
+
+	/**
+	 * Moves the hole at entry up until id with dist fits in and stores it there
+	 */
+	private void bubbleUp(int entry, int id, int dist) {
+		while (entry > 0) {
+			final int parent = (entry - 1) / ARITY;
+			if (heaparr[parent * 2 + 1] > dist) {
+				heaparr[entry * 2] = heaparr[parent * 2];
+				heaparr[entry * 2 + 1] = heaparr[parent * 2 + 1];
+				positions[heaparr[entry * 2]] = entry;
+				entry = parent;
+			} else {
+				break;
+			}
+		}
+		heaparr[entry * 2] = id;
+		heaparr[entry * 2 + 1] = dist;
+		positions[id] = entry;
+	}
+
+	/**
+	 * Moves the hole at entry down until id with dist fits in and stores it there
+	 */
+	private void siftDown(int entry, int id, int dist) {
+		while (true) {
+			final int firstChild = entry * ARITY + 1;
+			if (firstChild >= heapentries) {
+				// no children - reached leaf
+				break;
+			}
+			final int lastChild = Math.min(firstChild + ARITY, heapentries);
+			int minChild = firstChild;
+			int minDist = heaparr[firstChild * 2 + 1];
+			for (int child = firstChild + 1; child < lastChild; child++) {
+				if (heaparr[child * 2 + 1] < minDist) {
+					minChild = child;
+					minDist = heaparr[child * 2 + 1];
+				}
+			}
+
+			if (minDist < dist) {
+				heaparr[entry * 2] = heaparr[minChild * 2];
+				heaparr[entry * 2 + 1] = minDist;
+				positions[heaparr[entry * 2]] = entry;
+				entry = minChild;
+			} else {
+				break;
+			}
+		}
+		heaparr[entry * 2] = id;
+		heaparr[entry * 2 + 1] = dist;
+		positions[id] = entry;
+	}
+
+	/**
+	 * Ensures the internal buffer has enough free slots to store expectedAdditions items in the heap.
+	 */
+	public final void ensureBufferSpace(int expectedAdditions) {
+		final int minlen = (heapentries + expectedAdditions) * 2;
+		if (minlen > heaparr.length) {
+			final int oldLen = heaparr.length;
+			final int newLen = resizer.grow(oldLen, heapentries * 2, expectedAdditions * 2);
+			log.finer("Increased IndexedHeap size from " + oldLen + " to " + newLen);
+			heaparr = Arrays.copyOf(heaparr, newLen);
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.algorithms;
+
+/**
+ * Distance and predecessor edge labels of a Dijkstra like search over the nodes
+ * [0, numNodes) that are reset in O(1) instead of filling whole arrays.<br /><br />
+ *
+ * Every label carries the stamp of the search that wrote it, {@link #reset()} just
+ * bumps the current stamp so all labels written before become stale and read as
+ * unreached, that is with dist Integer.MAX_VALUE and prev edge -1. Only when the
+ * stamp wraps around the stamps are cleared for real.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class SearchLabels {
+	/* The label of node i takes the three consecutive slots [3*i, 3*i+2] for
+	 * stamp, dist and prev edge, so a relaxation only touches one cache line
+	 * instead of one per array.
+	 * Stamp 0 is never current so the freshly allocated array is all stale.
+	 */
+	private static final int LABEL_SIZE = 3;
+
+	private final int[] labels;
+	private final int numNodes;
+	private int stamp;
+
+	/**
+	 * Creates labels for the nodes [0, numNodes), all unreached
+	 *
+	 * @param numNodes
+	 */
+	public SearchLabels(int numNodes) {
+		this(numNodes, 1);
+	}
+
+	/**
+	 * Creates labels starting with the given stamp, used to test the wrap around
+	 *
+	 * @param numNodes
+	 * @param initialStamp must be positive
+	 */
+	SearchLabels(int numNodes, int initialStamp) {
+		this.numNodes = numNodes;
+		labels = new int[numNodes * LABEL_SIZE];
+		stamp = initialStamp;
+	}
+
+	/**
+	 * Marks all labels as unreached by starting a new stamp
+	 */
+	public void reset() {
+		if (stamp == Integer.MAX_VALUE) {
+			for (int i = 0; i < labels.length; i += LABEL_SIZE) {
+				labels[i] = 0;
+			}
+			stamp = 0;
+		}
+		stamp++;
+	}
+
+	/**
+	 * Gets the number of nodes these labels are for
+	 *
+	 * @return
+	 */
+	public int size() {
+		return numNodes;
+	}
+
+	/**
+	 * Returns true if the node has been labeled since the last reset
+	 *
+	 * @param nodeId
+	 * @return
+	 */
+	public boolean isReached(int nodeId) {
+		return labels[nodeId * LABEL_SIZE] == stamp;
+	}
+
+	/**
+	 * Gets the dist of the node or Integer.MAX_VALUE if it hasn't been
+	 * labeled since the last reset
+	 *
+	 * @param nodeId
+	 * @return
+	 */
+	public int getDist(int nodeId) {
+		int pos = nodeId * LABEL_SIZE;
+		return (labels[pos] == stamp) ? labels[pos + 1] : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Gets the edge leading to the node in the search tree or -1 if there is
+	 * none
+	 *
+	 * @param nodeId
+	 * @return
+	 */
+	public int getPrevEdge(int nodeId) {
+		int pos = nodeId * LABEL_SIZE;
+		return (labels[pos] == stamp) ? labels[pos + 2] : -1;
+	}
+
+	/**
+	 * Sets the dist of the node keeping its prev edge if it was already
+	 * labeled
+	 *
+	 * @param nodeId
+	 * @param dist
+	 */
+	public void setDist(int nodeId, int dist) {
+		int pos = nodeId * LABEL_SIZE;
+		if (labels[pos] != stamp) {
+			labels[pos] = stamp;
+			labels[pos + 2] = -1;
+		}
+		labels[pos + 1] = dist;
+	}
+
+	/**
+	 * Sets the dist of the node and the edge leading to it
+	 *
+	 * @param nodeId
+	 * @param dist
+	 * @param prevEdge
+	 */
+	public void setDistAndPrev(int nodeId, int dist, int prevEdge) {
+		int pos = nodeId * LABEL_SIZE;
+		labels[pos] = stamp;
+		labels[pos + 1] = dist;
+		labels[pos + 2] = prevEdge;
+	}
+}
@@ -88,7 +88,6 @@ public class BBBundle extends GraphAlgorithm {
                             continue;
                         }
                         assert nodeRank <= trgtRank; // up edge
-                        assert nodeId >= trgtId; // up edge + nodes sorted by rank ascending
 
                         dfsState[trgtId] = DISCOVERED;
                         needClear.add(trgtId);
@@ -111,7 +110,6 @@ public class BBBundle extends GraphAlgorithm {
                             continue;
                         }
                         assert nodeRank <= srcRank; // down edge
-                        assert nodeId >= srcId; // down edge + nodes sorted by rank ascending
 
 
                         dfsState[srcId] = DISCOVERED;
@@ -162,7 +160,6 @@ public class BBBundle extends GraphAlgorithm {
                 }
 
                 assert nodeRank <= trgtRank; // up edge
-                assert nodeId >= trgtId; // up edge + nodes sorted by rank ascending
                 assert (trgtId < coreSize) || mappedIds[nodeId] < mappedIds[trgtId];
 
                 int srcIdMapped = mappedIds[nodeId];
@@ -186,7 +183,6 @@ public class BBBundle extends GraphAlgorithm {
                 }
 
                 assert nodeRank <= srcRank; // down edge
-                assert nodeId >= srcId; // down edge + nodes sorted by rank ascending
                 assert (srcId < coreSize) || mappedIds[nodeId] < mappedIds[srcId]; // topological order, trgt -> src
 
                 int srcIdMapped = (srcId >= coreSize) ? mappedIds[srcId] : srcId;
@@ -10,6 +10,7 @@ import de.tourenplaner.computecore.RequestPoints;
 import de.tourenplaner.computecore.Way;
 import de.tourenplaner.computecore.WayResult;
 import de.tourenplaner.graphrep.GraphRep;
+import de.tourenplaner.graphrep.UnpackedShortcuts;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -24,10 +25,13 @@ public class WayByNodeIds extends GraphAlgorithm {
 
     private static Logger log = Logger.getLogger("de.tourenplaner.algorithms");
     private DijkstraStructs ds;
+    // Precomputed geometry of high shortcuts, null if the GraphRep has none
+    private UnpackedShortcuts unpackedShortcuts;
 
     public WayByNodeIds(GraphRep graph, DijkstraStructs ds) {
         super(graph);
         this.ds = ds;
+        this.unpackedShortcuts = graph.getUnpackedShortcuts();
     }
 
     private WayResult unpackEdges(IntArrayDeque edges) {
@@ -51,6 +55,14 @@ public class WayByNodeIds extends GraphAlgorithm {
                 edgeId = edges.removeFirst();
                 shortedEdge1 = graph.getFirstShortcuttedEdge(edgeId);
                 if (shortedEdge1 > 0) {
+                    int unpacked = (unpackedShortcuts != null) ? unpackedShortcuts.find(edgeId) : -1;
+                    if (unpacked >= 0) {
+                        // It's already unpacked just copy it
+                        resultWay.addPoints(unpackedShortcuts, unpacked);
+                        length += unpackedShortcuts.getLength(unpacked);
+                        distance += graph.getDist(edgeId);
+                        continue;
+                    }
                     // We have a shortcut unpack it
                     shortedEdge2 = graph.getSecondShortcuttedEdge(edgeId);
                     edges.addFirst(shortedEdge2);
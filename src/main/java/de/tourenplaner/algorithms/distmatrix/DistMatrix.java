@@ -0,0 +1,84 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.tourenplaner.algorithms.distmatrix;
+
+import de.tourenplaner.algorithms.ClassicRequestData;
+import de.tourenplaner.algorithms.ComputeException;
+import de.tourenplaner.algorithms.DijkstraStructs;
+import de.tourenplaner.algorithms.GraphAlgorithm;
+import de.tourenplaner.computecore.ComputeRequest;
+import de.tourenplaner.computecore.RequestPoints;
+import de.tourenplaner.graphrep.GraphRep;
+import de.tourenplaner.graphrep.HubLabels;
+import de.tourenplaner.utils.Timing;
+
+import java.util.logging.Logger;
+
+/**
+ * Computes the matrix of shortest path distances between all given points
+ * using the graph's {@link HubLabels} if it has them, the {@link ManyToManyCH} otherwise.
+ * Requests with more than the configured maximum of points are rejected as the
+ * matrix grows quadratically
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class DistMatrix extends GraphAlgorithm {
+    private static Logger log = Logger.getLogger("de.tourenplaner.algorithms");
+
+    private final ManyToManyCH manyToMany;
+    // null if the graph has no HubLabels
+    private final HubLabels hubLabels;
+    // 0 means no limit
+    private final int maxPoints;
+
+    /**
+     * Creates a DistMatrix accepting at most maxPoints points, 0 means no limit
+     */
+    public DistMatrix(GraphRep graph, DijkstraStructs ds, DistMatrixWorkers workers, int maxPoints) {
+        super(graph);
+        this.manyToMany = new ManyToManyCH(graph, ds, workers);
+        this.hubLabels = graph.getHubLabels();
+        this.maxPoints = maxPoints;
+    }
+
+    @Override
+    public void compute(ComputeRequest request) throws ComputeException {
+        ClassicRequestData req = (ClassicRequestData) request.getRequestData();
+        setCancellation(request.getCancellation());
+        RequestPoints points = req.getPoints();
+        if (points.size() < 2) {
+            throw new ComputeException("Not enough points, need at least 2");
+        }
+        if (maxPoints > 0 && points.size() > maxPoints) {
+            throw new ComputeException("Too many points, at most " + maxPoints + " are allowed");
+        }
+
+        long start = System.nanoTime();
+        points.setIdsFromGraph(graph);
+        int[] ids = new int[points.size()];
+        for (int i = 0; i < ids.length; i++) {
+            int nodeId = points.getPointId(i);
+            ids[i] = nodeId;
+            // Report the positions actually used
+            points.setPointLat(i, graph.getLat(nodeId));
+            points.setPointLon(i, graph.getLon(nodeId));
+        }
+        int[][] distmat = (hubLabels != null) ? hubLabels.computeDistMatrix(ids, ids)
+                : manyToMany.computeDistMatrix(ids, ids, cancellation);
+        log.fine(Timing.took("DistMatrix for " + ids.length + " points", start));
+        request.setResultObject(new DistMatrixResult(points, distmat));
+    }
+}
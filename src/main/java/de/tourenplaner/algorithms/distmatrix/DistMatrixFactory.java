@@ -0,0 +1,112 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.algorithms.distmatrix;
+
+import de.tourenplaner.algorithms.Algorithm;
+import de.tourenplaner.algorithms.DijkstraStructs;
+import de.tourenplaner.algorithms.SharingAlgorithmFactory;
+import de.tourenplaner.graphrep.GraphRep;
+
+import java.util.*;
+
+/**
+ * Used to create instances of the DistMatrix algorithm
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class DistMatrixFactory extends SharingAlgorithmFactory {
+    private final Map<String, Object> details;
+    private final List<Map<String, Object>> constraints;
+    private final List<Map<String, Object>> pointConstraints;
+    private final DistMatrixWorkers workers;
+    private final int maxPoints;
+
+    public DistMatrixFactory(GraphRep graph){
+        this(graph, null, 0);
+    }
+
+    /**
+     * Creates the factory, the created algorithms use the given workers to compute
+     * large distance matrices in parallel unless they are null and accept at most
+     * maxPoints points, 0 means no limit
+     */
+    public DistMatrixFactory(GraphRep graph, DistMatrixWorkers workers, int maxPoints){
+        super(graph);
+        this.workers = workers;
+        this.maxPoints = maxPoints;
+        constraints = new ArrayList<Map<String, Object>> (0);
+        pointConstraints = new ArrayList<Map<String, Object>>(0);
+        details = new HashMap<String, Object>(4);
+        details.put("hidden", this.isHidden());
+        details.put("minpoints", 2);
+        if (maxPoints > 0) {
+            details.put("maxpoints", maxPoints);
+        }
+        details.put("sourceistarget", false);
+
+    }
+
+    @Override
+    public Map<String, Object> getDetails() {
+        return details;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Calculates the shortest path distances between all pairs of the supplied points";
+    }
+
+    @Override
+    public Algorithm createAlgorithm(DijkstraStructs rs) {
+        return new DistMatrix(graph, rs, workers, maxPoints);
+    }
+
+    @Override
+    public List<Map<String, Object>> getPointConstraints() {
+        return pointConstraints;
+    }
+
+    @Override
+    public List<Map<String, Object>> getConstraints() {
+        return constraints;
+    }
+
+    @Override
+    public Algorithm createAlgorithm() {
+        return new DistMatrix(graph, new DijkstraStructs(graph.getNodeCount(), graph.getEdgeCount()), workers, maxPoints);
+    }
+
+    @Override
+    public String getURLSuffix() {
+        return "distmatrix";
+    }
+
+    @Override
+    public String getAlgName() {
+        return "Distance Matrix";
+    }
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @Override
+    public boolean isHidden() {
+        return false;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.tourenplaner.algorithms.distmatrix;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import de.tourenplaner.computecore.FormattedStreamWriter;
+import de.tourenplaner.computecore.RequestPoints;
+import de.tourenplaner.computeserver.Responder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Holds the result of a distance matrix computation, the points snapped to the
+ * graph and the matrix with one row per point. Unreachable entries are written as null.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class DistMatrixResult implements FormattedStreamWriter {
+
+    private final RequestPoints points;
+    private final int[][] distmat;
+
+    public DistMatrixResult(RequestPoints points, int[][] distmat) {
+        this.points = points;
+        this.distmat = distmat;
+    }
+
+    @Override
+    public void writeToStream(Responder.ResultFormat format, OutputStream stream) throws IOException {
+        JsonGenerator gen = format.getMapper().getFactory().createGenerator(stream);
+        gen.writeStartObject();
+        gen.writeArrayFieldStart("points");
+        for (int i = 0; i < points.size(); i++) {
+            gen.writeStartObject();
+            gen.writeNumberField("lt", points.getPointLat(i));
+            gen.writeNumberField("ln", points.getPointLon(i));
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+
+        gen.writeArrayFieldStart("matrix");
+        for (int[] row : distmat) {
+            gen.writeStartArray();
+            for (int dist : row) {
+                if (dist == Integer.MAX_VALUE) {
+                    gen.writeNull();
+                } else {
+                    gen.writeNumber(dist);
+                }
+            }
+            gen.writeEndArray();
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+        gen.close();
+    }
+}
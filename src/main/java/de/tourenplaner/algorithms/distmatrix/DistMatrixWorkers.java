@@ -0,0 +1,60 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.tourenplaner.algorithms.distmatrix;
+
+import de.tourenplaner.algorithms.DijkstraStructsPool;
+import de.tourenplaner.graphrep.GraphRep;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The fork join pool and the DijkstraStructs used to spread the searches of one
+ * distance matrix over several threads. One instance is shared by all algorithms
+ * computing distance matrices, the TravelingSalesman and DistMatrix.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class DistMatrixWorkers {
+    private final ForkJoinPool pool;
+    private final DijkstraStructsPool structsPool;
+
+    /**
+     * Creates workers for the given graph using parallelism threads
+     *
+     * @param graph
+     * @param parallelism
+     */
+    public DistMatrixWorkers(GraphRep graph, int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.structsPool = new DijkstraStructsPool(graph.getNodeCount(), graph.getEdgeCount(), parallelism);
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public DijkstraStructsPool getStructsPool() {
+        return structsPool;
+    }
+
+    /**
+     * Stops the threads once the running distance matrices are done,
+     * used when the graph gets replaced
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,441 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.tourenplaner.algorithms.distmatrix;
+
+import com.carrotsearch.hppc.IntArrayList;
+import de.tourenplaner.algorithms.CancellationToken;
+import de.tourenplaner.algorithms.ComputeCancelledException;
+import de.tourenplaner.algorithms.DijkstraStructs;
+import de.tourenplaner.algorithms.DijkstraStructsPool;
+import de.tourenplaner.algorithms.IndexedHeap;
+import de.tourenplaner.algorithms.SearchLabels;
+import de.tourenplaner.graphrep.GraphRep;
+import de.tourenplaner.graphrep.SearchGraph;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes distance tables between many sources and many targets using bucket
+ * scans on the contraction hierarchy.
+ * <p/>
+ * For every target one backward upward search stores (target, dist) entries in the
+ * buckets of all nodes it settles, afterwards one forward upward search per source
+ * scans the buckets of the nodes it settles. Every shortest path has a highest node
+ * which is settled by both searches, so the minimum over the scanned entries is the
+ * distance. This needs |sources| + |targets| small upward searches instead of one
+ * one-to-all search per source.
+ * <p/>
+ * If DistMatrixWorkers are given, larger matrices are computed in parallel. The
+ * backward searches are split into chunks whose bucket entries are merged afterwards,
+ * then the rows are computed in chunks that only read the buckets. Every chunk
+ * borrows its own DijkstraStructs from the workers' pool.
+ * <p/>
+ * The searches poll the given CancellationToken and stop early once it's cancelled.
+ * <p/>
+ * Instances are not thread safe, every computation borrows the bucket heads from the
+ * given DijkstraStructs, sequential computations also borrow the labels and heap.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class ManyToManyCH {
+    // Number of searches done by one fork join task, matrices with less
+    // than two chunks of searches are always computed sequentially
+    private static final int SEARCHES_PER_CHUNK = 8;
+
+    private final GraphRep graph;
+    private final DijkstraStructs ds;
+    private final DistMatrixWorkers workers;
+
+    // Compact upward graph, null if the GraphRep has none
+    private final SearchGraph searchGraph;
+
+    // Buckets as singly linked lists, bucketHead[node] is the index of the first entry
+    // in the entry lists or -1 if the bucket is empty. The node sized heads are borrowed
+    // from the DijkstraStructs for the duration of one computation
+    private int[] bucketHead;
+    private final IntArrayList bucketNodes;
+    private final IntArrayList entryTarget;
+    private final IntArrayList entryDist;
+    private final IntArrayList entryNext;
+
+    public ManyToManyCH(GraphRep graph, DijkstraStructs resourceSharer) {
+        this(graph, resourceSharer, null);
+    }
+
+    /**
+     * Creates a ManyToManyCH that computes large matrices in parallel using the given
+     * workers, if workers is null everything is computed in the calling thread
+     *
+     * @param graph
+     * @param resourceSharer
+     * @param workers
+     */
+    public ManyToManyCH(GraphRep graph, DijkstraStructs resourceSharer, DistMatrixWorkers workers) {
+        this.graph = graph;
+        this.ds = resourceSharer;
+        this.workers = workers;
+        this.searchGraph = graph.getSearchGraph();
+        bucketNodes = new IntArrayList();
+        entryTarget = new IntArrayList();
+        entryDist = new IntArrayList();
+        entryNext = new IntArrayList();
+    }
+
+    /**
+     * Computes the distances from all sources to all targets, distmat[i][j] is the
+     * distance from sourceIds[i] to targetIds[j] or Integer.MAX_VALUE if there is no path
+     *
+     * @param sourceIds
+     * @param targetIds
+     * @param cancellation polled by the searches
+     * @return
+     * @throws ComputeCancelledException if the token was cancelled before the matrix was complete
+     */
+    public int[][] computeDistMatrix(int[] sourceIds, int[] targetIds, CancellationToken cancellation)
+            throws ComputeCancelledException {
+        int[][] distmat = new int[sourceIds.length][targetIds.length];
+        boolean parallel = workers != null && sourceIds.length + targetIds.length >= 2 * SEARCHES_PER_CHUNK;
+        bucketHead = ds.borrowBucketHeads();
+        try {
+            if (parallel) {
+                BucketEntries[] chunkEntries = new BucketEntries[chunkCount(targetIds.length)];
+                workers.getPool().invoke(new SearchTask(targetIds, false, 0, chunkEntries.length, chunkEntries, null,
+                        cancellation));
+                cancellation.check();
+                for (BucketEntries entries : chunkEntries) {
+                    addToBuckets(entries);
+                }
+                workers.getPool().invoke(new SearchTask(sourceIds, true, 0, chunkCount(sourceIds.length), null, distmat,
+                        cancellation));
+            } else {
+                Search search = new Search(ds, cancellation);
+                try {
+                    BucketEntries entries = new BucketEntries();
+                    for (int targetIndex = 0; targetIndex < targetIds.length; targetIndex++) {
+                        if (!search.backward(targetIds[targetIndex], targetIndex, entries)) {
+                            break;
+                        }
+                    }
+                    cancellation.check();
+                    addToBuckets(entries);
+                    for (int sourceIndex = 0; sourceIndex < sourceIds.length; sourceIndex++) {
+                        if (!search.forward(sourceIds[sourceIndex], distmat[sourceIndex])) {
+                            break;
+                        }
+                    }
+                } finally {
+                    search.close();
+                }
+            }
+            // the searches only stop early when the token was cancelled
+            cancellation.check();
+        } finally {
+            clearBuckets();
+            ds.returnBucketHeads();
+            bucketHead = null;
+        }
+        return distmat;
+    }
+
+    private static int chunkCount(int searches) {
+        return (searches + SEARCHES_PER_CHUNK - 1) / SEARCHES_PER_CHUNK;
+    }
+
+    private void addToBuckets(BucketEntries entries) {
+        for (int i = 0; i < entries.node.size(); i++) {
+            int nodeId = entries.node.get(i);
+            if (bucketHead[nodeId] < 0) {
+                bucketNodes.add(nodeId);
+            }
+            entryTarget.add(entries.target.get(i));
+            entryDist.add(entries.dist.get(i));
+            entryNext.add(bucketHead[nodeId]);
+            bucketHead[nodeId] = entryTarget.size() - 1;
+        }
+    }
+
+    private void clearBuckets() {
+        for (int i = 0; i < bucketNodes.size(); i++) {
+            bucketHead[bucketNodes.get(i)] = -1;
+        }
+        bucketNodes.clear();
+        entryTarget.clear();
+        entryDist.clear();
+        entryNext.clear();
+    }
+
+    /**
+     * Bucket entries found by backward searches before they are added to the buckets
+     */
+    private static final class BucketEntries {
+        final IntArrayList node = new IntArrayList();
+        final IntArrayList target = new IntArrayList();
+        final IntArrayList dist = new IntArrayList();
+    }
+
+    /**
+     * Computes the backward searches or rows of the chunks [firstChunk, lastChunk)
+     * splitting them in halves until only one chunk is left
+     */
+    private final class SearchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] startIds;
+        private final boolean forward;
+        private final int firstChunk;
+        private final int lastChunk;
+        // Results of backward searches, one per chunk
+        private final BucketEntries[] chunkEntries;
+        // Result of forward searches
+        private final int[][] distmat;
+        private final CancellationToken cancellation;
+
+        SearchTask(int[] startIds, boolean forward, int firstChunk, int lastChunk, BucketEntries[] chunkEntries,
+                   int[][] distmat, CancellationToken cancellation) {
+            this.startIds = startIds;
+            this.forward = forward;
+            this.firstChunk = firstChunk;
+            this.lastChunk = lastChunk;
+            this.chunkEntries = chunkEntries;
+            this.distmat = distmat;
+            this.cancellation = cancellation;
+        }
+
+        @Override
+        protected void compute() {
+            if (lastChunk - firstChunk > 1) {
+                int middleChunk = (firstChunk + lastChunk) >>> 1;
+                invokeAll(new SearchTask(startIds, forward, firstChunk, middleChunk, chunkEntries, distmat, cancellation),
+                        new SearchTask(startIds, forward, middleChunk, lastChunk, chunkEntries, distmat, cancellation));
+                return;
+            }
+
+            int begin = firstChunk * SEARCHES_PER_CHUNK;
+            int end = Math.min(begin + SEARCHES_PER_CHUNK, startIds.length);
+            DijkstraStructsPool structsPool = workers.getStructsPool();
+            DijkstraStructs structs = structsPool.borrowStructs();
+            Search search = new Search(structs, cancellation);
+            try {
+                if (forward) {
+                    for (int i = begin; i < end; i++) {
+                        if (!search.forward(startIds[i], distmat[i])) {
+                            break;
+                        }
+                    }
+                } else {
+                    BucketEntries entries = new BucketEntries();
+                    for (int i = begin; i < end; i++) {
+                        if (!search.backward(startIds[i], i, entries)) {
+                            break;
+                        }
+                    }
+                    chunkEntries[firstChunk] = entries;
+                }
+            } finally {
+                search.close();
+                structsPool.returnStructs(structs);
+            }
+        }
+    }
+
+    /**
+     * The state of the upward searches of one thread
+     */
+    private final class Search {
+        private final DijkstraStructs structs;
+        private final SearchLabels labels;
+        private final IndexedHeap heap;
+        private final CancellationToken cancellation;
+        // settled nodes of all searches, the token is polled every CHECK_INTERVAL of them
+        private int steps;
+
+        Search(DijkstraStructs structs, CancellationToken cancellation) {
+            this.structs = structs;
+            this.cancellation = cancellation;
+            this.labels = structs.borrowSearchLabels();
+            this.heap = structs.borrowIndexedHeap();
+        }
+
+        /**
+         * Returns the borrowed structures
+         */
+        void close() {
+            structs.returnSearchLabels();
+            structs.returnIndexedHeap();
+        }
+
+        /**
+         * Runs a backward upward search from the target with the given index adding
+         * the bucket entries for all settled nodes to entries
+         *
+         * @return false if the search stopped as the token was cancelled
+         */
+        boolean backward(int targetId, int targetIndex, BucketEntries entries) {
+            return run(targetId, false, targetIndex, entries, null);
+        }
+
+        /**
+         * Runs a forward upward search from the source scanning the buckets
+         * of all settled nodes into row
+         *
+         * @return false if the search stopped as the token was cancelled
+         */
+        boolean forward(int sourceId, int[] row) {
+            Arrays.fill(row, Integer.MAX_VALUE);
+            return run(sourceId, true, -1, null, row);
+        }
+
+        private boolean run(int startId, boolean forward, int targetIndex, BucketEntries entries, int[] row) {
+            labels.reset();
+            labels.setDist(startId, 0);
+            heap.insertOrDecrease(startId, 0);
+
+            while (!heap.isEmpty()) {
+                if ((++steps & CancellationToken.CHECK_MASK) == 0 && cancellation.shouldStop()) {
+                    return false;
+                }
+                int nodeId = heap.peekMinId();
+                int nodeDist = heap.peekMinDist();
+                heap.removeMin();
+
+                if (isStalled(nodeId, nodeDist, forward)) {
+                    continue;
+                }
+
+                if (forward) {
+                    for (int entry = bucketHead[nodeId]; entry >= 0; entry = entryNext.get(entry)) {
+                        int dist = nodeDist + entryDist.get(entry);
+                        int target = entryTarget.get(entry);
+                        if (dist < row[target]) {
+                            row[target] = dist;
+                        }
+                    }
+                } else {
+                    entries.node.add(nodeId);
+                    entries.target.add(targetIndex);
+                    entries.dist.add(nodeDist);
+                }
+
+                relaxUpward(nodeId, nodeDist, forward);
+            }
+            return true;
+        }
+
+        /**
+         * Checks whether the node can be stalled, that is it's reachable with a smaller
+         * distance over a higher node so it can't be the highest node of a shortest path
+         */
+        private boolean isStalled(int nodeId, int nodeDist, boolean forward) {
+            if (searchGraph != null) {
+                if (forward) {
+                    int end = searchGraph.getInEnd(nodeId);
+                    for (int i = searchGraph.getInBegin(nodeId); i < end; i++) {
+                        int other = searchGraph.getInSource(i);
+                        if (labels.getDist(other) < nodeDist - searchGraph.getInDist(i)) {
+                            return true;
+                        }
+                    }
+                } else {
+                    int end = searchGraph.getOutEnd(nodeId);
+                    for (int i = searchGraph.getOutBegin(nodeId); i < end; i++) {
+                        int other = searchGraph.getOutTarget(i);
+                        if (labels.getDist(other) < nodeDist - searchGraph.getOutDist(i)) {
+                            return true;
+                        }
+                    }
+                }
+                return false;
+            }
+
+            int nodeRank = graph.getRank(nodeId);
+            if (forward) {
+                // in edges are sorted by source rank descending
+                for (int i = 0; i < graph.getInEdgeCount(nodeId); i++) {
+                    int edgeId = graph.getInEdgeId(nodeId, i);
+                    int other = graph.getSource(edgeId);
+                    if (graph.getRank(other) < nodeRank) {
+                        break;
+                    }
+                    if (labels.getDist(other) < nodeDist - graph.getDist(edgeId)) {
+                        return true;
+                    }
+                }
+            } else {
+                // out edges are sorted by target rank ascending
+                for (int i = graph.getOutEdgeCount(nodeId) - 1; i >= 0; i--) {
+                    int edgeId = graph.getOutEdgeId(nodeId, i);
+                    int other = graph.getTarget(edgeId);
+                    if (graph.getRank(other) < nodeRank) {
+                        break;
+                    }
+                    if (labels.getDist(other) < nodeDist - graph.getDist(edgeId)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Relaxes the upward out edges (forward) or upward in edges (backward) of the node
+         */
+        private void relaxUpward(int nodeId, int nodeDist, boolean forward) {
+            if (searchGraph != null) {
+                if (forward) {
+                    int end = searchGraph.getOutEnd(nodeId);
+                    for (int i = searchGraph.getOutBegin(nodeId); i < end; i++) {
+                        label(searchGraph.getOutTarget(i), nodeDist + searchGraph.getOutDist(i));
+                    }
+                } else {
+                    int end = searchGraph.getInEnd(nodeId);
+                    for (int i = searchGraph.getInBegin(nodeId); i < end; i++) {
+                        label(searchGraph.getInSource(i), nodeDist + searchGraph.getInDist(i));
+                    }
+                }
+                return;
+            }
+
+            int nodeRank = graph.getRank(nodeId);
+            if (forward) {
+                for (int i = graph.getOutEdgeCount(nodeId) - 1; i >= 0; i--) {
+                    int edgeId = graph.getOutEdgeId(nodeId, i);
+                    int other = graph.getTarget(edgeId);
+                    if (graph.getRank(other) < nodeRank) {
+                        break;
+                    }
+                    label(other, nodeDist + graph.getDist(edgeId));
+                }
+            } else {
+                for (int i = 0; i < graph.getInEdgeCount(nodeId); i++) {
+                    int edgeId = graph.getInEdgeId(nodeId, i);
+                    int other = graph.getSource(edgeId);
+                    if (graph.getRank(other) < nodeRank) {
+                        break;
+                    }
+                    label(other, nodeDist + graph.getDist(edgeId));
+                }
+            }
+        }
+
+        private void label(int nodeId, int dist) {
+            if (dist < labels.getDist(nodeId)) {
+                labels.setDist(nodeId, dist);
+                heap.insertOrDecrease(nodeId, dist);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.algorithms.distmatrix;
+
+import de.tourenplaner.algorithms.ClassicRequestData;
+import de.tourenplaner.algorithms.ComputeException;
+import de.tourenplaner.algorithms.DijkstraStructs;
+import de.tourenplaner.algorithms.GraphAlgorithm;
+import de.tourenplaner.computecore.ComputeRequest;
+import de.tourenplaner.computecore.RequestPoints;
+import de.tourenplaner.graphrep.GraphRep;
+import de.tourenplaner.utils.Timing;
+
+import java.util.logging.Logger;
+
+/**
+ * Computes the shortest path distances from the first point to all other given
+ * points, or to all nodes of the graph if only one point is given, using {@link PHAST}
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class OneToAll extends GraphAlgorithm {
+    private static Logger log = Logger.getLogger("de.tourenplaner.algorithms");
+
+    private final PHAST phast;
+
+    public OneToAll(GraphRep graph, DijkstraStructs ds) {
+        super(graph);
+        this.phast = new PHAST(graph, ds);
+    }
+
+    @Override
+    public void compute(ComputeRequest request) throws ComputeException {
+        ClassicRequestData req = (ClassicRequestData) request.getRequestData();
+        setCancellation(request.getCancellation());
+        RequestPoints points = req.getPoints();
+        if (points.size() < 1) {
+            throw new ComputeException("Not enough points, need at least 1");
+        }
+
+        long start = System.nanoTime();
+        points.setIdsFromGraph(graph);
+        for (int i = 0; i < points.size(); i++) {
+            // Report the positions actually used
+            int nodeId = points.getPointId(i);
+            points.setPointLat(i, graph.getLat(nodeId));
+            points.setPointLon(i, graph.getLon(nodeId));
+        }
+        int sourceId = points.getPointId(0);
+        int[] dists;
+        if (points.size() == 1) {
+            dists = new int[graph.getNodeCount()];
+            phast.oneToAll(sourceId, dists);
+        } else {
+            int[] targetIds = new int[points.size() - 1];
+            for (int i = 0; i < targetIds.length; i++) {
+                targetIds[i] = points.getPointId(i + 1);
+            }
+            dists = phast.computeDistMatrix(new int[]{sourceId}, targetIds)[0];
+        }
+        cancellation.check();
+        log.fine(Timing.took("OneToAll for " + dists.length + " targets", start));
+        request.setResultObject(new OneToAllResult(points, dists, graph.travelTimeConstant));
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.algorithms.distmatrix;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import de.tourenplaner.computecore.FormattedStreamWriter;
+import de.tourenplaner.computecore.RequestPoints;
+import de.tourenplaner.computeserver.Responder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Holds the result of a one-to-all computation, the points snapped to the graph
+ * and the distances and travel times from the first point. These are given for
+ * the other points in order or, if there is only one point, for all nodes by node id.
+ * Unreachable entries are written as null.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class OneToAllResult implements FormattedStreamWriter {
+
+    private final RequestPoints points;
+    private final int[] dists;
+    private final double travelTimeConstant;
+
+    public OneToAllResult(RequestPoints points, int[] dists, double travelTimeConstant) {
+        this.points = points;
+        this.dists = dists;
+        this.travelTimeConstant = travelTimeConstant;
+    }
+
+    @Override
+    public void writeToStream(Responder.ResultFormat format, OutputStream stream) throws IOException {
+        JsonGenerator gen = format.getMapper().getFactory().createGenerator(stream);
+        gen.writeStartObject();
+        gen.writeArrayFieldStart("points");
+        for (int i = 0; i < points.size(); i++) {
+            gen.writeStartObject();
+            gen.writeNumberField("lt", points.getPointLat(i));
+            gen.writeNumberField("ln", points.getPointLon(i));
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+
+        gen.writeArrayFieldStart("dists");
+        for (int dist : dists) {
+            if (dist == Integer.MAX_VALUE) {
+                gen.writeNull();
+            } else {
+                gen.writeNumber(dist);
+            }
+        }
+        gen.writeEndArray();
+
+        gen.writeArrayFieldStart("times");
+        for (int dist : dists) {
+            if (dist == Integer.MAX_VALUE) {
+                gen.writeNull();
+            } else {
+                gen.writeNumber(dist * travelTimeConstant);
+            }
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+        gen.close();
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.algorithms.distmatrix;
+
+import de.tourenplaner.algorithms.DijkstraStructs;
+import de.tourenplaner.algorithms.DijkstraStructsPool;
+import de.tourenplaner.algorithms.IndexedHeap;
+import de.tourenplaner.algorithms.SearchLabels;
+import de.tourenplaner.graphrep.GraphRep;
+import de.tourenplaner.graphrep.SearchGraph;
+import de.tourenplaner.graphrep.SweepGraph;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes one-to-all and one-to-many distances with PHAST on the contraction
+ * hierarchy.
+ * <p/>
+ * An upward search from the source labels the nodes it settles, afterwards one
+ * linear sweep over the {@link SweepGraph} relaxes the downward edges of all nodes
+ * in descending rank order. Every shortest path goes up to its highest node and then
+ * only down, so after the sweep every node carries its distance. The sweep needs no
+ * priority queue and reads the sweep graph strictly sequentially.
+ * <p/>
+ * For a fixed set of targets the sweep is restricted to the part of the sweep graph
+ * the targets can be reached from (RPHAST), the selection is done once and reused
+ * for every source. If DistMatrixWorkers are given, the rows of larger matrices are
+ * computed in parallel with DijkstraStructs from the workers' pool.
+ * <p/>
+ * Needs the SweepGraph of the GraphRep, instances are not thread safe, sequential
+ * computations borrow the search labels and heap from the given DijkstraStructs.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class PHAST {
+    // Number of sources swept by one fork join task, matrices with less
+    // than two chunks of sources are always computed sequentially
+    private static final int SOURCES_PER_CHUNK = 8;
+
+    private final GraphRep graph;
+    private final DijkstraStructs ds;
+    private final DistMatrixWorkers workers;
+    private final SweepGraph sweepGraph;
+
+    // Compact upward graph, null if the GraphRep has none
+    private final SearchGraph searchGraph;
+
+    // Dists by sweep position for oneToAll() if the positions aren't the node ids,
+    // allocated on first use
+    private int[] sweepDists;
+
+    public PHAST(GraphRep graph, DijkstraStructs resourceSharer) {
+        this(graph, resourceSharer, null);
+    }
+
+    /**
+     * Creates a PHAST that computes the rows of large matrices in parallel using the
+     * given workers, if workers is null everything is computed in the calling thread
+     *
+     * @param graph
+     * @param resourceSharer
+     * @param workers
+     * @throws IllegalStateException if the graph has no SweepGraph
+     */
+    public PHAST(GraphRep graph, DijkstraStructs resourceSharer, DistMatrixWorkers workers) {
+        this.graph = graph;
+        this.ds = resourceSharer;
+        this.workers = workers;
+        this.sweepGraph = graph.getSweepGraph();
+        this.searchGraph = graph.getSearchGraph();
+        if (sweepGraph == null) {
+            throw new IllegalStateException("PHAST needs the sweep graph of the GraphRep");
+        }
+    }
+
+    /**
+     * Computes the distances from the source to all nodes, dists[nodeId] is the
+     * distance to nodeId or Integer.MAX_VALUE if there is no path
+     *
+     * @param sourceId
+     * @param dists    array of at least graph.getNodeCount() entries
+     */
+    public void oneToAll(int sourceId, int[] dists) {
+        int nodeCount = sweepGraph.getNodeCount();
+        int[] sweep = dists;
+        if (!sweepGraph.isIdentity()) {
+            if (sweepDists == null) {
+                sweepDists = new int[nodeCount];
+            }
+            sweep = sweepDists;
+        }
+        Arrays.fill(sweep, 0, nodeCount, Integer.MAX_VALUE);
+        upward(ds, sourceId, sweep, null);
+
+        for (int pos = 0; pos < nodeCount; pos++) {
+            int dist = sweep[pos];
+            int end = sweepGraph.getEnd(pos);
+            for (int i = sweepGraph.getBegin(pos); i < end; i++) {
+                int sourceDist = sweep[sweepGraph.getSource(i)];
+                if (sourceDist != Integer.MAX_VALUE && sourceDist + sweepGraph.getDist(i) < dist) {
+                    dist = sourceDist + sweepGraph.getDist(i);
+                }
+            }
+            sweep[pos] = dist;
+        }
+
+        if (sweep != dists) {
+            for (int pos = 0; pos < nodeCount; pos++) {
+                dists[sweepGraph.getNodeId(pos)] = sweep[pos];
+            }
+        }
+    }
+
+    /**
+     * Computes the distances from all sources to all targets with RPHAST, distmat[i][j]
+     * is the distance from sourceIds[i] to targetIds[j] or Integer.MAX_VALUE if there
+     * is no path
+     *
+     * @param sourceIds
+     * @param targetIds
+     * @return
+     */
+    public int[][] computeDistMatrix(int[] sourceIds, int[] targetIds) {
+        int[][] distmat = new int[sourceIds.length][targetIds.length];
+        SweepGraph.Restriction restriction = sweepGraph.restrict(targetIds);
+        if (workers != null && sourceIds.length >= 2 * SOURCES_PER_CHUNK) {
+            workers.getPool().invoke(new SweepTask(restriction, sourceIds, 0, chunkCount(sourceIds.length), distmat));
+        } else {
+            int[] sweep = new int[restriction.size()];
+            for (int i = 0; i < sourceIds.length; i++) {
+                oneToMany(ds, sourceIds[i], restriction, sweep, distmat[i]);
+            }
+        }
+        return distmat;
+    }
+
+    private static int chunkCount(int sources) {
+        return (sources + SOURCES_PER_CHUNK - 1) / SOURCES_PER_CHUNK;
+    }
+
+    /**
+     * Sweeps the restriction for one source writing the dists of the targets to row,
+     * sweep is the scratch array with one entry per selected node
+     */
+    private void oneToMany(DijkstraStructs structs, int sourceId, SweepGraph.Restriction restriction, int[] sweep, int[] row) {
+        Arrays.fill(sweep, Integer.MAX_VALUE);
+        upward(structs, sourceId, sweep, restriction);
+
+        int size = restriction.size();
+        for (int local = 0; local < size; local++) {
+            int dist = sweep[local];
+            int end = restriction.getEnd(local);
+            for (int i = restriction.getBegin(local); i < end; i++) {
+                int sourceDist = sweep[restriction.getSource(i)];
+                if (sourceDist != Integer.MAX_VALUE && sourceDist + restriction.getDist(i) < dist) {
+                    dist = sourceDist + restriction.getDist(i);
+                }
+            }
+            sweep[local] = dist;
+        }
+
+        for (int target = 0; target < row.length; target++) {
+            row[target] = sweep[restriction.getTargetIndex(target)];
+        }
+    }
+
+    /**
+     * Runs the upward search from the source storing the dist of every settled node
+     * in sweep, indexed by sweep position or by local index of the restriction
+     * if it isn't null. Nodes outside the restriction can't reach any target
+     * downwards so they are only used to continue the search.
+     */
+    private void upward(DijkstraStructs structs, int sourceId, int[] sweep, SweepGraph.Restriction restriction) {
+        SearchLabels labels = structs.borrowSearchLabels();
+        IndexedHeap heap = structs.borrowIndexedHeap();
+        try {
+            labels.setDist(sourceId, 0);
+            heap.insertOrDecrease(sourceId, 0);
+            while (!heap.isEmpty()) {
+                int nodeId = heap.peekMinId();
+                int nodeDist = heap.peekMinDist();
+                heap.removeMin();
+
+                int index = (restriction == null) ? sweepGraph.getPosition(nodeId) : restriction.getLocalIndex(nodeId);
+                if (index >= 0) {
+                    sweep[index] = nodeDist;
+                }
+
+                if (searchGraph != null) {
+                    int end = searchGraph.getOutEnd(nodeId);
+                    for (int i = searchGraph.getOutBegin(nodeId); i < end; i++) {
+                        label(labels, heap, searchGraph.getOutTarget(i), nodeDist + searchGraph.getOutDist(i));
+                    }
+                } else {
+                    int nodeRank = graph.getRank(nodeId);
+                    // out edges are sorted by target rank ascending
+                    for (int i = graph.getOutEdgeCount(nodeId) - 1; i >= 0; i--) {
+                        int edgeId = graph.getOutEdgeId(nodeId, i);
+                        int other = graph.getTarget(edgeId);
+                        if (graph.getRank(other) < nodeRank) {
+                            break;
+                        }
+                        label(labels, heap, other, nodeDist + graph.getDist(edgeId));
+                    }
+                }
+            }
+        } finally {
+            structs.returnSearchLabels();
+            structs.returnIndexedHeap();
+        }
+    }
+
+    private static void label(SearchLabels labels, IndexedHeap heap, int nodeId, int dist) {
+        if (dist < labels.getDist(nodeId)) {
+            labels.setDist(nodeId, dist);
+            heap.insertOrDecrease(nodeId, dist);
+        }
+    }
+
+    /**
+     * Computes the rows of the chunks [firstChunk, lastChunk) splitting them in
+     * halves until only one chunk is left
+     */
+    private final class SweepTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final SweepGraph.Restriction restriction;
+        private final int[] sourceIds;
+        private final int firstChunk;
+        private final int lastChunk;
+        private final int[][] distmat;
+
+        SweepTask(SweepGraph.Restriction restriction, int[] sourceIds, int firstChunk, int lastChunk, int[][] distmat) {
+            this.restriction = restriction;
+            this.sourceIds = sourceIds;
+            this.firstChunk = firstChunk;
+            this.lastChunk = lastChunk;
+            this.distmat = distmat;
+        }
+
+        @Override
+        protected void compute() {
+            if (lastChunk - firstChunk > 1) {
+                int middleChunk = (firstChunk + lastChunk) >>> 1;
+                invokeAll(new SweepTask(restriction, sourceIds, firstChunk, middleChunk, distmat),
+                        new SweepTask(restriction, sourceIds, middleChunk, lastChunk, distmat));
+                return;
+            }
+
+            int begin = firstChunk * SOURCES_PER_CHUNK;
+            int end = Math.min(begin + SOURCES_PER_CHUNK, sourceIds.length);
+            DijkstraStructsPool structsPool = workers.getStructsPool();
+            DijkstraStructs structs = structsPool.borrowStructs();
+            try {
+                int[] sweep = new int[restriction.size()];
+                for (int i = begin; i < end; i++) {
+                    oneToMany(structs, sourceIds[i], restriction, sweep, distmat[i]);
+                }
+            } finally {
+                structsPool.returnStructs(structs);
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.algorithms.isochrone;
+
+import com.carrotsearch.hppc.IntArrayList;
+import de.tourenplaner.algorithms.ClassicRequestData;
+import de.tourenplaner.algorithms.ComputeException;
+import de.tourenplaner.algorithms.DijkstraStructs;
+import de.tourenplaner.algorithms.GraphAlgorithm;
+import de.tourenplaner.algorithms.bbbundle.BoundingBox;
+import de.tourenplaner.algorithms.distmatrix.PHAST;
+import de.tourenplaner.computecore.ComputeRequest;
+import de.tourenplaner.computecore.RequestPoints;
+import de.tourenplaner.graphrep.BBoxPriorityTree;
+import de.tourenplaner.graphrep.GraphRep;
+import de.tourenplaner.utils.Timing;
+
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Computes the area reachable from the first point within a maximum travel time.
+ * The travel times of all nodes come from one {@link PHAST} sweep, or a sweep
+ * restricted to the nodes of a bounding box. The result is either a boundary polygon
+ * made of the farthest reached node in each direction around the source or the
+ * list of all reached nodes with their travel times.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class Isochrone extends GraphAlgorithm {
+    private static Logger log = Logger.getLogger("de.tourenplaner.algorithms");
+
+    /**
+     * Travel time in seconds used if the request doesn't set the maxTravelTime
+     * constraint and the maximum allowed
+     */
+    static final int DEFAULT_MAX_TRAVEL_TIME = 1800;
+    static final int MAX_MAX_TRAVEL_TIME = 4 * 3600;
+
+    /**
+     * Number of equally sized angular sectors around the source, the boundary
+     * polygon has at most one point per sector
+     */
+    static final int SECTORS = 72;
+
+    private final PHAST phast;
+    // node sized, allocated on first use
+    private int[] dists;
+
+    public Isochrone(GraphRep graph, DijkstraStructs ds) {
+        super(graph);
+        this.phast = new PHAST(graph, ds);
+    }
+
+    /**
+     * Gets the maxTravelTime constraint in seconds or {@link #DEFAULT_MAX_TRAVEL_TIME} if it's not set
+     */
+    private static int getMaxTravelTime(Map<String, Object> constraints) throws ComputeException {
+        if (constraints == null || constraints.get("maxTravelTime") == null) {
+            return DEFAULT_MAX_TRAVEL_TIME;
+        }
+        int maxTravelTime;
+        try {
+            maxTravelTime = ((Number) constraints.get("maxTravelTime")).intValue();
+        } catch (ClassCastException e) {
+            throw new ComputeException("Couldn't read Maximum Travel Time, wrong type: " + e.getMessage());
+        }
+        return Math.max(0, Math.min(maxTravelTime, MAX_MAX_TRAVEL_TIME));
+    }
+
+    /**
+     * Gets the bbox constraint as lat/lon BoundingBox or null if it's not set
+     */
+    private static BoundingBox getBoundingBox(Map<String, Object> constraints) throws ComputeException {
+        if (constraints == null || constraints.get("bbox") == null) {
+            return null;
+        }
+        try {
+            Map<?, ?> bbox = (Map<?, ?>) constraints.get("bbox");
+            return new BoundingBox(((Number) bbox.get("x")).intValue(), ((Number) bbox.get("y")).intValue(),
+                    ((Number) bbox.get("width")).intValue(), ((Number) bbox.get("height")).intValue());
+        } catch (ClassCastException e) {
+            throw new ComputeException("Couldn't read Bounding Box, wrong type: " + e.getMessage());
+        } catch (NullPointerException e) {
+            throw new ComputeException("Couldn't read Bounding Box, it needs x, y, width and height");
+        }
+    }
+
+    /**
+     * Computes the nodes whose distance from the source is at most maxDist
+     *
+     * @param sourceId
+     * @param maxDist
+     * @param bbox          only nodes in this lat/lon BoundingBox are considered, null for all nodes
+     * @param reachedDists  gets the distances of the reached nodes in the same order
+     * @return the ids of the reached nodes
+     */
+    IntArrayList reachedNodes(int sourceId, int maxDist, BoundingBox bbox, IntArrayList reachedDists) {
+        IntArrayList reached = new IntArrayList();
+        if (bbox == null) {
+            if (dists == null) {
+                dists = new int[graph.getNodeCount()];
+            }
+            phast.oneToAll(sourceId, dists);
+            for (int nodeId = 0; nodeId < graph.getNodeCount(); nodeId++) {
+                if (dists[nodeId] <= maxDist) {
+                    reached.add(nodeId);
+                    reachedDists.add(dists[nodeId]);
+                }
+            }
+        } else {
+            int[] targetIds = nodesInBox(bbox);
+            int[] targetDists = phast.computeDistMatrix(new int[]{sourceId}, targetIds)[0];
+            for (int i = 0; i < targetIds.length; i++) {
+                if (targetDists[i] <= maxDist) {
+                    reached.add(targetIds[i]);
+                    reachedDists.add(targetDists[i]);
+                }
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Gets the ids of all nodes in the lat/lon BoundingBox, graphs read from dumps
+     * without bbox trees are scanned node by node
+     */
+    private int[] nodesInBox(BoundingBox bbox) {
+        BBoxPriorityTree latLonTree = graph.getLatLonBBoxSearchTree();
+        if (latLonTree != null) {
+            return latLonTree.queryBbox(bbox, 0).toArray();
+        }
+        IntArrayList nodeIds = new IntArrayList();
+        for (int nodeId = 0; nodeId < graph.getNodeCount(); nodeId++) {
+            if (bbox.contains(graph.getLon(nodeId), graph.getLat(nodeId))) {
+                nodeIds.add(nodeId);
+            }
+        }
+        return nodeIds.toArray();
+    }
+
+    /**
+     * Picks the farthest reached node in each of the {@link #SECTORS} directions around
+     * the source, in order of their angle these form the boundary polygon
+     *
+     * @param graph
+     * @param sourceId
+     * @param reached the ids of the reached nodes
+     * @return the ids of the polygon's nodes, without the source unless nothing else was reached
+     */
+    static IntArrayList boundary(GraphRep graph, int sourceId, IntArrayList reached) {
+        int srcLat = graph.getLat(sourceId);
+        int srcLon = graph.getLon(sourceId);
+        // scale longitudes so distances are roughly euclidian around the source
+        double lonScale = Math.cos(Math.toRadians(srcLat / 10000000.0));
+        int[] farthest = new int[SECTORS];
+        double[] farthestDist = new double[SECTORS];
+        for (int i = 0; i < SECTORS; i++) {
+            farthest[i] = -1;
+        }
+        for (int i = 0; i < reached.size(); i++) {
+            int nodeId = reached.get(i);
+            double dx = (graph.getLon(nodeId) - srcLon) * lonScale;
+            double dy = graph.getLat(nodeId) - srcLat;
+            double dist = dx * dx + dy * dy;
+            if (dist == 0.0) {
+                continue;
+            }
+            int sector = (int) ((Math.atan2(dy, dx) + Math.PI) / (2 * Math.PI) * SECTORS);
+            sector = Math.min(sector, SECTORS - 1);
+            if (dist > farthestDist[sector]) {
+                farthestDist[sector] = dist;
+                farthest[sector] = nodeId;
+            }
+        }
+        IntArrayList polygon = new IntArrayList();
+        for (int i = 0; i < SECTORS; i++) {
+            if (farthest[i] >= 0) {
+                polygon.add(farthest[i]);
+            }
+        }
+        if (polygon.isEmpty()) {
+            polygon.add(sourceId);
+        }
+        return polygon;
+    }
+
+    @Override
+    public void compute(ComputeRequest request) throws ComputeException {
+        ClassicRequestData req = (ClassicRequestData) request.getRequestData();
+        setCancellation(request.getCancellation());
+        RequestPoints points = req.getPoints();
+        if (points.size() < 1) {
+            throw new ComputeException("Not enough points, need at least 1");
+        }
+        int maxTravelTime = getMaxTravelTime(req.getConstraints());
+        BoundingBox bbox = getBoundingBox(req.getConstraints());
+        boolean nodesWanted = req.getConstraints() != null && Boolean.TRUE.equals(req.getConstraints().get("nodes"));
+
+        long start = System.nanoTime();
+        points.setIdsFromGraph(graph);
+        int sourceId = points.getPointId(0);
+        // Report the position actually used
+        points.setPointLat(0, graph.getLat(sourceId));
+        points.setPointLon(0, graph.getLon(sourceId));
+
+        int maxDist = (int) (maxTravelTime / graph.travelTimeConstant);
+        IntArrayList reachedDists = new IntArrayList();
+        IntArrayList reached = reachedNodes(sourceId, maxDist, bbox, reachedDists);
+        cancellation.check();
+        log.fine(Timing.took("Isochrone reaching " + reached.size() + " nodes", start));
+
+        IsochroneResult result;
+        if (nodesWanted) {
+            result = new IsochroneResult(graph, points, maxTravelTime, reached.size(), reached, reachedDists);
+        } else {
+            result = new IsochroneResult(graph, points, maxTravelTime, reached.size(), boundary(graph, sourceId, reached), null);
+        }
+        request.setResultObject(result);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.algorithms.isochrone;
+
+import de.tourenplaner.algorithms.Algorithm;
+import de.tourenplaner.algorithms.DijkstraStructs;
+import de.tourenplaner.algorithms.SharingAlgorithmFactory;
+import de.tourenplaner.graphrep.GraphRep;
+
+import java.util.*;
+
+/**
+ * Used to create instances of the Isochrone algorithm, the graph needs
+ * a SweepGraph
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class IsochroneFactory extends SharingAlgorithmFactory {
+    private final Map<String, Object> details;
+    private final List<Map<String, Object>> constraints;
+    private final List<Map<String, Object>> pointConstraints;
+
+    public IsochroneFactory(GraphRep graph){
+        super(graph);
+        constraints = new ArrayList<Map<String, Object>>(3);
+        constraints.add(new HashMap<String, Object>(6));
+        constraints.get(0).put("id", "maxTravelTime");
+        constraints.get(0).put("name", "Maximum Travel Time");
+        constraints.get(0).put("description", "The travel time in seconds within which nodes count as reached");
+        constraints.get(0).put("type", "integer");
+        constraints.get(0).put("min", 0);
+        constraints.get(0).put("max", Isochrone.MAX_MAX_TRAVEL_TIME);
+        constraints.add(new HashMap<String, Object>(4));
+        constraints.get(1).put("id", "bbox");
+        constraints.get(1).put("name", "Bounding Box");
+        constraints.get(1).put("description", "Only nodes in this box (x, y, width, height in lon/lat degrees*10^7) are considered");
+        constraints.get(1).put("type", "boundingbox");
+        constraints.add(new HashMap<String, Object>(4));
+        constraints.get(2).put("id", "nodes");
+        constraints.get(2).put("name", "Reached Nodes");
+        constraints.get(2).put("description", "Return all reached nodes with their travel times instead of the boundary polygon");
+        constraints.get(2).put("type", "boolean");
+        pointConstraints = new ArrayList<Map<String, Object>>(0);
+        details = new HashMap<String, Object>(3);
+        details.put("hidden", this.isHidden());
+        details.put("minpoints", 1);
+        details.put("sourceistarget", false);
+
+    }
+
+    @Override
+    public Map<String, Object> getDetails() {
+        return details;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Calculates the area reachable from the first point within the given travel time";
+    }
+
+    @Override
+    public Algorithm createAlgorithm(DijkstraStructs rs) {
+        return new Isochrone(graph, rs);
+    }
+
+    @Override
+    public List<Map<String, Object>> getPointConstraints() {
+        return pointConstraints;
+    }
+
+    @Override
+    public List<Map<String, Object>> getConstraints() {
+        return constraints;
+    }
+
+    @Override
+    public Algorithm createAlgorithm() {
+        return new Isochrone(graph, new DijkstraStructs(graph.getNodeCount(), graph.getEdgeCount()));
+    }
+
+    @Override
+    public String getURLSuffix() {
+        return "isochrone";
+    }
+
+    @Override
+    public String getAlgName() {
+        return "Isochrone";
+    }
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @Override
+    public boolean isHidden() {
+        return false;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.algorithms.isochrone;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.fasterxml.jackson.core.JsonGenerator;
+import de.tourenplaner.computecore.FormattedStreamWriter;
+import de.tourenplaner.computecore.RequestPoints;
+import de.tourenplaner.computeserver.Responder;
+import de.tourenplaner.graphrep.GraphRep;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Holds the result of an isochrone computation, the source snapped to the graph,
+ * the number of reached nodes and either the boundary polygon or all reached
+ * nodes with their travel times in seconds
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class IsochroneResult implements FormattedStreamWriter {
+
+    private final GraphRep graph;
+    private final RequestPoints points;
+    private final int maxTravelTime;
+    private final int reachedCount;
+    private final IntArrayList nodeIds;
+    // null if nodeIds is the boundary polygon
+    private final IntArrayList dists;
+
+    /**
+     * Creates the result, nodeIds are the polygon's nodes if dists is null or
+     * the reached nodes with the given distances otherwise
+     */
+    public IsochroneResult(GraphRep graph, RequestPoints points, int maxTravelTime, int reachedCount,
+                           IntArrayList nodeIds, IntArrayList dists) {
+        this.graph = graph;
+        this.points = points;
+        this.maxTravelTime = maxTravelTime;
+        this.reachedCount = reachedCount;
+        this.nodeIds = nodeIds;
+        this.dists = dists;
+    }
+
+    @Override
+    public void writeToStream(Responder.ResultFormat format, OutputStream stream) throws IOException {
+        JsonGenerator gen = format.getMapper().getFactory().createGenerator(stream);
+        gen.writeStartObject();
+        gen.writeObjectFieldStart("point");
+        gen.writeNumberField("lt", points.getPointLat(0));
+        gen.writeNumberField("ln", points.getPointLon(0));
+        gen.writeEndObject();
+        gen.writeNumberField("maxtraveltime", maxTravelTime);
+        gen.writeNumberField("reached", reachedCount);
+
+        gen.writeArrayFieldStart((dists == null) ? "polygon" : "nodes");
+        for (int i = 0; i < nodeIds.size(); i++) {
+            int nodeId = nodeIds.get(i);
+            gen.writeStartObject();
+            gen.writeNumberField("lt", graph.getLat(nodeId));
+            gen.writeNumberField("ln", graph.getLon(nodeId));
+            if (dists != null) {
+                gen.writeNumberField("time", dists.get(i) * graph.travelTimeConstant);
+            }
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+        gen.close();
+    }
+}
@@ -22,6 +22,7 @@ import de.tourenplaner.computecore.RequestPoints;
 import de.tourenplaner.computecore.Way;
 import de.tourenplaner.computecore.WayResult;
 import de.tourenplaner.graphrep.GraphRep;
+import de.tourenplaner.graphrep.Landmarks;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -29,6 +30,8 @@ import java.util.logging.Logger;
 
 /**
  * Provides an implementation of resource constrained shortest path algorithm.
+ * If the graph has {@link Landmarks} the Dijkstra searches of the Lagrangian
+ * relaxation are A* searches using them.
  *
  * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
  */
@@ -46,14 +49,13 @@ public class ConstrainedSP extends GraphAlgorithm {
         misc = new HashMap<String, Object>(1);
     }
 
-    // dists in this array are stored with the multiplier applied. They also are
-    // rounded and are stored as integers
-    private int[] dists;
+    // dists and prev edges of the current search, every dijkstra() call
+    // resets them in constant time
+    private SearchLabels labels;
 
-    /**
-     * edge id
-     */
-    private int[] prevEdges;
+    // Lower bounds of the euclidian distance to the target of the current request,
+    // null if the graph has no landmarks
+    private Landmarks.Potential potential;
 
     private Map<String, Object> misc;
     @Override
@@ -61,6 +63,7 @@ public class ConstrainedSP extends GraphAlgorithm {
         misc.clear();
         ClassicRequestData req = (ClassicRequestData) request.getRequestData();
         assert req != null : "We ended up without a request object in run";
+        setCancellation(request.getCancellation());
         RequestPoints points = req.getPoints();
 
         // Check if we have enough points to do something useful
@@ -112,8 +115,7 @@ public class ConstrainedSP extends GraphAlgorithm {
 
 
         heap = ds.borrowHeap();
-        dists = ds.borrowDistArray();
-        prevEdges = ds.borrowPrevArray();
+        labels = ds.borrowSearchLabels();
 
 
         double threshold = 1.0 / (double) ((long)graph.getNodeCount() * (long)graph.getNodeCount() * (long)maxAltitudeDifference * (long) maxAltitudeDifference);
@@ -124,6 +126,8 @@ public class ConstrainedSP extends GraphAlgorithm {
         destlon = points.getPointLon(1);
         srcId = graph.getIdForCoordinates(srclat, srclon);
         trgtId = graph.getIdForCoordinates(destlat, destlon);
+        Landmarks landmarks = graph.getLandmarks();
+        potential = landmarks == null ? null : landmarks.potential(srcId, trgtId, true);
 
         double lamdaOfGood;
         double lamdaOfBad;
@@ -146,10 +150,9 @@ public class ConstrainedSP extends GraphAlgorithm {
                         maxAltitudeDifference
                 );
                 misc.put("message", "Not feasible, but found path with smallest altitude difference = " + altitudeDiff + " m");
-                ds.returnDistArray(false);
+                backtrack(resultWay, srcId, trgtId);
+                ds.returnSearchLabels();
                 ds.returnHeap();
-                ds.returnPrevArray();
-                backtrack(prevEdges, resultWay, srcId, trgtId);
                 return  altitudeDiff;
 
 
@@ -170,30 +173,28 @@ public class ConstrainedSP extends GraphAlgorithm {
             altitudeDiff = dijkstra(srcId, trgtId, lamdaOfGood);
         }
         log.finer("path goes over " + altitudeDiff + " meters of altitude Difference");
-        backtrack(prevEdges, resultWay, srcId, trgtId);
+        backtrack(resultWay, srcId, trgtId);
 
-        ds.returnDistArray(false);
+        ds.returnSearchLabels();
         ds.returnHeap();
-        ds.returnPrevArray();
         return altitudeDiff;
     }
 
     /**
-     * Backtracks the prevEdges Array and calculates the actual path length
+     * Backtracks the prev edges of the labels and calculates the actual path length
      *  returns the length of the found path in meters
      *
      *
-     * @param prevEdges
      * @param resultWay
      * @param srcId
      * @param trgtId
      */
-    private void backtrack(int[] prevEdges, Way resultWay, int srcId, int trgtId) {
+    private void backtrack(Way resultWay, int srcId, int trgtId) {
         int currNode = trgtId;
         int routeElements = 1;
         while (currNode != srcId) {
             routeElements++;
-            currNode = graph.getSource(prevEdges[currNode]);
+            currNode = graph.getSource(labels.getPrevEdge(currNode));
         }
         log.finer("path goes over " + routeElements + " nodes.");
 
@@ -209,13 +210,13 @@ public class ConstrainedSP extends GraphAlgorithm {
         currNode = trgtId;
         int prevEdge;
         while (routeElements > 1) {
-            prevEdge = prevEdges[currNode];
+            prevEdge = labels.getPrevEdge(currNode);
             distance += graph.getEuclidianDist(prevEdge);
             multdistance += graph.getDist(prevEdge);
             routeElements--;
             resultWay.setPointLat(routeElements, graph.getLat(currNode));
             resultWay.setPointLon(routeElements, graph.getLon(currNode));
-            currNode = graph.getSource(prevEdges[currNode]);
+            currNode = graph.getSource(labels.getPrevEdge(currNode));
         }
         // add source node to the result.
         resultWay.setPointLat(0, graph.getLat(currNode));
@@ -231,6 +232,9 @@ public class ConstrainedSP extends GraphAlgorithm {
      * euclidian distance * lamda + altitude difference * 1-lamda
      * for edges with positive altitude difference. For all other edges the weight will calculated only with:
      * euclidian distance * lamda.
+     * The weights are truncated. With Landmarks they are rounded up instead so lamda times the
+     * landmark bound of the euclidian distance plus 1-lamda times the height the target is above
+     * a node is a lower bound of the remaining weight, this is used as potential of an A* search.
      * It stopps when the target point is removed from the pq
      *
      * @param srcId
@@ -240,63 +244,71 @@ public class ConstrainedSP extends GraphAlgorithm {
      * @throws ComputeException
      */
     private int dijkstra(int srcId, int trgtId, double lamda) throws ComputeException {
-        // reset dists
-        for (int i = 0; i < dists.length; i++) {
-            dists[i] = Integer.MAX_VALUE;
-        }
-        dists[srcId] = 0;
+        // reset dists, just a new stamp instead of touching every node
+        labels.reset();
+        labels.setDistAndPrev(srcId, 0, -1);
         heap.resetHeap();
-        heap.insert(srcId, dists[srcId]);
+        int trgtHeight = graph.getHeight(trgtId);
+        heap.insert(srcId, lowerBound(srcId, trgtHeight, lamda));
 
         int nodeId = -1;
         int nodeDist;
 
         double edgeAltDiffMultiplied;
+        double edgeWeight;
         int targetNode;
         int srcHeight;
-        int trgtHeight;
         int tempDist;
         int tempAltitudeDiff;
         int edgeLength;
         int edgeId;
+        int steps = 0;
         DIJKSTRA:
         while (!heap.isEmpty()) {
+            if ((++steps & CancellationToken.CHECK_MASK) == 0 && cancellation.shouldStop()) {
+                // give back what cSP borrowed before giving up
+                ds.returnSearchLabels();
+                ds.returnHeap();
+                cancellation.check();
+            }
             nodeId = heap.peekMinId();
-            nodeDist = heap.peekMinDist();
+            nodeDist = labels.getDist(nodeId);
+            // the key is outdated if the node was inserted again with a smaller dist
+            if (heap.peekMinDist() > nodeDist + lowerBound(nodeId, trgtHeight, lamda)) {
+                heap.removeMin();
+                continue;
+            }
             heap.removeMin();
             if (nodeId == trgtId) {
                 break DIJKSTRA;
             }
-            if (nodeDist > dists[nodeId]) {
-                continue;
-            }
+            srcHeight = graph.getHeight(nodeId);
             for (int i = 0; i < graph.getOutEdgeCount(nodeId); i++) {
                 edgeId = graph.getOutEdgeId(nodeId, i);
                 // Ignore Shortcuts
-                if (graph.getFirstShortcuttedEdge(edgeId) > 0) {
+                if (graph.getFirstShortcuttedEdge(edgeId) >= 0) {
                     continue;
                 }
 
                 targetNode = graph.getTarget(edgeId);
-                srcHeight = graph.getHeight(nodeId);
-                trgtHeight = graph.getHeight(targetNode);
-                tempAltitudeDiff = trgtHeight - srcHeight;
+                tempAltitudeDiff = graph.getHeight(targetNode) - srcHeight;
                 // if only positive altitude differences of edges are allowed,
                 // negative edges have only euclidian distance.
                 if (tempAltitudeDiff > 0) {
                     edgeAltDiffMultiplied = ((double) tempAltitudeDiff) * (1.0 - lamda);
-                    edgeLength = (int) (((double) (graph.getEuclidianDist(edgeId))) * lamda + edgeAltDiffMultiplied);
+                    edgeWeight = ((double) (graph.getEuclidianDist(edgeId))) * lamda + edgeAltDiffMultiplied;
                 } else {
-                    edgeLength = (int) ((double) ((graph.getEuclidianDist(edgeId))) * lamda);
+                    edgeWeight = (double) ((graph.getEuclidianDist(edgeId))) * lamda;
                 }
+                // the A* potential needs rounded up weights, plain Dijkstra keeps truncating them
+                edgeLength = potential == null ? (int) edgeWeight : (int) Math.ceil(edgeWeight);
 
                 // without multiplier = shortest path + constraints weights
-                tempDist = dists[nodeId] + edgeLength;
+                tempDist = nodeDist + edgeLength;
 
-                if (tempDist < dists[targetNode]) {
-                    dists[targetNode] = tempDist;
-                    prevEdges[targetNode] = edgeId;
-                    heap.insert(targetNode, dists[targetNode]);
+                if (tempDist < labels.getDist(targetNode)) {
+                    labels.setDistAndPrev(targetNode, tempDist, edgeId);
+                    heap.insert(targetNode, tempDist + lowerBound(targetNode, trgtHeight, lamda));
                 }
             }
         }
@@ -305,9 +317,8 @@ public class ConstrainedSP extends GraphAlgorithm {
                     "There is no path from src: " + srcId + " to trgt: " + trgtId + "Dijkstra did not find the " +
                             "target"
             );
-            ds.returnDistArray(false);
+            ds.returnSearchLabels();
             ds.returnHeap();
-            ds.returnPrevArray();
             throw new ComputeException("No path found");
         }
 
@@ -316,7 +327,7 @@ public class ConstrainedSP extends GraphAlgorithm {
 
         while (currNode != srcId) {
             routeElements++;
-            currNode = graph.getSource(prevEdges[currNode]);
+            currNode = graph.getSource(labels.getPrevEdge(currNode));
         }
         currNode = trgtId;
         int prevNode;
@@ -325,7 +336,7 @@ public class ConstrainedSP extends GraphAlgorithm {
 
         int altitudeDiff = 0;
         while (routeElements > 0) {
-            prevNode = graph.getSource(prevEdges[currNode]);
+            prevNode = graph.getSource(labels.getPrevEdge(currNode));
             routeElements--;
             currNodeHeight = graph.getHeight(currNode);
             prevNodeHeight = graph.getHeight(prevNode);
@@ -333,9 +344,26 @@ public class ConstrainedSP extends GraphAlgorithm {
             if (tempAltitudeDiff > 0) {
                 altitudeDiff += tempAltitudeDiff;
             }
-            currNode = graph.getSource(prevEdges[currNode]);
+            currNode = graph.getSource(labels.getPrevEdge(currNode));
         }
         return altitudeDiff;
     }
 
+    /**
+     * Lower bound of the weight from the given node to the target for the given lamda,
+     * 0 without landmarks
+     *
+     * @param nodeId
+     * @param trgtHeight
+     * @param lamda
+     * @return
+     */
+    private int lowerBound(int nodeId, int trgtHeight, double lamda) {
+        if (potential == null) {
+            return 0;
+        }
+        int ascent = Math.max(0, trgtHeight - graph.getHeight(nodeId));
+        return (int) (potential.get(nodeId) * lamda + ascent * (1.0 - lamda));
+    }
+
 }
@@ -0,0 +1,424 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.algorithms.npcomplete;
+
+import de.tourenplaner.algorithms.CancellationToken;
+import de.tourenplaner.algorithms.ComputeCancelledException;
+import de.tourenplaner.utils.StaticMath;
+
+import java.util.Arrays;
+
+/**
+ * Tour construction and improvement on a (possibly asymmetric) n^2 distance matrix
+ * as computed for the TravelingSalesman.<br /><br />
+ *
+ * All tours are permutations of [0, n) that start with 0, so the first requested
+ * point stays the first point of the tour. Unreachable pairs (Integer.MAX_VALUE) are
+ * just very long, all sums are computed as longs so they can't overflow.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public final class TourOptimizer {
+    /**
+     * The largest number of points solved exactly by {@link #heldKarp(int[][])},
+     * it needs 2^(n-1)*(n-1) longs
+     */
+    public static final int MAX_EXACT = 16;
+
+    /**
+     * The number of nearest neighbors considered for every point in {@link #localSearch}
+     */
+    public static final int NEIGHBORS = 10;
+
+    /**
+     * The longest segment moved by the Or-opt moves in {@link #localSearch}
+     */
+    private static final int MAX_SEGMENT = 3;
+
+    private TourOptimizer() {
+    }
+
+    /**
+     * Computes the length of the given tour including the edge back to the start
+     *
+     * @param distmat
+     * @param tour
+     * @return
+     */
+    public static long tourLength(int[][] distmat, int[] tour) {
+        long length = 0;
+        for (int i = 0; i < tour.length - 1; i++) {
+            length += distmat[tour[i]][tour[i + 1]];
+        }
+        length += distmat[tour[tour.length - 1]][tour[0]];
+        return length;
+    }
+
+    /**
+     * Computes an optimal tour with the Held–Karp dynamic program in O(2^n * n^2)
+     * time, only use it for at most {@link #MAX_EXACT} points
+     *
+     * @param distmat the n^2 matrix of distance values for the given points
+     * @return
+     */
+    public static int[] heldKarp(int[][] distmat) {
+        final int n = distmat.length;
+        assert n <= MAX_EXACT;
+        int[] tour = new int[n];
+        if (n <= 3) {
+            // For 3 points there are two tours but their length only differs
+            // on asymmetric matrices, so still check both
+            for (int i = 0; i < n; i++) {
+                tour[i] = i;
+            }
+            if (n == 3 && tourLength(distmat, new int[]{0, 2, 1}) < tourLength(distmat, tour)) {
+                tour[1] = 2;
+                tour[2] = 1;
+            }
+            return tour;
+        }
+
+        // Point 0 is the fixed start, the other points are j+1 for j in [0, m)
+        // dp[mask * m + j] is the length of the shortest path starting at 0
+        // visiting exactly the points in mask and ending at j+1 (which is in mask)
+        final int m = n - 1;
+        final int full = (1 << m) - 1;
+        final long[] dp = new long[(full + 1) * m];
+        Arrays.fill(dp, Long.MAX_VALUE);
+        for (int j = 0; j < m; j++) {
+            dp[(1 << j) * m + j] = distmat[0][j + 1];
+        }
+        for (int mask = 1; mask <= full; mask++) {
+            for (int j = 0; j < m; j++) {
+                long pathLength = dp[mask * m + j];
+                if (pathLength == Long.MAX_VALUE) {
+                    continue;
+                }
+                int[] distRow = distmat[j + 1];
+                int rest = full & ~mask;
+                while (rest != 0) {
+                    int k = Integer.numberOfTrailingZeros(rest);
+                    rest &= rest - 1;
+                    int index = (mask | (1 << k)) * m + k;
+                    long newLength = pathLength + distRow[k + 1];
+                    if (newLength < dp[index]) {
+                        dp[index] = newLength;
+                    }
+                }
+            }
+        }
+
+        // Find the best last point and walk back through the table
+        int last = 0;
+        long bestLength = Long.MAX_VALUE;
+        for (int j = 0; j < m; j++) {
+            long length = dp[full * m + j] + distmat[j + 1][0];
+            if (length < bestLength) {
+                bestLength = length;
+                last = j;
+            }
+        }
+        int mask = full;
+        for (int pos = n - 1; pos > 0; pos--) {
+            tour[pos] = last + 1;
+            int prevMask = mask & ~(1 << last);
+            if (prevMask == 0) {
+                break;
+            }
+            long pathLength = dp[mask * m + last];
+            int prev = -1;
+            for (int k = 0; k < m; k++) {
+                if ((prevMask & (1 << k)) != 0 && dp[prevMask * m + k] != Long.MAX_VALUE
+                        && dp[prevMask * m + k] + distmat[k + 1][last + 1] == pathLength) {
+                    prev = k;
+                    break;
+                }
+            }
+            assert prev >= 0;
+            mask = prevMask;
+            last = prev;
+        }
+        tour[0] = 0;
+        return tour;
+    }
+
+    /**
+     * Computes a tour with the nearest neighbor heuristic starting at the first point
+     * successively adding the nearest unvisited point
+     *
+     * @param distmat the n^2 matrix of distance values for the given points
+     * @return
+     */
+    public static int[] nearestNeighborTour(int[][] distmat) {
+        final int n = distmat.length;
+        int[] tour = new int[n];
+        boolean[] visited = new boolean[n];
+        int currIndex = 0;
+        visited[0] = true;
+        for (int nextIndex = 1; nextIndex < n; nextIndex++) {
+            int minValue = Integer.MAX_VALUE;
+            int minIndex = -1;
+            int[] distRow = distmat[currIndex];
+            for (int i = 0; i < n; i++) {
+                if (!visited[i] && (minIndex < 0 || distRow[i] < minValue)) {
+                    minValue = distRow[i];
+                    minIndex = i;
+                }
+            }
+            currIndex = minIndex;
+            visited[currIndex] = true;
+            tour[nextIndex] = currIndex;
+        }
+        return tour;
+    }
+
+    /**
+     * Computes the neighbor lists, for every point the (at most) {@link #NEIGHBORS}
+     * other points closest to it in either direction sorted by that distance
+     *
+     * @param distmat
+     * @return
+     */
+    static int[][] neighborLists(int[][] distmat) {
+        final int n = distmat.length;
+        final int count = Math.min(NEIGHBORS, n - 1);
+        int[][] neighbors = new int[n][count];
+        long[] keys = new long[n - 1];
+        for (int i = 0; i < n; i++) {
+            int k = 0;
+            for (int j = 0; j < n; j++) {
+                if (j != i) {
+                    long dist = Math.min(distmat[i][j], distmat[j][i]);
+                    keys[k++] = (dist << 32) | j;
+                }
+            }
+            Arrays.sort(keys);
+            for (int k2 = 0; k2 < count; k2++) {
+                neighbors[i][k2] = (int) keys[k2];
+            }
+        }
+        return neighbors;
+    }
+
+    /**
+     * Improves the given tour in place with 2-opt and Or-opt moves (moving segments
+     * of up to three points, a restricted 3-opt) until it's locally optimal or the
+     * deadline has passed. Only moves adding an edge between a point and one of its
+     * neighbors are tried so one round takes O(n * {@link #NEIGHBORS}) instead of O(n^2).<br />
+     * The matrix may be asymmetric, the cost of reversing a segment is taken from
+     * prefix sums of the tour in both directions.
+     *
+     * @param distmat       the n^2 matrix of distance values for the given points
+     * @param tour          a tour starting with 0, it's improved in place
+     * @param deadlineNanos the {@link System#nanoTime()} after which no further round is started
+     * @param cancellation  checked after every improving move
+     * @return the tour for convenience
+     * @throws ComputeCancelledException if the search was cancelled
+     */
+    public static int[] localSearch(int[][] distmat, int[] tour, long deadlineNanos, CancellationToken cancellation)
+            throws ComputeCancelledException {
+        final int n = tour.length;
+        if (n < 5) {
+            return tour;
+        }
+        LocalSearch search = new LocalSearch(distmat, tour);
+        boolean improved = true;
+        while (improved && System.nanoTime() - deadlineNanos < 0) {
+            improved = false;
+            for (int node = 0; node < n; node++) {
+                if (search.improveTwoOpt(node) || search.improveOrOpt(node)) {
+                    improved = true;
+                    cancellation.check();
+                    if (System.nanoTime() - deadlineNanos >= 0) {
+                        break;
+                    }
+                }
+            }
+        }
+        return tour;
+    }
+
+    /**
+     * The state of one local search, the tour together with the position of every
+     * point and the prefix sums needed to evaluate 2-opt moves in O(1)
+     */
+    private static final class LocalSearch {
+        private final int[][] distmat;
+        private final int[][] neighbors;
+        private final int[] tour;
+        private final int[] pos;
+        private final int[] buffer;
+        // fwd[p] is the length of tour[0..p] and bwd[p] of the same path traversed backwards
+        private final long[] fwd;
+        private final long[] bwd;
+        private final int n;
+
+        LocalSearch(int[][] distmat, int[] tour) {
+            this.distmat = distmat;
+            this.neighbors = neighborLists(distmat);
+            this.tour = tour;
+            this.n = tour.length;
+            this.pos = new int[n];
+            this.buffer = new int[n];
+            this.fwd = new long[n];
+            this.bwd = new long[n];
+            update();
+        }
+
+        /**
+         * Recomputes pos and the prefix sums after the tour was changed
+         */
+        private void update() {
+            pos[tour[0]] = 0;
+            for (int p = 1; p < n; p++) {
+                pos[tour[p]] = p;
+                fwd[p] = fwd[p - 1] + distmat[tour[p - 1]][tour[p]];
+                bwd[p] = bwd[p - 1] + distmat[tour[p]][tour[p - 1]];
+            }
+        }
+
+        private int d(int from, int to) {
+            return distmat[from][to];
+        }
+
+        /**
+         * Gets the change in length of reversing tour[i..j] with 1 <= i < j <= n-1
+         */
+        private long reversalDelta(int i, int j) {
+            int before = tour[i - 1];
+            int after = tour[(j + 1) % n];
+            return (long) d(before, tour[j]) + d(tour[i], after) - d(before, tour[i]) - d(tour[j], after)
+                    + (bwd[j] - bwd[i]) - (fwd[j] - fwd[i]);
+        }
+
+        /**
+         * Tries 2-opt moves adding an edge from node to one of its neighbors and
+         * applies the first improving one
+         */
+        boolean improveTwoOpt(int node) {
+            int nodePos = pos[node];
+            for (int other : neighbors[node]) {
+                int otherPos = pos[other];
+                // node becomes the predecessor of other by moving other next to node,
+                // reversing tour[nodePos+1..otherPos]
+                int i = nodePos + 1;
+                int j = otherPos;
+                if (i < j && reversalDelta(i, j) < 0) {
+                    StaticMath.reverse(tour, i, j + 1);
+                    update();
+                    return true;
+                }
+                // node becomes the predecessor of other as well, this time by moving node
+                // next to other, reversing tour[nodePos..otherPos-1]
+                i = nodePos;
+                j = (otherPos == 0 ? n : otherPos) - 1;
+                if (i >= 1 && i < j && reversalDelta(i, j) < 0) {
+                    StaticMath.reverse(tour, i, j + 1);
+                    update();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Tries moving the segments of up to {@link #MAX_SEGMENT} points starting
+         * or ending at node next to one of the neighbors of its ends and applies
+         * the first improving move
+         */
+        boolean improveOrOpt(int node) {
+            int nodePos = pos[node];
+            for (int length = 1; length <= MAX_SEGMENT; length++) {
+                // the segment starting at node and the one ending at node
+                if (tryMoveSegment(nodePos, nodePos + length - 1)) {
+                    return true;
+                }
+                if (length > 1 && tryMoveSegment(nodePos - length + 1, nodePos)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Tries moving tour[first..last] between two other points next to one of the
+         * neighbors of its ends, the segment must not contain the start tour[0]
+         */
+        private boolean tryMoveSegment(int first, int last) {
+            if (first < 1 || last > n - 1) {
+                return false;
+            }
+            int segFirst = tour[first];
+            int segLast = tour[last];
+            int prev = tour[first - 1];
+            int next = tour[(last + 1) % n];
+            long removeGain = (long) d(prev, segFirst) + d(segLast, next) - d(prev, next);
+            if (removeGain <= 0) {
+                return false;
+            }
+            // insert after a neighbor of the first point
+            for (int c : neighbors[segFirst]) {
+                int cPos = pos[c];
+                if (cPos >= first - 1 && cPos <= last) {
+                    continue;
+                }
+                int succ = tour[(cPos + 1) % n];
+                long insertCost = (long) d(c, segFirst) + d(segLast, succ) - d(c, succ);
+                if (insertCost < removeGain) {
+                    moveSegment(first, last, cPos);
+                    return true;
+                }
+            }
+            // insert before a neighbor of the last point
+            for (int c : neighbors[segLast]) {
+                int cPos = pos[c];
+                int predPos = (cPos == 0 ? n : cPos) - 1;
+                if (predPos >= first - 1 && predPos <= last) {
+                    continue;
+                }
+                int pred = tour[predPos];
+                long insertCost = (long) d(pred, segFirst) + d(segLast, c) - d(pred, c);
+                if (insertCost < removeGain) {
+                    moveSegment(first, last, predPos);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Moves tour[first..last] behind the point at position afterPos which is
+         * outside of [first-1, last]
+         */
+        private void moveSegment(int first, int last, int afterPos) {
+            int length = last - first + 1;
+            int k = 0;
+            for (int p = 0; p < n; p++) {
+                if (p >= first && p <= last) {
+                    continue;
+                }
+                buffer[k++] = tour[p];
+                if (p == afterPos) {
+                    System.arraycopy(tour, first, buffer, k, length);
+                    k += length;
+                }
+            }
+            System.arraycopy(buffer, 0, tour, 0, n);
+            update();
+        }
+    }
+}
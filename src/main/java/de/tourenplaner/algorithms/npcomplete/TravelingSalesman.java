@@ -16,17 +16,19 @@
 
 package de.tourenplaner.algorithms.npcomplete;
 
-import com.carrotsearch.hppc.BitSet;
-import com.carrotsearch.hppc.IntArrayDeque;
-import com.carrotsearch.hppc.IntOpenHashSet;
 import de.tourenplaner.algorithms.ClassicRequestData;
+import de.tourenplaner.algorithms.ComputeCancelledException;
 import de.tourenplaner.algorithms.ComputeException;
 import de.tourenplaner.algorithms.DijkstraStructs;
 import de.tourenplaner.algorithms.GraphAlgorithm;
+import de.tourenplaner.algorithms.distmatrix.DistMatrixWorkers;
+import de.tourenplaner.algorithms.distmatrix.ManyToManyCH;
+import de.tourenplaner.algorithms.distmatrix.PHAST;
+import de.tourenplaner.algorithms.shortestpath.LegCache;
 import de.tourenplaner.algorithms.shortestpath.ShortestPathCH;
 import de.tourenplaner.computecore.*;
 import de.tourenplaner.graphrep.GraphRep;
-import de.tourenplaner.utils.StaticMath;
+import de.tourenplaner.graphrep.HubLabels;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -39,54 +41,90 @@ import java.util.Map;
  * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
  */
 public class TravelingSalesman extends GraphAlgorithm {
-    private static final int SMALL = 12;
+    /**
+     * Time in milliseconds the tour improvement may take if the request doesn't
+     * set the maxTime constraint and the maximum allowed
+     */
+    static final long DEFAULT_TIME_BUDGET = 1000;
+    static final long MAX_TIME_BUDGET = 10000;
+
+    /**
+     * Number of points from which on the distance matrix is computed with RPHAST
+     * instead of bucket scans if the graph has no hub labels, below the bucket scans are
+     * faster as the restricted sweep still covers a large part of the graph. Hub labels
+     * only merge two labels per entry and are used for every size
+     */
+    static final int RPHAST_MIN_POINTS = 200;
 
     private final DijkstraStructs ds;
     private final ShortestPathCH chdijks;
+    private final ManyToManyCH manyToMany;
+    // null if the graph has no SweepGraph
+    private final PHAST phast;
+    // null if the graph has no HubLabels
+    private final HubLabels hubLabels;
 
     public TravelingSalesman(GraphRep graphrep, DijkstraStructs ds) {
+        this(graphrep, ds, null, null);
+    }
+
+    /**
+     * Creates a TravelingSalesman computing large distance matrices in parallel
+     * with the given workers and reusing the legs of the final tour stored in
+     * the given cache, both may be null
+     */
+    public TravelingSalesman(GraphRep graphrep, DijkstraStructs ds, DistMatrixWorkers workers, LegCache legCache) {
         super(graphrep);
         this.ds = ds;
-        this.chdijks = new ShortestPathCH(graph, ds);
+        this.chdijks = new ShortestPathCH(graph, ds, legCache);
+        this.manyToMany = new ManyToManyCH(graph, ds, workers);
+        this.phast = (graph.getSweepGraph() != null) ? new PHAST(graph, ds, workers) : null;
+        this.hubLabels = graph.getHubLabels();
     }
 
 
-    private int[][] computeDistMatrix(RequestPoints points) throws IllegalAccessException {
-        int[][] distmat = new int[points.size()][points.size()];
-        BitSet markedEdges = ds.borrowMarkedSet();
-
-        // BfsMark all points
-        IntArrayDeque toMark = ds.borrowDeque();
-        for (int i = 0; i < points.size(); i++) {
-            toMark.addLast(points.getPointId(i));
+    /**
+     * Gets the time in milliseconds the tour improvement may take from the maxTime
+     * constraint or {@link #DEFAULT_TIME_BUDGET} if it's not set
+     */
+    private static long getTimeBudget(ClassicRequestData req) throws ComputeException {
+        if (req.getConstraints() == null || req.getConstraints().get("maxTime") == null) {
+            return DEFAULT_TIME_BUDGET;
         }
-        chdijks.bfsMarkAll(markedEdges, toMark);
-        ds.returnDeque();
-
-        // Calculate the distance matrix rows
-        for (int i = 0; i < points.size(); i++) {
-            int[] dists = ds.borrowDistArray();
-            // Dijkstra sets dist labels
-            chdijks.dijkstraStopAtEmptyDistOnly(dists, markedEdges, points.getPointId(i));
-            for (int j = 0; j < points.size(); j++) {
-                distmat[i][j] = dists[points.getPointId(j)];
-            }
-            ds.returnDistArray(false);
+        long timeBudget;
+        try {
+            timeBudget = ((Number) req.getConstraints().get("maxTime")).longValue();
+        } catch (ClassCastException e) {
+            throw new ComputeException("Couldn't read Maximum Improvement Time, wrong type: " + e.getMessage());
         }
-        ds.returnMarkedSet();
+        return Math.max(0, Math.min(timeBudget, MAX_TIME_BUDGET));
+    }
 
-        return distmat;
+    int[][] computeDistMatrix(RequestPoints points) throws ComputeCancelledException {
+        int[] ids = new int[points.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = points.getPointId(i);
+        }
+        if (hubLabels != null) {
+            return hubLabels.computeDistMatrix(ids, ids);
+        }
+        if (phast != null && ids.length >= RPHAST_MIN_POINTS) {
+            return phast.computeDistMatrix(ids, ids);
+        }
+        return manyToMany.computeDistMatrix(ids, ids, cancellation);
     }
 
     @Override
     public void compute(ComputeRequest request) throws ComputeException {
         ClassicRequestData req = (ClassicRequestData) request.getRequestData();
+        setCancellation(request.getCancellation());
         // Map points to ids
         RequestPoints points = req.getPoints();
         if (points.size() < 2) {
             throw new ComputeException("Not enough points, need at least 2");
         }
         int[][] distmat;
+        long timeBudget = getTimeBudget(req);
 
         try {
             // Map our requested points to ids
@@ -95,14 +133,15 @@ public class TravelingSalesman extends GraphAlgorithm {
             // Looks cheap but computes the n^2 matrix of distances for the given points
             distmat = computeDistMatrix(points);
             int[] currTour;
-            if (points.size() < SMALL) {
-                // It's small use the Giant Hammer Method (TM)
-                currTour = exactSolve(distmat);
+            if (points.size() <= TourOptimizer.MAX_EXACT) {
+                // It's small enough for the exact dynamic program
+                currTour = TourOptimizer.heldKarp(distmat);
             } else {
                 // To big let the Heuristics get something nice
-                currTour = nnHeuristic(distmat);
-                // Improve it with twoOpt
-                currTour = twoOpt(distmat, currTour);
+                currTour = TourOptimizer.nearestNeighborTour(distmat);
+                // Improve it with 2-opt and Or-opt moves until the time budget is used up
+                long deadline = System.nanoTime() + timeBudget * 1000000L;
+                currTour = TourOptimizer.localSearch(distmat, currTour, deadline, cancellation);
             }
             List<RequestPoint> pointStore = new ArrayList<RequestPoint>(points.size());
             List<RequestPoint> requestPointList = points.getStore();
@@ -134,103 +173,4 @@ public class TravelingSalesman extends GraphAlgorithm {
             throw new ComputeException("Illegal Access: " + e.getMessage());
         }
     }
-
-    private final int[] exactSolve(int[][] distmat) {
-        int[] bestTour = null;
-        int[] currTour = new int[distmat.length];
-        // Begin with tour in original/identity permutation
-        for (int i = 0; i < currTour.length; i++) {
-            currTour[i] = i;
-        }
-        int bestLength = Integer.MAX_VALUE;
-        int currLength;
-        do {
-            currLength = calcTourLength(distmat, currTour);
-            if (currLength < bestLength) {
-                bestTour = currTour.clone();
-                bestLength = currLength;
-            }
-        } while (StaticMath.nextPerm(currTour));
-
-        return bestTour;
-    }
-
-    private final int[] twoOpt(int[][] distmat, int[] currTour) {
-        int[] shiftedTour = currTour.clone();
-        int[] bestTour = shiftedTour.clone();
-        int betterLength;
-        int bestLength;
-        betterLength = calcTourLength(distmat, bestTour);
-        do {
-            bestLength = betterLength;
-            for (int i = 0; i < shiftedTour.length; i++) {
-                for (int j = 1; j < shiftedTour.length - 1; j++) {
-                    int[] neighborTour = shiftedTour.clone();
-                    StaticMath.reverse(neighborTour, 0, j + 1);
-                    int length = calcTourLength(distmat, neighborTour);
-                    if (length < bestLength) {
-                        bestTour = neighborTour.clone();
-                    }
-
-                    neighborTour = shiftedTour.clone();
-                    StaticMath.reverse(neighborTour, j, shiftedTour.length);
-                    length = calcTourLength(distmat, neighborTour);
-                    if (length < bestLength) {
-                        bestTour = neighborTour.clone();
-                    }
-                }
-                // shift  array to the left
-                int first = shiftedTour[0];
-                System.arraycopy(shiftedTour, 1, shiftedTour, 0, shiftedTour.length - 1);
-                shiftedTour[shiftedTour.length - 1] = first;
-            }
-            betterLength = calcTourLength(distmat, bestTour);
-            shiftedTour = bestTour.clone();
-        } while (betterLength < bestLength);
-
-        return bestTour;
-    }
-
-    private final int calcTourLength(int[][] distmat, int[] tourPerm) {
-        int length = 0;
-        for (int i = 0; i < tourPerm.length - 1; i++) {
-            length += distmat[tourPerm[i]][tourPerm[i + 1]];
-        }
-        // We have to make sure beforehand that there is an element
-        // because this will be called A LOT save that check
-        length += distmat[tourPerm[tourPerm.length - 1]][tourPerm[0]];
-        return length;
-    }
-
-    /**
-     * Computes a tour (permutation) with the Way ordered by the nearest neighbor
-     * heuristic starting at the first point successively adding the nearest unvisited point
-     *
-     * @param distmat the n^2 matrix of distance values for the given points
-     * @return
-     */
-    private final int[] nnHeuristic(int[][] distmat) {
-        int[] tour = new int[distmat.length];
-        IntOpenHashSet visited = new IntOpenHashSet(tour.length);
-        int currIndex = 0;
-        int minValue;
-        int minIndex;
-        // add the initial point
-        tour[0] = 0;
-        for (int nextIndex = 1; nextIndex < tour.length; nextIndex++) {
-            visited.add(currIndex);
-
-            minValue = Integer.MAX_VALUE;
-            minIndex = 0;
-            for (int i = 0; i < tour.length; i++) {
-                if (minValue > distmat[currIndex][i] && i != currIndex && !visited.contains(i)) {
-                    minValue = distmat[currIndex][i];
-                    minIndex = i;
-                }
-            }
-            currIndex = minIndex;
-            tour[nextIndex] = currIndex;
-        }
-        return tour;
-    }
 }
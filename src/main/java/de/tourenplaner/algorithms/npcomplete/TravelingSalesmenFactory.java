@@ -19,6 +19,8 @@ package de.tourenplaner.algorithms.npcomplete;
 import de.tourenplaner.algorithms.Algorithm;
 import de.tourenplaner.algorithms.DijkstraStructs;
 import de.tourenplaner.algorithms.SharingAlgorithmFactory;
+import de.tourenplaner.algorithms.distmatrix.DistMatrixWorkers;
+import de.tourenplaner.algorithms.shortestpath.LegCache;
 import de.tourenplaner.graphrep.GraphRep;
 
 import java.util.*;
@@ -32,10 +34,31 @@ public class TravelingSalesmenFactory extends SharingAlgorithmFactory {
     private final Map<String, Object> details;
     private final List<Map<String, Object>> constraints;
     private final List<Map<String, Object>> pointConstraints;
+    private final DistMatrixWorkers workers;
+    private final LegCache legCache;
 
     public TravelingSalesmenFactory(GraphRep graph){
-      super(graph);
-        constraints = new ArrayList<Map<String, Object>> (0);
+        this(graph, null, null);
+    }
+
+    /**
+     * Creates the factory, the created algorithms use the given workers to compute
+     * large distance matrices in parallel and reuse the legs stored in the given
+     * cache, both may be null
+     */
+    public TravelingSalesmenFactory(GraphRep graph, DistMatrixWorkers workers, LegCache legCache){
+        super(graph);
+        this.workers = workers;
+        this.legCache = legCache;
+        constraints = new ArrayList<Map<String, Object>>(1);
+        constraints.add(new HashMap<String, Object>(6));
+        constraints.get(0).put("id", "maxTime");
+        constraints.get(0).put("name", "Maximum Improvement Time");
+        constraints.get(0).put("description", "The time in milliseconds spent improving tours of more than "
+                + TourOptimizer.MAX_EXACT + " points");
+        constraints.get(0).put("type", "integer");
+        constraints.get(0).put("min", 0);
+        constraints.get(0).put("max", TravelingSalesman.MAX_TIME_BUDGET);
         pointConstraints = new ArrayList<Map<String, Object>>(0);
         details = new HashMap<String, Object>(3);
         details.put("hidden", this.isHidden());
@@ -56,7 +79,7 @@ public class TravelingSalesmenFactory extends SharingAlgorithmFactory {
 
     @Override
     public Algorithm createAlgorithm(DijkstraStructs rs) {
-        return new TravelingSalesman(graph, rs);
+        return new TravelingSalesman(graph, rs, workers, legCache);
     }
 
     @Override
@@ -71,7 +94,7 @@ public class TravelingSalesmenFactory extends SharingAlgorithmFactory {
 
     @Override
     public Algorithm createAlgorithm() {
-        return new TravelingSalesman(graph, new DijkstraStructs(graph.getNodeCount(), graph.getEdgeCount()));
+        return new TravelingSalesman(graph, new DijkstraStructs(graph.getNodeCount(), graph.getEdgeCount()), workers, legCache);
     }
 
     @Override
@@ -86,7 +109,7 @@ public class TravelingSalesmenFactory extends SharingAlgorithmFactory {
 
     @Override
     public int getVersion() {
-        return 1;
+        return 2;
     }
 
     @Override
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.algorithms.shortestpath;
+
+import de.tourenplaner.computecore.Way;
+import de.tourenplaner.graphrep.GraphRep;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Caches the unpacked legs of shortest path requests keyed by their source and
+ * destination node ids, shared by all ComputeThreads.
+ * <p>
+ * The cache is bounded by the number of points stored in its legs and evicts the
+ * least recently used legs first. It's split into segments with their own lock so
+ * concurrent requests rarely wait for each other. The legs are only valid for the
+ * GraphRep the cache was created or last invalidated with, legs of other graphs are
+ * neither returned nor stored so requests still running on a replaced graph can't
+ * pollute the cache.
+ * </p>
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class LegCache {
+    private static Logger log = Logger.getLogger("de.tourenplaner.algorithms");
+
+    private static final int SEGMENTS = 16;
+
+    /**
+     * One LRU ordered part of the cache, all access is synchronized on the segment
+     */
+    private static final class Segment extends LinkedHashMap<Long, Way> {
+        private final long maxPoints;
+        private long points;
+
+        Segment(long maxPoints) {
+            super(16, 0.75f, true);
+            this.maxPoints = maxPoints;
+        }
+    }
+
+    private final Segment[] segments;
+    private final long maxPoints;
+    private volatile GraphRep graph;
+
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong evictions;
+    private final AtomicLong invalidations;
+
+    /**
+     * Creates a LegCache for the given graph holding legs with up to maxPoints points in total
+     *
+     * @param graph
+     * @param maxPoints
+     */
+    public LegCache(GraphRep graph, long maxPoints) {
+        this.graph = graph;
+        this.maxPoints = maxPoints;
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(Math.max(1, maxPoints / SEGMENTS));
+        }
+        hits = new AtomicLong();
+        misses = new AtomicLong();
+        evictions = new AtomicLong();
+        invalidations = new AtomicLong();
+    }
+
+    private static long key(int srcId, int destId) {
+        return ((long) srcId << 32) | (destId & 0xffffffffL);
+    }
+
+    private Segment segmentFor(long key) {
+        // spread the bits so legs from the same source end up in different segments
+        long h = key * 0x9E3779B97F4A7C15L;
+        return segments[(int) (h >>> 60) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * Appends the points of the cached leg from srcId to destId to the given way and
+     * sets its distance and travel time
+     *
+     * @param graph the graph the requesting algorithm computes on
+     * @param srcId
+     * @param destId
+     * @param resultWay
+     * @return true if the leg was cached, false if it has to be computed
+     */
+    public boolean copyLeg(GraphRep graph, int srcId, int destId, Way resultWay) {
+        long key = key(srcId, destId);
+        Segment segment = segmentFor(key);
+        Way leg;
+        synchronized (segment) {
+            leg = (graph == this.graph) ? segment.get(key) : null;
+        }
+        if (leg == null) {
+            misses.incrementAndGet();
+            return false;
+        }
+        hits.incrementAndGet();
+        // cached legs are never modified so they can be copied without the lock
+        resultWay.addPoints(leg);
+        resultWay.setDistance(leg.getDistance());
+        resultWay.setTravelTime(leg.getTravelTime());
+        return true;
+    }
+
+    /**
+     * Stores a copy of the computed leg from srcId to destId, evicting the least
+     * recently used legs if the cache gets too large
+     *
+     * @param graph the graph the leg was computed on
+     * @param srcId
+     * @param destId
+     * @param way the computed leg with distance and travel time set
+     */
+    public void putLeg(GraphRep graph, int srcId, int destId, Way way) {
+        long key = key(srcId, destId);
+        Segment segment = segmentFor(key);
+        if (way.size() > segment.maxPoints) {
+            return;
+        }
+        Way leg = new Way();
+        leg.addPoints(way);
+        leg.setDistance(way.getDistance());
+        leg.setTravelTime(way.getTravelTime());
+        synchronized (segment) {
+            if (graph != this.graph) {
+                return;
+            }
+            Way old = segment.put(key, leg);
+            segment.points += leg.size();
+            if (old != null) {
+                segment.points -= old.size();
+            }
+            Iterator<Way> it = segment.values().iterator();
+            while (segment.points > segment.maxPoints && it.hasNext()) {
+                segment.points -= it.next().size();
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Drops all cached legs, from now on only legs of the given graph are cached.
+     * Called when the graph was reloaded
+     *
+     * @param graph the new graph
+     */
+    public void invalidate(GraphRep graph) {
+        log.info("Invalidating leg cache " + getStats());
+        // set the graph first so legs computed on the old one can't be added after clearing
+        this.graph = graph;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+                segment.points = 0;
+            }
+        }
+        invalidations.incrementAndGet();
+    }
+
+    /**
+     * Gets the number of cached legs
+     *
+     * @return
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Gets the hit/miss metrics and the size of this cache
+     *
+     * @return
+     */
+    public Map<String, Object> getStats() {
+        int legs = 0;
+        long points = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                legs += segment.size();
+                points += segment.points;
+            }
+        }
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        Map<String, Object> stats = new HashMap<String, Object>(8);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitrate", (hitCount + missCount > 0) ? hitCount / (double) (hitCount + missCount) : 0.0);
+        stats.put("evictions", evictions.get());
+        stats.put("invalidations", invalidations.get());
+        stats.put("legs", legs);
+        stats.put("points", points);
+        stats.put("maxpoints", maxPoints);
+        return stats;
+    }
+}
@@ -76,6 +76,7 @@ public abstract class ShortestPath extends GraphAlgorithm {
     public void compute(ComputeRequest request) throws ComputeException {
         assert request != null : "We ended up without a request object in run";
         ClassicRequestData req = (ClassicRequestData) request.getRequestData();
+        setCancellation(request.getCancellation());
         RequestPoints points = req.getPoints();
         // Check if we have enough points to do something useful
         if (points.size() < 2) {
@@ -17,14 +17,19 @@
 package de.tourenplaner.algorithms.shortestpath;
 
 import com.carrotsearch.hppc.IntArrayDeque;
+import de.tourenplaner.algorithms.CancellationToken;
+import de.tourenplaner.algorithms.ComputeCancelledException;
 import de.tourenplaner.algorithms.ComputeException;
 import de.tourenplaner.algorithms.DijkstraStructs;
+import de.tourenplaner.algorithms.IndexedHeap;
+import de.tourenplaner.algorithms.SearchLabels;
 import de.tourenplaner.computecore.RequestPoints;
 import de.tourenplaner.computecore.Way;
 import de.tourenplaner.graphrep.GraphRep;
+import de.tourenplaner.graphrep.SearchGraph;
+import de.tourenplaner.graphrep.UnpackedShortcuts;
 
 import java.util.List;
-import java.util.PriorityQueue;
 import java.util.logging.Logger;
 
 /**
@@ -33,34 +38,14 @@ import java.util.logging.Logger;
  * @author Stefan Funke, Niklas Schnelle
  */
 public class ShortestPathBDCH extends ShortestPath {
-    private final class BDPQElement implements Comparable<BDPQElement> {
-
-        public int key;
-        public int value;
-        public int queue;
-
-        BDPQElement(int a, int b, int c) {
-            key = a;
-            value = b;
-            queue = c;
-        }
-
-        public int compareTo(BDPQElement o) {
-            return key - o.key;
-        }
-    }
-
     private static Logger log = Logger.getLogger("de.tourenplaner.algorithms");
 
-    int[] distFwd;
-    int[] distBwd;
-    boolean[] settledFwd;
-    boolean[] settledBwd;
-    int[] prevEdgesFwd;
-    int[] prevEdgesBck;
-    PriorityQueue<BDPQElement> myQueue;
-    int[] touchedNodes;
-    int nofTouchedNodes;
+    // dists and prev edges per search direction, reset in constant time
+    SearchLabels labelsFwd;
+    SearchLabels labelsBwd;
+    // one priority queue per search direction
+    IndexedHeap heapFwd;
+    IndexedHeap heapBwd;
     int nofTouchedEdges;
     int nofStalledNodes;
 
@@ -70,23 +55,34 @@ public class ShortestPathBDCH extends ShortestPath {
     // DijkstraStructs used by the ShortestPathCH
     private final DijkstraStructs ds;
 
+    // Compact upward graph, null if the GraphRep has none
+    private final SearchGraph searchGraph;
+
+    // Precomputed geometry of high shortcuts, null if the GraphRep has none
+    private final UnpackedShortcuts unpackedShortcuts;
+
+    // Shared cache of computed legs, may be null
+    private final LegCache legCache;
+
     public ShortestPathBDCH(GraphRep graph, DijkstraStructs resourceSharer) {
+        this(graph, resourceSharer, null);
+    }
+
+    /**
+     * Creates a ShortestPathBDCH reusing the legs stored in the given cache,
+     * it may be null
+     */
+    public ShortestPathBDCH(GraphRep graph, DijkstraStructs resourceSharer, LegCache legCache) {
         super(graph);
-        prevEdgesFwd = new int[graph.getNodeCount()];
-        prevEdgesBck = new int[graph.getNodeCount()];
-        distFwd = new int[graph.getNodeCount()];
-        distBwd = new int[graph.getNodeCount()];
-        settledFwd = new boolean[graph.getNodeCount()];
-        settledBwd = new boolean[graph.getNodeCount()];
-        touchedNodes = new int[graph.getNodeCount()];
-        for (int i = 0; i < graph.getNodeCount(); i++) {
-            distFwd[i] = distBwd[i] = Integer.MAX_VALUE;
-            settledFwd[i] = settledBwd[i] = false;
-        }
-        myQueue = new PriorityQueue<BDPQElement>();
-        nofTouchedNodes = 0;
+        labelsFwd = new SearchLabels(graph.getNodeCount());
+        labelsBwd = new SearchLabels(graph.getNodeCount());
+        heapFwd = new IndexedHeap(graph.getNodeCount());
+        heapBwd = new IndexedHeap(graph.getNodeCount());
         nofStalledNodes = 0;
         ds = resourceSharer;
+        searchGraph = graph.getSearchGraph();
+        unpackedShortcuts = graph.getUnpackedShortcuts();
+        this.legCache = legCache;
     }
 
     /**
@@ -96,12 +92,8 @@ public class ShortestPathBDCH extends ShortestPath {
      * @param d
      */
     void labelFwd(int trgtId, int edgeId, int d) {
-        if ((distFwd[trgtId] == Integer.MAX_VALUE) && (distBwd[trgtId] == Integer.MAX_VALUE)) {
-            touchedNodes[nofTouchedNodes++] = trgtId;
-        }
-        distFwd[trgtId] = d;
-        prevEdgesFwd[trgtId] = edgeId;
-        myQueue.add(new BDPQElement(d, trgtId, 0));
+        labelsFwd.setDistAndPrev(trgtId, d, edgeId);
+        heapFwd.insertOrDecrease(trgtId, d);
     }
 
     /**
@@ -111,49 +103,88 @@ public class ShortestPathBDCH extends ShortestPath {
      * @param d
      */
     void labelBwd(int srcId, int trgtId, int edgeId, int d) {
-        if ((distFwd[srcId] == Integer.MAX_VALUE) && (distBwd[srcId] == Integer.MAX_VALUE)) {
-            touchedNodes[nofTouchedNodes++] = srcId;
+        labelsBwd.setDistAndPrev(srcId, d, edgeId);
+        heapBwd.insertOrDecrease(srcId, d);
+    }
+
+    /**
+     * Returns true if the node has been settled by the search with the given
+     * labels and heap, that is it was labeled and has already left the heap
+     *
+     * @param labels
+     * @param heap
+     * @param nodeId
+     * @return
+     */
+    private static boolean isSettled(SearchLabels labels, IndexedHeap heap, int nodeId) {
+        return labels.isReached(nodeId) && !heap.contains(nodeId);
+    }
+
+    /**
+     * Resets the data structures of the last search and
+     * labels src and dest
+     *
+     * @param srcId
+     * @param destId
+     */
+    private void initSearch(int srcId, int destId) {
+        labelsFwd.reset();
+        labelsBwd.reset();
+        heapFwd.resetHeap();
+        heapBwd.resetHeap();
+        // start with src and dest
+        labelsFwd.setDistAndPrev(srcId, 0, -1);
+        heapFwd.insertOrDecrease(srcId, 0);
+
+        labelsBwd.setDistAndPrev(destId, 0, -1);
+        heapBwd.insertOrDecrease(destId, 0);
+
+        nofTouchedEdges = 0;
+        nofStalledNodes = 0;
+    }
+
+    /**
+     * Gets the side to settle next, 0 for the forward search and 1 for the
+     * backward search, that is the one with the smaller minimum
+     * or -1 if both queues are empty
+     *
+     * @return
+     */
+    private int nextSide() {
+        if (heapFwd.isEmpty()) {
+            return heapBwd.isEmpty() ? -1 : 1;
+        } else if (heapBwd.isEmpty() || heapFwd.peekMinDist() <= heapBwd.peekMinDist()) {
+            return 0;
         }
-        distBwd[srcId] = d;
-        prevEdgesBck[srcId] = edgeId;
-        myQueue.add(new BDPQElement(d, srcId, 1));
+        return 1;
     }
 
     /**
-     * Performs the Dijkstra Search
+     * Performs the Dijkstra Search, using the compact SearchGraph if the GraphRep has one
      *
      * @param srcId
      * @param destId
      * @return
      * @throws IllegalAccessException
+     * @throws ComputeCancelledException if the search was cancelled
      */
-    public final int bddijkstra(int srcId, int destId) throws IllegalAccessException {
-        // clean up previously touched nodes
-        for (int i = 0; i < nofTouchedNodes; i++) {
-            distFwd[touchedNodes[i]] = distBwd[touchedNodes[i]] = Integer.MAX_VALUE;
-            settledFwd[touchedNodes[i]] = settledBwd[touchedNodes[i]] = false;
+    public final int bddijkstra(int srcId, int destId) throws IllegalAccessException, ComputeCancelledException {
+        if (searchGraph != null) {
+            return bddijkstraSearchGraph(srcId, destId);
         }
-        nofTouchedNodes = 0;
-        myQueue.clear();
-        // start with src and dest
-        touchedNodes[nofTouchedNodes++] = srcId;
-        distFwd[srcId] = 0;
-        myQueue.add(new BDPQElement(0, srcId, 0));
-
-        touchedNodes[nofTouchedNodes++] = destId;
-        distBwd[destId] = 0;
-        myQueue.add(new BDPQElement(0, destId, 1));
+        initSearch(srcId, destId);
 
         int bestDist = Integer.MAX_VALUE;
-
-        nofTouchedEdges = 0;
-        nofStalledNodes = 0;
-        while ((!myQueue.isEmpty())) {
-            //System.err.print(".");
-            BDPQElement cur = myQueue.remove();
-            int cur_dist = cur.key;
-            int cur_node = cur.value;
-            int cur_side = cur.queue;
+        int cur_side;
+        int steps = 0;
+        while ((cur_side = nextSide()) >= 0) {
+            if ((++steps & CancellationToken.CHECK_MASK) == 0) {
+                cancellation.check();
+            }
+            IndexedHeap heap = (cur_side == 0) ? heapFwd : heapBwd;
+            int cur_dist = heap.peekMinDist();
+            int cur_node = heap.peekMinId();
+            heap.removeMin();
 
             if (cur_dist > bestDist)
                 break;
@@ -161,76 +192,162 @@ public class ShortestPathBDCH extends ShortestPath {
 
             if (cur_side == 0)    // we are in forward search
             {
-                if (cur_dist == distFwd[cur_node]) {
-                    settledFwd[cur_node] = true;
-
-                    boolean stalled = false;
-
-                    // check for stalling (if there is a node tmp_node (ABOVE) and an edge (tmp_node,cur_node)
-                    // which sum to a smaller distance (!)
-                    for (int j = 0; j < graph.getInEdgeCount(cur_node); j++) {
-                        int tmp_edge = graph.getInEdgeId(cur_node, j);
-                        int tmp_wgt = graph.getDist(tmp_edge);
-                        int tmp_node = graph.getSource(tmp_edge);
-                        if (distFwd[cur_node] - tmp_wgt > distFwd[tmp_node]) {
-                            stalled = true;
-                            nofStalledNodes++;
-                            break;
-                        }
-                        if (graph.getRank(tmp_node) < graph.getRank(cur_node)) break; // sorted by source rank descending
+                boolean stalled = false;
+
+                // check for stalling (if there is a node tmp_node (ABOVE) and an edge (tmp_node,cur_node)
+                // which sum to a smaller distance (!)
+                for (int j = 0; j < graph.getInEdgeCount(cur_node); j++) {
+                    int tmp_edge = graph.getInEdgeId(cur_node, j);
+                    int tmp_wgt = graph.getDist(tmp_edge);
+                    int tmp_node = graph.getSource(tmp_edge);
+                    if (cur_dist - tmp_wgt > labelsFwd.getDist(tmp_node)) {
+                        stalled = true;
+                        nofStalledNodes++;
+                        break;
                     }
+                    if (graph.getRank(tmp_node) < graph.getRank(cur_node)) break; // sorted by source rank descending
+                }
 
-                    if ((settledBwd[cur_node]) && (distFwd[cur_node] + distBwd[cur_node] < bestDist)){
-                        bestDist = distFwd[cur_node] + distBwd[cur_node];
-                        bestId = cur_node;
-                    }
+                if (isSettled(labelsBwd, heapBwd, cur_node) && (cur_dist + labelsBwd.getDist(cur_node) < bestDist)){
+                    bestDist = cur_dist + labelsBwd.getDist(cur_node);
+                    bestId = cur_node;
+                }
 
-                    if (!stalled) for (int i = graph.getOutEdgeCount(cur_node) - 1; i >= 0; i--) {
-                        int cur_edge = graph.getOutEdgeId(cur_node, i);
-                        int cur_trg = graph.getTarget(cur_edge);
-                        int cur_weight = graph.getDist(cur_edge);
-                        if (graph.getRank(cur_trg) >= graph.getRank(cur_node)) nofTouchedEdges++; // sorted by target rank ascending
-                        else break;
-                        // correct rank order is checked above
-                        if (distFwd[cur_trg] > cur_dist + cur_weight) {
-                            labelFwd(cur_trg, cur_edge, cur_dist + cur_weight);
-                        }
+                if (!stalled) for (int i = graph.getOutEdgeCount(cur_node) - 1; i >= 0; i--) {
+                    int cur_edge = graph.getOutEdgeId(cur_node, i);
+                    int cur_trg = graph.getTarget(cur_edge);
+                    int cur_weight = graph.getDist(cur_edge);
+                    if (graph.getRank(cur_trg) >= graph.getRank(cur_node)) nofTouchedEdges++; // sorted by target rank ascending
+                    else break;
+                    // correct rank order is checked above
+                    if (labelsFwd.getDist(cur_trg) > cur_dist + cur_weight) {
+                        labelFwd(cur_trg, cur_edge, cur_dist + cur_weight);
                     }
                 }
             } else    // we are in backward search
             {
-                if (cur_dist == distBwd[cur_node]) {
-                    settledBwd[cur_node] = true;
-                    boolean stalled = false;
-
-                    // check for stalling: if there is a node ABOVE cur_node ...
-                    for (int j = graph.getOutEdgeCount(cur_node) - 1; j >= 0; j--) {
-                        int tmp_edge = graph.getOutEdgeId(cur_node, j);
-                        int tmp_wgt = graph.getDist(tmp_edge);
-                        int tmp_node = graph.getTarget(tmp_edge);
-                        if (distBwd[cur_node] - tmp_wgt > distBwd[tmp_node]) {
-                            stalled = true;
-                            nofStalledNodes++;
-                            break;
-                        }
-                        if (graph.getRank(cur_node) > graph.getRank(tmp_node)) break; //sorted by target rank ascending
+                boolean stalled = false;
+
+                // check for stalling: if there is a node ABOVE cur_node ...
+                for (int j = graph.getOutEdgeCount(cur_node) - 1; j >= 0; j--) {
+                    int tmp_edge = graph.getOutEdgeId(cur_node, j);
+                    int tmp_wgt = graph.getDist(tmp_edge);
+                    int tmp_node = graph.getTarget(tmp_edge);
+                    if (cur_dist - tmp_wgt > labelsBwd.getDist(tmp_node)) {
+                        stalled = true;
+                        nofStalledNodes++;
+                        break;
                     }
+                    if (graph.getRank(cur_node) > graph.getRank(tmp_node)) break; //sorted by target rank ascending
+                }
 
 
-                    if ((settledFwd[cur_node]) && (distFwd[cur_node] + distBwd[cur_node] < bestDist)){
-                        bestDist = distFwd[cur_node] + distBwd[cur_node];
-                        bestId = cur_node;
+                if (isSettled(labelsFwd, heapFwd, cur_node) && (labelsFwd.getDist(cur_node) + cur_dist < bestDist)){
+                    bestDist = labelsFwd.getDist(cur_node) + cur_dist;
+                    bestId = cur_node;
+                }
+
+                if (!stalled) for (int i = 0; i < graph.getInEdgeCount(cur_node); i++) {
+                    int cur_edge = graph.getInEdgeId(cur_node, i);
+                    int cur_src = graph.getSource(cur_edge);
+                    int cur_weight = graph.getDist(cur_edge);
+                    if (graph.getRank(cur_src) >= graph.getRank(cur_node)) nofTouchedEdges++; // sorted descending by source rank
+                    else break;
+                    // correct rank order is checked above
+                    if (labelsBwd.getDist(cur_src) > cur_dist + cur_weight) {
+                        labelBwd(cur_src, cur_node, cur_edge, cur_dist + cur_weight);
                     }
+                }
+            }
+        }
+        return bestDist;
+    }
 
-                    if (!stalled) for (int i = 0; i < graph.getInEdgeCount(cur_node); i++) {
-                        int cur_edge = graph.getInEdgeId(cur_node, i);
-                        int cur_src = graph.getSource(cur_edge);
-                        int cur_weight = graph.getDist(cur_edge);
-                        if (graph.getRank(cur_src) >= graph.getRank(cur_node)) nofTouchedEdges++; // sorted descending by source rank
-                        else break;
-                        // correct rank order is checked above
-                        if (distBwd[cur_src] > cur_dist + cur_weight) {
-                            labelBwd(cur_src, cur_node, cur_edge, cur_dist + cur_weight);
+    /**
+     * Same as bddijkstra but iterates the upward edges of the SearchGraph
+     * so there are no rank checks and no random accesses into the edge arrays
+     *
+     * @param srcId
+     * @param destId
+     * @return
+     */
+    private int bddijkstraSearchGraph(int srcId, int destId) throws ComputeCancelledException {
+        final SearchGraph sg = searchGraph;
+        initSearch(srcId, destId);
+
+        int bestDist = Integer.MAX_VALUE;
+        int cur_side;
+        int steps = 0;
+        while ((cur_side = nextSide()) >= 0) {
+            if ((++steps & CancellationToken.CHECK_MASK) == 0) {
+                cancellation.check();
+            }
+            IndexedHeap heap = (cur_side == 0) ? heapFwd : heapBwd;
+            int cur_dist = heap.peekMinDist();
+            int cur_node = heap.peekMinId();
+            heap.removeMin();
+
+            if (cur_dist > bestDist)
+                break;
+
+            if (cur_side == 0)    // we are in forward search
+            {
+                boolean stalled = false;
+
+                // check for stalling (if there is a node tmp_node (ABOVE) and an edge (tmp_node,cur_node)
+                // which sum to a smaller distance (!)
+                int end = sg.getInEnd(cur_node);
+                for (int j = sg.getInBegin(cur_node); j < end; j++) {
+                    if (cur_dist - sg.getInDist(j) > labelsFwd.getDist(sg.getInSource(j))) {
+                        stalled = true;
+                        nofStalledNodes++;
+                        break;
+                    }
+                }
+
+                if (isSettled(labelsBwd, heapBwd, cur_node) && (cur_dist + labelsBwd.getDist(cur_node) < bestDist)){
+                    bestDist = cur_dist + labelsBwd.getDist(cur_node);
+                    bestId = cur_node;
+                }
+
+                if (!stalled) {
+                    end = sg.getOutEnd(cur_node);
+                    for (int i = sg.getOutBegin(cur_node); i < end; i++) {
+                        int cur_trg = sg.getOutTarget(i);
+                        int new_dist = cur_dist + sg.getOutDist(i);
+                        nofTouchedEdges++;
+                        if (labelsFwd.getDist(cur_trg) > new_dist) {
+                            labelFwd(cur_trg, sg.getOutEdgeId(cur_node, i), new_dist);
+                        }
+                    }
+                }
+            } else    // we are in backward search
+            {
+                boolean stalled = false;
+
+                // check for stalling: if there is a node ABOVE cur_node ...
+                int end = sg.getOutEnd(cur_node);
+                for (int j = sg.getOutBegin(cur_node); j < end; j++) {
+                    if (cur_dist - sg.getOutDist(j) > labelsBwd.getDist(sg.getOutTarget(j))) {
+                        stalled = true;
+                        nofStalledNodes++;
+                        break;
+                    }
+                }
+
+                if (isSettled(labelsFwd, heapFwd, cur_node) && (labelsFwd.getDist(cur_node) + cur_dist < bestDist)){
+                    bestDist = labelsFwd.getDist(cur_node) + cur_dist;
+                    bestId = cur_node;
+                }
+
+                if (!stalled) {
+                    end = sg.getInEnd(cur_node);
+                    for (int i = sg.getInBegin(cur_node); i < end; i++) {
+                        int cur_src = sg.getInSource(i);
+                        int new_dist = cur_dist + sg.getInDist(i);
+                        nofTouchedEdges++;
+                        if (labelsBwd.getDist(cur_src) > new_dist) {
+                            labelBwd(cur_src, cur_node, sg.getInEdgeId(cur_node, i), new_dist);
                         }
                     }
                 }
@@ -262,7 +379,7 @@ public class ShortestPathBDCH extends ShortestPath {
         int shortedEdge1, shortedEdge2;
 
         while (currNode != srcId) {
-            edgeId = prevEdgesFwd[currNode];
+            edgeId = labelsFwd.getPrevEdge(currNode);
             deque.addFirst(edgeId);
             currNode = graph.getSource(edgeId);
         }
@@ -270,7 +387,7 @@ public class ShortestPathBDCH extends ShortestPath {
         // now from bestId to destId
         currNode = bestId;
         while (currNode != destId) {
-            edgeId = prevEdgesBck[currNode];
+            edgeId = labelsBwd.getPrevEdge(currNode);
             deque.addLast(edgeId);
             currNode = graph.getTarget(edgeId);
         }
@@ -284,6 +401,13 @@ public class ShortestPathBDCH extends ShortestPath {
             edgeId = deque.removeFirst();
             shortedEdge1 = graph.getFirstShortcuttedEdge(edgeId);
             if (shortedEdge1 >= 0) {
+                int unpacked = (unpackedShortcuts != null) ? unpackedShortcuts.find(edgeId) : -1;
+                if (unpacked >= 0) {
+                    // It's already unpacked just copy it
+                    resultWay.addPoints(unpackedShortcuts, unpacked);
+                    length += unpackedShortcuts.getLength(unpacked);
+                    continue;
+                }
                 // We have a shortcut unpack it
                 shortedEdge2 = graph.getSecondShortcuttedEdge(edgeId);
                 deque.addFirst(shortedEdge2);
@@ -343,36 +467,43 @@ public class ShortestPathBDCH extends ShortestPath {
             }
 
             //New point -> new subway
-            resultWays.add(new Way());
-
-            // get data structures used by Dijkstra
+            Way resultWay = new Way();
+            resultWays.add(resultWay);
 
             directDistance += calcDirectDistance(graph.getLat(srcId) / 10000000.0, (double) graph.getLon(srcId) / 10000000, (double) graph.getLat(destId) / 10000000, (double) graph.getLon(destId) / 10000000);
 
+            if (legCache != null && legCache.copyLeg(graph, srcId, destId, resultWay)) {
+                distance = resultWay.getDistance();
+                totalDistance += distance;
+                log.fine("found cached sp with dist = " + distance / 1000.0 + " km");
+            } else {
+                // Run Dijkstra stopping when destId is removed from the pq
+                int bestDist = bddijkstra(srcId, destId);
+                long dijkstratime = System.nanoTime();
+                if (bestDist == Integer.MAX_VALUE){
+                    log.info("There is no path from src to trgt (" + srcId + " to " + destId + ")");
+                    throw new ComputeException("No Path found");
+                }
 
-            // Run Dijkstra stopping when destId is removed from the pq
-            int bestDist = bddijkstra(srcId, destId);
-            long dijkstratime = System.nanoTime();
-            if (bestDist == Integer.MAX_VALUE){
-                log.info("There is no path from src to trgt (" + srcId + " to " + destId + ")");
-                throw new ComputeException("No Path found");
-            }
-
-            // Backtrack to get the actual path
-            backtrack(resultWays.get(pointIndex), srcId, destId);
-            resultWays.get(pointIndex).setTravelTime(bestDist * graph.travelTimeConstant);
-            distance = resultWays.get(pointIndex).getDistance();
-            totalDistance += distance;
+                // Backtrack to get the actual path
+                backtrack(resultWay, srcId, destId);
+                resultWay.setTravelTime(bestDist * graph.travelTimeConstant);
+                distance = resultWay.getDistance();
+                totalDistance += distance;
+                if (legCache != null) {
+                    legCache.putLeg(graph, srcId, destId, resultWay);
+                }
 
-            long backtracktime = System.nanoTime();
-            log.info("found sp with dist = " + resultWays.get(pointIndex).getDistance() / 1000.0 + " km (direct distance: " + directDistance / 1000.0  + "\n"+
-                    "Dijkstra: " + (dijkstratime - starttime) / 1000000.0 + " ms\n" + "Backtracking: " + (backtracktime - dijkstratime) / 1000000.0 + " ms\n" +
-                    "Touched Nodes/Edges "+nofTouchedNodes+"/"+nofTouchedEdges+" Number of Stalled nodes: "+nofStalledNodes);
+                long backtracktime = System.nanoTime();
+                log.info("found sp with dist = " + distance / 1000.0 + " km (direct distance: " + directDistance / 1000.0  + "\n"+
+                        "Dijkstra: " + (dijkstratime - starttime) / 1000000.0 + " ms\n" + "Backtracking: " + (backtracktime - dijkstratime) / 1000000.0 + " ms\n" +
+                        "Touched Edges "+nofTouchedEdges+" Number of Stalled nodes: "+nofStalledNodes);
+            }
 
             // Save the distance to the last point at the target
             // wrap around at tour
             points.getConstraints((pointIndex + 1) % points.size()).put("distToPrev", distance);
-            points.getConstraints((pointIndex + 1) % points.size()).put("timeToPrev", resultWays.get(pointIndex).getTravelTime());
+            points.getConstraints((pointIndex + 1) % points.size()).put("timeToPrev", resultWay.getTravelTime());
         }
 
         return totalDistance;
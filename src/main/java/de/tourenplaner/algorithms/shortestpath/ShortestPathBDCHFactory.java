@@ -35,9 +35,19 @@ public class ShortestPathBDCHFactory extends SharingAlgorithmFactory {
     private final Map<String, Object> details;
     private final List<Map<String, Object>> constraints;
     private final List<Map<String, Object>> pointConstraints;
+    private final LegCache legCache;
 
     public ShortestPathBDCHFactory(GraphRep graph) {
+        this(graph, null);
+    }
+
+    /**
+     * Creates the factory, the created algorithms reuse the legs stored in
+     * the given cache unless it is null
+     */
+    public ShortestPathBDCHFactory(GraphRep graph, LegCache legCache) {
 		super(graph);
+        this.legCache = legCache;
         constraints = new ArrayList<Map<String, Object>>(0);
         pointConstraints = new ArrayList<Map<String, Object>>(0);
         details = new HashMap<String, Object>(3);
@@ -53,7 +63,7 @@ public class ShortestPathBDCHFactory extends SharingAlgorithmFactory {
 
 	@Override
 	public Algorithm createAlgorithm(DijkstraStructs rs) {
-		return new ShortestPathBDCH(graph, rs);
+		return new ShortestPathBDCH(graph, rs, legCache);
     }
 
     @Override
@@ -69,7 +79,7 @@ public class ShortestPathBDCHFactory extends SharingAlgorithmFactory {
 	@Override
 	public Algorithm createAlgorithm() {
 		return new ShortestPathBDCH(graph, new DijkstraStructs(
-				graph.getNodeCount(), graph.getEdgeCount()));
+				graph.getNodeCount(), graph.getEdgeCount()), legCache);
 	}
 
 	@Override
@@ -102,4 +112,8 @@ public class ShortestPathBDCHFactory extends SharingAlgorithmFactory {
 		return false;
 	}
 
+	@Override
+	public boolean isBatchable() {
+		return true;
+	}
 }
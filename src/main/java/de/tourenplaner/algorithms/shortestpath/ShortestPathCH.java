@@ -21,10 +21,12 @@ import com.carrotsearch.hppc.IntArrayDeque;
 import com.carrotsearch.hppc.cursors.IntCursor;
 import de.tourenplaner.algorithms.ComputeException;
 import de.tourenplaner.algorithms.DijkstraStructs;
-import de.tourenplaner.algorithms.Heap;
+import de.tourenplaner.algorithms.IndexedHeap;
+import de.tourenplaner.algorithms.SearchLabels;
 import de.tourenplaner.computecore.RequestPoints;
 import de.tourenplaner.computecore.Way;
 import de.tourenplaner.graphrep.GraphRep;
+import de.tourenplaner.graphrep.UnpackedShortcuts;
 
 import java.util.List;
 import java.util.logging.Logger;
@@ -45,9 +47,25 @@ public class ShortestPathCH extends ShortestPath {
     // DijkstraStructs used by the ShortestPathCH
     private final DijkstraStructs ds;
 
+    // Precomputed geometry of high shortcuts, null if the GraphRep has none
+    private final UnpackedShortcuts unpackedShortcuts;
+
+    // Shared cache of computed legs, may be null
+    private final LegCache legCache;
+
     public ShortestPathCH(GraphRep graph, DijkstraStructs resourceSharer) {
+        this(graph, resourceSharer, null);
+    }
+
+    /**
+     * Creates a ShortestPathCH reusing the legs stored in the given cache,
+     * it may be null
+     */
+    public ShortestPathCH(GraphRep graph, DijkstraStructs resourceSharer, LegCache legCache) {
         super(graph);
         ds = resourceSharer;
+        unpackedShortcuts = graph.getUnpackedShortcuts();
+        this.legCache = legCache;
     }
 
     /**
@@ -146,22 +164,22 @@ public class ShortestPathCH extends ShortestPath {
      * the destination point is removed from the pq
      *
      * @param markedEdges
-     * @param dists
+     * @param labels
      * @param srcId
      * @param destId
      * @return
      * @throws IllegalAccessException
      */
-    public final boolean dijkstraStopAtDest(int[] dists, int[] prevEdges, BitSet markedEdges, int srcId, int destId) throws IllegalAccessException {
-        dists[srcId] = 0;
-        Heap heap = ds.borrowHeap();
-        heap.insert(srcId, dists[srcId]);
+    public final boolean dijkstraStopAtDest(SearchLabels labels, BitSet markedEdges, int srcId, int destId) throws IllegalAccessException {
+        labels.setDistAndPrev(srcId, 0, -1);
+        IndexedHeap heap = ds.borrowIndexedHeap();
+        heap.insertOrDecrease(srcId, 0);
 
-        int nodeDist;
         int edgeId;
         int tempDist;
         int targetNode;
         int nodeId = srcId;
+        int nodeDist;
         int sourceRank;
         DIJKSTRA:
         while (!heap.isEmpty()) {
@@ -171,8 +189,6 @@ public class ShortestPathCH extends ShortestPath {
             heap.removeMin();
             if (nodeId == destId) {
                 break DIJKSTRA;
-            } else if (nodeDist > dists[nodeId]) {
-                continue;
             }
             for (int i = 0; i < graph.getOutEdgeCount(nodeId); i++) {
                 edgeId = graph.getOutEdgeId(nodeId, i);
@@ -180,19 +196,17 @@ public class ShortestPathCH extends ShortestPath {
                 // Either marked (by BFS) or G_up edge
                 if (markedEdges.get(edgeId) || (sourceRank <= graph.getRank(targetNode))) {
 
-                    tempDist = dists[nodeId] + graph.getDist(edgeId);
-
-                    if (tempDist < dists[targetNode]) {
-                        dists[targetNode] = tempDist;
+                    tempDist = nodeDist + graph.getDist(edgeId);
 
-                        prevEdges[targetNode] = edgeId;
-                        heap.insert(targetNode, tempDist);
+                    if (tempDist < labels.getDist(targetNode)) {
+                        labels.setDistAndPrev(targetNode, tempDist, edgeId);
+                        heap.insertOrDecrease(targetNode, tempDist);
                     }
 
                 }
             }
         }
-        ds.returnHeap();
+        ds.returnIndexedHeap();
         return nodeId == destId;
     }
 
@@ -201,29 +215,26 @@ public class ShortestPathCH extends ShortestPath {
      * empty without setting predecessor edges
      *
      * @param markedEdges
-     * @param dists
+     * @param labels
      * @param srcId
      * @throws IllegalAccessException
      */
-    public final void dijkstraStopAtEmptyDistOnly(int[] dists, BitSet markedEdges, int srcId) throws IllegalAccessException {
-        dists[srcId] = 0;
-        Heap heap = ds.borrowHeap();
-        heap.insert(srcId, dists[srcId]);
+    public final void dijkstraStopAtEmptyDistOnly(SearchLabels labels, BitSet markedEdges, int srcId) throws IllegalAccessException {
+        labels.setDist(srcId, 0);
+        IndexedHeap heap = ds.borrowIndexedHeap();
+        heap.insertOrDecrease(srcId, 0);
 
-        int nodeDist;
         int edgeId;
         int tempDist;
         int targetNode;
         int sourceRank;
         int nodeId = srcId;
+        int nodeDist;
         while (!heap.isEmpty()) {
             nodeId = heap.peekMinId();
             nodeDist = heap.peekMinDist();
             sourceRank = graph.getRank(nodeId);
             heap.removeMin();
-            if (nodeDist > dists[nodeId]) {
-                continue;
-            }
             int edgeCount = graph.getOutEdgeCount(nodeId);
             for (int i = 0; i < edgeCount; i++) {
                 edgeId = graph.getOutEdgeId(nodeId, i);
@@ -232,31 +243,31 @@ public class ShortestPathCH extends ShortestPath {
                 // Either marked (by BFS) or G_up edge
                 if (markedEdges.get(edgeId) || (sourceRank <= graph.getRank(targetNode))) {
 
-                    tempDist = dists[nodeId] + graph.getDist(edgeId);
+                    tempDist = nodeDist + graph.getDist(edgeId);
 
-                    if (tempDist < dists[targetNode]) {
-                        dists[targetNode] = tempDist;
-                        heap.insert(targetNode, tempDist);
+                    if (tempDist < labels.getDist(targetNode)) {
+                        labels.setDist(targetNode, tempDist);
+                        heap.insertOrDecrease(targetNode, tempDist);
                     }
 
                 }
             }
         }
-        ds.returnHeap();
+        ds.returnIndexedHeap();
         return;
     }
 
     /**
-     * Backtracks the prevEdges Array and calculates the actual path length
+     * Backtracks the prev edges of the labels and calculates the actual path length
      * returns the length of the found path in meters
      *
-     * @param prevEdges
+     * @param labels
      * @param resultWay
      * @param srcId
      * @param destId
      * @throws IllegalAccessException
      */
-    public final void backtrack(int[] prevEdges, Way resultWay, int srcId, int destId) throws IllegalAccessException {
+    public final void backtrack(SearchLabels labels, Way resultWay, int srcId, int destId) throws IllegalAccessException {
         int nodeLat;
         int nodeLon;
         int edgeId;
@@ -270,7 +281,7 @@ public class ShortestPathCH extends ShortestPath {
         int shortedEdge1, shortedEdge2;
 
         while (currNode != srcId) {
-            edgeId = prevEdges[currNode];
+            edgeId = labels.getPrevEdge(currNode);
             deque.addFirst(edgeId);
             currNode = graph.getSource(edgeId);
         }
@@ -284,6 +295,13 @@ public class ShortestPathCH extends ShortestPath {
             edgeId = deque.removeFirst();
             shortedEdge1 = graph.getFirstShortcuttedEdge(edgeId);
             if (shortedEdge1 >= 0) {
+                int unpacked = (unpackedShortcuts != null) ? unpackedShortcuts.find(edgeId) : -1;
+                if (unpacked >= 0) {
+                    // It's already unpacked just copy it
+                    resultWay.addPoints(unpackedShortcuts, unpacked);
+                    length += unpackedShortcuts.getLength(unpacked);
+                    continue;
+                }
                 // We have a shortcut unpack it
                 shortedEdge2 = graph.getSecondShortcuttedEdge(edgeId);
                 deque.addFirst(shortedEdge2);
@@ -342,53 +360,58 @@ public class ShortestPathCH extends ShortestPath {
             }
 
             //New point -> new subway
-            resultWays.add(new Way());
-
-            // get data structures used by Dijkstra
-            int[] dists = ds.borrowDistArray();
-            int[] prevEdges = ds.borrowPrevArray();
-            BitSet markedEdges = ds.borrowMarkedSet();
+            Way resultWay = new Way();
+            resultWays.add(resultWay);
 
             directDistance += calcDirectDistance(graph.getLat(srcId) / 10000000.0, (double) graph.getLon(srcId) / 10000000, (double) graph.getLat(destId) / 10000000, (double) graph.getLon(destId) / 10000000);
 
-            // Do our BFS marking at the destination
-            bfsMark(markedEdges, destId);
-            long bfsdonetime = System.nanoTime();
+            if (legCache != null && legCache.copyLeg(graph, srcId, destId, resultWay)) {
+                distance = resultWay.getDistance();
+                totalDistance += distance;
+                log.fine("found cached sp with dist = " + distance / 1000.0 + " km");
+            } else {
+                // get data structures used by Dijkstra
+                SearchLabels labels = ds.borrowSearchLabels();
+                BitSet markedEdges = ds.borrowMarkedSet();
+
+                // Do our BFS marking at the destination
+                bfsMark(markedEdges, destId);
+                long bfsdonetime = System.nanoTime();
+
+                // Run Dijkstra stopping when destId is removed from the pq
+                boolean found = dijkstraStopAtDest(labels, markedEdges, srcId, destId);
+                long dijkstratime = System.nanoTime();
+
+                if (!found) {
+                    // Return/Reset the data structures
+                    ds.returnSearchLabels();
+                    ds.returnMarkedSet();
+                    log.info("There is no path from src to trgt (" + srcId + " to " + destId + ")");
+                    throw new ComputeException("No Path found");
+                }
+                // Backtrack to get the actual path
+                backtrack(labels, resultWay, srcId, destId);
+                resultWay.setTravelTime(labels.getDist(destId) * graph.travelTimeConstant);
+                distance = resultWay.getDistance();
+                totalDistance += distance;
+                if (legCache != null) {
+                    legCache.putLeg(graph, srcId, destId, resultWay);
+                }
+
+                long backtracktime = System.nanoTime();
 
-            // Run Dijkstra stopping when destId is removed from the pq
-            boolean found = dijkstraStopAtDest(dists, prevEdges, markedEdges, srcId, destId);
-            long dijkstratime = System.nanoTime();
+                log.info("found sp with dist = " + distance / 1000.0 + " km (direct distance: " + directDistance / 1000.0 + " dist[destid] = " + labels.getDist(destId) + "\n" +
+                        "BFS: " + (bfsdonetime - starttime) / 1000000.0 + " ms with " + bfsNodes + " nodes and " + bfsEdges + " edges\n" + "Dijkstra: " + (dijkstratime - bfsdonetime) / 1000000.0 + " ms\n" + "Backtracking: " + (backtracktime - dijkstratime) / 1000000.0 + " ms");
 
-            if (!found) {
                 // Return/Reset the data structures
-                ds.returnDistArray(false);
-                ds.returnPrevArray();
+                ds.returnSearchLabels();
                 ds.returnMarkedSet();
-                log.info("There is no path from src to trgt (" + srcId + " to " + destId + ")");
-                throw new ComputeException("No Path found");
             }
-            // Backtrack to get the actual path
-            backtrack(prevEdges, resultWays.get(pointIndex), srcId, destId);
-            resultWays.get(pointIndex).setTravelTime(dists[destId] * graph.travelTimeConstant);
-            distance = resultWays.get(pointIndex).getDistance();
-            totalDistance += distance;
-
-            long backtracktime = System.nanoTime();
 
             // Save the distance to the last point at the target
             // wrap around at tour
             points.getConstraints((pointIndex + 1) % points.size()).put("distToPrev", distance);
-            points.getConstraints((pointIndex + 1) % points.size()).put("timeToPrev", resultWays.get(pointIndex).getTravelTime());
-
-
-            log.info("found sp with dist = " + resultWays.get(pointIndex).getDistance() / 1000.0 + " km (direct distance: " + directDistance / 1000.0 + " dist[destid] = " + dists[destId] + "\n" +
-                    "BFS: " + (bfsdonetime - starttime) / 1000000.0 + " ms with " + bfsNodes + " nodes and " + bfsEdges + " edges\n" + "Dijkstra: " + (dijkstratime - bfsdonetime) / 1000000.0 + " ms\n" + "Backtracking: " + (backtracktime - dijkstratime) / 1000000.0 + " ms");
-
-
-            // Return/Reset the data structures
-            ds.returnDistArray(false);
-            ds.returnPrevArray();
-            ds.returnMarkedSet();
+            points.getConstraints((pointIndex + 1) % points.size()).put("timeToPrev", resultWay.getTravelTime());
         }
 
         return totalDistance;
@@ -99,4 +99,8 @@ public class ShortestPathCHFactory extends SharingAlgorithmFactory {
 		return false;
 	}
 
+	@Override
+	public boolean isBatchable() {
+		return true;
+	}
 }
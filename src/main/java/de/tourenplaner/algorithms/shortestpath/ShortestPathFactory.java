@@ -106,4 +106,8 @@ public class ShortestPathFactory extends SharingAlgorithmFactory {
 		return false;
 	}
 
+	@Override
+	public boolean isBatchable() {
+		return true;
+	}
 }
@@ -16,17 +16,22 @@
 
 package de.tourenplaner.algorithms.shortestpath;
 
+import de.tourenplaner.algorithms.CancellationToken;
+import de.tourenplaner.algorithms.ComputeCancelledException;
 import de.tourenplaner.algorithms.ComputeException;
 import de.tourenplaner.algorithms.DijkstraStructs;
 import de.tourenplaner.algorithms.Heap;
+import de.tourenplaner.algorithms.SearchLabels;
 import de.tourenplaner.computecore.RequestPoints;
 import de.tourenplaner.computecore.Way;
 import de.tourenplaner.graphrep.GraphRep;
+import de.tourenplaner.graphrep.Landmarks;
 
 import java.util.List;
 
 /**
- * Provides an implementation of ShortestPath algorithm without CH speedup
+ * Provides an implementation of ShortestPath algorithm without CH speedup,
+ * if the graph has {@link Landmarks} the searches are A* searches using them
  *
  * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
  */
@@ -81,8 +86,7 @@ public class ShortestPathNoCH extends ShortestPath {
             resultWays.add(new Way());
 
             // get data structures used by Dijkstra
-            int[] dists = ds.borrowDistArray();
-            int[] prevEdges = ds.borrowPrevArray();
+            SearchLabels labels = ds.borrowSearchLabels();
 
             directDistance += calcDirectDistance(
                     graph.getLat(srcId) / 10000000.0,
@@ -93,20 +97,25 @@ public class ShortestPathNoCH extends ShortestPath {
 
 
             // Run Dijkstra stopping when trgtId is removed from the pq
-            boolean found = dijkstraStopAtDest(dists, prevEdges, srcId, trgtId);
+            boolean found;
+            try {
+                found = dijkstraStopAtDest(labels, srcId, trgtId);
+            } catch (ComputeCancelledException e) {
+                ds.returnSearchLabels();
+                throw e;
+            }
             long dijkstratime = System.nanoTime();
 
             if (!found) {
                 // Return/Reset the data structures
-                ds.returnDistArray(false);
-                ds.returnPrevArray();
+                ds.returnSearchLabels();
                 log.info("There is no path from src to trgt (" + srcId + " to " + trgtId + ')');
                 throw new ComputeException("No Path found");
             }
             // Backtrack to get the actual path
             Way resultWay = resultWays.get(pointIndex);
-            backtrack(prevEdges, resultWay, srcId, trgtId);
-            resultWay.setTravelTime(dists[trgtId] * graph.travelTimeConstant);
+            backtrack(labels, resultWay, srcId, trgtId);
+            resultWay.setTravelTime(labels.getDist(trgtId) * graph.travelTimeConstant);
             distance = resultWay.getDistance();
             time = resultWay.getTravelTime();
             long backtracktime = System.nanoTime();
@@ -119,52 +128,61 @@ public class ShortestPathNoCH extends ShortestPath {
             totalDistance += distance;
 
             log.info("found sp with dist = " + distance / 1000.0 + " km (in meters: " + distance + " direct distance: " + directDistance / 1000.0 +
-                    " dist[trgtId] = " + dists[trgtId] + '\n' +
+                    " dist[trgtId] = " + labels.getDist(trgtId) + '\n' +
                     (dijkstratime - starttime) / 1000000.0 + " ms\n" +
                     "Backtracking: " + (backtracktime - dijkstratime) / 1000000.0 + " ms");
 
             // Return/Reset the data structures
-            ds.returnDistArray(false);
-            ds.returnPrevArray();
+            ds.returnSearchLabels();
         }
 
         return totalDistance;
     }
 
     /**
-     * Performs the Dijkstra Search on euclidian dists stopping when
-     * the destination point is removed from the pq
+     * Performs the Dijkstra Search on dists stopping when the destination
+     * point is removed from the pq, with Landmarks it's an A* search whose
+     * pq keys are the dists plus the landmark potential
      *
-     * @param dists
-     * @param prevEdges
+     * @param labels
      * @param srcId
      * @param trgtId
      * @return
      * @throws IllegalAccessException
+     * @throws ComputeCancelledException if the search was cancelled
      */
-    public final boolean dijkstraStopAtDest(int[] dists, int[] prevEdges, int srcId, int trgtId)
-            throws IllegalAccessException {
+    public final boolean dijkstraStopAtDest(SearchLabels labels, int srcId, int trgtId)
+            throws IllegalAccessException, ComputeCancelledException {
 
-        dists[srcId] = 0;
+        Landmarks landmarks = graph.getLandmarks();
+        Landmarks.Potential potential = landmarks == null ? null : landmarks.potential(srcId, trgtId, false);
+        labels.setDistAndPrev(srcId, 0, -1);
         Heap heap = ds.borrowHeap();
-        heap.insert(srcId, dists[srcId]);
+        heap.insert(srcId, potential == null ? 0 : potential.get(srcId));
 
         int nodeDist;
         int edgeId;
         int tempDist;
         int targetNode;
         int nodeId = srcId;
+        int steps = 0;
         DIJKSTRA:
         while (!heap.isEmpty()) {
+            if ((++steps & CancellationToken.CHECK_MASK) == 0 && cancellation.shouldStop()) {
+                ds.returnHeap();
+                cancellation.check();
+            }
             nodeId = heap.peekMinId();
-            nodeDist = heap.peekMinDist();
+            nodeDist = labels.getDist(nodeId);
+            // the key is outdated if the node was inserted again with a smaller dist
+            if (heap.peekMinDist() > nodeDist + (potential == null ? 0 : potential.get(nodeId))) {
+                heap.removeMin();
+                continue;
+            }
             heap.removeMin();
             if (nodeId == trgtId) {
                 break DIJKSTRA;
             }
-            if (nodeDist > dists[nodeId]) {
-                continue;
-            }
             int edgeCount = graph.getOutEdgeCount(nodeId);
             for (int i = 0; i < edgeCount; i++) {
                 edgeId = graph.getOutEdgeId(nodeId, i);
@@ -175,12 +193,11 @@ public class ShortestPathNoCH extends ShortestPath {
                 targetNode = graph.getTarget(edgeId);
 
                 // with multiplier = shortest path
-                tempDist = dists[nodeId] + graph.getDist(edgeId);
+                tempDist = nodeDist + graph.getDist(edgeId);
 
-                if (tempDist < dists[targetNode]) {
-                    dists[targetNode] = tempDist;
-                    prevEdges[targetNode] = edgeId;
-                    heap.insert(targetNode, dists[targetNode]);
+                if (tempDist < labels.getDist(targetNode)) {
+                    labels.setDistAndPrev(targetNode, tempDist, edgeId);
+                    heap.insert(targetNode, potential == null ? tempDist : tempDist + potential.get(targetNode));
                 }
             }
         }
@@ -189,17 +206,17 @@ public class ShortestPathNoCH extends ShortestPath {
     }
 
     /**
-     *  Backtracks the prevEdges Array and calculates the actual path length
+     *  Backtracks the prev edges of the labels and calculates the actual path length
      *  returns the length of the found path in meters
      *
      *
-     * @param prevEdges
+     * @param labels
      * @param resultWay
      * @param srcId
      * @param trgtId
      * @throws IllegalAccessException
      */
-    public final void backtrack(int[] prevEdges, Way resultWay, int srcId, int trgtId) {
+    public final void backtrack(SearchLabels labels, Way resultWay, int srcId, int trgtId) {
         // Find out how much space to allocate, 1 for source that we always add
         int routeElements = 1;
 
@@ -207,7 +224,7 @@ public class ShortestPathNoCH extends ShortestPath {
         int currNode = trgtId;
         while (currNode != srcId) {
             routeElements++;
-            int prevEdge = prevEdges[currNode];
+            int prevEdge = labels.getPrevEdge(currNode);
             length += graph.getEuclidianDist(prevEdge);
             currNode = graph.getSource(prevEdge);
         }
@@ -221,7 +238,7 @@ public class ShortestPathNoCH extends ShortestPath {
             routeElements--;
             resultWay.setPointLat(routeElements, graph.getLat(currNode));
             resultWay.setPointLon(routeElements, graph.getLon(currNode));
-            currNode = graph.getSource(prevEdges[currNode]);
+            currNode = graph.getSource(labels.getPrevEdge(currNode));
         }
         // add source node to the result.
         resultWay.setPointLat(0, graph.getLat(currNode));
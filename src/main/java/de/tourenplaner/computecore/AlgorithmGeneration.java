@@ -0,0 +1,173 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package de.tourenplaner.computecore;
+
+import de.tourenplaner.algorithms.AlgorithmFactory;
+import de.tourenplaner.algorithms.SharingAlgorithmFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * One generation of algorithms a ComputeCore computes with, that is an AlgorithmRegistry
+ * (and so the graph its algorithms work on) together with the AlgorithmManagers created
+ * for it.<br /><br />
+ *
+ * Every computation holds a reference to the generation it uses and the ComputeCore holds
+ * one as long as the generation is its current one. When a reload replaced the generation
+ * and its last computation finished the release action is run, it may free resources
+ * (e.g. thread pools) the algorithms of this generation used. The AlgorithmManagers are
+ * dropped on release too, so once no thread holds the generation itself its graph can be
+ * collected.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class AlgorithmGeneration {
+    private static Logger log = Logger.getLogger("de.tourenplaner.computecore");
+
+    private final int number;
+    private final AlgorithmRegistry registry;
+    private final Runnable releaseAction;
+
+    // the AlgorithmManagers created for the ComputeThreads or the pooled ones of the ExecutorComputeCore
+    private final BlockingQueue<AlgorithmManager> managers;
+    // instances of algorithms that don't need pooled state, one per executing thread,
+    // owned by the generation and not by the (long lived) threads so release() can drop them
+    private final ConcurrentMap<Thread, AlgorithmManager> localManagers;
+
+    // one for being the current generation plus one per running computation
+    private final AtomicInteger references;
+
+    /**
+     * Creates the generation with managerCount AlgorithmManagers created with the given factory
+     *
+     * @param number        counts the generations of a ComputeCore starting at 0
+     * @param registry
+     * @param amFac
+     * @param managerCount
+     * @param releaseAction run when the generation is released, may be null
+     */
+    AlgorithmGeneration(int number, final AlgorithmRegistry registry, AlgorithmManagerFactory amFac,
+                        int managerCount, Runnable releaseAction) {
+        this.number = number;
+        this.registry = registry;
+        this.releaseAction = releaseAction;
+        this.references = new AtomicInteger(1);
+        this.managers = new ArrayBlockingQueue<AlgorithmManager>(Math.max(1, managerCount));
+        for (int i = 0; i < managerCount; i++) {
+            managers.add(registry.getAlgorithmManager(amFac));
+        }
+        this.localManagers = new ConcurrentHashMap<Thread, AlgorithmManager>();
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public AlgorithmRegistry getAlgorithmRegistry() {
+        return registry;
+    }
+
+    /**
+     * Takes one of the AlgorithmManagers of this generation, returns null if there is none left
+     *
+     * @return
+     */
+    AlgorithmManager pollManager() {
+        return managers.poll();
+    }
+
+    /**
+     * Returns an AlgorithmManager taken with pollManager()
+     *
+     * @param alm
+     */
+    void offerManager(AlgorithmManager alm) {
+        managers.offer(alm);
+    }
+
+    /**
+     * Gets the AlgorithmManager of the calling thread holding the algorithms that
+     * don't share pooled state
+     *
+     * @return
+     */
+    AlgorithmManager getLocalManager() {
+        Thread thread = Thread.currentThread();
+        AlgorithmManager m = localManagers.get(thread);
+        if (m == null) {
+            m = new AlgorithmManager();
+            for (AlgorithmFactory algFac : registry.getAlgorithms()) {
+                if (!(algFac instanceof SharingAlgorithmFactory)) {
+                    m.addAlgorithm(algFac);
+                }
+            }
+            // only the thread itself adds its manager
+            localManagers.put(thread, m);
+        }
+        return m;
+    }
+
+    /**
+     * Adds a reference to this generation, this fails if it was already released
+     *
+     * @return true if the reference was added
+     */
+    boolean tryAcquire() {
+        int count;
+        do {
+            count = references.get();
+            if (count == 0) {
+                return false;
+            }
+        } while (!references.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    /**
+     * Drops a reference, the last one drops the AlgorithmManagers and runs the release action
+     */
+    void release() {
+        if (references.decrementAndGet() == 0) {
+            log.info("Algorithm generation " + number + " drained");
+            managers.clear();
+            localManagers.clear();
+            if (releaseAction != null) {
+                try {
+                    releaseAction.run();
+                } catch (RuntimeException e) {
+                    log.log(Level.WARNING, "Releasing algorithm generation " + number + " failed", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether the generation was replaced and all its computations finished
+     *
+     * @return
+     */
+    public boolean isReleased() {
+        return references.get() == 0;
+    }
+}
@@ -22,7 +22,11 @@ import java.util.logging.Logger;
 
 /**
  * The ComputeCore keeps a thread pool of ComputeThreads and allows new
- * computations to be scheduled for execution by adding them to it's queue
+ * computations to be scheduled for execution by adding them to it's queue.<br /><br />
+ *
+ * The algorithms the threads compute with belong to an {@link AlgorithmGeneration},
+ * reload() replaces it with one for a new graph while the computations running on the
+ * old generation finish undisturbed. The old generation is released once they did.
  *
  * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
  */
@@ -32,7 +36,14 @@ public class ComputeCore {
 
     private final int numThreads;
 	private final BlockingQueue<ComputeRequest> reqQueue;
-	private final AlgorithmRegistry registry;
+	// only used until the first generation is started, afterwards the generations own the registries
+	private AlgorithmRegistry registry;
+
+    private volatile AlgorithmGeneration current;
+    // the generation replaced last, we only allow a new reload once it's released
+    // so there are never more than two generations in memory. It's dropped when
+    // released so the old graph can be collected
+    private AlgorithmGeneration previous;
 
 	/**
 	 * Constructs a new ComputeCore which uses numThreads threads in it's pool
@@ -54,16 +65,131 @@ public class ComputeCore {
 	 * Starts the ComputeThreads
 	 */
 	public void start(AlgorithmManagerFactory amFac) {
+		start(amFac, null);
+	}
+
+	/**
+	 * Starts the ComputeThreads, the releaseAction is run once the first
+	 * generation was replaced by a reload and all its computations finished
+	 */
+	public void start(AlgorithmManagerFactory amFac, Runnable releaseAction) {
+		startGeneration(amFac, releaseAction);
 		ComputeThread curr;
 		log.info("Starting " + numThreads + " ComputeThreads");
 		for (int i = 0; i < numThreads; i++) {
-			curr = new ComputeThread(registry.getAlgorithmManager(amFac),
-					reqQueue);
+			curr = new ComputeThread(this, reqQueue);
 			curr.start();
 		}
 		log.info(numThreads+" ComputeThreads started");
 	}
 
+	/**
+	 * Creates the first generation from the AlgorithmRegistry given to the constructor
+	 */
+	protected final void startGeneration(AlgorithmManagerFactory amFac, Runnable releaseAction) {
+		current = new AlgorithmGeneration(0, registry, amFac, getManagerCount(), forgetWhenReleased(releaseAction));
+		registry = null;
+	}
+
+	/**
+	 * Wraps the releaseAction of a generation so the ComputeCore drops its
+	 * reference to the released generation before running it
+	 */
+	private Runnable forgetWhenReleased(final Runnable releaseAction) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				forgetReleased();
+				if (releaseAction != null) {
+					releaseAction.run();
+				}
+			}
+		};
+	}
+
+	private synchronized void forgetReleased() {
+		if (previous != null && previous.isReleased()) {
+			previous = null;
+		}
+	}
+
+	/**
+	 * The number of AlgorithmManagers every generation needs, one per ComputeThread
+	 *
+	 * @return
+	 */
+	protected int getManagerCount() {
+		return numThreads;
+	}
+
+	/**
+	 * Replaces the algorithms used for new computations by those of the given registry,
+	 * the AlgorithmManagers for them are created by the calling thread before the switch.
+	 * Computations already running finish with the old generation which is released
+	 * (running its releaseAction) after the last of them finished.
+	 *
+	 * @param algRegistry
+	 * @param amFac
+	 * @param releaseAction run once the new generation got replaced too and drained, may be null
+	 * @return the new generation
+	 * @throws IllegalStateException if the generation replaced by the last reload is still in use
+	 */
+	public synchronized AlgorithmGeneration reload(AlgorithmRegistry algRegistry, AlgorithmManagerFactory amFac,
+			Runnable releaseAction) {
+		if (isDraining()) {
+			throw new IllegalStateException("Algorithm generation " + previous.getNumber() + " is still in use");
+		}
+		AlgorithmGeneration old = current;
+		AlgorithmGeneration next = new AlgorithmGeneration(old.getNumber() + 1, algRegistry, amFac,
+				getManagerCount(), forgetWhenReleased(releaseAction));
+		current = next;
+		previous = old;
+		log.info("Switched to algorithm generation " + next.getNumber());
+		generationChanged();
+		old.release();
+		return next;
+	}
+
+	/**
+	 * Called after reload() switched to a new generation
+	 */
+	protected void generationChanged() {
+	}
+
+	/**
+	 * Checks whether the generation replaced by the last reload is still in use
+	 *
+	 * @return
+	 */
+	public synchronized boolean isDraining() {
+		return previous != null && !previous.isReleased();
+	}
+
+	/**
+	 * Gets the current generation adding a reference to it that needs to be
+	 * released once the computation using it is done
+	 *
+	 * @return
+	 */
+	protected final AlgorithmGeneration acquireGeneration() {
+		while (true) {
+			AlgorithmGeneration generation = current;
+			if (generation.tryAcquire()) {
+				return generation;
+			}
+			// it was replaced and released just now, current is already the new one
+		}
+	}
+
+	/**
+	 * Gets the current generation
+	 *
+	 * @return
+	 */
+	public AlgorithmGeneration getGeneration() {
+		return current;
+	}
+
 	/**
 	 * Submits a request for computation, returns true if there is still space
 	 * in the queue false otherwise
@@ -84,13 +210,14 @@ public class ComputeCore {
     }
 
 	/**
-	 * Gets the AlgorithmRegistry used by this ComputeCore to create
-	 * AlgorithmManagers for it's ComputeThreads
+	 * Gets the AlgorithmRegistry of the current generation, new requests
+	 * should be read with its AlgorithmFactories
 	 * 
 	 * @return the AlgorithmRegistry
 	 */
 	public AlgorithmRegistry getAlgorithmRegistry() {
-		return registry;
+		AlgorithmGeneration generation = current;
+		return generation != null ? generation.getAlgorithmRegistry() : registry;
 	}
 
 }
@@ -16,6 +16,7 @@
 
 package de.tourenplaner.computecore;
 
+import de.tourenplaner.algorithms.CancellationToken;
 import de.tourenplaner.computeserver.Responder;
 
 /**
@@ -27,15 +28,30 @@ public class ComputeRequest {
 
 	private final Responder responder;
     private final RequestData requestData;
+    private final CancellationToken cancellation;
     private FormattedStreamWriter resultObject;
 	/**
-	 * Constructs a new ComputeRequest using the given Responder
+	 * Constructs a new ComputeRequest using the given Responder without
+	 * a deadline
 	 *
      * @param responder The to this compute request corresponding Responder
      */
 	public ComputeRequest(Responder responder, RequestData requestData) {
+		this(responder, requestData, 0);
+	}
+
+	/**
+	 * Constructs a new ComputeRequest using the given Responder, the request is
+	 * cancelled when the Responder's connection is closed or after timeout
+	 * milliseconds
+	 *
+	 * @param responder The to this compute request corresponding Responder
+	 * @param timeout in milliseconds, values <= 0 mean no deadline
+	 */
+	public ComputeRequest(Responder responder, RequestData requestData, long timeout) {
 		this.responder = responder;
-        this.requestData = requestData;
+		this.requestData = requestData;
+		this.cancellation = new CancellationToken((responder != null) ? responder.getCancellation() : null, timeout);
 	}
 
     /**
@@ -55,6 +71,15 @@ public class ComputeRequest {
 		return responder;
 	}
 
+	/**
+	 * Gets the CancellationToken algorithms computing this request should check
+	 *
+	 * @return
+	 */
+	public CancellationToken getCancellation() {
+		return cancellation;
+	}
+
 
     /**
      * Sets the object storing the result of this computation
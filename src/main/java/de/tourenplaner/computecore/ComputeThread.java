@@ -17,10 +17,12 @@
 package de.tourenplaner.computecore;
 
 import de.tourenplaner.algorithms.Algorithm;
+import de.tourenplaner.algorithms.ComputeCancelledException;
 import de.tourenplaner.algorithms.ComputeException;
 import de.tourenplaner.computeserver.ErrorMessage;
 import io.netty.handler.codec.http.HttpResponseStatus;
 
+import java.io.IOException;
 import java.util.concurrent.BlockingQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -28,7 +30,9 @@ import java.util.logging.Logger;
 /**
  * A ComputeThread computes the results of ComputeRequests it gets from the
  * queue of it's associated ComputeCore using Algorithms known to it's
- * AlgorithmManager
+ * AlgorithmManager. For every request it takes one of the current generation's
+ * AlgorithmManagers and gives it back afterwards, so an idle thread doesn't keep
+ * a replaced generation (and its graph) alive
  *
  * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
  */
@@ -36,18 +40,18 @@ public class ComputeThread extends Thread {
 
     private static Logger log = Logger.getLogger("de.tourenplaner.computecore");
 
-    private final AlgorithmManager alm;
+    private final ComputeCore core;
     private final BlockingQueue<ComputeRequest> reqQueue;
 
     /**
-     * Constructs a new ComputeThread using the given AlgorithmManager and
-     * RequestQueue
+     * Constructs a new ComputeThread using the AlgorithmManagers of the
+     * given ComputeCore and the RequestQueue
      *
-     * @param am AlgorithmManager
+     * @param core ComputeCore
      * @param rq BlockingQueue&lt;ComputeRequest&gt;
      */
-    public ComputeThread(AlgorithmManager am, BlockingQueue<ComputeRequest> rq) {
-        alm = am;
+    public ComputeThread(ComputeCore core, BlockingQueue<ComputeRequest> rq) {
+        this.core = core;
         reqQueue = rq;
         this.setDaemon(true);
     }
@@ -58,43 +62,77 @@ public class ComputeThread extends Thread {
     @Override
     public void run() {
         ComputeRequest work;
-        Algorithm alg;
 
         while (!Thread.interrupted()) {
 
             try {
                 work = reqQueue.take();
+                AlgorithmGeneration current = core.acquireGeneration();
+                // every generation has one AlgorithmManager per ComputeThread
+                AlgorithmManager alm = current.pollManager();
+                try {
+                    process(alm, work);
+                } finally {
+                    current.offerManager(alm);
+                    current.release();
+                }
+            } catch (InterruptedException e) {
+                log.warning("ComputeThread interrupted");
+                return;
+            } catch (Exception e) {
+                log.log(Level.WARNING, "An exception occurred, keep on going", e);
+            }
+        }
+    }
+
+    /**
+     * Computes the given request with the matching Algorithm of the AlgorithmManager
+     * and writes the result or an error message, also used by the ExecutorComputeCore
+     *
+     * @param alm AlgorithmManager owned by the calling thread for the duration of the call
+     * @param work the request to compute
+     * @throws IOException Thrown if writing an error message fails
+     */
+    static void process(AlgorithmManager alm, ComputeRequest work) throws IOException {
+        // the client may be gone while the request waited in the queue,
+        // under overload skipping these frees us for the others
+        if (work.getCancellation().isCancelled()) {
+            log.fine("Dropped request for " + work.getRequestData().getAlgorithmURLSuffix() + ", connection closed");
+            return;
+        }
 
-                // check needed if availability of algorithms changes
-                alg = alm.getAlgByURLSuffix(work.getRequestData().getAlgorithmURLSuffix());
-                if (alg != null) {
-                    try {
+        // check needed if availability of algorithms changes
+        Algorithm alg = alm.getAlgByURLSuffix(work.getRequestData().getAlgorithmURLSuffix());
+        if (alg != null) {
+            try {
 
-                        alg.compute(work);
-                        log.finer("Algorithm " + work.getRequestData().getAlgorithmURLSuffix() + " successfully computed.");
+                // the deadline may have passed in the queue too
+                work.getCancellation().check();
+                alg.compute(work);
+                log.finer("Algorithm " + work.getRequestData().getAlgorithmURLSuffix() + " successfully computed.");
 
-                        // IOException will be handled as EINTERNAL
-                        work.getResponder().writeComputeResult(work, HttpResponseStatus.OK);
+                // IOException will be handled as EINTERNAL
+                work.getResponder().writeComputeResult(work, HttpResponseStatus.OK);
 
-                    } catch (ComputeException e) {
-                        log.log(Level.WARNING, "There was a ComputeException", e);
-                        String errorMessage = work.getResponder().writeAndReturnErrorMessage(ErrorMessage.ECOMPUTE, e.getMessage());
-                    } catch (Exception e) {
-                        log.log(Level.WARNING, "Internal server exception (caused by algorithm or result writing)", e);
-                        // Don't give too much info to client as we probably got a programming mistake
-                        work.getResponder().writeErrorMessage(ErrorMessage.EINTERNAL_UNSPECIFIED);
-                    }
+            } catch (ComputeCancelledException e) {
+                if (work.getCancellation().isCancelled()) {
+                    // nobody is left to answer
+                    log.fine("Cancelled " + work.getRequestData().getAlgorithmURLSuffix() + ", connection closed");
                 } else {
-                    log.warning("Unsupported algorithm " + work.getRequestData().getAlgorithmURLSuffix() + " requested");
-                    work.getResponder().writeErrorMessage(ErrorMessage.EUNKNOWNALG);
+                    log.warning("Cancelled " + work.getRequestData().getAlgorithmURLSuffix() + ": " + e.getMessage());
+                    work.getResponder().writeErrorMessage(ErrorMessage.ETIMEOUT, e.getMessage());
                 }
-
-            } catch (InterruptedException e) {
-                log.warning("ComputeThread interrupted");
-                return;
+            } catch (ComputeException e) {
+                log.log(Level.WARNING, "There was a ComputeException", e);
+                String errorMessage = work.getResponder().writeAndReturnErrorMessage(ErrorMessage.ECOMPUTE, e.getMessage());
             } catch (Exception e) {
-                log.log(Level.WARNING, "An exception occurred, keep on going", e);
+                log.log(Level.WARNING, "Internal server exception (caused by algorithm or result writing)", e);
+                // Don't give too much info to client as we probably got a programming mistake
+                work.getResponder().writeErrorMessage(ErrorMessage.EINTERNAL_UNSPECIFIED);
             }
+        } else {
+            log.warning("Unsupported algorithm " + work.getRequestData().getAlgorithmURLSuffix() + " requested");
+            work.getResponder().writeErrorMessage(ErrorMessage.EUNKNOWNALG);
         }
     }
 }
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.computecore;
+
+import de.tourenplaner.algorithms.AlgorithmFactory;
+import de.tourenplaner.algorithms.SharingAlgorithmFactory;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A ComputeCore running the computations as tasks on a work stealing ForkJoinPool
+ * instead of fixed ComputeThreads each owning one AlgorithmManager.<br /><br />
+ *
+ * The node sized state of the algorithms (the DijkstraStructs, the ShortestPathBDCH
+ * arrays, ...) lives in a bounded pool of AlgorithmManagers that tasks check out for
+ * the duration of a request and return afterwards. Requests for algorithms that don't
+ * share this state (e.g. nnsearch) don't need one of them, they run with instances
+ * local to the executing thread and don't have to wait behind long running jobs
+ * holding all the pooled state. So there can be more threads than state pools.
+ * After a reload the pooled and thread local AlgorithmManagers of the new generation
+ * are used for all requests that start computing from then on.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class ExecutorComputeCore extends ComputeCore {
+
+    private static Logger log = Logger.getLogger("de.tourenplaner.computecore");
+
+    private final int numThreads;
+    private final int numStates;
+    private final int queueLength;
+
+    // number of accepted requests that didn't start computing yet
+    private final AtomicInteger waiting;
+    // requests waiting for one of the pooled AlgorithmManagers
+    private final ConcurrentLinkedQueue<ComputeRequest> stateQueue;
+
+    private ForkJoinPool pool;
+
+    /**
+     * Constructs a new ExecutorComputeCore which uses numThreads threads and numStates
+     * pooled AlgorithmManagers, at most queueLength requests may wait for computation
+     *
+     * @param algRegistry
+     * @param numThreads
+     * @param numStates
+     * @param queueLength
+     */
+    public ExecutorComputeCore(AlgorithmRegistry algRegistry, int numThreads, int numStates, int queueLength) {
+        super(algRegistry, numThreads, queueLength);
+        this.numThreads = numThreads;
+        this.numStates = numStates;
+        this.queueLength = queueLength;
+        this.waiting = new AtomicInteger(0);
+        this.stateQueue = new ConcurrentLinkedQueue<ComputeRequest>();
+    }
+
+    /**
+     * Creates the pooled AlgorithmManagers and starts the executor
+     */
+    @Override
+    public void start(AlgorithmManagerFactory amFac, Runnable releaseAction) {
+        log.info("Creating " + numStates + " AlgorithmManagers");
+        startGeneration(amFac, releaseAction);
+
+        // asyncMode gives FIFO order for tasks that are never joined
+        pool = new ForkJoinPool(numThreads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        log.info("Executor with " + numThreads + " threads started");
+    }
+
+    /**
+     * Every generation has the pooled AlgorithmManagers
+     */
+    @Override
+    protected int getManagerCount() {
+        return numStates;
+    }
+
+    /**
+     * The new generation's AlgorithmManagers are all free, hand them waiting requests
+     */
+    @Override
+    protected void generationChanged() {
+        dispatch();
+    }
+
+    /**
+     * Submits a request for computation, returns true if there is still space
+     * in the queue false otherwise
+     *
+     * @param rq
+     * @return
+     */
+    @Override
+    public boolean submit(ComputeRequest rq) {
+        if (waiting.incrementAndGet() > queueLength) {
+            waiting.decrementAndGet();
+            return false;
+        }
+        AlgorithmFactory algFac = getAlgorithmRegistry().getAlgByURLSuffix(rq.getRequestData().getAlgorithmURLSuffix());
+        if (algFac instanceof SharingAlgorithmFactory) {
+            stateQueue.offer(rq);
+            dispatch();
+        } else {
+            pool.execute(new LocalTask(rq));
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the ComputeCore is ready to take another request
+     * @return
+     */
+    @Override
+    public boolean isFull() {
+        return waiting.get() >= queueLength;
+    }
+
+    /**
+     * Hands waiting requests to the executor as long as there are free
+     * AlgorithmManagers, called whenever a request or a manager becomes available
+     */
+    private void dispatch() {
+        while (!stateQueue.isEmpty()) {
+            AlgorithmGeneration generation = acquireGeneration();
+            AlgorithmManager alm = generation.pollManager();
+            if (alm == null) {
+                // the task returning its manager will dispatch again
+                generation.release();
+                return;
+            }
+            ComputeRequest rq = stateQueue.poll();
+            if (rq == null) {
+                // someone else took it, the loop condition checks for requests that
+                // arrived after we took the manager
+                generation.offerManager(alm);
+                generation.release();
+                continue;
+            }
+            pool.execute(new StateTask(rq, generation, alm));
+        }
+    }
+
+    /**
+     * Computes a request with one of the pooled AlgorithmManagers
+     */
+    private final class StateTask implements Runnable {
+        private final ComputeRequest work;
+        private final AlgorithmGeneration generation;
+        private final AlgorithmManager alm;
+
+        StateTask(ComputeRequest work, AlgorithmGeneration generation, AlgorithmManager alm) {
+            this.work = work;
+            this.generation = generation;
+            this.alm = alm;
+        }
+
+        @Override
+        public void run() {
+            waiting.decrementAndGet();
+            try {
+                ComputeThread.process(alm, work);
+            } catch (Exception e) {
+                log.log(Level.WARNING, "An exception occurred, keep on going", e);
+            } finally {
+                generation.offerManager(alm);
+                generation.release();
+                dispatch();
+            }
+        }
+    }
+
+    /**
+     * Computes a request for an algorithm that doesn't need pooled state
+     * with the instances local to the executing thread
+     */
+    private final class LocalTask implements Runnable {
+        private final ComputeRequest work;
+
+        LocalTask(ComputeRequest work) {
+            this.work = work;
+        }
+
+        @Override
+        public void run() {
+            waiting.decrementAndGet();
+            AlgorithmGeneration generation = acquireGeneration();
+            try {
+                ComputeThread.process(generation.getLocalManager(), work);
+            } catch (Exception e) {
+                log.log(Level.WARNING, "An exception occurred, keep on going", e);
+            } finally {
+                generation.release();
+            }
+        }
+    }
+}
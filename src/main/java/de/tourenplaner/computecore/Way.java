@@ -17,6 +17,7 @@
 package de.tourenplaner.computecore;
 
 import com.carrotsearch.hppc.IntArrayList;
+import de.tourenplaner.graphrep.UnpackedShortcuts;
 
 /**
  * Class used to store the route between two
@@ -54,6 +55,30 @@ public class Way {
 		points.resize(points.size() + num * 2);
 	}
 
+    /**
+     * Adds the points of an unpacked shortcut to this way, that is
+     * the sources of the original edges it consists of
+     *
+     * @param shortcuts the unpacked shortcuts of the graph
+     * @param index the index of the shortcut as returned by {@link UnpackedShortcuts#find(int)}
+     */
+	public void addPoints(UnpackedShortcuts shortcuts, int index) {
+		int size = points.size();
+		points.resize(size + shortcuts.getPointCount(index) * 2);
+		shortcuts.copyPoints(index, points.buffer, size);
+	}
+
+    /**
+     * Adds all points of the given way to this way
+     *
+     * @param way the way whose points are appended
+     */
+	public void addPoints(Way way) {
+		int size = points.size();
+		points.resize(size + way.points.size());
+		System.arraycopy(way.points.buffer, 0, points.buffer, size, way.points.size());
+	}
+
     /**
      * Gets the latitude of a point
      *
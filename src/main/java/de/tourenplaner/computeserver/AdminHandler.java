@@ -0,0 +1,159 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package de.tourenplaner.computeserver;
+
+import de.tourenplaner.algorithms.shortestpath.LegCache;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Handles the administrative requests, only accepted from the local machine.<br /><br />
+ *
+ * GET /admin/reload reports the state of graph reloads, POST /admin/reload starts reloading
+ * the graph from the configured file while the current graph keeps serving requests.
+ * GET and POST /admin/metric do the same for customizing the loaded graph with the
+ * configured metric file again.
+ * GET /admin/cache reports the hit/miss metrics of the leg cache.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class AdminHandler extends RequestHandler {
+
+    private static Logger log = Logger.getLogger("de.tourenplaner.server");
+
+    private final GraphReloader reloader;
+
+    private final LegCache legCache;
+
+    /**
+     * Creates the AdminHandler, reloader and legCache may be null if they are disabled
+     *
+     * @param reloader
+     * @param legCache
+     */
+    protected AdminHandler(GraphReloader reloader, LegCache legCache) {
+        super(null);
+        this.reloader = reloader;
+        this.legCache = legCache;
+    }
+
+    /**
+     * Only clients on the local machine connecting directly (not through a proxy) may use it
+     */
+    private boolean isLocalRequest(FullHttpRequest request) {
+        if (request.headers().get("X-Forwarded-For") != null) {
+            return false;
+        }
+        InetSocketAddress address = (InetSocketAddress) responder.getChannel().remoteAddress();
+        return address.getAddress().isLoopbackAddress();
+    }
+
+    private Map<String, Object> getReloadState() {
+        Map<String, Object> state = new HashMap<String, Object>(3);
+        state.put("generation", reloader.getGeneration());
+        state.put("reloading", reloader.isReloading());
+        state.put("draining", reloader.isDraining());
+        return state;
+    }
+
+    /**
+     * Handles /admin/reload
+     *
+     * @param request
+     * @throws IOException Thrown if writing the response fails
+     */
+    public void handleReload(FullHttpRequest request) throws IOException {
+        handleReload(request, false);
+    }
+
+    /**
+     * Handles /admin/metric
+     *
+     * @param request
+     * @throws IOException Thrown if writing the response fails
+     */
+    public void handleMetric(FullHttpRequest request) throws IOException {
+        handleReload(request, true);
+    }
+
+    private void handleReload(FullHttpRequest request, boolean metricOnly) throws IOException {
+        String what = metricOnly ? "metric" : "graph";
+        try {
+            responder.setFormat(Responder.ResultFormat.fromHeaders(request.headers()));
+            if (reloader == null) {
+                responder.writeErrorMessage(ErrorMessage.EUNKNOWNURL, what + " reloading is disabled");
+                return;
+            }
+            if (metricOnly && !reloader.canReloadMetric()) {
+                responder.writeErrorMessage(ErrorMessage.EUNKNOWNURL, "metric reloading needs a metric file");
+                return;
+            }
+            if (!isLocalRequest(request)) {
+                log.warning("Denied " + what + " reload request from " + responder.getChannel().remoteAddress());
+                responder.writeErrorMessage(ErrorMessage.ENOTADMIN, what + " reloads are only accepted from the local machine");
+                return;
+            }
+
+            if (HttpMethod.POST.equals(request.getMethod())) {
+                boolean started = metricOnly ? reloader.startMetricReload() : reloader.startReload();
+                if (!started) {
+                    responder.writeErrorMessage(ErrorMessage.EBUSY,
+                            "a reload is running or the previous graph is still in use");
+                    return;
+                }
+                log.info((metricOnly ? "Metric" : "Graph") + " reload started");
+                responder.writeObject(getReloadState(), HttpResponseStatus.ACCEPTED);
+            } else {
+                responder.writeObject(getReloadState(), HttpResponseStatus.OK);
+            }
+        } finally {
+            request.release();
+        }
+    }
+
+    /**
+     * Handles /admin/cache
+     *
+     * @param request
+     * @throws IOException Thrown if writing the response fails
+     */
+    public void handleCache(FullHttpRequest request) throws IOException {
+        try {
+            responder.setFormat(Responder.ResultFormat.fromHeaders(request.headers()));
+            if (legCache == null) {
+                responder.writeErrorMessage(ErrorMessage.EUNKNOWNURL, "the leg cache is disabled");
+                return;
+            }
+            if (!isLocalRequest(request)) {
+                log.warning("Denied cache stats request from " + responder.getChannel().remoteAddress());
+                responder.writeErrorMessage(ErrorMessage.ENOTADMIN, "cache stats are only accepted from the local machine");
+                return;
+            }
+            responder.writeObject(legCache.getStats(), HttpResponseStatus.OK);
+        } finally {
+            request.release();
+        }
+    }
+}
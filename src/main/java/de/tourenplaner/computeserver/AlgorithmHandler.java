@@ -20,6 +20,7 @@ import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import de.tourenplaner.algorithms.AlgorithmFactory;
+import de.tourenplaner.algorithms.GraphAlgorithmFactory;
 import de.tourenplaner.computecore.AlgorithmRegistry;
 import de.tourenplaner.computecore.ComputeCore;
 import de.tourenplaner.computecore.ComputeRequest;
@@ -32,6 +33,7 @@ import io.netty.util.CharsetUtil;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -48,13 +50,19 @@ public class AlgorithmHandler extends RequestHandler {
 
     private static final ObjectMapper mapper = new ObjectMapper();
     private final ComputeCore computer;
-    private final AlgorithmRegistry algReg;
+    private final long maxComputeTime;
+    private final int maxBatchPairs;
+    private final int batchWindow;
 
 
     protected AlgorithmHandler(ComputeCore computer) {
         super(null);
         this.computer = computer;
-        this.algReg = computer.getAlgorithmRegistry();
+        ConfigManager cm = ConfigManager.getInstance();
+        this.maxComputeTime = cm.getEntryLong("maxcomputetime", 0);
+        this.maxBatchPairs = cm.getEntryInt("maxbatchpairs", 10000);
+        int window = cm.getEntryInt("batchwindow", 0);
+        this.batchWindow = (window > 0) ? window : Runtime.getRuntime().availableProcessors();
     }
 
 
@@ -82,7 +90,9 @@ public class AlgorithmHandler extends RequestHandler {
                 return;
             }
 
-            // Get the AlgorithmFactory for this Alg to check if it's registered and not isHidden
+            // Get the AlgorithmFactory for this Alg to check if it's registered and not isHidden,
+            // the registry changes when the graph gets reloaded
+            AlgorithmRegistry algReg = computer.getAlgorithmRegistry();
             AlgorithmFactory algFac = algReg.getAlgByURLSuffix(algName);
             if (algFac == null) {
                 log.warning("Unsupported algorithm " + algName + " requested");
@@ -91,7 +101,7 @@ public class AlgorithmHandler extends RequestHandler {
             }
             // Only now read the request
             final RequestData requestData = algFac.readRequestData(mapper, responder, request);
-            final ComputeRequest req = new ComputeRequest(responder, requestData);
+            final ComputeRequest req = new ComputeRequest(responder, requestData, maxComputeTime);
 
 
             if (req != null) {
@@ -127,4 +137,42 @@ public class AlgorithmHandler extends RequestHandler {
         }
 
     }
+
+    /**
+     * Handles a batch request computing many pairs of points with one algorithm,
+     * the results are streamed back in order of the pairs as they finish.
+     *
+     * @param request HttpRequest
+     * @param algName algorithm name as String
+     * @throws IOException Thrown if error message sending or reading json fails
+     */
+    public void handleBatch(FullHttpRequest request, String algName) throws IOException {
+        try {
+            responder.setFormat(Responder.ResultFormat.fromHeaders(request.headers()));
+            if (computer.isFull()) {
+                responder.writeErrorMessage(ErrorMessage.EBUSY);
+                log.warning("Server had to deny batch request because of OVERLOAD (early)");
+                return;
+            }
+
+            AlgorithmFactory algFac = computer.getAlgorithmRegistry().getAlgByURLSuffix(algName);
+            if (!(algFac instanceof GraphAlgorithmFactory) || !((GraphAlgorithmFactory) algFac).isBatchable()) {
+                log.warning("Unsupported algorithm " + algName + " requested for a batch");
+                responder.writeErrorMessage(ErrorMessage.EUNKNOWNALG, "the algorithm can't compute batches");
+                return;
+            }
+            // stops reading as soon as there are more than maxBatchPairs pairs
+            List<RequestData> requests = ((GraphAlgorithmFactory) algFac).readBatchRequestData(mapper, responder,
+                    request, maxBatchPairs);
+            if (requests == null) {
+                return;
+            }
+            log.fine("Batch of " + requests.size() + " pairs for \"" + algName + "\"");
+            new BatchStream(responder, computer, requests, maxComputeTime, batchWindow).start();
+        } catch (JsonParseException e) {
+            responder.writeErrorMessage(ErrorMessage.EBADJSON, e.getMessage());
+        } finally {
+            request.release();
+        }
+    }
 }
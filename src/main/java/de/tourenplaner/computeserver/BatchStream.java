@@ -0,0 +1,252 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.computeserver;
+
+import de.tourenplaner.computecore.ComputeCore;
+import de.tourenplaner.computecore.ComputeRequest;
+import de.tourenplaner.computecore.RequestData;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpHeaders.Names;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.LastHttpContent;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+
+/**
+ * Computes the requests of a batch on the ComputeCore and streams their results
+ * back in the order of the requests as a chunked response.<br /><br />
+ *
+ * At most window requests are computed at the same time, whenever one finishes the
+ * next one is submitted so a batch never floods the queue and other clients still
+ * get their share of the ComputeThreads. Every request gets its own Responder that
+ * hands the result or error to the stream instead of writing a response. Results
+ * finishing early are held back until all results before them were written.
+ * With JSON every result is written as one line (NDJSON), with SMILE every result
+ * is a complete SMILE document.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class BatchStream {
+
+    private static Logger log = Logger.getLogger("de.tourenplaner.server");
+
+    public static final String NDJSON_CONTENT_TYPE = "application/x-ndjson; charset=UTF-8";
+
+    /**
+     * Responder of a single request of the batch
+     */
+    private static final class PairResponder extends Responder {
+        private final BatchStream stream;
+        private final int index;
+
+        PairResponder(BatchStream stream, int index) {
+            super(stream.responder);
+            this.stream = stream;
+            this.index = index;
+        }
+
+        @Override
+        public void writeComputeResult(ComputeRequest work, HttpResponseStatus status) throws IOException {
+            ByteBuf content = Unpooled.buffer();
+            OutputStream resultStream = new ByteBufOutputStream(content);
+            try {
+                work.getResultObject().writeToStream(getFormat(), resultStream);
+                stream.endResult(resultStream);
+            } catch (IOException e) {
+                content.release();
+                throw e;
+            } catch (RuntimeException e) {
+                content.release();
+                throw e;
+            }
+            stream.complete(index, content);
+        }
+
+        @Override
+        public void writeErrorMessage(ErrorMessage errorMessage, String details) throws IOException {
+            log.info("Batch request " + index + " failed: " + errorMessage.message + " --- " + details);
+            ByteBuf content = Unpooled.buffer();
+            OutputStream resultStream = new ByteBufOutputStream(content);
+            try {
+                writeErrorObject(resultStream, errorMessage, details);
+                stream.endResult(resultStream);
+            } catch (IOException e) {
+                // the following results still have to be written, skip this one
+                log.warning("Couldn't write error of batch request " + index + ": " + e.getMessage());
+                content.release();
+                content = Unpooled.EMPTY_BUFFER;
+            }
+            stream.complete(index, content);
+        }
+    }
+
+    private final Responder responder;
+    private final ComputeCore computer;
+    private final List<RequestData> requests;
+    private final long maxComputeTime;
+    private final int window;
+
+    // results that finished before all results in front of them, guarded by this
+    private final ByteBuf[] results;
+    private int nextToWrite;
+    private int nextToSubmit;
+    private int running;
+    private boolean busy;
+
+    /**
+     * Creates a BatchStream for the given requests answering on the connection
+     * of the given Responder
+     *
+     * @param responder      the Responder of the connection
+     * @param computer       the ComputeCore computing the requests
+     * @param requests       the requests in the order their results are written
+     * @param maxComputeTime the timeout of every single request in milliseconds, values <= 0 mean none
+     * @param window         the maximum number of requests submitted at the same time
+     */
+    public BatchStream(Responder responder, ComputeCore computer, List<RequestData> requests,
+                       long maxComputeTime, int window) {
+        this.responder = responder;
+        this.computer = computer;
+        this.requests = requests;
+        this.maxComputeTime = maxComputeTime;
+        this.window = Math.max(1, window);
+        this.results = new ByteBuf[requests.size()];
+        this.nextToWrite = 0;
+        this.nextToSubmit = 0;
+        this.running = 0;
+        this.busy = false;
+    }
+
+    /**
+     * Writes the response header and submits the first requests
+     */
+    public void start() {
+        HttpResponse response = new DefaultHttpResponse(HTTP_1_1, HttpResponseStatus.OK);
+        response.headers().set("Access-Control-Allow-Origin", "*");
+        response.headers().set(Names.CONTENT_TYPE, (responder.getFormat() == Responder.ResultFormat.JSON) ?
+                NDJSON_CONTENT_TYPE : responder.getFormat().getContentType());
+        HttpHeaders.setTransferEncodingChunked(response);
+        responder.getChannel().write(response);
+        if (requests.isEmpty()) {
+            finish();
+            return;
+        }
+        submitMore();
+    }
+
+    /**
+     * Terminates a result written to the stream, JSON results are separated by newlines
+     */
+    private void endResult(OutputStream resultStream) throws IOException {
+        if (responder.getFormat() == Responder.ResultFormat.JSON) {
+            resultStream.write('\n');
+        }
+        resultStream.flush();
+    }
+
+    /**
+     * Submits requests until the window is full, requests the ComputeCore has no
+     * room for are tried again when the next one of ours finished. If none of ours
+     * is running the server is too busy and the remaining requests fail with EBUSY.
+     */
+    private void submitMore() {
+        int rejected = -1;
+        synchronized (this) {
+            while (running < window && nextToSubmit < requests.size() && !busy) {
+                if (responder.getCancellation().isCancelled()) {
+                    // the client is gone, don't compute the rest
+                    return;
+                }
+                int index = nextToSubmit;
+                ComputeRequest req = new ComputeRequest(new PairResponder(this, index), requests.get(index),
+                        maxComputeTime);
+                if (!computer.submit(req)) {
+                    if (running == 0) {
+                        busy = true;
+                        rejected = index;
+                    }
+                    break;
+                }
+                nextToSubmit++;
+                running++;
+            }
+        }
+        if (rejected >= 0) {
+            log.warning("Server had to deny the remaining " + (requests.size() - rejected)
+                    + " batch requests because of OVERLOAD");
+            for (int i = rejected; i < requests.size(); i++) {
+                try {
+                    new PairResponder(this, i).writeErrorMessage(ErrorMessage.EBUSY);
+                } catch (IOException e) {
+                    // the PairResponder doesn't throw when writing errors
+                }
+            }
+        }
+    }
+
+    /**
+     * Stores the result of the request with the given index and writes all
+     * results that are next in order
+     */
+    private void complete(int index, ByteBuf content) {
+        boolean done;
+        synchronized (this) {
+            if (index < nextToSubmit) {
+                running--;
+            }
+            results[index] = content;
+            Channel channel = responder.getChannel();
+            // the lock keeps the order of the writes on the channel
+            while (nextToWrite < results.length && results[nextToWrite] != null) {
+                channel.write(new DefaultHttpContent(results[nextToWrite]));
+                results[nextToWrite] = null;
+                nextToWrite++;
+            }
+            channel.flush();
+            done = nextToWrite == results.length;
+        }
+        if (done) {
+            finish();
+        } else {
+            submitMore();
+        }
+    }
+
+    /**
+     * Ends the chunked response
+     */
+    private void finish() {
+        ChannelFuture future = responder.getChannel().writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+        if (!responder.isKeepAlive()) {
+            future.addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+}
@@ -33,9 +33,14 @@ public class CLIParser {
         return dumpgraph;
     }
 
+    public boolean contractgraph() {
+        return contractgraph;
+    }
+
     private String configFilePath;
 	private boolean readFromDumpedGraph;
     private boolean dumpgraph;
+    private boolean contractgraph;
 
 	public CLIParser(String[] args) {
 		for (int i = 0; i < args.length; i++) {
@@ -46,6 +51,8 @@ public class CLIParser {
                 readFromDumpedGraph = true;
             } else if ("dumpgraph".equals(args[i])) {
 				dumpgraph = true;
+			} else if ("contractgraph".equals(args[i])) {
+				contractgraph = true;
 			}
 		}
 	}
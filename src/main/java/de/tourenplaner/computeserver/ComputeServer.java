@@ -23,18 +23,29 @@ import de.tourenplaner.algorithms.bbbundle.BBBundleFactory;
 import de.tourenplaner.algorithms.coregraph.CoreGraphFactory;
 import de.tourenplaner.algorithms.coregraph.UpDownFactory;
 import de.tourenplaner.algorithms.coregraph.WayByNodeIdsFactory;
+import de.tourenplaner.algorithms.distmatrix.DistMatrixFactory;
+import de.tourenplaner.algorithms.distmatrix.DistMatrixWorkers;
+import de.tourenplaner.algorithms.distmatrix.OneToAllFactory;
 import de.tourenplaner.algorithms.drawcore.DrawCoreFactory;
+import de.tourenplaner.algorithms.isochrone.IsochroneFactory;
+import de.tourenplaner.algorithms.npcomplete.ConstrainedSPFactory;
 import de.tourenplaner.algorithms.npcomplete.TravelingSalesmenFactory;
+import de.tourenplaner.algorithms.shortestpath.LegCache;
 import de.tourenplaner.algorithms.shortestpath.ShortestPathBDCHFactory;
 import de.tourenplaner.computecore.AlgorithmManagerFactory;
 import de.tourenplaner.computecore.AlgorithmRegistry;
 import de.tourenplaner.computecore.ComputeCore;
+import de.tourenplaner.computecore.ExecutorComputeCore;
 import de.tourenplaner.computecore.SharingAMFactory;
 import de.tourenplaner.config.ConfigManager;
 import de.tourenplaner.graphrep.*;
+import de.tourenplaner.graphrep.contraction.Contractor;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -45,18 +56,28 @@ import java.util.logging.XMLFormatter;
  */
 public class ComputeServer {
 
-    private static void registerAlgorithms(AlgorithmRegistry reg, GraphRep graph) {
+    private static void registerAlgorithms(AlgorithmRegistry reg, GraphRep graph, DistMatrixWorkers matrixWorkers,
+                                           LegCache legCache) {
         // reg.registerAlgorithm(new ShortestPathFactory(graph));
-        reg.registerAlgorithm(new TravelingSalesmenFactory(graph));
-        reg.registerAlgorithm(new ShortestPathBDCHFactory(graph));
+        reg.registerAlgorithm(new TravelingSalesmenFactory(graph, matrixWorkers, legCache));
+        reg.registerAlgorithm(new DistMatrixFactory(graph, matrixWorkers,
+                ConfigManager.getInstance().getEntryInt("distmatrixmaxpoints", 2000)));
+        reg.registerAlgorithm(new ShortestPathBDCHFactory(graph, legCache));
         //reg.registerAlgorithm(new ShortestPathCHFactory(graph));
         reg.registerAlgorithm(new NNSearchFactory(graph));
-        //reg.registerAlgorithm(new ConstrainedSPFactory(graph));
         reg.registerAlgorithm(new UpDownFactory(graph));
         reg.registerAlgorithm(new WayByNodeIdsFactory(graph));
         reg.registerAlgorithm(new CoreGraphFactory(graph));
         reg.registerAlgorithm(new BBBundleFactory(graph));
         reg.registerAlgorithm(new DrawCoreFactory(graph));
+        if (graph.getSweepGraph() != null) {
+            reg.registerAlgorithm(new OneToAllFactory(graph));
+            reg.registerAlgorithm(new IsochroneFactory(graph));
+        }
+        // Without shortcuts constrained routing is only fast enough with the landmark potentials
+        if (graph.getLandmarks() != null) {
+            reg.registerAlgorithm(new ConstrainedSPFactory(graph));
+        }
     }
 
     private static Logger log = Logger.getLogger("de.tourenplaner");
@@ -69,6 +90,47 @@ public class ComputeServer {
         return graphName + ".dat";
     }
 
+    /**
+     * Reads the text graph and renumbers its nodes by locality and computes its
+     * landmarks if configured so, as graphs read from text get dumped the dumps
+     * are renumbered and contain the landmarks as well
+     */
+    private static GraphRep readTextGraph(String graphName, GraphStorage storage) throws IOException {
+        GraphRep graph = new GraphRepStandardReader(false, storage).createGraphRep(new FileInputStream(graphName));
+        return renumberAndSetupLandmarks(graph);
+    }
+
+    /**
+     * Reads the text graph which has no ranks and shortcuts yet and contracts it,
+     * afterwards it's treated like a contracted text graph
+     */
+    private static GraphRep contractTextGraph(String graphName, GraphStorage storage) throws IOException {
+        ConfigManager cm = ConfigManager.getInstance();
+        GraphRep plain = new GraphRepStandardReader(false, storage).createGraphRep(new FileInputStream(graphName));
+        Contractor contractor = new Contractor(plain, storage, Runtime.getRuntime().availableProcessors());
+        contractor.setHopLimit(cm.getEntryInt("contracthoplimit", 5));
+        contractor.setSettledLimit(cm.getEntryInt("contractsettledlimit", 1000));
+        contractor.setPriorityWeights(cm.getEntryInt("contractedgediffweight", 2),
+                cm.getEntryInt("contractdeletedweight", 1), cm.getEntryInt("contractlevelweight", 1));
+        GraphRep graph = contractor.contract();
+        log.info("Contracted graph: " + contractor.getStats());
+        return renumberAndSetupLandmarks(graph);
+    }
+
+    private static GraphRep renumberAndSetupLandmarks(GraphRep graph) {
+        ConfigManager cm = ConfigManager.getInstance();
+        if (cm.getEntryBool("renumbernodes", false)) {
+            log.info("Renumbering nodes by locality");
+            graph.renumberNodesByLocality(cm.getEntryInt("renumbercoresize", 20000), Runtime.getRuntime().availableProcessors());
+        }
+        int landmarks = cm.getEntryInt("landmarks", 0);
+        if (landmarks > 0) {
+            log.info("Computing " + landmarks + " landmarks");
+            graph.setupLandmarks(landmarks, Runtime.getRuntime().availableProcessors());
+        }
+        return graph;
+    }
+
     private static Map<String, Object> getServerInfo(AlgorithmRegistry reg) {
         Map<String, Object> info = new HashMap<String, Object>(4);
         info.put("version", new Float(1.0));
@@ -98,6 +160,8 @@ public class ComputeServer {
             // if the alg is a graph algorithm it may additionally have pointconstraints
             if (alg instanceof GraphAlgorithmFactory) {
                 algInfo.put("pointconstraints", ((GraphAlgorithmFactory) alg).getPointConstraints());
+                // clients may send pairs of points to /batch + urlsuffix
+                algInfo.put("batchable", ((GraphAlgorithmFactory) alg).isBatchable());
             }
             algList.add(algInfo);
         }
@@ -125,7 +189,7 @@ public class ComputeServer {
             }
         } else {
             log.severe("Usage: \n\tjava -jar tourenplaner-server.jar -c \"config file\" " +
-                    "[-f dump|text] [dumpgraph]\nDefaults are: builtin configuration, -f text");
+                    "[-f dump|text] [dumpgraph|contractgraph]\nDefaults are: builtin configuration, -f text");
         }
         ConfigManager cm = ConfigManager.getInstance();
         graphFilename = cm.getEntryString("graphfilepath", System.getProperty("user.home") + "/germany.txt");
@@ -140,15 +204,18 @@ public class ComputeServer {
         } catch (IOException ex) {
             log.log(Level.WARNING, "Couldn't open log file " + logFilename, ex);
         }
-        GraphRepWriter gWriter = new GraphRepBinaryWriter();
+        GraphRepWriter gWriter = new GraphRepMappedWriter();
+        // Where to keep graphs we can't map from a dump, offheap keeps them away from the garbage collector
+        GraphStorage storage = GraphStorage.fromConfigName(cm.getEntryString("graphstorage", "heap"));
+        log.info("Using " + storage.getConfigName() + " graph storage");
 
         // now that we have a config (or not) we look if we only need to dump our graph and then exit
         // TODO WARNING Properly handle graph formats
         if (cliParser.dumpgraph()) {
             log.info("Dumping Graph...");
             try {
-                graph = new GraphRepStandardReader(false).createGraphRep(new FileInputStream(graphFilename));
-                gWriter.writeGraphRep(new FileOutputStream(dumpName(graphFilename)), graph);
+                graph = readTextGraph(graphFilename, storage);
+                writeDump(gWriter, graph, graphFilename);
             } catch (IOException e) {
                 log.severe("IOError dumping graph to file: " + dumpName(graphFilename) + '\n' + e.getMessage());
             } finally {
@@ -156,41 +223,31 @@ public class ComputeServer {
             }
         }
 
-        //TODO there's an awful lot of duplicate logic and three layers of exception throwing code wtf
-        try {
-            if (cliParser.loadTextGraph()) {
-                graph = new GraphRepStandardReader(false).createGraphRep(new FileInputStream(graphFilename));
-            } else {
-                try {
-                    graph = new GraphRepBinaryReader().createGraphRep(new FileInputStream(dumpName(graphFilename)));
-                } catch (InvalidClassException e) {
-                    log.warning("Dumped Graph version does not match the required version: " + e.getMessage());
-                    log.info("Falling back to text reading from file: " + graphFilename + " (path provided by config file)");
-                    graph = new GraphRepStandardReader(false).createGraphRep(new FileInputStream(graphFilename));
-
-
-                    if (graph != null && new File(dumpName(graphFilename)).delete()) {
-                        log.info("Graph successfully read. Now replacing old dumped graph");
-                        try {
-                            gWriter.writeGraphRep(new FileOutputStream(dumpName(graphFilename)), graph);
-                        } catch (IOException e1) {
-                            log.warning("writing dump failed (but graph loaded):\n" + e1.getMessage());
-                        }
-                    }
-                } catch (IOException e) {
-                    log.log(Level.WARNING, "loading dumped graph failed", e);
-                    log.info("Falling back to text reading from file " + graphFilename + " (path provided by config file)");
-                    graph = new GraphRepStandardReader(false).createGraphRep(new FileInputStream(graphFilename));
-                    log.info("Graph successfully read. Now writing new dump");
-                    gWriter.writeGraphRep(new FileOutputStream(dumpName(graphFilename)), graph);
-                }
+        if (cliParser.contractgraph()) {
+            log.info("Contracting Graph...");
+            try {
+                graph = contractTextGraph(graphFilename, storage);
+                writeDump(gWriter, graph, graphFilename);
+            } catch (IOException e) {
+                log.severe("IOError contracting graph to file: " + dumpName(graphFilename) + '\n' + e.getMessage());
+            } finally {
+                System.exit(0);
             }
+        }
 
+        try {
+            graph = loadGraph(cliParser.loadTextGraph(), graphFilename, storage, gWriter);
 
             if (graph == null) {
                 log.severe("Reading graph failed");
                 System.exit(1);
             }
+            setupMissingLandmarks(graph);
+            // With a metric file only the customized graph is kept, it shares the node data
+            MetricCustomizer customizer = createCustomizer(graph, storage);
+            if (customizer != null) {
+                graph = customizeGraph(customizer);
+            }
 
             // The GraphRep uses a BoundingBoxPriorityTree for NNSearch
             // now which should be fast enough but we can change the searcher if
@@ -204,27 +261,367 @@ public class ComputeServer {
 
             //System.gc();
 
+            prepareGraph(graph);
+            DistMatrixWorkers matrixWorkers = createMatrixWorkers(graph);
+
+            // Cache of computed legs shared by all requests, it survives reloads but
+            // is invalidated by them
+            LegCache legCache = null;
+            long legCachePoints = cm.getEntryLong("legcachepoints", 2000000);
+            if (legCachePoints > 0) {
+                log.info("Caching legs with up to " + legCachePoints + " points");
+                legCache = new LegCache(graph, legCachePoints);
+            }
 
             // Register Algorithms
             AlgorithmRegistry reg = new AlgorithmRegistry();
-            registerAlgorithms(reg, graph);
+            registerAlgorithms(reg, graph, matrixWorkers, legCache);
 
 
             // Create our ComputeCore that manages all ComputeThreads
-            ComputeCore comCore = new ComputeCore(reg, cm.getEntryInt("threads", 16), cm.getEntryInt("queuelength", 32));
+            // or the executor running the computations
+            ComputeCore comCore;
+            if ("executor".equals(cm.getEntryString("computemode", "threads"))) {
+                comCore = new ExecutorComputeCore(reg, cm.getEntryInt("threads", 16),
+                        cm.getEntryInt("statepools", Runtime.getRuntime().availableProcessors()),
+                        cm.getEntryInt("queuelength", 32));
+            } else {
+                comCore = new ComputeCore(reg, cm.getEntryInt("threads", 16), cm.getEntryInt("queuelength", 32));
+            }
             AlgorithmManagerFactory amFac = new SharingAMFactory(graph);
             log.info("Graph loaded rank range is 0-" + graph.getMaxRank());
-            comCore.start(amFac);
+            comCore.start(amFac, releaseAction(matrixWorkers));
 
             // Create ServerInfo object
             Map<String, Object> serverInfo = getServerInfo(reg);
 
-            new HttpComputeServer(cm, serverInfo, comCore);
+            // Reloads the graph when an admin asks for it, the old one keeps serving meanwhile
+            GraphReloader reloader = null;
+            if (cm.getEntryBool("adminreload", false)) {
+                reloader = new BackgroundGraphReloader(comCore, cliParser.loadTextGraph(), graphFilename, storage, gWriter,
+                        legCache, customizer);
+            }
+
+            // The server blocks this thread until shutdown, drop the first generation
+            // so it can be collected once a reload replaced it
+            graph = null;
+            customizer = null;
+            matrixWorkers = null;
+            reg = null;
+            amFac = null;
+            new HttpComputeServer(cm, serverInfo, comCore, reloader, legCache);
 
         } catch (IOException e) {
-            log.log(Level.SEVERE, "loading text graph failed", e);
+            log.log(Level.SEVERE, "loading graph failed", e);
         } catch (InterruptedException e) {
             log.log(Level.SEVERE, "Main Thread interrupted", e);
         }
     }
+
+    /**
+     * Loads the graph from text or from its dump, writing a new dump if the
+     * dump can't be used
+     *
+     * @return the graph or null if reading failed
+     */
+    private static GraphRep loadGraph(boolean loadTextGraph, String graphFilename, GraphStorage storage,
+                                      GraphRepWriter gWriter) throws IOException {
+        //TODO there's an awful lot of duplicate logic and three layers of exception throwing code wtf
+        GraphRep graph;
+        if (loadTextGraph) {
+            graph = readTextGraph(graphFilename, storage);
+        } else {
+            try {
+                graph = new GraphRepMappedReader(storage).createGraphRep(new FileInputStream(dumpName(graphFilename)));
+            } catch (InvalidClassException e) {
+                log.warning("Dumped Graph version does not match the required version: " + e.getMessage());
+                log.info("Falling back to text reading from file: " + graphFilename + " (path provided by config file)");
+                graph = readTextGraph(graphFilename, storage);
+
+
+                if (graph != null) {
+                    log.info("Graph successfully read. Now replacing old dumped graph");
+                    try {
+                        writeDump(gWriter, graph, graphFilename);
+                    } catch (IOException e1) {
+                        log.warning("writing dump failed (but graph loaded):\n" + e1.getMessage());
+                    }
+                }
+            } catch (IOException e) {
+                log.log(Level.WARNING, "loading dumped graph failed", e);
+                log.info("Falling back to text reading from file " + graphFilename + " (path provided by config file)");
+                graph = readTextGraph(graphFilename, storage);
+                log.info("Graph successfully read. Now writing new dump");
+                writeDump(gWriter, graph, graphFilename);
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Writes the dump to a temporary file first and then replaces the old dump with it,
+     * a graph of an older generation may still be mapped from the old dump
+     */
+    private static void writeDump(GraphRepWriter gWriter, GraphRep graph, String graphFilename) throws IOException {
+        File dumpFile = new File(dumpName(graphFilename));
+        File tempFile = new File(dumpName(graphFilename) + ".tmp");
+        gWriter.writeGraphRep(new FileOutputStream(tempFile), graph);
+        Files.move(tempFile.toPath(), dumpFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Dumps written before landmarks were configured don't have them, they are
+     * only stored in the next dump written from the text graph
+     */
+    private static void setupMissingLandmarks(GraphRep graph) {
+        int landmarks = ConfigManager.getInstance().getEntryInt("landmarks", 0);
+        if (landmarks > 0 && graph.getLandmarks() == null) {
+            log.info("Dumped graph has no landmarks, computing " + landmarks + " landmarks");
+            graph.setupLandmarks(landmarks, Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    /**
+     * Creates the MetricCustomizer for the loaded graph if a metric file is configured,
+     * returns null otherwise. This needs to happen before prepareGraph() as compact graphs
+     * can't be customized, the graph isn't needed afterwards
+     *
+     * @throws FileNotFoundException if the configured metric file doesn't exist
+     */
+    private static MetricCustomizer createCustomizer(GraphRep graph, GraphStorage storage) throws IOException {
+        ConfigManager cm = ConfigManager.getInstance();
+        String metricFilename = cm.getEntryString("metricfilepath", "");
+        if (metricFilename.isEmpty()) {
+            return null;
+        }
+        checkMetricFile(metricFilename);
+        return new MetricCustomizer(graph, storage, Runtime.getRuntime().availableProcessors(),
+                cm.getEntryDouble("metricmaxfillratio", 4.0));
+    }
+
+    private static void checkMetricFile(String metricFilename) throws FileNotFoundException {
+        if (!new File(metricFilename).isFile()) {
+            throw new FileNotFoundException("Metric file " + metricFilename + " doesn't exist");
+        }
+    }
+
+    /**
+     * Customizes the customizer's graph with the weights of the configured metric file
+     *
+     * @throws FileNotFoundException if the metric file doesn't exist
+     */
+    private static GraphRep customizeGraph(MetricCustomizer customizer) throws IOException {
+        String metricFilename = ConfigManager.getInstance().getEntryString("metricfilepath", "");
+        checkMetricFile(metricFilename);
+        log.info("Customizing graph with metric from " + metricFilename);
+        return customizer.customize(customizer.readWeights(new FileInputStream(metricFilename)));
+    }
+
+    /**
+     * Applies the configured in memory changes to a loaded or customized graph,
+     * these are all derived from the dists
+     */
+    private static void prepareGraph(GraphRep graph) {
+        ConfigManager cm = ConfigManager.getInstance();
+        // Trades some speed of the graph accessors for memory, this needs to
+        // happen after the dumps are written as compact graphs can't be dumped
+        if (cm.getEntryBool("compactgraph", false)) {
+            log.info("Compacting graph");
+            graph.compact();
+        }
+
+        // The compact upward search graph speeds up the CH searches but needs
+        // about two additional ints per edge
+        if (cm.getEntryBool("searchgraph", true)) {
+            log.info("Building search graph");
+            graph.setupSearchGraph();
+        }
+
+        // The compact downward sweep graph is needed by the one-to-all searches
+        // and speeds up large TSP distance matrices, it needs about two additional
+        // ints per downward edge
+        if (cm.getEntryBool("sweepgraph", true)) {
+            log.info("Building sweep graph");
+            graph.setupSweepGraph();
+        }
+
+        // Stores the shortcuts between nodes of at least this rank unpacked
+        // so long paths are unpacked by copying, -1 disables it
+        int unpackedShortcutsRank = cm.getEntryInt("unpackedshortcutsrank", -1);
+        if (unpackedShortcutsRank >= 0) {
+            log.info("Unpacking shortcuts above rank " + unpackedShortcutsRank);
+            graph.setupUnpackedShortcuts(unpackedShortcutsRank);
+        }
+
+        // Hub labels answer the distance matrices with merges of two sorted labels instead
+        // of searches, the label sizes and memory needed are logged when building
+        if (cm.getEntryBool("hublabels", false)) {
+            log.info("Building hub labels");
+            graph.setupHubLabels(Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    /**
+     * Creates the threads shared by all requests to compute large distance matrices
+     * in parallel, returns null if they are computed in the request's ComputeThread
+     */
+    private static DistMatrixWorkers createMatrixWorkers(GraphRep graph) {
+        // 1 or less computes them in the request's ComputeThread
+        int matrixThreads = ConfigManager.getInstance().getEntryInt("matrixthreads", Runtime.getRuntime().availableProcessors());
+        DistMatrixWorkers matrixWorkers = null;
+        if (matrixThreads > 1) {
+            log.info("Using " + matrixThreads + " threads for distance matrices");
+            matrixWorkers = new DistMatrixWorkers(graph, matrixThreads);
+        }
+        return matrixWorkers;
+    }
+
+    /**
+     * Creates the action run when the algorithm generation using the given
+     * workers was replaced and drained
+     */
+    private static Runnable releaseAction(final DistMatrixWorkers matrixWorkers) {
+        if (matrixWorkers == null) {
+            return null;
+        }
+        return new Runnable() {
+            @Override
+            public void run() {
+                matrixWorkers.shutdown();
+            }
+        };
+    }
+
+    /**
+     * Loads the graph or customizes the metric again on a background thread and
+     * switches the ComputeCore to the new graph
+     */
+    private static final class BackgroundGraphReloader implements GraphReloader {
+        private final ComputeCore comCore;
+        private final boolean loadTextGraph;
+        private final String graphFilename;
+        private final GraphStorage storage;
+        private final GraphRepWriter gWriter;
+        private final LegCache legCache;
+        private final AtomicBoolean reloading;
+        // The customizer of the loaded graph, null without metric file. It's replaced by
+        // full reloads and read by the HTTP threads
+        private volatile MetricCustomizer customizer;
+
+        BackgroundGraphReloader(ComputeCore comCore, boolean loadTextGraph, String graphFilename,
+                                GraphStorage storage, GraphRepWriter gWriter, LegCache legCache,
+                                MetricCustomizer customizer) {
+            this.comCore = comCore;
+            this.loadTextGraph = loadTextGraph;
+            this.graphFilename = graphFilename;
+            this.storage = storage;
+            this.gWriter = gWriter;
+            this.legCache = legCache;
+            this.reloading = new AtomicBoolean(false);
+            this.customizer = customizer;
+        }
+
+        @Override
+        public boolean startReload() {
+            return start(false);
+        }
+
+        @Override
+        public boolean canReloadMetric() {
+            return customizer != null;
+        }
+
+        @Override
+        public boolean startMetricReload() {
+            return canReloadMetric() && start(true);
+        }
+
+        private boolean start(final boolean metricOnly) {
+            // Only one new generation at a time, the previous one must be gone too
+            // so there are never more than two generations in memory
+            if (comCore.isDraining() || !reloading.compareAndSet(false, true)) {
+                return false;
+            }
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (metricOnly) {
+                            reloadMetric();
+                        } else {
+                            reload();
+                        }
+                    } catch (Exception e) {
+                        log.log(Level.SEVERE, "Reloading the " + (metricOnly ? "metric" : "graph")
+                                + " failed, keeping the old one", e);
+                    } finally {
+                        reloading.set(false);
+                    }
+                }
+            }, "GraphReloader");
+            thread.setDaemon(true);
+            thread.start();
+            return true;
+        }
+
+        @Override
+        public boolean isReloading() {
+            return reloading.get();
+        }
+
+        @Override
+        public boolean isDraining() {
+            return comCore.isDraining();
+        }
+
+        @Override
+        public int getGeneration() {
+            return comCore.getGeneration().getNumber();
+        }
+
+        private void reload() throws IOException {
+            log.info("Reloading graph from " + graphFilename);
+            GraphRep graph = loadGraph(loadTextGraph, graphFilename, storage, gWriter);
+            if (graph == null) {
+                throw new IOException("Reading graph failed");
+            }
+            setupMissingLandmarks(graph);
+            MetricCustomizer newCustomizer = createCustomizer(graph, storage);
+            publish(newCustomizer == null ? graph : customizeGraph(newCustomizer));
+            customizer = newCustomizer;
+            log.info("Graph reloaded rank range is 0-" + graph.getMaxRank());
+        }
+
+        /**
+         * Customizes the loaded graph with the current metric file, only the structures
+         * derived from the dists are built again
+         */
+        private void reloadMetric() throws IOException {
+            publish(customizeGraph(customizer));
+            log.info("Metric reloaded");
+        }
+
+        /**
+         * Prepares the graph and switches the ComputeCore to it
+         */
+        private void publish(GraphRep graph) {
+            prepareGraph(graph);
+            DistMatrixWorkers matrixWorkers = createMatrixWorkers(graph);
+            AlgorithmRegistry reg = new AlgorithmRegistry();
+            registerAlgorithms(reg, graph, matrixWorkers, legCache);
+            try {
+                comCore.reload(reg, new SharingAMFactory(graph), releaseAction(matrixWorkers));
+            } catch (IllegalStateException e) {
+                if (matrixWorkers != null) {
+                    matrixWorkers.shutdown();
+                }
+                throw e;
+            }
+            // The legs of the old graph are useless now, requests still running on
+            // it can't add them again as the cache checks the graph
+            if (legCache != null) {
+                legCache.invalidate(graph);
+            }
+        }
+    }
 }
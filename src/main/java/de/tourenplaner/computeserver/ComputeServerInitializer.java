@@ -16,6 +16,7 @@
 
 package de.tourenplaner.computeserver;
 
+import de.tourenplaner.algorithms.shortestpath.LegCache;
 import de.tourenplaner.computecore.ComputeCore;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
@@ -44,9 +45,16 @@ public class ComputeServerInitializer extends ChannelInitializer<SocketChannel>
 
 	private final Map<String, Object> serverInfo;
 
-	public ComputeServerInitializer(ComputeCore comCore, Map<String, Object> serverInfo) {
+	private final GraphReloader reloader;
+
+	private final LegCache legCache;
+
+	public ComputeServerInitializer(ComputeCore comCore, Map<String, Object> serverInfo, GraphReloader reloader,
+	                                LegCache legCache) {
 		this.cCore = comCore;
 		this.serverInfo = serverInfo;
+		this.reloader = reloader;
+		this.legCache = legCache;
 	}
 
 	@Override
@@ -64,6 +72,6 @@ public class ComputeServerInitializer extends ChannelInitializer<SocketChannel>
 		pipeline.addLast("aggregator", new HttpObjectAggregator(10485760));
 		pipeline.addLast("chunkedwirter", new ChunkedWriteHandler());
 		pipeline.addLast("corshandler", new CorsHandler(corsConfig));
-		pipeline.addLast(new MasterHandler(cCore, serverInfo));
+		pipeline.addLast(new MasterHandler(cCore, serverInfo, reloader, legCache));
 	}
 }
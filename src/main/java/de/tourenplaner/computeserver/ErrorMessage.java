@@ -46,6 +46,10 @@ public enum ErrorMessage {
             EBADJSON,
             "JSON user object was not correct (\"status\" was not a valid value)"),
 
+    EBADJSON_PAIRS (
+            EBADJSON,
+            "pairs must be an array of arrays holding two points each"),
+
     // compute errors
 
     ECOMPUTE (
@@ -58,6 +62,15 @@ public enum ErrorMessage {
             "This server is currently too busy to fulfill the request",
             HttpResponseStatus.SERVICE_UNAVAILABLE),
 
+    ETOOMANYPAIRS (
+            "The batch contains more pairs of points than this server accepts",
+            HttpResponseStatus.BAD_REQUEST),
+
+
+    ETIMEOUT (
+            "The computation took too long and was cancelled",
+            HttpResponseStatus.SERVICE_UNAVAILABLE),
+
 
     EINTERNAL (
             "An internal server error occurred",
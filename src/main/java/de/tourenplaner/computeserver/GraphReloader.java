@@ -0,0 +1,73 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package de.tourenplaner.computeserver;
+
+/**
+ * Replaces the graph the server computes on without stopping it, used by the AdminHandler
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public interface GraphReloader {
+
+    /**
+     * Starts loading the graph again in the background, the ComputeCore switches to it
+     * once it's ready. Fails if a reload is already running or the graph replaced by the
+     * last reload is still in use.
+     *
+     * @return true if the reload was started
+     */
+    boolean startReload();
+
+    /**
+     * Checks whether the metric can be reloaded without the graph, that needs a
+     * configured metric file
+     *
+     * @return
+     */
+    boolean canReloadMetric();
+
+    /**
+     * Starts customizing the loaded graph with the metric file again in the background,
+     * only the structures derived from the dists are built again. Fails like startReload()
+     * and if the metric can't be reloaded.
+     *
+     * @return true if the reload was started
+     */
+    boolean startMetricReload();
+
+    /**
+     * Checks whether a reload is running
+     *
+     * @return
+     */
+    boolean isReloading();
+
+    /**
+     * Checks whether requests on the graph replaced by the last reload are still running
+     *
+     * @return
+     */
+    boolean isDraining();
+
+    /**
+     * Gets the number of the algorithm generation currently used, 0 before the first reload
+     *
+     * @return
+     */
+    int getGeneration();
+}
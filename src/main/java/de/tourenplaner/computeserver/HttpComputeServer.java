@@ -16,6 +16,7 @@
 
 package de.tourenplaner.computeserver;
 
+import de.tourenplaner.algorithms.shortestpath.LegCache;
 import de.tourenplaner.computecore.ComputeCore;
 import de.tourenplaner.config.ConfigManager;
 import io.netty.bootstrap.ServerBootstrap;
@@ -45,7 +46,8 @@ import java.util.Map;
  */
 public class HttpComputeServer {
 
-    public HttpComputeServer(ConfigManager cm, Map<String, Object> serverInfo, ComputeCore comCore) throws InterruptedException {
+    public HttpComputeServer(ConfigManager cm, Map<String, Object> serverInfo, ComputeCore comCore, GraphReloader reloader,
+                             LegCache legCache) throws InterruptedException {
 
 	    // Configure the server.
 	    EventLoopGroup bossGroup = new NioEventLoopGroup(1);
@@ -56,7 +58,7 @@ public class HttpComputeServer {
 		    b.group(bossGroup, workerGroup)
 				    .channel(NioServerSocketChannel.class)
 				    .handler(new LoggingHandler(LogLevel.INFO))
-				    .childHandler(new ComputeServerInitializer(comCore, serverInfo));
+				    .childHandler(new ComputeServerInitializer(comCore, serverInfo, reloader, legCache));
 
 		    Channel ch = b.bind(cm.getEntryInt("httpport", 8080)).sync().channel();
 		    ch.closeFuture().sync();
@@ -16,6 +16,7 @@
 
 package de.tourenplaner.computeserver;
 
+import de.tourenplaner.algorithms.shortestpath.LegCache;
 import de.tourenplaner.computecore.ComputeCore;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
@@ -49,16 +50,22 @@ public class MasterHandler  extends ChannelInboundHandlerAdapter {
 
     private AlgorithmHandler algHandler;
 
+    private AdminHandler adminHandler;
+
     /**
      * Constructs a new RequestHandler using the given ComputeCore and
      * ServerInfo
      *
      * @param cCore ComputeCore
      * @param serverInfo String-Object-Map
+     * @param reloader GraphReloader used for /admin/reload and /admin/metric, null if reloading is disabled
+     * @param legCache LegCache reported by /admin/cache, null if it is disabled
      */
-    public MasterHandler(final ComputeCore cCore, final Map<String, Object> serverInfo) {
+    public MasterHandler(final ComputeCore cCore, final Map<String, Object> serverInfo, final GraphReloader reloader,
+                         final LegCache legCache) {
         this.infoHandler = new InfoHandler(serverInfo);
         this.algHandler = new AlgorithmHandler(cCore);
+        this.adminHandler = new AdminHandler(reloader, legCache);
     }
 
 
@@ -67,6 +74,7 @@ public class MasterHandler  extends ChannelInboundHandlerAdapter {
         responder = new Responder(ctx.channel());
         algHandler.setResponder(responder);
         infoHandler.setResponder(responder);
+        adminHandler.setResponder(responder);
     }
 
 
@@ -104,6 +112,23 @@ public class MasterHandler  extends ChannelInboundHandlerAdapter {
             final String algName = queryStringDecoder.path().substring(4);
             algHandler.handleAlg(request, algName);
 
+        } else if (path.startsWith("/batch")) {
+
+            final String algName = queryStringDecoder.path().substring(6);
+            algHandler.handleBatch(request, algName);
+
+        } else if ("/admin/reload".equals(path)) {
+
+            adminHandler.handleReload(request);
+
+        } else if ("/admin/metric".equals(path)) {
+
+            adminHandler.handleMetric(request);
+
+        } else if ("/admin/cache".equals(path)) {
+
+            adminHandler.handleCache(request);
+
         } else {
             // Unknown request, close connection
             log.warning("An unknown URL was requested: " + path);
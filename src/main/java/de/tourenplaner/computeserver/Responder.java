@@ -22,6 +22,7 @@ import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import de.tourenplaner.algorithms.CancellationToken;
 import de.tourenplaner.computecore.ComputeRequest;
 import io.netty.buffer.ByteBufOutputStream;
 import io.netty.channel.Channel;
@@ -79,6 +80,7 @@ public class Responder {
     private static Logger log = Logger.getLogger("de.tourenplaner.server");
 
     private final Channel replyChannel;
+    private final CancellationToken cancellation;
     private ResultFormat format;
     private boolean keepAlive;
 
@@ -91,6 +93,29 @@ public class Responder {
         this.replyChannel = replyChan;
         this.format = null;
         this.keepAlive = false;
+        this.cancellation = new CancellationToken();
+        // Computations for a closed connection are wasted, let them give up
+        replyChan.closeFuture().addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                cancellation.cancel();
+            }
+        });
+    }
+
+
+    /**
+     * Constructs a new Responder writing to the same connection as the given one
+     * with the same format and KeepAlive flag, it shares the connection's
+     * CancellationToken
+     *
+     * @param connection the Responder of the connection
+     */
+    protected Responder(Responder connection) {
+        this.replyChannel = connection.replyChannel;
+        this.format = connection.format;
+        this.keepAlive = connection.keepAlive;
+        this.cancellation = connection.cancellation;
     }
 
 
@@ -103,6 +128,15 @@ public class Responder {
         this.keepAlive = keepAlive;
     }
 
+    /**
+     * Gets the KeepAlive flag
+     *
+     * @return
+     */
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
     /**
      * Set the format to be used for responses
      * @param format
@@ -111,6 +145,15 @@ public class Responder {
         this.format = format;
     }
 
+    /**
+     * Gets the format used for responses
+     *
+     * @return
+     */
+    public ResultFormat getFormat() {
+        return format;
+    }
+
     /**
      * Gets the Channel associated with this Responder
      *
@@ -120,6 +163,16 @@ public class Responder {
         return replyChannel;
     }
 
+    /**
+     * Gets the CancellationToken that is cancelled when the connection
+     * of this Responder is closed
+     *
+     * @return
+     */
+    public CancellationToken getCancellation() {
+        return cancellation;
+    }
+
 
 
     /**
@@ -188,13 +241,7 @@ public class Responder {
 	    FullHttpResponse response = new DefaultFullHttpResponse(HTTP_1_1, errorMessage.status);
 
         OutputStream resultStream = new ByteBufOutputStream(response.content());
-        JsonGenerator gen = format.getMapper().getFactory().createGenerator(resultStream);
-        gen.writeStartObject();
-        gen.writeStringField("errorId", errorMessage.errorId);
-        gen.writeStringField("message", errorMessage.message);
-        gen.writeStringField("details", details);
-        gen.writeEndObject();
-        gen.close();
+        writeErrorObject(resultStream, errorMessage, details);
         resultStream.flush();
 
 
@@ -213,6 +260,25 @@ public class Responder {
     }
 
 
+    /**
+     * Writes the error object sent to the client in the format of this Responder
+     *
+     * @param stream
+     * @param errorMessage error id (see protocol specification), for example ENOTADMIN
+     * @param details more detailed error information
+     * @throws IOException Thrown if writing onto the stream fails
+     */
+    protected void writeErrorObject(OutputStream stream, ErrorMessage errorMessage, String details) throws IOException {
+        JsonGenerator gen = format.getMapper().getFactory().createGenerator(stream);
+        gen.writeStartObject();
+        gen.writeStringField("errorId", errorMessage.errorId);
+        gen.writeStringField("message", errorMessage.message);
+        gen.writeStringField("details", details);
+        gen.writeEndObject();
+        gen.close();
+    }
+
+
     /**
      * Sends an error to the client, the connection will be closed afterwards<br /><br />
      *
@@ -10,24 +10,26 @@ import com.carrotsearch.hppc.IntSet;
 import com.carrotsearch.hppc.cursors.IntCursor;
 import de.tourenplaner.algorithms.bbbundle.BoundingBox;
 
+import java.nio.IntBuffer;
 import java.util.Iterator;
 import java.util.Random;
 import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * @author spark
  */
 public final class BBoxPriorityTree implements NNSearcher {
+    private static Logger log = Logger.getLogger("de.tourenplaner.graphrep");
 
-    private final int[] xKeys;
-    private final int[] yKeys;
-    private final int[] prioKeys;
-    private final int[] nodesXstruct;    // all nodeIDs sorted according to x-coordinate
-    private final int[] offset2Xstruct;   // offsets into nodesXstruct according to different
+    private final IntBuffer xKeys;
+    private final IntBuffer yKeys;
+    private final IntBuffer prioKeys;
+    private final IntBuffer nodesXstruct;    // all nodeIDs sorted according to x-coordinate
+    private final IntBuffer offset2Xstruct;   // offsets into nodesXstruct according to different
     // x-coord; offsetXstruct[i] points to first nodeID
     // of i-th distinct x-coord
-    private final int[] rangeTreeKeys;   // distinct x-coordinates for range tree
-    private final int[] rangeTreeInfs;   // rank of each x-coordinate
     private final RangeTree myXRT;        // range tree for the x-coords
     private final PrioSearchTree[] myPSTs;
     private static final Random generator = new Random();
@@ -40,8 +42,8 @@ public final class BBoxPriorityTree implements NNSearcher {
      * these arrays are stored directly and must not be changed after constructing
      * the BoundingBoxPriorityTree or it will misreport
      */
-    public BBoxPriorityTree(int[] xKeysIn, int[] yKeysIn, int[] prioKeysIn, boolean latLonMode) {
-        assert (yKeysIn.length == yKeysIn.length) && (yKeysIn.length == xKeysIn.length) && (yKeysIn.length == prioKeysIn.length);
+    public BBoxPriorityTree(IntBuffer xKeysIn, IntBuffer yKeysIn, IntBuffer prioKeysIn, boolean latLonMode) {
+        assert (yKeysIn.limit() == xKeysIn.limit()) && (yKeysIn.limit() == prioKeysIn.limit());
         xKeys = xKeysIn;
         yKeys = yKeysIn;
         prioKeys = prioKeysIn;
@@ -58,8 +60,8 @@ public final class BBoxPriorityTree implements NNSearcher {
         TreeMap<Integer, IntSet> unixKeys = new TreeMap<Integer, IntSet>();
 
         // collect distinct x-coordinates
-        for (int i = 0; i < xKeys.length; i++) {
-            int curKey = xKeys[i];
+        for (int i = 0; i < xKeys.limit(); i++) {
+            int curKey = xKeys.get(i);
             if (unixKeys.containsKey(curKey)) // x-coordinate already present
             {
                 IntSet tmpSet = unixKeys.get(curKey);
@@ -70,12 +72,12 @@ public final class BBoxPriorityTree implements NNSearcher {
             {
                 IntSet tmpSet = new IntOpenHashSet();
                 tmpSet.add(i);
-                unixKeys.put(xKeys[i], tmpSet);
+                unixKeys.put(xKeys.get(i), tmpSet);
             }
         }
-        System.out.println("We have " + unixKeys.size() + " unique X-coordinates from " + xKeys.length + " values");
-        nodesXstruct = new int[xKeys.length];
-        offset2Xstruct = new int[unixKeys.size() + 1];
+        log.fine("We have " + unixKeys.size() + " unique X-coordinates from " + xKeys.limit() + " values");
+        int[] nodesXstruct = new int[xKeys.limit()];
+        int[] offset2Xstruct = new int[unixKeys.size() + 1];
         int curPos = 0;
         int curKey = unixKeys.firstKey();
         offset2Xstruct[0] = curPos;
@@ -92,7 +94,8 @@ public final class BBoxPriorityTree implements NNSearcher {
                 curKey = unixKeys.higherKey(curKey);
             }
         }
-        System.out.println("curPos=" + curPos);
+        this.nodesXstruct = IntBuffer.wrap(nodesXstruct);
+        this.offset2Xstruct = IntBuffer.wrap(offset2Xstruct);
         /*
          for(int i=0; i<unixKeysIn.size(); i++)
          {
@@ -106,10 +109,10 @@ public final class BBoxPriorityTree implements NNSearcher {
 
         // set up data for range tree:
 
-        rangeTreeKeys = new int[unixKeys.size()];
-        rangeTreeInfs = new int[unixKeys.size()];
+        int[] rangeTreeKeys = new int[unixKeys.size()];   // distinct x-coordinates for range tree
+        int[] rangeTreeInfs = new int[unixKeys.size()];   // rank of each x-coordinate
         for (int i = 0; i < rangeTreeKeys.length; i++) {
-            rangeTreeKeys[i] = xKeys[nodesXstruct[offset2Xstruct[i]]];
+            rangeTreeKeys[i] = xKeys.get(nodesXstruct[offset2Xstruct[i]]);
             rangeTreeInfs[i] = i;
         }
         myXRT = new RangeTree(rangeTreeKeys, rangeTreeInfs);
@@ -124,7 +127,7 @@ public final class BBoxPriorityTree implements NNSearcher {
         }
         limitPST = limitPST / 2;
         height--;
-        System.out.println("Building " + limitPST + " PSTs that is, height=" + height);
+        log.fine("Building " + limitPST + " PSTs that is, height=" + height);
         myPSTs = new PrioSearchTree[limitPST];
         long tmpcnt = 0;
 
@@ -142,7 +145,6 @@ public final class BBoxPriorityTree implements NNSearcher {
             }
 
             if (sizePST % 2 == 1) {
-                System.out.println("ungerade!");
                 sizePST++;
             }
             tmpcnt += sizePST;
@@ -160,29 +162,63 @@ public final class BBoxPriorityTree implements NNSearcher {
                 int inf = nodeIDOffsetsToStore.get(i);
                 for (int k = offset2Xstruct[inf]; k < offset2Xstruct[inf + 1]; k++) {
                     nodeIDsPST[nodeCounter] = nodesXstruct[k];
-                    yKeysPST[nodeCounter] = yKeys[nodeIDsPST[nodeCounter]];
-                    priosPST[nodeCounter] = prioKeys[nodeIDsPST[nodeCounter]];
+                    yKeysPST[nodeCounter] = yKeys.get(nodeIDsPST[nodeCounter]);
+                    priosPST[nodeCounter] = prioKeys.get(nodeIDsPST[nodeCounter]);
                     nodeCounter++;
                 }
             }
-            System.out.println(nodeCounter + " and " + sizePST);
             // assert(nodeCounter==sizePST);
-            for (int i = 0; i < 5; i++) {
-                System.out.println(yKeysPST[i] + " " + priosPST[i] + " " + nodeIDsPST[i]);
-            }
 
             mySort(0, sizePST - 1, yKeysPST, priosPST, nodeIDsPST);
 
-            for (int i = 0; i < 5; i++) {
-                System.out.println(yKeysPST[i] + " " + priosPST[i] + " " + nodeIDsPST[i]);
-            }
             myPSTs[j] = new PrioSearchTree(yKeysPST, priosPST, nodeIDsPST);
             // construct PST corresponding to internal node j (containing all nodes in subtree) */
-            System.out.println("Constructing PST with " + sizePST + " elements");
+            if (log.isLoggable(Level.FINER)) {
+                log.finer("Constructing PST with " + sizePST + " elements");
+            }
 
         }
-        System.out.println("Added " + tmpcnt + " things to PSTs");
+        log.fine("Added " + tmpcnt + " things to PSTs");
+
+    }
+
+    /**
+     * Creates the priority data structure directly on the arrays of an already
+     * built one, the keys are the same as for the other constructor. This is
+     * used to load the BoundingBoxPriorityTree from a graph dump without rebuilding it
+     */
+    BBoxPriorityTree(IntBuffer xKeysIn, IntBuffer yKeysIn, IntBuffer prioKeysIn, boolean latLonMode,
+                     IntBuffer nodesXstruct, IntBuffer offset2Xstruct, RangeTree xRangeTree, PrioSearchTree[] psts) {
+        assert (yKeysIn.limit() == xKeysIn.limit()) && (yKeysIn.limit() == prioKeysIn.limit());
+        assert nodesXstruct.limit() == xKeysIn.limit();
+        xKeys = xKeysIn;
+        yKeys = yKeysIn;
+        prioKeys = prioKeysIn;
+        this.latLonMode = latLonMode;
+        this.nodesXstruct = nodesXstruct;
+        this.offset2Xstruct = offset2Xstruct;
+        this.myXRT = xRangeTree;
+        this.myPSTs = psts;
+    }
+
+    boolean isLatLonMode() {
+        return latLonMode;
+    }
+
+    IntBuffer getNodesXstruct() {
+        return nodesXstruct;
+    }
+
+    IntBuffer getOffset2Xstruct() {
+        return offset2Xstruct;
+    }
+
+    RangeTree getXRangeTree() {
+        return myXRT;
+    }
 
+    PrioSearchTree[] getPSTs() {
+        return myPSTs;
     }
 
     /**
@@ -220,8 +256,8 @@ public final class BBoxPriorityTree implements NNSearcher {
         double bestDist = Double.MAX_VALUE;
         for (int i = 0; i < candValues.size(); i++) {
             int id = candValues.get(i);
-            double deltaX = xKeys[id] - x;
-            double deltaY = yKeys[id] - y;
+            double deltaX = xKeys.get(id) - x;
+            double deltaY = yKeys.get(id) - y;
             double dist = deltaX * deltaX + deltaY * deltaY;
             if (dist < bestDist) {
                 bestDist = dist;
@@ -285,11 +321,11 @@ public final class BBoxPriorityTree implements NNSearcher {
 
         // first
         for (int i = 0; i < resInfs.size(); i++) {
-            for (int j = offset2Xstruct[resInfs.get(i)]; j < offset2Xstruct[resInfs.get(i) + 1]; j++) {
-                int nd = nodesXstruct[j];
-                assert (xKeys[nd] >= left);
-                assert (xKeys[nd] <= right);
-                if ((yKeys[nd] >= bottom) && (yKeys[nd] <= top) && (prioKeys[nd] >= priority)) {
+            for (int j = offset2Xstruct.get(resInfs.get(i)); j < offset2Xstruct.get(resInfs.get(i) + 1); j++) {
+                int nd = nodesXstruct.get(j);
+                assert (xKeys.get(nd) >= left);
+                assert (xKeys.get(nd) <= right);
+                if ((yKeys.get(nd) >= bottom) && (yKeys.get(nd) <= top) && (prioKeys.get(nd) >= priority)) {
                     selectedNodeIDs.add(nd);
                 }
             }
@@ -306,13 +342,13 @@ public final class BBoxPriorityTree implements NNSearcher {
                 myPSTs[resPST.get(i)].queryPST(bottom, top, priority, 0, dataKeys, dataPrios, dataInfs);
                 for (int j = 0; j < dataInfs.size(); j++) {
                     int jj = dataInfs.get(j);
-                    assert (yKeys[jj] >= bottom);
-                    assert (yKeys[jj] <= top);
-                    assert (prioKeys[jj] >= priority);
+                    assert (yKeys.get(jj) >= bottom);
+                    assert (yKeys.get(jj) <= top);
+                    assert (prioKeys.get(jj) >= priority);
 
 
-                    assert (xKeys[jj] >= left);
-                    assert (xKeys[jj] <= right);
+                    assert (xKeys.get(jj) >= left);
+                    assert (xKeys.get(jj) <= right);
                     selectedNodeIDs.add(jj);
                     tmp_cnt++;
                 }
@@ -326,11 +362,11 @@ public final class BBoxPriorityTree implements NNSearcher {
                 // returned offsets are into
                 for (int kk = 0; kk < nodeIDOffsetsToCheck.size(); kk++) {
                     int inf = nodeIDOffsetsToCheck.get(kk);
-                    for (int jj = offset2Xstruct[inf]; jj < offset2Xstruct[inf + 1]; jj++) {
-                        int nd = nodesXstruct[jj];
-                        assert (xKeys[nd] >= left);
-                        assert (xKeys[nd] <= right);
-                        if ((yKeys[nd] >= bottom) && (yKeys[nd] <= top) && (prioKeys[nd] >= priority)) {
+                    for (int jj = offset2Xstruct.get(inf); jj < offset2Xstruct.get(inf + 1); jj++) {
+                        int nd = nodesXstruct.get(jj);
+                        assert (xKeys.get(nd) >= left);
+                        assert (xKeys.get(nd) <= right);
+                        if ((yKeys.get(nd) >= bottom) && (yKeys.get(nd) <= top) && (prioKeys.get(nd) >= priority)) {
 
                             selectedNodeIDs.add(nd);
                         }
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.graphrep;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * The edge targets of a compact GraphRep. Each target is stored as its difference to
+ * the edge's source, as the out edges of a node are stored together this only needs the
+ * source which GraphRep has anyway. The differences are packed in blocks of BLOCK_SIZE
+ * edges, each block stores its smallest difference and all values relative to it with the
+ * same number of bits. So every target is decoded from one unaligned long read without
+ * looking at the other edges of the block.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+final class CompactTargets {
+    private static final int BLOCK_SHIFT = 4;
+    static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    // Bit packed values, little endian so the bits of a value are in ascending bytes.
+    // Padded so a long can be read at the start of every value
+    private final ByteBuffer data;
+    // For every block the byte offset of its values followed by its smallest difference,
+    // the last entry is the end of the values. A block with width bits per value takes
+    // BLOCK_SIZE * width / 8 = 2 * width bytes
+    private final IntBuffer blocks;
+
+    /**
+     * Encodes the targets of the edgeCount edges
+     */
+    CompactTargets(IntBuffer src, IntBuffer trgt, int edgeCount, GraphStorage storage) {
+        int blockCount = (edgeCount + BLOCK_MASK) >>> BLOCK_SHIFT;
+        blocks = storage.allocate(2 * blockCount + 1);
+        long size = 0;
+        for (int block = 0; block < blockCount; block++) {
+            int begin = block << BLOCK_SHIFT;
+            int end = Math.min(begin + BLOCK_SIZE, edgeCount);
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (int edgeId = begin; edgeId < end; edgeId++) {
+                int diff = trgt.get(edgeId) - src.get(edgeId);
+                min = Math.min(min, diff);
+                max = Math.max(max, diff);
+            }
+            if (size > Integer.MAX_VALUE - 2 * 32 - 8) {
+                throw new IllegalArgumentException("Can't encode more than " + size + " bytes of targets in a single buffer");
+            }
+            blocks.put(2 * block, (int) size);
+            blocks.put(2 * block + 1, min);
+            size += 2 * width((long) max - min);
+        }
+        blocks.put(2 * blockCount, (int) size);
+
+        data = storage.allocateBytes((int) size + 8).order(ByteOrder.LITTLE_ENDIAN);
+        for (int edgeId = 0; edgeId < edgeCount; edgeId++) {
+            int block = edgeId >>> BLOCK_SHIFT;
+            int offset = blocks.get(2 * block);
+            int width = (blocks.get(2 * block + 2) - offset) >>> 1;
+            int bit = (edgeId & BLOCK_MASK) * width;
+            long value = (long) (trgt.get(edgeId) - src.get(edgeId)) - blocks.get(2 * block + 1);
+            int pos = offset + (bit >>> 3);
+            data.putLong(pos, data.getLong(pos) | (value << (bit & 7)));
+        }
+    }
+
+    /**
+     * Number of bits needed for values in [0, range]
+     */
+    private static int width(long range) {
+        return 64 - Long.numberOfLeadingZeros(range);
+    }
+
+    /**
+     * Gets the target of the given edge which needs to start at source
+     */
+    int get(int edgeId, int source) {
+        int block = edgeId >>> BLOCK_SHIFT;
+        int offset = blocks.get(2 * block);
+        int width = (blocks.get(2 * block + 2) - offset) >>> 1;
+        int bit = (edgeId & BLOCK_MASK) * width;
+        // width is at most 32 and the value starts in the first byte of the long
+        long value = (data.getLong(offset + (bit >>> 3)) >>> (bit & 7)) & ((1L << width) - 1);
+        return source + blocks.get(2 * block + 1) + (int) value;
+    }
+
+    /**
+     * Gets the number of bytes used
+     */
+    long getByteSize() {
+        return data.capacity() + 4L * blocks.capacity();
+    }
+}
@@ -16,12 +16,15 @@
 
 package de.tourenplaner.graphrep;
 
+import com.carrotsearch.hppc.IntIntOpenHashMap;
 import de.tourenplaner.algorithms.bbbundle.BoundingBox;
 import de.tourenplaner.utils.SortAdapter;
 import de.tourenplaner.utils.Sorter;
 
-import java.io.Serializable;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,8 +33,7 @@ import java.util.logging.Logger;
  *
  * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
  */
-public class GraphRep implements Serializable {
-    private static final long serialVersionUID = 15L;
+public class GraphRep {
     private static Logger log = Logger.getLogger("de.tourenplaner.graphrep");
 
 
@@ -51,33 +53,36 @@ public class GraphRep implements Serializable {
 
         @Override
         public void swap(int i, int j) {
-            int tmpLat = graph.lat[i];
-            int tmpLon = graph.lon[i];
-            int tmpRank = graph.rank[i];
-            int tmpHeight = graph.height[i];
+            int tmpLat = graph.lat.get(i);
+            int tmpLon = graph.lon.get(i);
+            int tmpRank = graph.rank.get(i);
+            int tmpHeight = graph.height.get(i);
             int tmpOrder = order[i];
 
-            graph.lat[i] = graph.lat[j];
-            graph.lon[i] = graph.lon[j];
-            graph.rank[i] = graph.rank[j];
-            graph.height[i] = graph.height[j];
+            graph.lat.put(i, graph.lat.get(j));
+            graph.lon.put(i, graph.lon.get(j));
+            graph.rank.put(i, graph.rank.get(j));
+            graph.height.put(i, graph.height.get(j));
             order[i] = order[j];
 
-            graph.lat[j] = tmpLat;
-            graph.lon[j] = tmpLon;
-            graph.rank[j] = tmpRank;
-            graph.height[j] = tmpHeight;
+            graph.lat.put(j, tmpLat);
+            graph.lon.put(j, tmpLon);
+            graph.rank.put(j, tmpRank);
+            graph.height.put(j, tmpHeight);
             order[j] = tmpOrder;
         }
 
         @Override
         public boolean less(int i, int j) {
-            return graph.rank[i] > graph.rank[j];
+            int rankI = graph.rank.get(i);
+            int rankJ = graph.rank.get(j);
+            // Ties are ordered by original id so the order doesn't depend on the sort algorithm
+            return rankI > rankJ || (rankI == rankJ && order[i] < order[j]);
         }
 
         @Override
         public int length() {
-            return graph.lat.length;
+            return graph.lat.limit();
         }
     }
 
@@ -97,25 +102,26 @@ public class GraphRep implements Serializable {
             int edgeI, edgeJ;
             int targetI, targetJ;
             int sourceRankI, sourceRankJ;
-            edgeI = graph.mappingInToOut[i];
-            edgeJ = graph.mappingInToOut[j];
-            targetI = graph.trgt[edgeI];
-            targetJ = graph.trgt[edgeJ];
-            sourceRankI = graph.getRank(graph.src[edgeI]);
-            sourceRankJ = graph.getRank(graph.src[edgeJ]);
-            return targetI < targetJ || (targetI == targetJ && sourceRankI > sourceRankJ);
+            edgeI = graph.mappingInToOut.get(i);
+            edgeJ = graph.mappingInToOut.get(j);
+            targetI = graph.trgt.get(edgeI);
+            targetJ = graph.trgt.get(edgeJ);
+            sourceRankI = graph.getRank(graph.src.get(edgeI));
+            sourceRankJ = graph.getRank(graph.src.get(edgeJ));
+            return targetI < targetJ || (targetI == targetJ && (sourceRankI > sourceRankJ
+                    || (sourceRankI == sourceRankJ && edgeI < edgeJ)));
         }
 
         @Override
         public void swap(int i, int j) {
-            int temp = graph.mappingInToOut[i];
-            graph.mappingInToOut[i] = graph.mappingInToOut[j];
-            graph.mappingInToOut[j] = temp;
+            int temp = graph.mappingInToOut.get(i);
+            graph.mappingInToOut.put(i, graph.mappingInToOut.get(j));
+            graph.mappingInToOut.put(j, temp);
         }
 
         @Override
         public int length() {
-            return graph.mappingInToOut.length;
+            return graph.mappingInToOut.limit();
         }
     }
 
@@ -145,84 +151,109 @@ public class GraphRep implements Serializable {
         public boolean less(int i, int j) {
             int sourceI, sourceJ;
             int targetRankI, targetRankJ;
-            sourceI = graph.src[i];
-            sourceJ = graph.src[j];
-            targetRankI = graph.getRank(graph.trgt[i]);
-            targetRankJ = graph.getRank(graph.trgt[j]);
-            return sourceI < sourceJ || (sourceI == sourceJ && targetRankI < targetRankJ);
+            sourceI = graph.src.get(i);
+            sourceJ = graph.src.get(j);
+            targetRankI = graph.getRank(graph.trgt.get(i));
+            targetRankJ = graph.getRank(graph.trgt.get(j));
+            return sourceI < sourceJ || (sourceI == sourceJ && (targetRankI < targetRankJ
+                    || (targetRankI == targetRankJ && order[i] < order[j])));
         }
 
         @Override
         public void swap(int i, int j) {
             int tempId = order[i];
-            int tempSrc = graph.src[i];
-            int tempTrgt = graph.trgt[i];
-            int tempDist = graph.dist[i];
-            int tempEuclidianDist = graph.euclidianDist[i];
-            int tempShorted1 = graph.shortedEdge1[i];
-            int tempShorted2 = graph.shortedEdge2[i];
-
-            graph.src[i] = graph.src[j];
-            graph.trgt[i] = graph.trgt[j];
-            graph.dist[i] = graph.dist[j];
-            graph.euclidianDist[i] = graph.euclidianDist[j];
-            graph.shortedEdge1[i] = graph.shortedEdge1[j];
-            graph.shortedEdge2[i] = graph.shortedEdge2[j];
+            int tempSrc = graph.src.get(i);
+            int tempTrgt = graph.trgt.get(i);
+            int tempDist = graph.dist.get(i);
+            int tempEuclidianDist = graph.euclidianDist.get(i);
+            int tempShorted1 = graph.shortedEdge1.get(i);
+            int tempShorted2 = graph.shortedEdge2.get(i);
+
+            graph.src.put(i, graph.src.get(j));
+            graph.trgt.put(i, graph.trgt.get(j));
+            graph.dist.put(i, graph.dist.get(j));
+            graph.euclidianDist.put(i, graph.euclidianDist.get(j));
+            graph.shortedEdge1.put(i, graph.shortedEdge1.get(j));
+            graph.shortedEdge2.put(i, graph.shortedEdge2.get(j));
             order[i] = order[j];
 
-            graph.src[j] = tempSrc;
-            graph.trgt[j] = tempTrgt;
-            graph.dist[j] = tempDist;
-            graph.euclidianDist[j] = tempEuclidianDist;
-            graph.shortedEdge1[j] = tempShorted1;
-            graph.shortedEdge2[j] = tempShorted2;
+            graph.src.put(j, tempSrc);
+            graph.trgt.put(j, tempTrgt);
+            graph.dist.put(j, tempDist);
+            graph.euclidianDist.put(j, tempEuclidianDist);
+            graph.shortedEdge1.put(j, tempShorted1);
+            graph.shortedEdge2.put(j, tempShorted2);
             order[j] = tempId;
         }
 
         @Override
         public int length() {
-            return graph.src.length;
+            return graph.src.limit();
         }
     }
 
     protected NNSearcher searcher;
     private BBoxPriorityTree bboxXYTree;
     private BBoxPriorityTree bboxLatLonTree;
+    private SearchGraph searchGraph;
+    private SweepGraph sweepGraph;
+    private UnpackedShortcuts unpackedShortcuts;
+    private Landmarks landmarks;
+    private HubLabels hubLabels;
 
     private final int nodeCount;
     private final int edgeCount;
 
+    // Used to allocate the arrays, including those computed by setup()
+    private final GraphStorage storage;
+
     // note: edgeNum refers to the relative number of an outgoing edge
     // from a node:
     // (first outgoing edge = 0, second outgoing edge = 1, ...)
 
+    // All per node and per edge arrays are IntBuffers so they can either wrap
+    // heap arrays, be off heap direct buffers or read only views into a memory mapped dump,
+    // they are only ever accessed with the absolute get(index)/put(index, value)
+
     // nodes
     // In degrees*10^7
-    protected final int[] lat;
-    protected final int[] lon;
-    protected final int[] height;
-    protected final int[] rank;
+    protected final IntBuffer lat;
+    protected final IntBuffer lon;
+    // null in compact graphs with heights fitting in a short
+    protected IntBuffer height;
+    protected final IntBuffer rank;
 
-    protected final int[] xPos;
-    protected final int[] yPos;
+    protected final IntBuffer xPos;
+    protected final IntBuffer yPos;
 
-    protected int[] offsetOut;
-    protected int[] offsetIn;
+    protected IntBuffer offsetOut;
+    protected IntBuffer offsetIn;
 
     private int maxRank;
     private BoundingBox bbox;
 
     // edges
-    protected final int[] src;
-    protected final int[] trgt;
-    protected final int[] dist;
-    protected final int[] euclidianDist;
+    protected final IntBuffer src;
+    // null in compact graphs
+    protected IntBuffer trgt;
+    protected final IntBuffer dist;
+    protected final IntBuffer euclidianDist;
 
-    protected final int[] shortedEdge1;
-    protected final int[] shortedEdge2;
+    // null in compact graphs
+    protected IntBuffer shortedEdge1;
+    protected IntBuffer shortedEdge2;
 
     // For each edge edgeId saves the edge going in the opposite direction with the same length if it exists
-    protected int[] reverseMap;
+    protected IntBuffer reverseMap;
+
+    // The narrow and encoded replacements set by compact()
+    private ShortBuffer compactHeight;
+    private CompactTargets compactTargets;
+    // For each shortcut the node between its shortcutted edges or -1 if it isn't one
+    private IntBuffer shortcutMiddle;
+    // The shortcutted edges that can't be found from the middle node, null if there are none
+    private IntIntOpenHashMap firstShortcutExceptions;
+    private IntIntOpenHashMap secondShortcutExceptions;
 
 
 
@@ -238,7 +269,7 @@ public class GraphRep implements Serializable {
      * <p/>
      * content = position in the edge array
      */
-    protected int[] mappingInToOut;
+    protected IntBuffer mappingInToOut;
 
     /**
      * A GraphRep is the representation of a graph used to perform several
@@ -246,32 +277,174 @@ public class GraphRep implements Serializable {
      * This constructor creates all internal data structures but the data needs
      * to be set with setEdgeDate, setShortcutData and setNodeData
      * then one can generate the offset arrays from this data.
+     * The arrays are allocated on the Java heap.
      */
     public GraphRep(int nodeCount, int edgeCount) {
+        this(nodeCount, edgeCount, GraphStorage.HEAP);
+    }
+
+    /**
+     * Same as GraphRep(nodeCount, edgeCount) but allocates all arrays with
+     * the given GraphStorage
+     */
+    public GraphRep(int nodeCount, int edgeCount, GraphStorage storage) {
         this.nodeCount = nodeCount;
         this.edgeCount = edgeCount;
+        this.storage = storage;
 
-        this.lat = new int[nodeCount];
-        this.lon = new int[nodeCount];
-        this.height = new int[nodeCount];
+        this.lat = storage.allocate(nodeCount);
+        this.lon = storage.allocate(nodeCount);
+        this.height = storage.allocate(nodeCount);
 
-        this.xPos = new int[nodeCount];
-        this.yPos = new int[nodeCount];
+        this.xPos = storage.allocate(nodeCount);
+        this.yPos = storage.allocate(nodeCount);
 
-        this.rank = new int[nodeCount];
+        this.rank = storage.allocate(nodeCount);
 
-        this.src = new int[edgeCount];
-        this.trgt = new int[edgeCount];
-        this.dist = new int[edgeCount];
-        this.euclidianDist = new int[edgeCount];
-        this.shortedEdge1 = new int[edgeCount];
-        this.shortedEdge2 = new int[edgeCount];
+        this.src = storage.allocate(edgeCount);
+        this.trgt = storage.allocate(edgeCount);
+        this.dist = storage.allocate(edgeCount);
+        this.euclidianDist = storage.allocate(edgeCount);
+        this.shortedEdge1 = storage.allocate(edgeCount);
+        this.shortedEdge2 = storage.allocate(edgeCount);
 
         // Use the simple DumbNN as searcher per default
         // this one needs no setup time but is slow
         this.searcher = new DumbNN(this);
     }
 
+    /**
+     * Creates a GraphRep on top of already filled buffers, this is used by
+     * low level graph loading (e.g. memory mapped dumps) where the data
+     * must not be copied. The buffers are read with absolute get(index) calls
+     * only so they may be shared and read only views. The offset, mapping and
+     * reverse arrays need to be set with their setters afterwards. Structures
+     * derived later on (e.g. search graphs or compact arrays) are allocated with
+     * the given GraphStorage.
+     */
+    protected GraphRep(int nodeCount, int edgeCount,
+                       IntBuffer lat, IntBuffer lon, IntBuffer height, IntBuffer rank,
+                       IntBuffer xPos, IntBuffer yPos,
+                       IntBuffer src, IntBuffer trgt, IntBuffer dist, IntBuffer euclidianDist,
+                       IntBuffer shortedEdge1, IntBuffer shortedEdge2, GraphStorage storage) {
+        this.nodeCount = nodeCount;
+        this.edgeCount = edgeCount;
+        this.storage = storage;
+
+        this.lat = lat;
+        this.lon = lon;
+        this.height = height;
+        this.rank = rank;
+
+        this.xPos = xPos;
+        this.yPos = yPos;
+
+        this.src = src;
+        this.trgt = trgt;
+        this.dist = dist;
+        this.euclidianDist = euclidianDist;
+        this.shortedEdge1 = shortedEdge1;
+        this.shortedEdge2 = shortedEdge2;
+
+        this.searcher = new DumbNN(this);
+    }
+
+    /**
+     * Builds the compact SearchGraph used by the CH searches, this needs to be called
+     * after setup() or after loading a dump
+     */
+    public final void setupSearchGraph() {
+        this.searchGraph = new SearchGraph(this, storage);
+    }
+
+    /**
+     * Get the compact SearchGraph or null if setupSearchGraph() wasn't called
+     *
+     * @return
+     */
+    public final SearchGraph getSearchGraph() {
+        return searchGraph;
+    }
+
+    /**
+     * Builds the compact SweepGraph used by the PHAST searches, this needs to be called
+     * after setup() or after loading a dump
+     */
+    public final void setupSweepGraph() {
+        this.sweepGraph = new SweepGraph(this, storage);
+    }
+
+    /**
+     * Get the compact SweepGraph or null if setupSweepGraph() wasn't called
+     *
+     * @return
+     */
+    public final SweepGraph getSweepGraph() {
+        return sweepGraph;
+    }
+
+    /**
+     * Unpacks all shortcuts between nodes with at least the given rank so the
+     * path unpacking can copy them, this needs to be called after setup()
+     * or after loading a dump
+     *
+     * @param minRank
+     */
+    public final void setupUnpackedShortcuts(int minRank) {
+        this.unpackedShortcuts = new UnpackedShortcuts(this, storage, minRank);
+    }
+
+    /**
+     * Get the UnpackedShortcuts or null if setupUnpackedShortcuts() wasn't called
+     *
+     * @return
+     */
+    public final UnpackedShortcuts getUnpackedShortcuts() {
+        return unpackedShortcuts;
+    }
+
+    /**
+     * Chooses the given number of landmarks and computes their distances for the A*
+     * searches without shortcuts using the given number of threads, this needs to be
+     * called after setup() or after loading a dump
+     *
+     * @param count
+     * @param threads
+     */
+    public final void setupLandmarks(int count, int threads) {
+        this.landmarks = new Landmarks(this, storage, count, threads);
+    }
+
+    /**
+     * Get the Landmarks or null if neither setupLandmarks() was called nor
+     * the dump contained them
+     *
+     * @return
+     */
+    public final Landmarks getLandmarks() {
+        return landmarks;
+    }
+
+    /**
+     * Builds the HubLabels for the distance queries without searches using the
+     * given number of threads, this needs to be called after setup() or after
+     * loading a dump
+     *
+     * @param threads
+     */
+    public final void setupHubLabels(int threads) {
+        this.hubLabels = new HubLabels(this, storage, threads);
+    }
+
+    /**
+     * Get the HubLabels or null if setupHubLabels() wasn't called
+     *
+     * @return
+     */
+    public final HubLabels getHubLabels() {
+        return hubLabels;
+    }
+
     /**
      * Get the internal BoundingBoxPriorityTree constructed over the XY coordinates
      *
@@ -293,22 +466,113 @@ public class GraphRep implements Serializable {
 
 
     /**
-     * Regenerates the offset arrays from the current edge arrays
+     * Regenerates the offset arrays from the current edge arrays using
+     * all available processors
      */
     public final void setup() {
-        checkAndSortNodesByRank();
-        checkAndSortOutEdges();
-        mapAndSortInEdges();
+        setup(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Regenerates the offset arrays from the current edge arrays using the given
+     * number of threads, the result is the same for every number of threads
+     *
+     * @param threads
+     */
+    public final void setup(int threads) {
+        if (isCompact()) {
+            throw new IllegalStateException("A compact graph can't be set up again");
+        }
+        if (threads <= 1) {
+            setup(null);
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            setup(new ParallelSetup(this, pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs the setup steps, the expensive ones on the given ParallelSetup unless it's null
+     */
+    private void setup(ParallelSetup parallel) {
+        checkAndSortNodesByRank(parallel);
+        checkAndSortOutEdges(parallel);
+        mapAndSortInEdges(parallel);
         generateOffsets();
-        computeXYCoords();
-        computeReverseMap();
-        this.bboxXYTree = new BBoxPriorityTree(xPos, yPos, rank, false);
-        // TODO need to fix behavior at merdian/poles
-        this.bboxLatLonTree = new BBoxPriorityTree(lon, lat, rank, true);
-        this.searcher = this.bboxLatLonTree;
+        computeXYCoords(parallel);
+        computeReverseMap(parallel);
+        if (parallel != null) {
+            parallel.buildBBoxPriorityTrees();
+        } else {
+            this.bboxXYTree = new BBoxPriorityTree(xPos, yPos, rank, false);
+            // TODO need to fix behavior at merdian/poles
+            this.bboxLatLonTree = new BBoxPriorityTree(lon, lat, rank, true);
+            this.searcher = this.bboxLatLonTree;
+        }
+    }
+
+    /**
+     * Renumbers the nodes of the set up graph so that nodes close on the map get close ids,
+     * this makes the searches touch fewer cache lines and pages. The coreSize highest ranked
+     * nodes keep their ids [0, coreSize) so BBBundle cores and DrawCore requests of up to
+     * coreSize nodes stay valid, all other nodes are only reordered within tiers of rank
+     * (see {@link LocalityOrder}). The edges, shortcuts, offsets and spatial indexes are rebuilt
+     * to match, the search graph too if it was built before.
+     * <p/>
+     * Calling setup() again afterwards sorts the nodes strictly by rank again
+     *
+     * @param coreSize the number of highest ranked nodes that keep their ids
+     * @param threads  the number of threads used to rebuild the arrays
+     * @return the new ids of the nodes indexed by their old id
+     */
+    public final int[] renumberNodesByLocality(int coreSize, int threads) {
+        if (isCompact()) {
+            throw new IllegalStateException("A compact graph can't be renumbered");
+        }
+        if (reverseMap == null || bbox == null || !nodesSorted()) {
+            throw new IllegalStateException("The graph needs to be set up before it can be renumbered");
+        }
+        if (lat.isReadOnly() || src.isReadOnly()) {
+            throw new IllegalStateException("Graphs loaded from a mapped dump can't be renumbered");
+        }
+        int[] order = LocalityOrder.computeOrder(this, coreSize);
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        int[] newIds;
+        try {
+            ParallelSetup parallel = new ParallelSetup(this, pool);
+            newIds = parallel.renumberNodes(order);
+            parallel.sortOutEdges();
+            mappingInToOut = storage.wrap(parallel.computeMappingInToOut());
+            generateOffsets();
+            computeReverseMap(parallel);
+            parallel.buildBBoxPriorityTrees();
+        } finally {
+            pool.shutdown();
+        }
+        if (searchGraph != null) {
+            setupSearchGraph();
+        }
+        if (sweepGraph != null) {
+            setupSweepGraph();
+        }
+        if (unpackedShortcuts != null) {
+            setupUnpackedShortcuts(unpackedShortcuts.getMinRank());
+        }
+        if (landmarks != null) {
+            setupLandmarks(landmarks.getCount(), threads);
+        }
+        if (hubLabels != null) {
+            setupHubLabels(threads);
+        }
+        log.log(Level.INFO, "Renumbered nodes by locality keeping a core of " + Math.min(coreSize, nodeCount) + " nodes");
+        return newIds;
     }
 
-    private int getXYDistance(double x1, double y1, double x2, double y2) {
+    static int getXYDistance(double x1, double y1, double x2, double y2) {
         double lon1 =  (x1 / 180 * Math.PI);
         double lon2 = (x2 / 180 * Math.PI);
         double lat1 = (y1 / 180 * Math.PI);
@@ -321,7 +585,12 @@ public class GraphRep implements Serializable {
         return (180.0/Math.PI * Math.log(Math.tan(Math.PI/4+lat*(Math.PI/180.0)*0.5)));
     }
 
-    private void computeXYCoords() {
+    private void computeXYCoords(ParallelSetup parallel) {
+        if (parallel != null) {
+            parallel.computeXYCoords();
+            log.log(Level.INFO, "Bounding box: " + bbox.x + ", " + bbox.y + " - " + bbox.width + ", " + bbox.height);
+            return;
+        }
         double minX = Double.MAX_VALUE;
         double minY = Double.MAX_VALUE;
         double maxX = Double.MIN_VALUE;
@@ -330,9 +599,9 @@ public class GraphRep implements Serializable {
 
         // Find min/max
         for (int i = 0; i < nodeCount; ++i) {
-            int x = (int) lon2x(this.lon[i] / 10_000_000.0);
-            int y = (int) (this.lat[i] / 10_000_000.0);
-            tmpRank = this.rank[i];
+            int x = (int) lon2x(this.lon.get(i) / 10_000_000.0);
+            int y = (int) (this.lat.get(i) / 10_000_000.0);
+            tmpRank = this.rank.get(i);
             minX = Math.min(minX, x);
             minY = Math.min(minY, y);
             maxX = Math.max(maxX, x);
@@ -351,16 +620,16 @@ public class GraphRep implements Serializable {
         int maxYfinal = Integer.MIN_VALUE;
 
         for (int i = 0; i < nodeCount; ++i) {
-            double x = lon2x(this.lon[i] / 10_000_000.0);
-            double y = (this.lat[i] / 10_000_000.0);
+            double x = lon2x(this.lon.get(i) / 10_000_000.0);
+            double y = (this.lat.get(i) / 10_000_000.0);
             int xPos = getXYDistance(x, minY, minX, minY);
             int yPos = boundHeight - getXYDistance(minX, y, minX, minY);
             minXfinal = Math.min(minXfinal, xPos);
             minYfinal = Math.min(minYfinal, yPos);
             maxXfinal = Math.max(maxXfinal, xPos);
             maxYfinal = Math.max(maxYfinal, yPos);
-            this.xPos[i] = xPos;
-            this.yPos[i] = yPos;
+            this.xPos.put(i, xPos);
+            this.yPos.put(i, yPos);
         }
         this.bbox = new BoundingBox(minXfinal, minYfinal, maxXfinal-minXfinal, maxYfinal-minYfinal);
         log.log(Level.INFO, "Bounding box: " + bbox.x + ", " + bbox.y + " - " + bbox.width + ", " + bbox.height);
@@ -370,11 +639,26 @@ public class GraphRep implements Serializable {
     /**
      * Compute the reverse map
      */
-    private void computeReverseMap() {
-        reverseMap = new int[edgeCount];
-        Arrays.fill(reverseMap, -1);
+    private void computeReverseMap(ParallelSetup parallel) {
+        int[] reverseMapArray = new int[edgeCount];
+        Arrays.fill(reverseMapArray, -1);
+        if (parallel != null) {
+            // Only searching the candidates is expensive, matching them up in edge
+            // order gives the same result as the loop below
+            int[] candidates = parallel.computeReverseCandidates();
+            for (int edgeId = 0; edgeId < edgeCount; ++edgeId) {
+                int otherEdgeId = candidates[edgeId];
+                if (reverseMapArray[edgeId] < 0 && otherEdgeId >= 0) {
+                    reverseMapArray[edgeId] = otherEdgeId;
+                    reverseMapArray[otherEdgeId] = edgeId;
+                }
+            }
+            reverseMap = storage.wrap(reverseMapArray);
+            return;
+        }
+        reverseMap = storage.wrap(reverseMapArray);
         for (int edgeId = 0; edgeId < edgeCount; ++edgeId) {
-            if(reverseMap[edgeId] >= 0) {
+            if(reverseMap.get(edgeId) >= 0) {
                 continue;
             }
             int trgt = this.getTarget(edgeId);
@@ -382,8 +666,8 @@ public class GraphRep implements Serializable {
             for (int edgeNum  = 0; edgeNum < this.getOutEdgeCount(trgt); edgeNum++){
                 int otherEdgeId = this.getOutEdgeId(trgt, edgeNum);
                 if(src == this.getTarget(otherEdgeId) && this.getDist(edgeId) == this.getDist(otherEdgeId)) {
-                    reverseMap[edgeId] = otherEdgeId;
-                    reverseMap[otherEdgeId] = edgeId;
+                    reverseMap.put(edgeId, otherEdgeId);
+                    reverseMap.put(otherEdgeId, edgeId);
                     break;
                 }
             }
@@ -393,11 +677,15 @@ public class GraphRep implements Serializable {
     /**
      * Generate mapping for InEdges by sorting
      */
-    private void mapAndSortInEdges() {
-        this.mappingInToOut = new int[edgeCount];
+    private void mapAndSortInEdges(ParallelSetup parallel) {
+        if (parallel != null) {
+            this.mappingInToOut = storage.wrap(parallel.computeMappingInToOut());
+            return;
+        }
+        this.mappingInToOut = storage.allocate(edgeCount);
         // Set mapping to initial values (0,1,2,3..)
         for (int i = 0; i < edgeCount; i++) {
-            this.mappingInToOut[i] = i;
+            this.mappingInToOut.put(i, i);
         }
         Sorter.sort(new MappingSortAdapter(this));
     }
@@ -406,12 +694,12 @@ public class GraphRep implements Serializable {
      * Compute offset arrays
      */
     private void generateOffsets() {
-        this.offsetIn = new int[nodeCount + 1];
-        this.offsetOut = new int[nodeCount + 1];
+        int[] offsetIn = new int[nodeCount + 1];
+        int[] offsetOut = new int[nodeCount + 1];
 
         for (int i = 0; i < edgeCount; ++i) {
-            offsetOut[src[i]]++;
-            offsetIn[trgt[mappingInToOut[i]]]++;
+            offsetOut[src.get(i)]++;
+            offsetIn[trgt.get(mappingInToOut.get(i))]++;
         }
         int outSum = 0;
         int inSum = 0;
@@ -425,6 +713,8 @@ public class GraphRep implements Serializable {
         }
         offsetOut[nodeCount] = outSum;
         offsetIn[nodeCount] = inSum;
+        this.offsetIn = storage.wrap(offsetIn);
+        this.offsetOut = storage.wrap(offsetOut);
     }
 
     /**
@@ -435,7 +725,7 @@ public class GraphRep implements Serializable {
     private boolean nodesSorted() {
         boolean sorted = true;
         for (int i = 0; i < nodeCount-1; ++i) {
-            if (rank[i] < rank[i+1]) {
+            if (rank.get(i) < rank.get(i+1)) {
                 sorted = false;
                 break;
             }
@@ -446,9 +736,14 @@ public class GraphRep implements Serializable {
     /**
      * Sort Nodes by their rank, this is needed so that the CORE has  node ids [0,1,..,k]
      */
-    private void checkAndSortNodesByRank() {
+    private void checkAndSortNodesByRank(ParallelSetup parallel) {
         boolean sorted = nodesSorted();
-        if (!sorted) {
+        if (!sorted && parallel != null) {
+            log.log(Level.INFO, "Nodes are not sorted, resort in parallel");
+            parallel.sortNodesByRank();
+            sorted = nodesSorted();
+            log.log(Level.INFO, "nodes sorted: " + sorted);
+        } else if (!sorted) {
             // TODO: Find less memory hungry method to map shorted edges to new ids
             int[] order = new int[nodeCount];
             log.log(Level.INFO, "Nodes are not sorted, resort");
@@ -464,8 +759,8 @@ public class GraphRep implements Serializable {
 
             // Fixup edges
             for (int i = 0; i < edgeCount; i++) {
-                this.src[i] = newIds[src[i]];
-                this.trgt[i] = newIds[trgt[i]];
+                this.src.put(i, newIds[src.get(i)]);
+                this.trgt.put(i, newIds[trgt.get(i)]);
             }
 
             // check if it's true
@@ -476,12 +771,17 @@ public class GraphRep implements Serializable {
     /*
     * Check if out edges are sorted correctly and sort them if they aren't
      */
-    private void checkAndSortOutEdges() {
+    private void checkAndSortOutEdges(ParallelSetup parallel) {
         // Check if out edges are correctly sorted and
         // resort if not, the ChConstructor should
         // produce already sorted graphs so we check it first
         boolean sorted = outEdgesSorted();
-        if (!sorted) {
+        if (!sorted && parallel != null) {
+            log.log(Level.INFO, "Out edges are not sorted, resort in parallel");
+            parallel.sortOutEdges();
+            sorted = outEdgesSorted();
+            log.log(Level.INFO, "out edges sorted: " + sorted);
+        } else if (!sorted) {
             // TODO: Find less memory hungry method to map shorted edges to new ids
             int[] order = new int[edgeCount];
             log.log(Level.INFO, "Out edges are not sorted, resort");
@@ -497,13 +797,13 @@ public class GraphRep implements Serializable {
 
             // Fixup shorted edges
             for (int i = 0; i < edgeCount; i++) {
-                int oldId1 = this.shortedEdge1[i];
-                int oldId2 = this.shortedEdge2[i];
+                int oldId1 = this.shortedEdge1.get(i);
+                int oldId2 = this.shortedEdge2.get(i);
                 if (oldId1 >= 0) {
-                    this.shortedEdge1[i] = newIds[oldId1];
+                    this.shortedEdge1.put(i, newIds[oldId1]);
                 }
                 if (oldId2 >= 0) {
-                    this.shortedEdge2[i] = newIds[oldId2];
+                    this.shortedEdge2.put(i, newIds[oldId2]);
                 }
             }
             // check if it's true
@@ -520,10 +820,10 @@ public class GraphRep implements Serializable {
      */
     private boolean outEdgesSorted() {
         boolean sorted = true;
-        for (int i = 0; i < this.src.length - 1; i++) {
-            int srcId1 = this.src[i];
-            int srcId2 = this.src[i + 1];
-            if (srcId1 > srcId2 || (srcId1 == srcId2 && this.rank[this.trgt[i + 1]] < this.rank[this.trgt[i]])) {
+        for (int i = 0; i < edgeCount - 1; i++) {
+            int srcId1 = this.src.get(i);
+            int srcId2 = this.src.get(i + 1);
+            if (srcId1 > srcId2 || (srcId1 == srcId2 && this.rank.get(this.trgt.get(i + 1)) < this.rank.get(this.trgt.get(i)))) {
                 sorted = false;
                 break;
             }
@@ -549,7 +849,7 @@ public class GraphRep implements Serializable {
      * @return int
      */
     public final int getDist(int edgeId) {
-        return dist[edgeId];
+        return dist.get(edgeId);
     }
 
 
@@ -560,7 +860,7 @@ public class GraphRep implements Serializable {
      * @return
      */
     public int getReverseEdgeId(int edgeId) {
-        return reverseMap[edgeId];
+        return reverseMap.get(edgeId);
     }
 
     /**
@@ -572,7 +872,7 @@ public class GraphRep implements Serializable {
      * @return int
      */
     public final int getEuclidianDist(int edgeId) {
-        return euclidianDist[edgeId];
+        return euclidianDist.get(edgeId);
     }
 
     /**
@@ -591,7 +891,13 @@ public class GraphRep implements Serializable {
      * @return
      */
     public final int getFirstShortcuttedEdge(int edgeId) {
-        return shortedEdge1[edgeId];
+        if (shortcutMiddle == null) {
+            return shortedEdge1.get(edgeId);
+        }
+        if (firstShortcutExceptions != null && firstShortcutExceptions.containsKey(edgeId)) {
+            return firstShortcutExceptions.get(edgeId);
+        }
+        return findShortcuttedEdge(edgeId, shortcutMiddle.get(edgeId), true);
     }
 
     /**
@@ -601,7 +907,77 @@ public class GraphRep implements Serializable {
      * @return
      */
     public final int getSecondShortcuttedEdge(int edgeId) {
-        return shortedEdge2[edgeId];
+        if (shortcutMiddle == null) {
+            return shortedEdge2.get(edgeId);
+        }
+        if (secondShortcutExceptions != null && secondShortcutExceptions.containsKey(edgeId)) {
+            return secondShortcutExceptions.get(edgeId);
+        }
+        return findShortcuttedEdge(edgeId, shortcutMiddle.get(edgeId), false);
+    }
+
+    /**
+     * Finds the edges shortcutted by the given edge from the node between them, these are the
+     * first out edge of the source to the middle node and the first out edge of the middle node to
+     * the target adding up to the edge's length. Returns the first or second of them or -1 if
+     * middle is negative or there are no such edges
+     */
+    private int findShortcuttedEdge(int edgeId, int middle, boolean first) {
+        if (middle < 0) {
+            return -1;
+        }
+        int source = getSource(edgeId);
+        int target = getTarget(edgeId);
+        int edgeDist = getDist(edgeId);
+        int middleRank = getRank(middle);
+        int targetRank = getRank(target);
+        int middleBegin = firstOutEdgeWithRank(middle, targetRank);
+        int middleEnd = offsetOut.get(middle + 1);
+        int end = offsetOut.get(source + 1);
+        // out edges are sorted by target rank so only the edges to nodes of the
+        // middle's and target's rank need to be checked
+        for (int firstEdge = firstOutEdgeWithRank(source, middleRank); firstEdge < end; firstEdge++) {
+            int firstTarget = getTarget(firstEdge);
+            if (getRank(firstTarget) != middleRank) {
+                break;
+            }
+            if (firstTarget != middle) {
+                continue;
+            }
+            // compact() keeps the edge ids of shortcuts without a matching pair, so if this is the
+            // only edge to the middle node it's the first one
+            if (first && (firstEdge + 1 == end || getTarget(firstEdge + 1) != middle)) {
+                return firstEdge;
+            }
+            for (int secondEdge = middleBegin; secondEdge < middleEnd; secondEdge++) {
+                int secondTarget = getTarget(secondEdge);
+                if (getRank(secondTarget) != targetRank) {
+                    break;
+                }
+                if (secondTarget == target && getDist(firstEdge) + getDist(secondEdge) == edgeDist) {
+                    return first ? firstEdge : secondEdge;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Binary searches the first out edge of the node whose target has at least the given rank,
+     * returns the end of the node's out edges if there is none
+     */
+    private int firstOutEdgeWithRank(int nodeId, int rank) {
+        int low = offsetOut.get(nodeId);
+        int high = offsetOut.get(nodeId + 1);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getRank(getTarget(mid)) < rank) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
     }
 
     /**
@@ -622,7 +998,7 @@ public class GraphRep implements Serializable {
      * @return int
      */
     public final int getInEdgeCount(int nodeId) {
-        return offsetIn[nodeId + 1] - offsetIn[nodeId];
+        return offsetIn.get(nodeId + 1) - offsetIn.get(nodeId);
     }
 
     /**
@@ -634,7 +1010,7 @@ public class GraphRep implements Serializable {
      * @return
      */
     public final int getInEdgeId(int nodeId, int edgeNum) {
-        return mappingInToOut[offsetIn[nodeId] + edgeNum];
+        return mappingInToOut.get(offsetIn.get(nodeId) + edgeNum);
     }
 
     /**
@@ -653,7 +1029,7 @@ public class GraphRep implements Serializable {
      * @return float
      */
     public final int getHeight(int nodeId) {
-        return height[nodeId];
+        return compactHeight == null ? height.get(nodeId) : compactHeight.get(nodeId);
     }
 
     /**
@@ -663,7 +1039,7 @@ public class GraphRep implements Serializable {
      * @return int (degrees*10^7)
      */
     public final int getLat(int nodeId) {
-        return lat[nodeId];
+        return lat.get(nodeId);
     }
 
     /**
@@ -673,7 +1049,7 @@ public class GraphRep implements Serializable {
      * @return int (degrees*10^7)
      */
     public final int getLon(int nodeId) {
-        return lon[nodeId];
+        return lon.get(nodeId);
     }
 
 
@@ -683,7 +1059,7 @@ public class GraphRep implements Serializable {
      * @param nodeId
      */
     public final int getOutEdgeCount(int nodeId) {
-        return offsetOut[nodeId + 1] - offsetOut[nodeId];
+        return offsetOut.get(nodeId + 1) - offsetOut.get(nodeId);
     }
 
     /**
@@ -695,7 +1071,7 @@ public class GraphRep implements Serializable {
      * @return
      */
     public final int getOutEdgeId(int nodeId, int edgeNum) {
-        return offsetOut[nodeId] + edgeNum;
+        return offsetOut.get(nodeId) + edgeNum;
     }
 
     /**
@@ -711,7 +1087,7 @@ public class GraphRep implements Serializable {
      * @return
      */
     public final int getXPos(int nodeId) {
-        return xPos[nodeId];
+        return xPos.get(nodeId);
     }
 
     /**
@@ -721,7 +1097,7 @@ public class GraphRep implements Serializable {
      * @return
      */
     public final int getYPos(int nodeId) {
-        return yPos[nodeId];
+        return yPos.get(nodeId);
     }
 
     /**
@@ -733,7 +1109,7 @@ public class GraphRep implements Serializable {
      * @return int
      */
     public final int getSource(int edgeId) {
-        return src[edgeId];
+        return src.get(edgeId);
     }
 
     /**
@@ -745,7 +1121,94 @@ public class GraphRep implements Serializable {
      * @return int
      */
     public final int getTarget(int edgeId) {
-        return trgt[edgeId];
+        return compactTargets == null ? trgt.get(edgeId) : compactTargets.get(edgeId, src.get(edgeId));
+    }
+
+    /**
+     * Whether compact() was called on this graph
+     */
+    public final boolean isCompact() {
+        return compactTargets != null;
+    }
+
+    /**
+     * Replaces some arrays of the set up graph with a more compact representation
+     * trading some speed of the accessors for memory:
+     * <ul>
+     * <li>heights are stored as shorts if they all fit</li>
+     * <li>targets are stored bit packed relative to the source, see {@link CompactTargets}</li>
+     * <li>shortcuts store the node between their shortcutted edges instead of the two edge ids,
+     * the edges are searched in the out edges of the source and the middle node when unpacking</li>
+     * </ul>
+     * The accessors return the same values as before apart from getFirstShortcuttedEdge() and
+     * getSecondShortcuttedEdge() which both return -1 for edges that aren't shortcuts. Compact
+     * graphs can't be modified, set up again or written as dump.
+     */
+    public final void compact() {
+        if (isCompact()) {
+            return;
+        }
+        if (offsetOut == null) {
+            throw new IllegalStateException("The graph needs to be set up before it can be compacted");
+        }
+        long oldBytes = 4L * (nodeCount + 3L * edgeCount);
+        long newBytes = 0;
+
+        ShortBuffer narrowHeight = null;
+        boolean heightsFit = true;
+        for (int i = 0; i < nodeCount && heightsFit; i++) {
+            heightsFit = height.get(i) == (short) height.get(i);
+        }
+        if (heightsFit) {
+            narrowHeight = storage.allocateBytes(2 * nodeCount).asShortBuffer();
+            for (int i = 0; i < nodeCount; i++) {
+                narrowHeight.put(i, (short) height.get(i));
+            }
+            newBytes += 2L * nodeCount;
+        } else {
+            newBytes += 4L * nodeCount;
+        }
+
+        // Find the middle nodes while the edge ids can still be checked against the stored ones
+        IntBuffer middles = storage.allocate(edgeCount);
+        IntIntOpenHashMap firstExceptions = new IntIntOpenHashMap();
+        IntIntOpenHashMap secondExceptions = new IntIntOpenHashMap();
+        for (int edgeId = 0; edgeId < edgeCount; edgeId++) {
+            int first = shortedEdge1.get(edgeId);
+            if (first < 0) {
+                middles.put(edgeId, -1);
+                continue;
+            }
+            int second = shortedEdge2.get(edgeId);
+            int middle = trgt.get(first);
+            middles.put(edgeId, middle);
+            if (findShortcuttedEdge(edgeId, middle, true) != first || findShortcuttedEdge(edgeId, middle, false) != second) {
+                firstExceptions.put(edgeId, first);
+                secondExceptions.put(edgeId, second);
+            }
+        }
+        newBytes += 4L * edgeCount;
+        if (firstExceptions.size() > 0) {
+            log.info(firstExceptions.size() + " shortcuts can't be unpacked via their middle node and keep their edge ids");
+            this.firstShortcutExceptions = firstExceptions;
+            this.secondShortcutExceptions = secondExceptions;
+            // keys and values of the two maps at roughly half load
+            newBytes += 2L * 16L * firstExceptions.size();
+        }
+
+        CompactTargets targets = new CompactTargets(src, trgt, edgeCount, storage);
+        newBytes += targets.getByteSize();
+
+        if (narrowHeight != null) {
+            this.compactHeight = narrowHeight;
+            this.height = null;
+        }
+        this.shortcutMiddle = middles;
+        this.shortedEdge1 = null;
+        this.shortedEdge2 = null;
+        this.compactTargets = targets;
+        this.trgt = null;
+        log.info("Compacted heights, targets and shortcuts from " + oldBytes / 1024 + " KiB to " + newBytes / 1024 + " KiB");
     }
 
     /**
@@ -766,10 +1229,10 @@ public class GraphRep implements Serializable {
      * @param height
      */
     public final void setNodeData(int id, int lat, int lon, int height) {
-        this.lat[id] = lat;
-        this.lon[id] = lon;
-        this.height[id] = height;
-        this.rank[id] = Integer.MAX_VALUE;
+        this.lat.put(id, lat);
+        this.lon.put(id, lon);
+        this.height.put(id, height);
+        this.rank.put(id, Integer.MAX_VALUE);
     }
 
     /**
@@ -779,7 +1242,7 @@ public class GraphRep implements Serializable {
      * @param rank
      */
     public final void setRank(int id, int rank) {
-        this.rank[id] = rank;
+        this.rank.put(id, rank);
     }
 
 
@@ -791,7 +1254,7 @@ public class GraphRep implements Serializable {
      * @return
      */
     public final int getRank(int nodeId) {
-        return rank[nodeId];
+        return rank.get(nodeId);
 
 
     }
@@ -805,13 +1268,13 @@ public class GraphRep implements Serializable {
      * @param dist
      */
     public final void setEdgeData(int index, int source, int target, int dist, int euclidianDist) {
-        this.src[index] = source;
-        this.trgt[index] = target;
-        this.dist[index] = dist;
-        this.euclidianDist[index] = euclidianDist;
+        this.src.put(index, source);
+        this.trgt.put(index, target);
+        this.dist.put(index, dist);
+        this.euclidianDist.put(index, euclidianDist);
 
-        this.shortedEdge1[index] = -1;
-        this.shortedEdge1[index] = -1;
+        this.shortedEdge1.put(index, -1);
+        this.shortedEdge2.put(index, -1);
     }
 
     /**
@@ -822,8 +1285,8 @@ public class GraphRep implements Serializable {
      * @param shortedEdge1
      */
     public final void setShortcutData(int id, int shortedEdge1, int shortedEdge2) {
-        this.shortedEdge1[id] = shortedEdge1;
-        this.shortedEdge2[id] = shortedEdge2;
+        this.shortedEdge1.put(id, shortedEdge1);
+        this.shortedEdge2.put(id, shortedEdge2);
     }
 
 
@@ -834,7 +1297,7 @@ public class GraphRep implements Serializable {
      *
      * @param newOffsetOut
      */
-    public final void setOffsetOut(int[] newOffsetOut) {
+    public final void setOffsetOut(IntBuffer newOffsetOut) {
         this.offsetOut = newOffsetOut;
     }
 
@@ -842,7 +1305,7 @@ public class GraphRep implements Serializable {
      * Gets the offsetOut array used by this GraphRep, this method
      * is only used for low level graph writing.
      */
-    protected final int[] getOffsetOut() {
+    protected final IntBuffer getOffsetOut() {
         return this.offsetOut;
     }
 
@@ -853,7 +1316,7 @@ public class GraphRep implements Serializable {
      *
      * @param newOffsetIn
      */
-    protected final void setOffsetIn(int[] newOffsetIn) {
+    protected final void setOffsetIn(IntBuffer newOffsetIn) {
         this.offsetIn = newOffsetIn;
     }
 
@@ -861,7 +1324,7 @@ public class GraphRep implements Serializable {
      * Gets the offsetIn array used by this GraphRep, this method
      * is only used for low level graph writing.
      */
-    protected final int[] getOffsetIn() {
+    protected final IntBuffer getOffsetIn() {
         return this.offsetIn;
     }
 
@@ -872,7 +1335,7 @@ public class GraphRep implements Serializable {
      *
      * @param newMapping
      */
-    protected final void setMappingInToOut(int[] newMapping) {
+    protected final void setMappingInToOut(IntBuffer newMapping) {
         this.mappingInToOut = newMapping;
     }
 
@@ -880,9 +1343,57 @@ public class GraphRep implements Serializable {
      * Gets the mappingInToOut array used by this GraphRep, this method
      * is only used for low level graph writing.
      */
-    protected final int[] getMappingInToOut() {
+    protected final IntBuffer getMappingInToOut() {
         return this.mappingInToOut;
     }
 
+    /**
+     * Sets the reverseMap array to the given array, this method
+     * is only used for low level graph loading so setup()
+     * can be avoided
+     *
+     * @param newReverseMap
+     */
+    protected final void setReverseMap(IntBuffer newReverseMap) {
+        this.reverseMap = newReverseMap;
+    }
+
+    /**
+     * Sets the values setup() derives from the node data, this method
+     * is only used for low level graph loading so setup()
+     * can be avoided
+     *
+     * @param maxRank
+     * @param bbox
+     */
+    protected final void setDerivedNodeData(int maxRank, BoundingBox bbox) {
+        this.maxRank = maxRank;
+        this.bbox = bbox;
+    }
+
+    /**
+     * Sets the BoundingBoxPriorityTrees setup() builds and uses the lat, lon one
+     * as NNSearcher, this method is only used for low level graph loading so setup()
+     * can be avoided
+     *
+     * @param xyTree
+     * @param latLonTree
+     */
+    protected final void setBBoxPriorityTrees(BBoxPriorityTree xyTree, BBoxPriorityTree latLonTree) {
+        this.bboxXYTree = xyTree;
+        this.bboxLatLonTree = latLonTree;
+        this.searcher = latLonTree;
+    }
+
+    /**
+     * Sets the Landmarks read from a dump, this method is only used for low
+     * level graph loading
+     *
+     * @param landmarks
+     */
+    protected final void setLandmarks(Landmarks landmarks) {
+        this.landmarks = landmarks;
+    }
+
 
 }
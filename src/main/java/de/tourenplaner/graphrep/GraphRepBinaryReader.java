@@ -33,6 +33,16 @@ public class GraphRepBinaryReader implements GraphRepReader {
 
     private static final int version = 2;
 
+    private final GraphStorage storage;
+
+    public GraphRepBinaryReader() {
+        this(GraphStorage.HEAP);
+    }
+
+    public GraphRepBinaryReader(GraphStorage storage) {
+        this.storage = storage;
+    }
+
     // fileformat is:
     // nodecount
     // edgecount
@@ -63,7 +73,7 @@ public class GraphRepBinaryReader implements GraphRepReader {
         int nodeCount = din.readInt();
         int edgeCount = din.readInt();
 
-        GraphRep graphRep = new GraphRep(nodeCount, edgeCount);
+        GraphRep graphRep = new GraphRep(nodeCount, edgeCount, storage);
 
         log.info("Reading " + nodeCount + " nodes and " + edgeCount + " edges ...");
 
@@ -112,7 +122,7 @@ public class GraphRepBinaryReader implements GraphRepReader {
         for (int i = 0; i < edgeCount; i++) {
             mappingInToOut[i] = tempib.get();
         }
-        graphRep.setMappingInToOut(mappingInToOut);
+        graphRep.setMappingInToOut(storage.wrap(mappingInToOut));
 
         // Read offsetIn
         final int[] offsetIn = new int[nodeCount + 1];
@@ -121,7 +131,7 @@ public class GraphRepBinaryReader implements GraphRepReader {
         for (int i = 0; i < nodeCount + 1; i++) {
             offsetIn[i] = tempib.get();
         }
-        graphRep.setOffsetIn(offsetIn);
+        graphRep.setOffsetIn(storage.wrap(offsetIn));
 
         // Read offsetOut
         final int[] offsetOut = new int[nodeCount + 1];
@@ -130,7 +140,7 @@ public class GraphRepBinaryReader implements GraphRepReader {
         for (int i = 0; i < nodeCount + 1; i++) {
             offsetOut[i] = tempib.get();
         }
-        graphRep.setOffsetOut(offsetOut);
+        graphRep.setOffsetOut(storage.wrap(offsetOut));
 
         in.close();
         return graphRep;
@@ -20,6 +20,7 @@ import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.IntBuffer;
 import java.nio.charset.Charset;
 import java.util.logging.Logger;
 
@@ -66,24 +67,24 @@ public class GraphRepBinaryWriter implements GraphRepWriter {
         }
 
         // Write mapping
-        int[] mappingInToOut = graphRep.getMappingInToOut();
+        IntBuffer mappingInToOut = graphRep.getMappingInToOut();
 
-        for (int aMappingInToOut : mappingInToOut) {
-            dout.writeInt(aMappingInToOut);
+        for (int i = 0; i < mappingInToOut.limit(); i++) {
+            dout.writeInt(mappingInToOut.get(i));
         }
 
         // Write offsetIn
-        int[] offsetIn = graphRep.getOffsetIn();
+        IntBuffer offsetIn = graphRep.getOffsetIn();
 
-        for (int anOffsetIn : offsetIn) {
-            dout.writeInt(anOffsetIn);
+        for (int i = 0; i < offsetIn.limit(); i++) {
+            dout.writeInt(offsetIn.get(i));
         }
 
         // Write offsetOut
-        int[] offsetOut = graphRep.getOffsetOut();
+        IntBuffer offsetOut = graphRep.getOffsetOut();
 
-        for (int anOffsetOut : offsetOut) {
-            dout.writeInt(anOffsetOut);
+        for (int i = 0; i < offsetOut.limit(); i++) {
+            dout.writeInt(offsetOut.get(i));
         }
 
         bout.flush();
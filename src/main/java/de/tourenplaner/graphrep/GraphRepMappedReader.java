@@ -0,0 +1,306 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.graphrep;
+
+import de.tourenplaner.algorithms.bbbundle.BoundingBox;
+
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.logging.Logger;
+
+/**
+ * Loads graph dumps written by the {@link GraphRepMappedWriter} by memory mapping
+ * the file. Nothing is copied, the GraphRep reads directly from read only views into
+ * the mapping so the data lives in the page cache and is shared by all processes
+ * mapping the same dump. Consequently the returned GraphRep can't be modified.
+ * <p/>
+ * The BoundingBoxPriorityTrees and Landmarks are mapped from the dump as well. Version 3 dumps
+ * don't contain the trees so graphs loaded from those keep using the DumbNN, version 3 and 4
+ * dumps don't contain landmarks. Dumps in the older version 2 format are handed to the
+ * {@link GraphRepBinaryReader}.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class GraphRepMappedReader implements GraphRepReader {
+    private static Logger log = Logger.getLogger("de.tourenplaner.graphrep");
+
+    private static final int version = GraphRepMappedWriter.version;
+
+    private static final int headerSize = 8 + 7 * 4;
+
+    // Used for old dumps that need to be copied and the structures derived from mapped graphs
+    private final GraphStorage storage;
+
+    public GraphRepMappedReader() {
+        this(GraphStorage.HEAP);
+    }
+
+    /**
+     * Creates a reader that uses the given storage for version 2 dumps
+     * which can't be mapped and for everything derived from the mapped graphs
+     */
+    public GraphRepMappedReader(GraphStorage storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Maps the graph dump the given stream reads from, the stream needs to be a
+     * FileInputStream as we need its FileChannel for mapping
+     */
+    @Override
+    public GraphRep createGraphRep(InputStream in) throws IOException {
+        if (!(in instanceof FileInputStream)) {
+            throw new IOException("Memory mapped graph loading needs a FileInputStream");
+        }
+        FileChannel channel = ((FileInputStream) in).getChannel();
+        try {
+            ByteBuffer header = ByteBuffer.allocate(headerSize);
+            readFully(channel, header, 8);
+            // Check the first 4 bytes to see if it's a ToureNPlaner Graphfile
+            byte[] magic = new byte[4];
+            header.get(magic);
+            String magicString = new String(magic, Charset.forName("UTF-8"));
+            if (!magicString.equals("TPG\n")) {
+                throw new IOException("The given stream does not contain a ToureNPlaner Graphfile");
+            }
+            int realVersion = header.order(ByteOrder.BIG_ENDIAN).getInt();
+            if (realVersion == 2) {
+                log.info("Graph dump has the old version 2 format, reading it without mapping");
+                channel.position(0);
+                return new GraphRepBinaryReader(storage).createGraphRep(in);
+            }
+            if (realVersion != version && realVersion != 3 && realVersion != 4) {
+                throw new IOException("Wrong file format version, expected " + version + " got " + realVersion);
+            }
+
+            readFully(channel, header, headerSize - 8);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            int nodeCount = header.getInt();
+            int edgeCount = header.getInt();
+            int maxRank = header.getInt();
+            BoundingBox bbox = new BoundingBox(header.getInt(), header.getInt(), header.getInt(), header.getInt());
+
+            long expectedSize = headerSize + 4L * (6L * nodeCount + 8L * edgeCount + 2L * (nodeCount + 1));
+            // Since version 4 the spatial indexes follow
+            if (realVersion == 3 ? channel.size() != expectedSize : channel.size() < expectedSize) {
+                throw new IOException("Graph dump has size " + channel.size() + " but expected " + expectedSize);
+            }
+
+            log.info("Mapping " + nodeCount + " nodes and " + edgeCount + " edges ...");
+            long pos = headerSize;
+            IntBuffer lat = map(channel, pos, nodeCount);
+            pos += 4L * nodeCount;
+            IntBuffer lon = map(channel, pos, nodeCount);
+            pos += 4L * nodeCount;
+            IntBuffer height = map(channel, pos, nodeCount);
+            pos += 4L * nodeCount;
+            IntBuffer rank = map(channel, pos, nodeCount);
+            pos += 4L * nodeCount;
+            IntBuffer xPos = map(channel, pos, nodeCount);
+            pos += 4L * nodeCount;
+            IntBuffer yPos = map(channel, pos, nodeCount);
+            pos += 4L * nodeCount;
+
+            IntBuffer src = map(channel, pos, edgeCount);
+            pos += 4L * edgeCount;
+            IntBuffer trgt = map(channel, pos, edgeCount);
+            pos += 4L * edgeCount;
+            IntBuffer dist = map(channel, pos, edgeCount);
+            pos += 4L * edgeCount;
+            IntBuffer euclidianDist = map(channel, pos, edgeCount);
+            pos += 4L * edgeCount;
+            IntBuffer shortedEdge1 = map(channel, pos, edgeCount);
+            pos += 4L * edgeCount;
+            IntBuffer shortedEdge2 = map(channel, pos, edgeCount);
+            pos += 4L * edgeCount;
+            IntBuffer mappingInToOut = map(channel, pos, edgeCount);
+            pos += 4L * edgeCount;
+            IntBuffer reverseMap = map(channel, pos, edgeCount);
+            pos += 4L * edgeCount;
+
+            IntBuffer offsetIn = map(channel, pos, nodeCount + 1);
+            pos += 4L * (nodeCount + 1);
+            IntBuffer offsetOut = map(channel, pos, nodeCount + 1);
+            pos += 4L * (nodeCount + 1);
+
+            GraphRep graphRep = new GraphRep(nodeCount, edgeCount, lat, lon, height, rank, xPos, yPos,
+                    src, trgt, dist, euclidianDist, shortedEdge1, shortedEdge2, storage);
+            graphRep.setMappingInToOut(mappingInToOut);
+            graphRep.setReverseMap(reverseMap);
+            graphRep.setOffsetIn(offsetIn);
+            graphRep.setOffsetOut(offsetOut);
+            graphRep.setDerivedNodeData(maxRank, bbox);
+
+            if (realVersion == 3) {
+                log.info("Graph dump has the version 3 format without spatial indexes");
+                return graphRep;
+            }
+            log.info("Mapping spatial indexes ...");
+            IndexSection xyIndex = mapIndex(channel, pos, nodeCount, xPos, yPos, rank, false);
+            IndexSection latLonIndex = mapIndex(channel, xyIndex.end, nodeCount, lon, lat, rank, true);
+            pos = latLonIndex.end;
+            // Since version 5 the landmarks follow
+            if (realVersion > 4) {
+                pos = mapLandmarks(channel, pos, nodeCount, graphRep);
+            }
+            if (pos != channel.size()) {
+                throw new IOException("Graph dump has size " + channel.size() + " but expected " + pos);
+            }
+            graphRep.setBBoxPriorityTrees(xyIndex.tree, latLonIndex.tree);
+            return graphRep;
+        } finally {
+            // The mappings stay valid after closing the channel
+            in.close();
+        }
+    }
+
+    /**
+     * A BoundingBoxPriorityTree mapped from a dump together with the file position
+     * after its section
+     */
+    private static final class IndexSection {
+        private final BBoxPriorityTree tree;
+        private final long end;
+
+        private IndexSection(BBoxPriorityTree tree, long end) {
+            this.tree = tree;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Maps the spatial index section starting at pos as written by the {@link GraphRepMappedWriter},
+     * the PrioSearchTrees use slices of the six concatenated PST arrays so they don't need mappings of their own
+     */
+    private static IndexSection mapIndex(FileChannel channel, long pos, int nodeCount, IntBuffer xKeys,
+                                         IntBuffer yKeys, IntBuffer prioKeys, boolean latLonMode) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(3 * 4);
+        while (header.hasRemaining()) {
+            if (channel.read(header, pos + header.position()) < 0) {
+                throw new EOFException("Graph dump ended unexpectedly");
+            }
+        }
+        header.flip();
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        int distinctX = header.getInt();
+        int pstCount = header.getInt();
+        int pstSize = header.getInt();
+        pos += 3 * 4;
+
+        long sectionSize = 4L * (nodeCount + (distinctX + 1) + 2L * distinctX + (pstCount + 1) + 6L * pstSize);
+        if (distinctX < 0 || pstCount < 0 || pstSize < 0 || pos + sectionSize > channel.size()) {
+            throw new IOException("Graph dump contains a broken spatial index");
+        }
+
+        IntBuffer nodesXstruct = map(channel, pos, nodeCount);
+        pos += 4L * nodeCount;
+        IntBuffer offset2Xstruct = map(channel, pos, distinctX + 1);
+        pos += 4L * (distinctX + 1);
+        IntBuffer rangeTreeKey = map(channel, pos, distinctX);
+        pos += 4L * distinctX;
+        IntBuffer rangeTreeInf = map(channel, pos, distinctX);
+        pos += 4L * distinctX;
+        IntBuffer pstOffsets = map(channel, pos, pstCount + 1);
+        pos += 4L * (pstCount + 1);
+
+        IntBuffer[] pstArrays = new IntBuffer[6];
+        for (int i = 0; i < pstArrays.length; i++) {
+            pstArrays[i] = map(channel, pos, pstSize);
+            pos += 4L * pstSize;
+        }
+        PrioSearchTree[] psts = new PrioSearchTree[pstCount];
+        for (int i = 0; i < pstCount; i++) {
+            int from = pstOffsets.get(i);
+            int to = pstOffsets.get(i + 1);
+            psts[i] = new PrioSearchTree(slice(pstArrays[0], from, to), slice(pstArrays[1], from, to),
+                    slice(pstArrays[2], from, to), slice(pstArrays[3], from, to),
+                    slice(pstArrays[4], from, to), slice(pstArrays[5], from, to));
+        }
+
+        BBoxPriorityTree tree = new BBoxPriorityTree(xKeys, yKeys, prioKeys, latLonMode, nodesXstruct,
+                offset2Xstruct, new RangeTree(rangeTreeKey, rangeTreeInf), psts);
+        return new IndexSection(tree, pos);
+    }
+
+    /**
+     * Maps the landmark section starting at pos as written by the {@link GraphRepMappedWriter}
+     * and sets the Landmarks of the graph if there are any, returns the file position after the section
+     */
+    private static long mapLandmarks(FileChannel channel, long pos, int nodeCount, GraphRep graphRep) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        while (header.hasRemaining()) {
+            if (channel.read(header, pos + header.position()) < 0) {
+                throw new EOFException("Graph dump ended unexpectedly");
+            }
+        }
+        header.flip();
+        int landmarkCount = header.order(ByteOrder.LITTLE_ENDIAN).getInt();
+        pos += 4;
+        if (landmarkCount == 0) {
+            return pos;
+        }
+
+        long sectionSize = 4L * (landmarkCount + 4L * nodeCount * landmarkCount);
+        if (landmarkCount < 0 || (long) nodeCount * landmarkCount > Integer.MAX_VALUE / 4
+                || pos + sectionSize > channel.size()) {
+            throw new IOException("Graph dump contains broken landmarks");
+        }
+        log.info("Mapping " + landmarkCount + " landmarks ...");
+        IntBuffer ids = map(channel, pos, landmarkCount);
+        pos += 4L * landmarkCount;
+        IntBuffer[] dists = new IntBuffer[4];
+        for (int i = 0; i < dists.length; i++) {
+            dists[i] = map(channel, pos, nodeCount * landmarkCount);
+            pos += 4L * nodeCount * landmarkCount;
+        }
+        graphRep.setLandmarks(new Landmarks(nodeCount, ids, dists[0], dists[1], dists[2], dists[3]));
+        return pos;
+    }
+
+    private static IntBuffer slice(IntBuffer buffer, int from, int to) {
+        IntBuffer view = buffer.duplicate();
+        view.position(from);
+        view.limit(to);
+        return view.slice();
+    }
+
+    /**
+     * Maps count little endian ints starting at the given file position as read only IntBuffer,
+     * every array gets its own mapping so we don't run into the 2 GB limit of a single mapping
+     */
+    private static IntBuffer map(FileChannel channel, long pos, int count) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, pos, 4L * count).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, int length) throws IOException {
+        buffer.clear();
+        buffer.limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Graph dump ended unexpectedly");
+            }
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.graphrep;
+
+import de.tourenplaner.algorithms.bbbundle.BoundingBox;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.logging.Logger;
+
+/**
+ * Writes graph dumps that can be memory mapped by the {@link GraphRepMappedReader}.
+ * In contrast to the {@link GraphRepBinaryWriter} every array of the GraphRep is stored
+ * as one contiguous little endian section, including the data setup() derives, so the
+ * reader can use the sections as they are. This also includes the flattened arrays of both
+ * BoundingBoxPriorityTrees so they don't need to be rebuilt when loading the dump,
+ * and the distances of the {@link Landmarks} if the graph has them.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class GraphRepMappedWriter implements GraphRepWriter {
+    private static Logger log = Logger.getLogger("de.tourenplaner.graphrep");
+
+    protected static final int version = 5;
+
+    // 8388608 Bytes = 8 MB
+    private static final int chunkSize = 8388608;
+
+    // fileformat is:
+    // magic "TPG\n"
+    // version (big endian like all previous versions)
+    // all following values are little endian
+    // nodecount edgecount maxrank bbox.x bbox.y bbox.width bbox.height
+    // (nodecount) * lat, lon, height, rank, xPos, yPos each as one section
+    // (edgecount) * src, trgt, dist, euclidianDist, shortedEdge1, shortedEdge2, mappingInToOut, reverseMap
+    // (nodecount+1) * offsetIn, offsetOut
+    // spatial index of the xy BoundingBoxPriorityTree followed by the one of the lat, lon tree:
+    // distinctx pstcount pstsize
+    // (nodecount) * nodesXstruct
+    // (distinctx+1) * offset2Xstruct
+    // (distinctx) * rangeTreeKey, rangeTreeInf
+    // (pstcount+1) * pstOffsets
+    // (pstsize) * treeKey, treePrio, treeInf, heapKey, heapPrio, heapInf of all PSTs
+    // landmarkcount (0 if the graph has no landmarks)
+    // (landmarkcount) * landmark node ids
+    // (nodecount*landmarkcount) * distFrom, distTo, euclidianFrom, euclidianTo
+
+    @Override
+    public void writeGraphRep(OutputStream out, GraphRep graphRep) throws IOException {
+        if (graphRep.reverseMap == null || graphRep.getBbox() == null) {
+            throw new IOException("The graph needs to be set up before it can be written as mapped dump");
+        }
+        if (graphRep.isCompact()) {
+            throw new IOException("Compact graphs can't be written as mapped dump, write the dump before compacting");
+        }
+        WritableByteChannel channel = Channels.newChannel(out);
+        int numNodes = graphRep.getNodeCount();
+        int numEdges = graphRep.getEdgeCount();
+        BoundingBox bbox = graphRep.getBbox();
+
+        ByteBuffer header = ByteBuffer.allocate(8 + 7 * 4);
+        // Write magic bytes so we can identify the ToureNPlaner Graphfileformat
+        header.put("TPG\n".getBytes(Charset.forName("UTF-8")));
+        header.order(ByteOrder.BIG_ENDIAN).putInt(version);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(numNodes);
+        header.putInt(numEdges);
+        header.putInt(graphRep.getMaxRank());
+        header.putInt(bbox.x);
+        header.putInt(bbox.y);
+        header.putInt(bbox.width);
+        header.putInt(bbox.height);
+        header.flip();
+        writeFully(channel, header);
+
+        ByteBuffer chunk = ByteBuffer.allocate(chunkSize).order(ByteOrder.LITTLE_ENDIAN);
+        // Write nodes
+        writeSection(channel, chunk, graphRep.lat, numNodes);
+        writeSection(channel, chunk, graphRep.lon, numNodes);
+        writeSection(channel, chunk, graphRep.height, numNodes);
+        writeSection(channel, chunk, graphRep.rank, numNodes);
+        writeSection(channel, chunk, graphRep.xPos, numNodes);
+        writeSection(channel, chunk, graphRep.yPos, numNodes);
+
+        // Write edges
+        writeSection(channel, chunk, graphRep.src, numEdges);
+        writeSection(channel, chunk, graphRep.trgt, numEdges);
+        writeSection(channel, chunk, graphRep.dist, numEdges);
+        writeSection(channel, chunk, graphRep.euclidianDist, numEdges);
+        writeSection(channel, chunk, graphRep.shortedEdge1, numEdges);
+        writeSection(channel, chunk, graphRep.shortedEdge2, numEdges);
+        writeSection(channel, chunk, graphRep.getMappingInToOut(), numEdges);
+        writeSection(channel, chunk, graphRep.reverseMap, numEdges);
+
+        // Write offsets
+        writeSection(channel, chunk, graphRep.getOffsetIn(), numNodes + 1);
+        writeSection(channel, chunk, graphRep.getOffsetOut(), numNodes + 1);
+
+        // Write spatial indexes, graphs loaded from older dumps don't have them
+        // so we build them here instead of at every startup
+        BBoxPriorityTree xyTree = graphRep.getXYBBoxPriorityTree();
+        BBoxPriorityTree latLonTree = graphRep.getLatLonBBoxSearchTree();
+        if (xyTree == null || latLonTree == null) {
+            log.info("Building spatial indexes for the dump");
+            xyTree = new BBoxPriorityTree(graphRep.xPos, graphRep.yPos, graphRep.rank, false);
+            latLonTree = new BBoxPriorityTree(graphRep.lon, graphRep.lat, graphRep.rank, true);
+        }
+        writeIndex(channel, chunk, xyTree);
+        writeIndex(channel, chunk, latLonTree);
+
+        // Write landmarks, customized graphs only have the euclidian distances
+        Landmarks landmarks = graphRep.getLandmarks();
+        if (landmarks != null && landmarks.getDistFrom() == null) {
+            landmarks = null;
+        }
+        int landmarkCount = landmarks == null ? 0 : landmarks.getCount();
+        chunk.clear();
+        chunk.putInt(landmarkCount);
+        chunk.flip();
+        writeFully(channel, chunk);
+        if (landmarks != null) {
+            writeSection(channel, chunk, landmarks.getIds(), landmarkCount);
+            writeSection(channel, chunk, landmarks.getDistFrom(), numNodes * landmarkCount);
+            writeSection(channel, chunk, landmarks.getDistTo(), numNodes * landmarkCount);
+            writeSection(channel, chunk, landmarks.getEuclidianFrom(), numNodes * landmarkCount);
+            writeSection(channel, chunk, landmarks.getEuclidianTo(), numNodes * landmarkCount);
+        }
+
+        channel.close();
+        log.info("Successfully wrote mapped graph");
+    }
+
+    /**
+     * Writes the flattened arrays of the given BoundingBoxPriorityTree, the arrays of all
+     * its PrioSearchTrees are concatenated and located via the pstOffsets
+     */
+    private static void writeIndex(WritableByteChannel channel, ByteBuffer chunk, BBoxPriorityTree tree) throws IOException {
+        IntBuffer offset2Xstruct = tree.getOffset2Xstruct();
+        RangeTree rangeTree = tree.getXRangeTree();
+        PrioSearchTree[] psts = tree.getPSTs();
+        int distinctX = offset2Xstruct.limit() - 1;
+
+        int[] pstOffsets = new int[psts.length + 1];
+        for (int i = 0; i < psts.length; i++) {
+            pstOffsets[i + 1] = pstOffsets[i] + psts[i].size();
+        }
+        int pstSize = pstOffsets[psts.length];
+
+        chunk.clear();
+        chunk.putInt(distinctX);
+        chunk.putInt(psts.length);
+        chunk.putInt(pstSize);
+        chunk.flip();
+        writeFully(channel, chunk);
+
+        writeSection(channel, chunk, tree.getNodesXstruct(), tree.getNodesXstruct().limit());
+        writeSection(channel, chunk, offset2Xstruct, distinctX + 1);
+        writeSection(channel, chunk, rangeTree.getTreeKey(), distinctX);
+        writeSection(channel, chunk, rangeTree.getTreeInf(), distinctX);
+        writeSection(channel, chunk, IntBuffer.wrap(pstOffsets), psts.length + 1);
+        for (PrioSearchTree pst : psts) {
+            writeSection(channel, chunk, pst.treeKey, pst.size());
+        }
+        for (PrioSearchTree pst : psts) {
+            writeSection(channel, chunk, pst.treePrio, pst.size());
+        }
+        for (PrioSearchTree pst : psts) {
+            writeSection(channel, chunk, pst.treeInf, pst.size());
+        }
+        for (PrioSearchTree pst : psts) {
+            writeSection(channel, chunk, pst.heapKey, pst.size());
+        }
+        for (PrioSearchTree pst : psts) {
+            writeSection(channel, chunk, pst.heapPrio, pst.size());
+        }
+        for (PrioSearchTree pst : psts) {
+            writeSection(channel, chunk, pst.heapInf, pst.size());
+        }
+    }
+
+    /**
+     * Writes the first count values of data using chunk as little endian staging buffer
+     */
+    private static void writeSection(WritableByteChannel channel, ByteBuffer chunk, IntBuffer data, int count) throws IOException {
+        IntBuffer view = data.duplicate();
+        view.position(0);
+        view.limit(count);
+        while (view.hasRemaining()) {
+            int n = Math.min(view.remaining(), chunk.capacity() / 4);
+            IntBuffer part = view.slice();
+            part.limit(n);
+            chunk.clear();
+            chunk.asIntBuffer().put(part);
+            chunk.limit(n * 4);
+            writeFully(channel, chunk);
+            view.position(view.position() + n);
+        }
+    }
+
+    private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -32,9 +32,15 @@ public class GraphRepStandardReader implements GraphRepReader{
 	private static Logger log = Logger.getLogger("de.tourenplaner.graphrep");
 
 	private boolean binary;
+	private final GraphStorage storage;
 
 	public GraphRepStandardReader(boolean binary){
+		this(binary, GraphStorage.HEAP);
+	}
+
+	public GraphRepStandardReader(boolean binary, GraphStorage storage){
 		this.binary = binary;
+		this.storage = storage;
 	}
 
 	// see file format specification for a description of the format
@@ -57,7 +63,7 @@ public class GraphRepStandardReader implements GraphRepReader{
 
 			nodeCount = r.getNodeCount();
 			edgeCount = r.getEdgeCount();
-			GraphRep graphRep = new GraphRep(nodeCount, edgeCount);
+			GraphRep graphRep = new GraphRep(nodeCount, edgeCount, storage);
 
 			log.info("Graph: "+meta.get("Id")+" created at " + meta.get("Timestamp").asDate()+
 					"\nfrom source graph " + meta.get("OriginId")+
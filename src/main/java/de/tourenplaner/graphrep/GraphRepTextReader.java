@@ -30,6 +30,16 @@ public class GraphRepTextReader implements GraphRepReader {
     private static Logger log = Logger.getLogger("de.tourenplaner.graphrep");
     private static final Pattern COMPILE = Pattern.compile(" ");
 
+    private final GraphStorage storage;
+
+    public GraphRepTextReader() {
+        this(GraphStorage.HEAP);
+    }
+
+    public GraphRepTextReader(GraphStorage storage) {
+        this.storage = storage;
+    }
+
     // see file format specification for a description of the format
     @Override
     public GraphRep createGraphRep(InputStream in) throws IOException {
@@ -51,7 +61,7 @@ public class GraphRepTextReader implements GraphRepReader {
         line = inb.readLine();
         edgeCount = line != null ? Integer.parseInt(line) : 0;
 
-        GraphRep graphRep = new GraphRep(nodeCount, edgeCount);
+        GraphRep graphRep = new GraphRep(nodeCount, edgeCount, storage);
 
         // used for splitted lines in 1. nodes 2. edges
         String[] splittedLine;
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.graphrep;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Decides where the arrays of a GraphRep live. HEAP wraps ordinary int arrays,
+ * OFFHEAP uses direct buffers outside of the Java heap so the garbage collector
+ * never has to look at the graph. Direct memory is limited by -XX:MaxDirectMemorySize
+ * which defaults to the maximum heap size.
+ * <p/>
+ * Graphs loaded from a memory mapped dump don't use either, they always read
+ * from the mapping.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public enum GraphStorage {
+    HEAP("heap") {
+        @Override
+        public IntBuffer allocate(int size) {
+            return IntBuffer.wrap(new int[size]);
+        }
+
+        @Override
+        public IntBuffer wrap(int[] values) {
+            return IntBuffer.wrap(values);
+        }
+
+        @Override
+        public ByteBuffer allocateBytes(int size) {
+            return ByteBuffer.allocate(size).order(ByteOrder.nativeOrder());
+        }
+    },
+    OFFHEAP("offheap") {
+        @Override
+        public IntBuffer allocate(int size) {
+            if (size > Integer.MAX_VALUE / 4) {
+                throw new IllegalArgumentException("Can't allocate " + size + " ints in a single direct buffer");
+            }
+            return ByteBuffer.allocateDirect(size * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+
+        @Override
+        public IntBuffer wrap(int[] values) {
+            IntBuffer buffer = allocate(values.length);
+            buffer.put(values);
+            buffer.rewind();
+            return buffer;
+        }
+
+        @Override
+        public ByteBuffer allocateBytes(int size) {
+            return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+        }
+    };
+
+    private final String configName;
+
+    GraphStorage(String configName) {
+        this.configName = configName;
+    }
+
+    /**
+     * Allocates a zero filled buffer with room for size ints
+     */
+    public abstract IntBuffer allocate(int size);
+
+    /**
+     * Gets a buffer with the given values, HEAP uses the array itself
+     * while OFFHEAP copies it so the array can be dropped afterwards
+     */
+    public abstract IntBuffer wrap(int[] values);
+
+    /**
+     * Allocates a zero filled buffer of size bytes in native byte order, used
+     * for the narrow arrays of compact graphs
+     */
+    public abstract ByteBuffer allocateBytes(int size);
+
+    /**
+     * Gets the name used for this storage in the config file
+     */
+    public final String getConfigName() {
+        return configName;
+    }
+
+    /**
+     * Gets the storage with the given config name ("heap" or "offheap"),
+     * unknown names result in HEAP
+     */
+    public static GraphStorage fromConfigName(String name) {
+        if (OFFHEAP.configName.equalsIgnoreCase(name)) {
+            return OFFHEAP;
+        }
+        return HEAP;
+    }
+}
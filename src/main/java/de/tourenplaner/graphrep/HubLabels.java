@@ -0,0 +1,414 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.graphrep;
+
+import com.carrotsearch.hppc.IntArrayList;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Hub labels derived from the contraction hierarchy for distance queries without searches.
+ * <p/>
+ * Every node has a forward label of (hub, dist) pairs for nodes reachable on upward
+ * paths from it and a backward label of (hub, dist) pairs for nodes reaching it on
+ * upward paths. Every shortest path has a highest node which is in the forward label
+ * of its source and the backward label of its target, so the distance is the minimum
+ * of the sums over the hubs both labels share. The labels are sorted by hub, a query
+ * is one merge of two short arrays.
+ * <p/>
+ * The labels are built from the highest node down, the label of a node is the union of
+ * the labels of its upper neighbors plus the edge dists. Entries that are longer than
+ * the distance the labels already give are pruned, they only come from upward paths
+ * that aren't shortest. Nodes whose upper neighbors are all labeled are labeled in parallel.
+ * <p/>
+ * All labels of a direction live in one interleaved buffer allocated with the graph's
+ * storage, node i owns the pairs [offset(i), offset(i+1)).
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public final class HubLabels {
+    private static Logger log = Logger.getLogger("de.tourenplaner.graphrep");
+
+    // levels with less nodes are labeled sequentially
+    private static final int MIN_PARALLEL_NODES = 1024;
+
+    private final GraphRep graph;
+
+    // (nodeCount+1) offsets into the labels, in pairs not ints
+    private final IntBuffer forwardOffsets;
+    private final IntBuffer backwardOffsets;
+    // interleaved (hub, dist) pairs sorted by hub
+    private final IntBuffer forwardLabels;
+    private final IntBuffer backwardLabels;
+
+    private final Map<String, Object> stats;
+
+    // the labels while building, labels[node] is the interleaved label
+    private int[][] forwardBuild;
+    private int[][] backwardBuild;
+    private ThreadLocal<Scratch> scratches;
+
+    /**
+     * Builds the labels of the given graph using the given number of threads, the graph
+     * needs to be set up (or loaded from a dump) already
+     *
+     * @throws IllegalArgumentException if the labels of a direction don't fit into one buffer
+     */
+    HubLabels(GraphRep graph, GraphStorage storage, int threads) {
+        long starttime = System.nanoTime();
+        this.graph = graph;
+        final int nodeCount = graph.getNodeCount();
+
+        // order nodes by rank, ties are broken by id just like higher() does
+        long[] keys = new long[nodeCount];
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+            keys[nodeId] = ((long) graph.getRank(nodeId) << 32) | nodeId;
+        }
+        Arrays.sort(keys);
+
+        // the level of a node is one more than the highest level of its upper neighbors
+        int[] levels = new int[nodeCount];
+        int levelCount = 0;
+        for (int i = keys.length - 1; i >= 0; i--) {
+            int nodeId = (int) keys[i];
+            int level = 0;
+            for (int j = 0; j < graph.getOutEdgeCount(nodeId); j++) {
+                int other = graph.getTarget(graph.getOutEdgeId(nodeId, j));
+                if (higher(other, nodeId)) {
+                    level = Math.max(level, levels[other] + 1);
+                }
+            }
+            for (int j = 0; j < graph.getInEdgeCount(nodeId); j++) {
+                int other = graph.getSource(graph.getInEdgeId(nodeId, j));
+                if (higher(other, nodeId)) {
+                    level = Math.max(level, levels[other] + 1);
+                }
+            }
+            levels[nodeId] = level;
+            levelCount = Math.max(levelCount, level + 1);
+        }
+        int[] levelOffsets = new int[levelCount + 1];
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+            levelOffsets[levels[nodeId] + 1]++;
+        }
+        for (int i = 0; i < levelCount; i++) {
+            levelOffsets[i + 1] += levelOffsets[i];
+        }
+        final int[] levelNodes = new int[nodeCount];
+        int[] fill = Arrays.copyOf(levelOffsets, levelCount);
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+            levelNodes[fill[levels[nodeId]]++] = nodeId;
+        }
+
+        forwardBuild = new int[nodeCount][];
+        backwardBuild = new int[nodeCount][];
+        scratches = new ThreadLocal<Scratch>() {
+            @Override
+            protected Scratch initialValue() {
+                return new Scratch(nodeCount);
+            }
+        };
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        try {
+            for (int level = 0; level < levelCount; level++) {
+                labelLevel(pool, threads, levelNodes, levelOffsets[level], levelOffsets[level + 1]);
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+            scratches = null;
+        }
+
+        int[] forwardOffsetArray = new int[nodeCount + 1];
+        int[] backwardOffsetArray = new int[nodeCount + 1];
+        long forwardCount = 0;
+        long backwardCount = 0;
+        int maxLabelSize = 0;
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+            forwardOffsetArray[nodeId] = (int) forwardCount;
+            backwardOffsetArray[nodeId] = (int) backwardCount;
+            forwardCount += forwardBuild[nodeId].length / 2;
+            backwardCount += backwardBuild[nodeId].length / 2;
+            maxLabelSize = Math.max(maxLabelSize, Math.max(forwardBuild[nodeId].length, backwardBuild[nodeId].length) / 2);
+            if (2 * Math.max(forwardCount, backwardCount) > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Hub labels need more than " + Integer.MAX_VALUE + " ints");
+            }
+        }
+        forwardOffsetArray[nodeCount] = (int) forwardCount;
+        backwardOffsetArray[nodeCount] = (int) backwardCount;
+        forwardOffsets = storage.wrap(forwardOffsetArray);
+        backwardOffsets = storage.wrap(backwardOffsetArray);
+        forwardLabels = pack(storage, forwardBuild, (int) forwardCount);
+        backwardLabels = pack(storage, backwardBuild, (int) backwardCount);
+        forwardBuild = null;
+        backwardBuild = null;
+
+        stats = new LinkedHashMap<String, Object>();
+        stats.put("nodes", nodeCount);
+        stats.put("levels", levelCount);
+        stats.put("forwardentries", forwardCount);
+        stats.put("backwardentries", backwardCount);
+        stats.put("averagelabelsize", nodeCount > 0 ? (forwardCount + backwardCount) / (2.0 * nodeCount) : 0.0);
+        stats.put("maxlabelsize", maxLabelSize);
+        stats.put("megabytes", (8L * (nodeCount + 1) + 8L * (forwardCount + backwardCount)) / (1024 * 1024));
+        stats.put("buildms", (System.nanoTime() - starttime) / 1000000);
+        log.info("Built hub labels " + stats);
+    }
+
+    private static IntBuffer pack(GraphStorage storage, int[][] labels, int count) {
+        IntBuffer packed = storage.allocate(2 * count);
+        int pos = 0;
+        for (int[] label : labels) {
+            for (int value : label) {
+                packed.put(pos++, value);
+            }
+        }
+        return packed;
+    }
+
+    /**
+     * Whether node a is above node b in the hierarchy
+     */
+    private boolean higher(int a, int b) {
+        int rankA = graph.getRank(a);
+        int rankB = graph.getRank(b);
+        return rankA > rankB || (rankA == rankB && a > b);
+    }
+
+    /**
+     * Labels the nodes [from, to) of levelNodes, in parallel if there are enough
+     */
+    private void labelLevel(ForkJoinPool pool, int threads, final int[] levelNodes, int from, int to) {
+        if (pool == null || to - from < MIN_PARALLEL_NODES) {
+            scratches.get().labelNodes(levelNodes, from, to);
+            return;
+        }
+        int chunks = 4 * threads;
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(chunks);
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            final int chunkFrom = from + (int) ((long) (to - from) * chunk / chunks);
+            final int chunkTo = from + (int) ((long) (to - from) * (chunk + 1) / chunks);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    scratches.get().labelNodes(levelNodes, chunkFrom, chunkTo);
+                    return null;
+                }
+            });
+        }
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while building hub labels", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Building hub labels failed", e.getCause());
+        }
+    }
+
+    /**
+     * The minimum dist over the hubs of two interleaved labels
+     */
+    private static int query(int[] first, int[] second) {
+        int best = Integer.MAX_VALUE;
+        int i = 0;
+        int j = 0;
+        while (i < first.length && j < second.length) {
+            int hubFirst = first[i];
+            int hubSecond = second[j];
+            if (hubFirst < hubSecond) {
+                i += 2;
+            } else if (hubFirst > hubSecond) {
+                j += 2;
+            } else {
+                best = Math.min(best, first[i + 1] + second[j + 1]);
+                i += 2;
+                j += 2;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The dense distance array of one labeling thread
+     */
+    private final class Scratch {
+        private final int[] dists;
+        private final IntArrayList hubs;
+
+        Scratch(int nodeCount) {
+            dists = new int[nodeCount];
+            Arrays.fill(dists, Integer.MAX_VALUE);
+            hubs = new IntArrayList();
+        }
+
+        void labelNodes(int[] levelNodes, int from, int to) {
+            for (int i = from; i < to; i++) {
+                int nodeId = levelNodes[i];
+                forwardBuild[nodeId] = label(nodeId, true);
+                backwardBuild[nodeId] = label(nodeId, false);
+            }
+        }
+
+        /**
+         * Merges the labels of the upper neighbors and prunes entries longer
+         * than the distance given by the merged labels
+         */
+        private int[] label(int nodeId, boolean forward) {
+            hubs.clear();
+            dists[nodeId] = 0;
+            hubs.add(nodeId);
+            if (forward) {
+                for (int i = 0; i < graph.getOutEdgeCount(nodeId); i++) {
+                    int edgeId = graph.getOutEdgeId(nodeId, i);
+                    int other = graph.getTarget(edgeId);
+                    if (higher(other, nodeId)) {
+                        merge(forwardBuild[other], graph.getDist(edgeId));
+                    }
+                }
+            } else {
+                for (int i = 0; i < graph.getInEdgeCount(nodeId); i++) {
+                    int edgeId = graph.getInEdgeId(nodeId, i);
+                    int other = graph.getSource(edgeId);
+                    if (higher(other, nodeId)) {
+                        merge(backwardBuild[other], graph.getDist(edgeId));
+                    }
+                }
+            }
+
+            int[] sortedHubs = hubs.toArray();
+            Arrays.sort(sortedHubs);
+            int[] candidate = new int[2 * sortedHubs.length];
+            for (int i = 0; i < sortedHubs.length; i++) {
+                candidate[2 * i] = sortedHubs[i];
+                candidate[2 * i + 1] = dists[sortedHubs[i]];
+                dists[sortedHubs[i]] = Integer.MAX_VALUE;
+            }
+
+            // the hubs are labeled already, their labels give the distances between them and the node
+            int[] label = new int[candidate.length];
+            int size = 0;
+            for (int i = 0; i < candidate.length; i += 2) {
+                int hub = candidate[i];
+                int dist = candidate[i + 1];
+                if (hub != nodeId && query(candidate, forward ? backwardBuild[hub] : forwardBuild[hub]) < dist) {
+                    continue;
+                }
+                label[size++] = hub;
+                label[size++] = dist;
+            }
+            return size == label.length ? label : Arrays.copyOf(label, size);
+        }
+
+        private void merge(int[] otherLabel, int edgeDist) {
+            for (int i = 0; i < otherLabel.length; i += 2) {
+                int hub = otherLabel[i];
+                int dist = otherLabel[i + 1] + edgeDist;
+                if (dists[hub] == Integer.MAX_VALUE) {
+                    hubs.add(hub);
+                }
+                if (dist < dists[hub]) {
+                    dists[hub] = dist;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the shortest path distance from the source to the target
+     * or Integer.MAX_VALUE if there is no path
+     *
+     * @param srcId
+     * @param trgtId
+     * @return
+     */
+    public int distance(int srcId, int trgtId) {
+        int best = Integer.MAX_VALUE;
+        int i = 2 * forwardOffsets.get(srcId);
+        int iEnd = 2 * forwardOffsets.get(srcId + 1);
+        int j = 2 * backwardOffsets.get(trgtId);
+        int jEnd = 2 * backwardOffsets.get(trgtId + 1);
+        while (i < iEnd && j < jEnd) {
+            int hubForward = forwardLabels.get(i);
+            int hubBackward = backwardLabels.get(j);
+            if (hubForward < hubBackward) {
+                i += 2;
+            } else if (hubForward > hubBackward) {
+                j += 2;
+            } else {
+                best = Math.min(best, forwardLabels.get(i + 1) + backwardLabels.get(j + 1));
+                i += 2;
+                j += 2;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Computes the distances from all sources to all targets, distmat[i][j] is the
+     * distance from sourceIds[i] to targetIds[j] or Integer.MAX_VALUE if there is no path
+     *
+     * @param sourceIds
+     * @param targetIds
+     * @return
+     */
+    public int[][] computeDistMatrix(int[] sourceIds, int[] targetIds) {
+        int[][] distmat = new int[sourceIds.length][];
+        for (int i = 0; i < sourceIds.length; i++) {
+            distmat[i] = new int[targetIds.length];
+            for (int j = 0; j < targetIds.length; j++) {
+                distmat[i][j] = distance(sourceIds[i], targetIds[j]);
+            }
+        }
+        return distmat;
+    }
+
+    /**
+     * Gets the number of hubs in the forward or backward label of the node
+     *
+     * @param nodeId
+     * @param forward
+     * @return
+     */
+    public int getLabelSize(int nodeId, boolean forward) {
+        IntBuffer offsets = forward ? forwardOffsets : backwardOffsets;
+        return offsets.get(nodeId + 1) - offsets.get(nodeId);
+    }
+
+    /**
+     * Gets the label size report: node, level and entry counts, the average and
+     * largest label size, the memory needed and the time the labels took to build
+     *
+     * @return
+     */
+    public Map<String, Object> getStats() {
+        return stats;
+    }
+}
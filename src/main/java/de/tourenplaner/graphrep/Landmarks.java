@@ -0,0 +1,378 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.graphrep;
+
+import de.tourenplaner.algorithms.Heap;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Landmark distances for A* searches on the original edges (ALT).
+ * <p/>
+ * For every landmark the distances from it to all nodes and from all nodes to it are
+ * stored, both with the dist and with the euclidian distance of the edges. By the triangle
+ * inequality d(v, t) &gt;= d(l, t) - d(l, v) and d(v, t) &gt;= d(v, l) - d(t, l) for every landmark l,
+ * the largest of these lower bounds is a feasible potential for the searches that don't
+ * use shortcuts (see {@link Potential}).
+ * <p/>
+ * The landmarks are chosen by farthest selection on the dist metric, each one is the
+ * node farthest from all landmarks chosen before. The distances of all landmarks of a node
+ * are stored next to each other so computing its potential touches only one cache line.
+ * Unreachable nodes get {@link #UNREACHABLE}.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public final class Landmarks {
+    private static Logger log = Logger.getLogger("de.tourenplaner.graphrep");
+
+    /**
+     * The distance stored for nodes that can't reach or be reached from a landmark
+     */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    /**
+     * The number of landmarks used by a single search, they are the ones giving the
+     * best lower bound for its source
+     */
+    public static final int ACTIVE_LANDMARKS = 4;
+
+    private final int count;
+    private final int nodeCount;
+
+    // node ids of the landmarks
+    private final IntBuffer ids;
+    // (nodecount*count) distances indexed by nodeId*count+landmark
+    private final IntBuffer distFrom;
+    private final IntBuffer distTo;
+    private final IntBuffer euclidianFrom;
+    private final IntBuffer euclidianTo;
+
+    /**
+     * Chooses count landmarks and computes their distances using the given number of threads,
+     * the graph needs to be set up (or loaded from a dump) already
+     *
+     * @throws IllegalArgumentException if the distances don't fit into one buffer
+     */
+    Landmarks(GraphRep graph, GraphStorage storage, int count, int threads) {
+        this.nodeCount = graph.getNodeCount();
+        this.count = Math.min(count, nodeCount);
+        if ((long) nodeCount * this.count > Integer.MAX_VALUE / 4) {
+            throw new IllegalArgumentException(count + " landmarks don't fit into a single buffer for "
+                    + nodeCount + " nodes");
+        }
+        this.ids = storage.allocate(this.count);
+        this.distFrom = storage.allocate(nodeCount * this.count);
+        this.distTo = storage.allocate(nodeCount * this.count);
+        this.euclidianFrom = storage.allocate(nodeCount * this.count);
+        this.euclidianTo = storage.allocate(nodeCount * this.count);
+
+        long starttime = System.nanoTime();
+        chooseLandmarks(graph);
+        computeDistances(graph, threads);
+        log.info("Computed " + this.count + " landmarks in " + (System.nanoTime() - starttime) / 1000000.0 +
+                " ms, they need " + 16L * nodeCount * this.count / (1024 * 1024) + " MiB");
+    }
+
+    /**
+     * Creates Landmarks on top of already filled buffers, used when loading dumps
+     */
+    Landmarks(int nodeCount, IntBuffer ids, IntBuffer distFrom, IntBuffer distTo,
+              IntBuffer euclidianFrom, IntBuffer euclidianTo) {
+        this.nodeCount = nodeCount;
+        this.count = ids.limit();
+        this.ids = ids;
+        this.distFrom = distFrom;
+        this.distTo = distTo;
+        this.euclidianFrom = euclidianFrom;
+        this.euclidianTo = euclidianTo;
+    }
+
+    /**
+     * Farthest selection, the first landmark is the node farthest from node 0,
+     * every further one has the largest distance from all previous landmarks.
+     * This computes the distFrom distances of all landmarks too
+     */
+    private void chooseLandmarks(GraphRep graph) {
+        Heap heap = new Heap();
+        int[] dists = new int[nodeCount];
+        int[] minDists = new int[nodeCount];
+
+        dijkstra(graph, heap, 0, false, false, dists);
+        int landmark = farthest(dists);
+        Arrays.fill(minDists, UNREACHABLE);
+        for (int l = 0; l < count; l++) {
+            ids.put(l, landmark);
+            dijkstra(graph, heap, landmark, false, false, dists);
+            for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+                distFrom.put(nodeId * count + l, dists[nodeId]);
+                minDists[nodeId] = Math.min(minDists[nodeId], dists[nodeId]);
+            }
+            landmark = farthest(minDists);
+        }
+    }
+
+    /**
+     * The reachable node with the largest distance, the smallest id wins ties
+     */
+    private static int farthest(int[] dists) {
+        int farthest = 0;
+        int farthestDist = -1;
+        for (int nodeId = 0; nodeId < dists.length; nodeId++) {
+            if (dists[nodeId] != UNREACHABLE && dists[nodeId] > farthestDist) {
+                farthest = nodeId;
+                farthestDist = dists[nodeId];
+            }
+        }
+        return farthest;
+    }
+
+    /**
+     * Computes the remaining three distance arrays of all landmarks in parallel
+     */
+    private void computeDistances(final GraphRep graph, int threads) {
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(3 * count);
+        for (int l = 0; l < count; l++) {
+            tasks.add(new DistanceTask(graph, l, false, true, distTo));
+            tasks.add(new DistanceTask(graph, l, true, false, euclidianFrom));
+            tasks.add(new DistanceTask(graph, l, true, true, euclidianTo));
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while computing landmarks", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Computing landmarks failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Computes one distance array of one landmark
+     */
+    private final class DistanceTask implements Callable<Void> {
+        private final GraphRep graph;
+        private final int landmark;
+        private final boolean euclidian;
+        private final boolean backward;
+        private final IntBuffer target;
+
+        DistanceTask(GraphRep graph, int landmark, boolean euclidian, boolean backward, IntBuffer target) {
+            this.graph = graph;
+            this.landmark = landmark;
+            this.euclidian = euclidian;
+            this.backward = backward;
+            this.target = target;
+        }
+
+        @Override
+        public Void call() {
+            int[] dists = new int[nodeCount];
+            dijkstra(graph, new Heap(), ids.get(landmark), euclidian, backward, dists);
+            for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+                target.put(nodeId * count + landmark, dists[nodeId]);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Dijkstra over the original edges from (or with backward = true to) the given node,
+     * fills dists with the distances and UNREACHABLE for nodes not reached
+     */
+    private static void dijkstra(GraphRep graph, Heap heap, int srcId, boolean euclidian, boolean backward,
+                                 int[] dists) {
+        Arrays.fill(dists, UNREACHABLE);
+        heap.resetHeap();
+        dists[srcId] = 0;
+        heap.insert(srcId, 0);
+        while (!heap.isEmpty()) {
+            int nodeId = heap.peekMinId();
+            int nodeDist = heap.peekMinDist();
+            heap.removeMin();
+            if (nodeDist > dists[nodeId]) {
+                continue;
+            }
+            int edgeCount = backward ? graph.getInEdgeCount(nodeId) : graph.getOutEdgeCount(nodeId);
+            for (int i = 0; i < edgeCount; i++) {
+                int edgeId = backward ? graph.getInEdgeId(nodeId, i) : graph.getOutEdgeId(nodeId, i);
+                // Ignore Shortcuts
+                if (graph.getFirstShortcuttedEdge(edgeId) >= 0) {
+                    continue;
+                }
+                int otherNode = backward ? graph.getSource(edgeId) : graph.getTarget(edgeId);
+                int tempDist = nodeDist + (euclidian ? graph.getEuclidianDist(edgeId) : graph.getDist(edgeId));
+                if (tempDist < dists[otherNode]) {
+                    dists[otherNode] = tempDist;
+                    heap.insert(otherNode, tempDist);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of landmarks
+     *
+     * @return
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the node id of the given landmark
+     *
+     * @param landmark
+     * @return
+     */
+    public int getNodeId(int landmark) {
+        return ids.get(landmark);
+    }
+
+    /**
+     * The same landmarks without the dist distances, used when the dists
+     * change but the euclidian distances don't
+     */
+    Landmarks withoutDists() {
+        return new Landmarks(nodeCount, ids, null, null, euclidianFrom, euclidianTo);
+    }
+
+    IntBuffer getIds() {
+        return ids;
+    }
+
+    IntBuffer getDistFrom() {
+        return distFrom;
+    }
+
+    IntBuffer getDistTo() {
+        return distTo;
+    }
+
+    IntBuffer getEuclidianFrom() {
+        return euclidianFrom;
+    }
+
+    IntBuffer getEuclidianTo() {
+        return euclidianTo;
+    }
+
+    /**
+     * Creates the potential for searches from srcId to trgtId using the dist or the
+     * euclidian distance of the edges
+     *
+     * @param srcId
+     * @param trgtId
+     * @param euclidian
+     * @return the potential or null if there are no distances for the dists
+     */
+    public Potential potential(int srcId, int trgtId, boolean euclidian) {
+        if (euclidian) {
+            return new Potential(euclidianFrom, euclidianTo, srcId, trgtId);
+        }
+        return distFrom == null ? null : new Potential(distFrom, distTo, srcId, trgtId);
+    }
+
+    /**
+     * A lower bound of the distance from any node to the target of a search. On strongly
+     * connected graphs it's feasible, so the reduced edge weights dist(u, v) - get(u) + get(v)
+     * are never negative. Landmarks that can't reach a node only make it a lower bound, so
+     * A* searches using it need to insert nodes again if their distance improves after
+     * they were settled, then stopping at the target still finds the shortest path
+     */
+    public final class Potential {
+        private final IntBuffer from;
+        private final IntBuffer to;
+        // landmarks used and their distances from/to the target
+        private final int[] active;
+        private final int[] fromTarget;
+        private final int[] toTarget;
+
+        private Potential(IntBuffer from, IntBuffer to, int srcId, int trgtId) {
+            this.from = from;
+            this.to = to;
+            // use the landmarks giving the best bounds for the source
+            int[] all = new int[count];
+            int[] bounds = new int[count];
+            for (int l = 0; l < count; l++) {
+                all[l] = l;
+                bounds[l] = bound(srcId, l, from.get(trgtId * count + l), to.get(trgtId * count + l));
+            }
+            int activeCount = Math.min(ACTIVE_LANDMARKS, count);
+            for (int i = 0; i < activeCount; i++) {
+                int best = i;
+                for (int j = i + 1; j < count; j++) {
+                    if (bounds[all[j]] > bounds[all[best]]) {
+                        best = j;
+                    }
+                }
+                int temp = all[i];
+                all[i] = all[best];
+                all[best] = temp;
+            }
+            this.active = Arrays.copyOf(all, activeCount);
+            this.fromTarget = new int[activeCount];
+            this.toTarget = new int[activeCount];
+            for (int i = 0; i < activeCount; i++) {
+                fromTarget[i] = from.get(trgtId * count + active[i]);
+                toTarget[i] = to.get(trgtId * count + active[i]);
+            }
+        }
+
+        /**
+         * The lower bound given by the landmark l with the distances from and to the target
+         */
+        private int bound(int nodeId, int l, int fromTrgt, int toTrgt) {
+            int bound = 0;
+            int fromNode = from.get(nodeId * count + l);
+            if (fromNode != UNREACHABLE && fromTrgt != UNREACHABLE) {
+                bound = fromTrgt - fromNode;
+            }
+            int toNode = to.get(nodeId * count + l);
+            if (toNode != UNREACHABLE && toTrgt != UNREACHABLE) {
+                bound = Math.max(bound, toNode - toTrgt);
+            }
+            return bound;
+        }
+
+        /**
+         * Gets the lower bound of the distance from the given node to the target
+         *
+         * @param nodeId
+         * @return
+         */
+        public int get(int nodeId) {
+            int bound = 0;
+            for (int i = 0; i < active.length; i++) {
+                bound = Math.max(bound, bound(nodeId, active[i], fromTarget[i], toTarget[i]));
+            }
+            return bound;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package de.tourenplaner.graphrep;
+
+import java.util.Arrays;
+
+/**
+ * Computes a node order that keeps the nodes of a rank sorted graph close in memory
+ * when they are close on the map.
+ * <p/>
+ * The highest coreSize nodes keep their ids [0, coreSize) and stay sorted by rank
+ * descending. The remaining nodes are split in tiers of rank, each twice as large as
+ * all nodes before it, and only reordered within their tier along a Hilbert curve
+ * over their coordinates. So every node of a tier still has a higher rank than all
+ * nodes of the following tiers.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+final class LocalityOrder {
+    // Tiers are at least this large so tiny cores don't create lots of tiny tiers
+    private static final int MIN_TIER_SIZE = 1024;
+    // Coordinates are mapped to a grid of 2^HILBERT_BITS x 2^HILBERT_BITS cells
+    private static final int HILBERT_BITS = 15;
+
+    private LocalityOrder() {
+    }
+
+    /**
+     * Computes the new order of the nodes of the given graph which needs to be sorted
+     * by rank descending
+     *
+     * @param graph
+     * @param coreSize the number of highest ranked nodes that keep their ids
+     * @return order where order[newId] is the old id of the node
+     */
+    static int[] computeOrder(GraphRep graph, int coreSize) {
+        int nodeCount = graph.getNodeCount();
+        coreSize = Math.max(0, Math.min(coreSize, nodeCount));
+        int[] order = new int[nodeCount];
+        for (int i = 0; i < coreSize; i++) {
+            order[i] = i;
+        }
+
+        int minLat = Integer.MAX_VALUE;
+        int minLon = Integer.MAX_VALUE;
+        int maxLat = Integer.MIN_VALUE;
+        int maxLon = Integer.MIN_VALUE;
+        for (int i = coreSize; i < nodeCount; i++) {
+            minLat = Math.min(minLat, graph.lat.get(i));
+            minLon = Math.min(minLon, graph.lon.get(i));
+            maxLat = Math.max(maxLat, graph.lat.get(i));
+            maxLon = Math.max(maxLon, graph.lon.get(i));
+        }
+        long latRange = Math.max(1L, (long) maxLat - minLat);
+        long lonRange = Math.max(1L, (long) maxLon - minLon);
+        int cells = (1 << HILBERT_BITS) - 1;
+
+        int tierStart = coreSize;
+        while (tierStart < nodeCount) {
+            int tierEnd = (int) Math.min(nodeCount, (long) tierStart + Math.max(tierStart, MIN_TIER_SIZE));
+            // The id in the lower bits makes the keys unique and the order deterministic
+            long[] keys = new long[tierEnd - tierStart];
+            for (int i = tierStart; i < tierEnd; i++) {
+                int x = (int) (((long) graph.lon.get(i) - minLon) * cells / lonRange);
+                int y = (int) (((long) graph.lat.get(i) - minLat) * cells / latRange);
+                keys[i - tierStart] = (hilbertIndex(x, y) << 32) | i;
+            }
+            Arrays.sort(keys);
+            for (int i = tierStart; i < tierEnd; i++) {
+                order[i] = (int) keys[i - tierStart];
+            }
+            tierStart = tierEnd;
+        }
+        return order;
+    }
+
+    /**
+     * Gets the position of the cell (x, y) on the Hilbert curve through the
+     * 2^HILBERT_BITS x 2^HILBERT_BITS grid
+     */
+    static long hilbertIndex(int x, int y) {
+        int n = 1 << HILBERT_BITS;
+        long d = 0;
+        for (int s = n / 2; s > 0; s /= 2) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            // Rotate the quadrant so the curve stays connected
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = n - 1 - x;
+                    y = n - 1 - y;
+                }
+                int temp = x;
+                x = y;
+                y = temp;
+            }
+        }
+        return d;
+    }
+}
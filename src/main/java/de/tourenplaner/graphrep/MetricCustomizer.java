@@ -0,0 +1,671 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.graphrep;
+
+import de.tourenplaner.algorithms.bbbundle.BoundingBox;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.IntBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Applies a new metric (edge weights) to a contraction hierarchy without contracting
+ * it again. The contraction order stays fixed and the metric independent topology of it
+ * is built once: every original edge of the given graph plus every shortcut that contracting
+ * the nodes in this order could ever need, without witness searches deciding which ones are
+ * left out. Shortcuts of the given graph are ignored.
+ * <p/>
+ * The customization is a bottom-up pass over the lower triangles of this topology: an arc
+ * between v and u gets the minimum of its original edges and of the paths v, x, u over
+ * the nodes x ranked below both. Every shortest path then has an up-down path of the
+ * same length in the customized graph, so the CH searches find exactly the shortest paths
+ * of the new metric. The lower triangles of an arc only use arcs whose lower node is lower
+ * too, so the nodes are grouped into levels above all their lower neighbors and the arcs of
+ * all nodes of a level are customized in parallel.
+ * <p/>
+ * The customized graph keeps every open original edge with its weight, an arc that has a
+ * shorter path over lower nodes gets an additional shortcut edge, so the algorithms working
+ * on original edges only see all roads. Arcs without any path of the new metric, e.g. over
+ * closed roads only, are left out.
+ * <p/>
+ * The topology depends on the contraction order only, orders of hierarchies built with
+ * witness searches may need far more shortcuts than the hierarchy has. The constructor
+ * fails once the topology gets larger than the given multiple of the graph's edges.
+ * <p/>
+ * The customizer keeps only the node arrays, spatial indexes and landmark ids of the given
+ * graph, the customized GraphReps share them. They need to be prepared like a freshly loaded
+ * graph and are swapped in by reloading the algorithms so running requests keep using the
+ * old metric.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public final class MetricCustomizer {
+    private static Logger log = Logger.getLogger("de.tourenplaner.graphrep");
+
+    /**
+     * The weight of closed edges, paths of this length or longer are left
+     * out of the customized graph
+     */
+    public static final int CLOSED = Integer.MAX_VALUE / 16;
+
+    // Levels with fewer nodes are customized by the calling thread
+    private static final int MIN_PARALLEL_NODES = 1024;
+
+    // baseArcs values of base edges without arc
+    private static final int SHORTCUT = -1;
+    private static final int LOOP = -2;
+
+    private final GraphStorage storage;
+    private final int threads;
+
+    // the node data shared with the base graph and all customized graphs
+    private final int nodeCount;
+    private final IntBuffer lat;
+    private final IntBuffer lon;
+    private final IntBuffer height;
+    private final IntBuffer rank;
+    private final IntBuffer xPos;
+    private final IntBuffer yPos;
+    private final int maxRank;
+    private final BoundingBox bbox;
+    private final BBoxPriorityTree xyTree;
+    private final BBoxPriorityTree latLonTree;
+    private final Landmarks landmarks;
+
+    // the dists and euclidian dists of the base graph's edges
+    private final int[] baseWeights;
+    private final int[] baseEuclidianDists;
+    // the arc of every original edge of the base graph, SHORTCUT or LOOP for the others
+    private final int[] baseArcs;
+
+    // the position of every node in the contraction order, ties of rank are broken by id
+    private final int[] position;
+
+    // the arcs of node v are [arcOffsets[v], arcOffsets[v+1]) sorted by the position of
+    // their targets, the first lowerCounts[v] of them go to lower nodes
+    private final int[] arcOffsets;
+    private final int[] lowerCounts;
+    private final int[] arcTargets;
+    // the arc going the other way of every arc
+    private final int[] reverseArcs;
+
+    // the nodes grouped by level, level i is [levelOffsets[i], levelOffsets[i+1])
+    private final int[] levelNodes;
+    private final int[] levelOffsets;
+
+    /**
+     * Builds the metric independent topology for the contraction order of the given set up
+     * graph, the customized graphs allocate their arrays with the given storage. The given
+     * graph isn't referenced afterwards
+     *
+     * @param maxFillRatio the maximal number of arcs of the topology per edge of the graph
+     * @throws IllegalStateException if the graph is compact or the topology would need
+     *                               more than maxFillRatio arcs per edge
+     */
+    public MetricCustomizer(GraphRep base, GraphStorage storage, int threads, double maxFillRatio) {
+        if (base.isCompact()) {
+            throw new IllegalStateException("Compact graphs can't be customized, customize before compacting");
+        }
+        this.storage = storage;
+        this.threads = Math.max(1, threads);
+        long starttime = System.nanoTime();
+
+        nodeCount = base.getNodeCount();
+        lat = base.lat;
+        lon = base.lon;
+        height = base.height;
+        rank = base.rank;
+        xPos = base.xPos;
+        yPos = base.yPos;
+        maxRank = base.getMaxRank();
+        bbox = base.getBbox();
+        xyTree = base.getXYBBoxPriorityTree();
+        latLonTree = base.getLatLonBBoxSearchTree();
+        // Bounds on the old dists don't hold for new ones but the euclidian distances
+        // only grow as the arcs are paths of original edges and closed ones are left out
+        landmarks = base.getLandmarks() == null ? null : base.getLandmarks().withoutDists();
+
+        int edgeCount = base.getEdgeCount();
+        baseWeights = new int[edgeCount];
+        baseEuclidianDists = new int[edgeCount];
+        for (int edgeId = 0; edgeId < edgeCount; edgeId++) {
+            baseWeights[edgeId] = base.getDist(edgeId);
+            baseEuclidianDists[edgeId] = base.getEuclidianDist(edgeId);
+        }
+
+        long[] keys = new long[nodeCount];
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+            keys[nodeId] = ((long) base.getRank(nodeId) << 32) | nodeId;
+        }
+        Arrays.sort(keys);
+        int[] nodeAt = new int[nodeCount];
+        position = new int[nodeCount];
+        for (int pos = 0; pos < nodeCount; pos++) {
+            nodeAt[pos] = (int) keys[pos];
+            position[nodeAt[pos]] = pos;
+        }
+        keys = null;
+
+        // upper[p] are the positions of the higher neighbors of the node at position p
+        int[][] upper = upperNeighbors(base);
+        long arcCount = 0;
+        for (int[] neighbors : upper) {
+            arcCount += 2 * neighbors.length;
+        }
+        // contracting a node connects all its higher neighbors, the lowest of them
+        // gets the others as higher neighbors and passes them on when it's contracted
+        long maxArcs = Math.min((long) (maxFillRatio * edgeCount), Integer.MAX_VALUE - 8L);
+        for (int pos = 0; pos < nodeCount; pos++) {
+            int[] neighbors = upper[pos];
+            if (neighbors.length > 1) {
+                int parent = neighbors[0];
+                int oldLength = upper[parent].length;
+                upper[parent] = mergeUnique(upper[parent], neighbors, 1);
+                arcCount += 2 * (upper[parent].length - oldLength);
+            }
+            if (arcCount > maxArcs) {
+                throw new IllegalStateException("The contraction order needs more than " + arcCount
+                        + " arcs for " + edgeCount + " edges after " + (pos + 1) + " of " + nodeCount
+                        + " nodes, more than the maximal fill-in ratio of " + maxFillRatio
+                        + ", the graph needs an order suited for customization");
+            }
+        }
+
+        int[] lowerCountAt = new int[nodeCount];
+        for (int pos = 0; pos < nodeCount; pos++) {
+            for (int other : upper[pos]) {
+                lowerCountAt[other]++;
+            }
+        }
+        int[] lowerOffsets = new int[nodeCount + 1];
+        for (int pos = 0; pos < nodeCount; pos++) {
+            lowerOffsets[pos + 1] = lowerOffsets[pos] + lowerCountAt[pos];
+        }
+        // ascending as the lower nodes are appended in order
+        int[] lower = new int[lowerOffsets[nodeCount]];
+        int[] fill = Arrays.copyOf(lowerOffsets, nodeCount);
+        for (int pos = 0; pos < nodeCount; pos++) {
+            for (int other : upper[pos]) {
+                lower[fill[other]++] = pos;
+            }
+        }
+
+        arcOffsets = new int[nodeCount + 1];
+        lowerCounts = new int[nodeCount];
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+            int pos = position[nodeId];
+            lowerCounts[nodeId] = lowerCountAt[pos];
+            arcOffsets[nodeId + 1] = arcOffsets[nodeId] + lowerCountAt[pos] + upper[pos].length;
+        }
+        arcTargets = new int[(int) arcCount];
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+            int pos = position[nodeId];
+            int arc = arcOffsets[nodeId];
+            for (int i = lowerOffsets[pos]; i < lowerOffsets[pos + 1]; i++) {
+                arcTargets[arc++] = nodeAt[lower[i]];
+            }
+            for (int other : upper[pos]) {
+                arcTargets[arc++] = nodeAt[other];
+            }
+        }
+        upper = null;
+        reverseArcs = new int[(int) arcCount];
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+            for (int arc = arcOffsets[nodeId]; arc < arcOffsets[nodeId + 1]; arc++) {
+                reverseArcs[arc] = findArc(arcTargets[arc], nodeId);
+            }
+        }
+        baseArcs = new int[edgeCount];
+        for (int edgeId = 0; edgeId < edgeCount; edgeId++) {
+            int source = base.getSource(edgeId);
+            int target = base.getTarget(edgeId);
+            if (base.getFirstShortcuttedEdge(edgeId) >= 0) {
+                baseArcs[edgeId] = SHORTCUT;
+            } else if (source == target) {
+                baseArcs[edgeId] = LOOP;
+            } else {
+                baseArcs[edgeId] = findArc(source, target);
+            }
+        }
+
+        int[] levels = new int[nodeCount];
+        int levelCount = 0;
+        for (int pos = 0; pos < nodeCount; pos++) {
+            int level = 0;
+            for (int i = lowerOffsets[pos]; i < lowerOffsets[pos + 1]; i++) {
+                level = Math.max(level, levels[lower[i]] + 1);
+            }
+            levels[pos] = level;
+            levelCount = Math.max(levelCount, level + 1);
+        }
+        levelOffsets = new int[levelCount + 1];
+        for (int pos = 0; pos < nodeCount; pos++) {
+            levelOffsets[levels[pos] + 1]++;
+        }
+        for (int i = 0; i < levelCount; i++) {
+            levelOffsets[i + 1] += levelOffsets[i];
+        }
+        levelNodes = new int[nodeCount];
+        fill = Arrays.copyOf(levelOffsets, levelCount);
+        for (int pos = 0; pos < nodeCount; pos++) {
+            levelNodes[fill[levels[pos]]++] = nodeAt[pos];
+        }
+        log.info("Customizable graph has " + arcCount + " arcs for " + edgeCount + " edges (fill-in ratio "
+                + String.format("%.2f", (double) arcCount / Math.max(1, edgeCount)) + ") and " + levelCount
+                + " levels, built in " + (System.nanoTime() - starttime) / 1000000.0 + " ms");
+    }
+
+    /**
+     * Collects the positions of the higher neighbors over original edges of the nodes
+     * indexed by position, sorted and without duplicates
+     */
+    private int[][] upperNeighbors(GraphRep base) {
+        int[] counts = new int[nodeCount];
+        for (int edgeId = 0; edgeId < base.getEdgeCount(); edgeId++) {
+            int a = position[base.getSource(edgeId)];
+            int b = position[base.getTarget(edgeId)];
+            if (a != b && base.getFirstShortcuttedEdge(edgeId) < 0) {
+                counts[Math.min(a, b)]++;
+            }
+        }
+        int[][] upper = new int[nodeCount][];
+        for (int pos = 0; pos < nodeCount; pos++) {
+            upper[pos] = new int[counts[pos]];
+            counts[pos] = 0;
+        }
+        for (int edgeId = 0; edgeId < base.getEdgeCount(); edgeId++) {
+            int a = position[base.getSource(edgeId)];
+            int b = position[base.getTarget(edgeId)];
+            if (a != b && base.getFirstShortcuttedEdge(edgeId) < 0) {
+                int low = Math.min(a, b);
+                upper[low][counts[low]++] = Math.max(a, b);
+            }
+        }
+        for (int pos = 0; pos < nodeCount; pos++) {
+            upper[pos] = mergeUnique(new int[0], upper[pos], 0);
+        }
+        return upper;
+    }
+
+    /**
+     * Merges the sorted array a with b[from..] into a new sorted array without duplicates,
+     * b needs not be sorted
+     */
+    private static int[] mergeUnique(int[] a, int[] b, int from) {
+        int[] merged = Arrays.copyOf(a, a.length + b.length - from);
+        System.arraycopy(b, from, merged, a.length, b.length - from);
+        Arrays.sort(merged);
+        int size = 0;
+        for (int i = 0; i < merged.length; i++) {
+            if (size == 0 || merged[size - 1] != merged[i]) {
+                merged[size++] = merged[i];
+            }
+        }
+        return size == merged.length ? merged : Arrays.copyOf(merged, size);
+    }
+
+    /**
+     * Finds the arc from source to target by binary search, the arcs are sorted by target position
+     */
+    private int findArc(int source, int target) {
+        int targetPos = position[target];
+        int low = arcOffsets[source];
+        int high = arcOffsets[source + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midPos = position[arcTargets[mid]];
+            if (midPos < targetPos) {
+                low = mid + 1;
+            } else if (midPos > targetPos) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        throw new IllegalStateException("Missing arc from " + source + " to " + target);
+    }
+
+    /**
+     * Gets the dists of the base graph as weight vector for customize()
+     */
+    public int[] getBaseWeights() {
+        return baseWeights.clone();
+    }
+
+    /**
+     * Reads a weight vector for customize(), it starts with the dists of the base graph.
+     * Every line of the stream sets the dist of one original edge as "edgeId dist",
+     * the edge ids are the ones of the graph dump. Negative dists close the edge, empty
+     * lines and lines starting with # are ignored
+     *
+     * @throws IOException if the stream can't be read or contains invalid lines
+     */
+    public int[] readWeights(InputStream in) throws IOException {
+        int[] weights = getBaseWeights();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, Charset.forName("UTF-8")));
+        try {
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\\s+");
+                int edgeId;
+                int dist;
+                try {
+                    if (parts.length != 2) {
+                        throw new NumberFormatException("expected edgeId and dist");
+                    }
+                    edgeId = Integer.parseInt(parts[0]);
+                    dist = Integer.parseInt(parts[1]);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid weight in line " + lineNumber + ": " + e.getMessage());
+                }
+                if (edgeId < 0 || edgeId >= weights.length || baseArcs[edgeId] == SHORTCUT) {
+                    throw new IOException("Line " + lineNumber + " doesn't weight an original edge: " + edgeId);
+                }
+                weights[edgeId] = dist < 0 ? CLOSED : Math.min(dist, CLOSED);
+            }
+        } finally {
+            reader.close();
+        }
+        return weights;
+    }
+
+    /**
+     * Creates a GraphRep with the given weights of the original edges, the weights
+     * given for shortcuts are ignored
+     *
+     * @param weights the dists of all edges of the base graph indexed by edge id
+     * @return the customized graph
+     */
+    public GraphRep customize(int[] weights) {
+        if (weights.length != baseArcs.length) {
+            throw new IllegalArgumentException("Got " + weights.length + " weights for " + baseArcs.length + " edges");
+        }
+        long starttime = System.nanoTime();
+        Customization customization = new Customization(arcTargets.length);
+        for (int edgeId = 0; edgeId < weights.length; edgeId++) {
+            int arc = baseArcs[edgeId];
+            if (arc >= 0 && weights[edgeId] < customization.originalDist[arc]) {
+                customization.originalDist[arc] = weights[edgeId];
+                customization.originalEuclidianDist[arc] = baseEuclidianDists[edgeId];
+            }
+        }
+        customization.startWithOriginals();
+
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        try {
+            for (int level = 0; level < levelOffsets.length - 1; level++) {
+                customizeLevel(pool, customization, levelOffsets[level], levelOffsets[level + 1]);
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+
+        GraphRep graph = customization.toGraph();
+        log.info("Customized metric in " + (System.nanoTime() - starttime) / 1000000.0 + " ms, "
+                + graph.getEdgeCount() + " edges for " + arcTargets.length + " arcs");
+        return graph;
+    }
+
+    /**
+     * Customizes the arcs of the nodes [from, to) of levelNodes, in parallel if there are enough
+     */
+    private void customizeLevel(ForkJoinPool pool, final Customization customization, int from, int to) {
+        if (pool == null || to - from < MIN_PARALLEL_NODES) {
+            customization.customizeNodes(from, to);
+            return;
+        }
+        int chunks = 4 * threads;
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(chunks);
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            final int chunkFrom = from + (int) ((long) (to - from) * chunk / chunks);
+            final int chunkTo = from + (int) ((long) (to - from) * (chunk + 1) / chunks);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    customization.customizeNodes(chunkFrom, chunkTo);
+                    return null;
+                }
+            });
+        }
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while customizing", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Customizing failed", e.getCause());
+        }
+    }
+
+    /**
+     * The arc arrays of one customization, the arcs between a node and its higher
+     * neighbors are written by the task customizing the node only
+     */
+    private final class Customization {
+        // the shortest original edge of every arc, CLOSED if there is none
+        private final int[] originalDist;
+        private final int[] originalEuclidianDist;
+        // the shortest path of every arc, a shortcut if shortedArc1 isn't -1
+        private final int[] dist;
+        private final int[] euclidianDist;
+        private final int[] shortedArc1;
+        private final int[] shortedArc2;
+        // whether the shortest paths of the arc and its reverse arc unpack to the same roads
+        private final boolean[] mirrored;
+
+        Customization(int arcCount) {
+            originalDist = new int[arcCount];
+            Arrays.fill(originalDist, CLOSED);
+            originalEuclidianDist = new int[arcCount];
+            dist = new int[arcCount];
+            euclidianDist = new int[arcCount];
+            shortedArc1 = new int[arcCount];
+            Arrays.fill(shortedArc1, -1);
+            shortedArc2 = new int[arcCount];
+            Arrays.fill(shortedArc2, -1);
+            mirrored = new boolean[arcCount];
+        }
+
+        void startWithOriginals() {
+            System.arraycopy(originalDist, 0, dist, 0, dist.length);
+            System.arraycopy(originalEuclidianDist, 0, euclidianDist, 0, euclidianDist.length);
+        }
+
+        void customizeNodes(int from, int to) {
+            for (int i = from; i < to; i++) {
+                int nodeId = levelNodes[i];
+                int upperFrom = arcOffsets[nodeId] + lowerCounts[nodeId];
+                int upperTo = arcOffsets[nodeId + 1];
+                for (int down = arcOffsets[nodeId]; down < upperFrom; down++) {
+                    int up = reverseArcs[down];
+                    if (dist[down] >= CLOSED && dist[up] >= CLOSED) {
+                        continue;
+                    }
+                    // the lower triangles are the common higher neighbors of the node and the lower one
+                    int lowerNode = arcTargets[down];
+                    int arc = upperFrom;
+                    int lowerArc = arcOffsets[lowerNode] + lowerCounts[lowerNode];
+                    int lowerTo = arcOffsets[lowerNode + 1];
+                    while (arc < upperTo && lowerArc < lowerTo) {
+                        int arcPos = position[arcTargets[arc]];
+                        int lowerArcPos = position[arcTargets[lowerArc]];
+                        if (arcPos < lowerArcPos) {
+                            arc++;
+                        } else if (arcPos > lowerArcPos) {
+                            lowerArc++;
+                        } else {
+                            relax(arc, down, lowerArc);
+                            relax(reverseArcs[arc], reverseArcs[lowerArc], up);
+                            arc++;
+                            lowerArc++;
+                        }
+                    }
+                }
+                for (int arc = upperFrom; arc < upperTo; arc++) {
+                    int reverseArc = reverseArcs[arc];
+                    boolean same = dist[arc] == dist[reverseArc];
+                    if (same && shortedArc1[arc] >= 0) {
+                        same = shortedArc1[reverseArc] >= 0
+                                && arcTargets[shortedArc1[arc]] == arcTargets[shortedArc1[reverseArc]]
+                                && mirrored[shortedArc1[arc]] && mirrored[shortedArc2[arc]];
+                    } else if (same) {
+                        same = shortedArc1[reverseArc] < 0;
+                    }
+                    mirrored[arc] = same;
+                    mirrored[reverseArc] = same;
+                }
+            }
+        }
+
+        /**
+         * Makes the path over first and second the shortest path of the arc if it's shorter,
+         * ties keep original edges
+         */
+        private void relax(int arc, int first, int second) {
+            if (dist[first] >= CLOSED || dist[second] >= CLOSED) {
+                return;
+            }
+            int length = dist[first] + dist[second];
+            if (length < dist[arc]) {
+                dist[arc] = length;
+                euclidianDist[arc] = euclidianDist[first] + euclidianDist[second];
+                shortedArc1[arc] = first;
+                shortedArc2[arc] = second;
+            }
+        }
+
+        /**
+         * Creates the GraphRep with an edge for every open original edge and a shortcut
+         * for every arc with a shorter path
+         */
+        GraphRep toGraph() {
+            int arcCount = dist.length;
+            // the edge ids of the original edge and the shortcut of every arc, -1 if it has none
+            int[] originalEdges = new int[arcCount];
+            int[] shortcutEdges = new int[arcCount];
+            // numbered in arc order so the out edges of every node are in a row
+            int[] firstEdges = new int[nodeCount + 1];
+            int edgeCount = 0;
+            for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+                firstEdges[nodeId] = edgeCount;
+                for (int arc = arcOffsets[nodeId]; arc < arcOffsets[nodeId + 1]; arc++) {
+                    originalEdges[arc] = originalDist[arc] < CLOSED ? edgeCount++ : -1;
+                    shortcutEdges[arc] = shortedArc1[arc] >= 0 ? edgeCount++ : -1;
+                }
+            }
+            firstEdges[nodeCount] = edgeCount;
+
+            IntBuffer src = storage.allocate(edgeCount);
+            IntBuffer trgt = storage.allocate(edgeCount);
+            IntBuffer edgeDist = storage.allocate(edgeCount);
+            IntBuffer edgeEuclidianDist = storage.allocate(edgeCount);
+            IntBuffer shortedEdge1 = storage.allocate(edgeCount);
+            IntBuffer shortedEdge2 = storage.allocate(edgeCount);
+            IntBuffer reverseMap = storage.allocate(edgeCount);
+            IntBuffer offsetOut = storage.allocate(nodeCount + 1);
+            IntBuffer offsetIn = storage.allocate(nodeCount + 1);
+            IntBuffer mappingInToOut = storage.allocate(edgeCount);
+            int inOffset = 0;
+            for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+                offsetOut.put(nodeId, firstEdges[nodeId]);
+                offsetIn.put(nodeId, inOffset);
+                for (int arc = arcOffsets[nodeId]; arc < arcOffsets[nodeId + 1]; arc++) {
+                    int reverseArc = reverseArcs[arc];
+                    int edgeId = originalEdges[arc];
+                    if (edgeId >= 0) {
+                        putEdge(src, trgt, edgeDist, edgeEuclidianDist, shortedEdge1, shortedEdge2, edgeId, nodeId,
+                                arcTargets[arc], originalDist[arc], originalEuclidianDist[arc], -1, -1);
+                        reverseMap.put(edgeId, originalDist[reverseArc] == originalDist[arc] ? originalEdges[reverseArc] : -1);
+                    }
+                    edgeId = shortcutEdges[arc];
+                    if (edgeId >= 0) {
+                        putEdge(src, trgt, edgeDist, edgeEuclidianDist, shortedEdge1, shortedEdge2, edgeId, nodeId,
+                                arcTargets[arc], dist[arc], euclidianDist[arc],
+                                pathEdge(originalEdges, shortcutEdges, shortedArc1[arc]),
+                                pathEdge(originalEdges, shortcutEdges, shortedArc2[arc]));
+                        reverseMap.put(edgeId, mirrored[arc] ? shortcutEdges[reverseArc] : -1);
+                    }
+                }
+                // the in edges sorted by source rank descending are the edges of the
+                // reverse arcs of the out arcs in reverse order
+                for (int arc = arcOffsets[nodeId + 1] - 1; arc >= arcOffsets[nodeId]; arc--) {
+                    int reverseArc = reverseArcs[arc];
+                    if (originalEdges[reverseArc] >= 0) {
+                        mappingInToOut.put(inOffset++, originalEdges[reverseArc]);
+                    }
+                    if (shortcutEdges[reverseArc] >= 0) {
+                        mappingInToOut.put(inOffset++, shortcutEdges[reverseArc]);
+                    }
+                }
+            }
+            offsetOut.put(nodeCount, edgeCount);
+            offsetIn.put(nodeCount, inOffset);
+
+            GraphRep graph = new GraphRep(nodeCount, edgeCount, lat, lon, height, rank, xPos, yPos,
+                    src, trgt, edgeDist, edgeEuclidianDist, shortedEdge1, shortedEdge2, storage);
+            graph.setOffsetOut(offsetOut);
+            graph.setOffsetIn(offsetIn);
+            graph.setMappingInToOut(mappingInToOut);
+            graph.setReverseMap(reverseMap);
+            graph.setDerivedNodeData(maxRank, bbox);
+            if (xyTree != null && latLonTree != null) {
+                graph.setBBoxPriorityTrees(xyTree, latLonTree);
+            }
+            graph.setLandmarks(landmarks);
+            return graph;
+        }
+
+        /**
+         * Gets the edge of the shortest path of the arc, the shortcut if it has one
+         */
+        private int pathEdge(int[] originalEdges, int[] shortcutEdges, int arc) {
+            return shortcutEdges[arc] >= 0 ? shortcutEdges[arc] : originalEdges[arc];
+        }
+
+        private void putEdge(IntBuffer src, IntBuffer trgt, IntBuffer edgeDist, IntBuffer edgeEuclidianDist,
+                             IntBuffer shortedEdge1, IntBuffer shortedEdge2, int edgeId, int source, int target,
+                             int dist, int euclidianDist, int first, int second) {
+            src.put(edgeId, source);
+            trgt.put(edgeId, target);
+            edgeDist.put(edgeId, dist);
+            edgeEuclidianDist.put(edgeId, euclidianDist);
+            shortedEdge1.put(edgeId, first);
+            shortedEdge2.put(edgeId, second);
+        }
+    }
+}
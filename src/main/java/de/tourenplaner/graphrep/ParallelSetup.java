@@ -0,0 +1,461 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.graphrep;
+
+import de.tourenplaner.algorithms.bbbundle.BoundingBox;
+
+import java.nio.IntBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs the expensive steps of {@link GraphRep#setup(int)} on a ForkJoinPool. Every step
+ * produces exactly the arrays of the sequential code in GraphRep: the heap sorts are replaced
+ * by stable radix sorts and the sequential sorts order ties by the original index as well,
+ * the reverse map candidates are searched in parallel but matched in edge order.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+final class ParallelSetup {
+    private static final int RADIX_BITS = 16;
+    private static final int RADIX = 1 << RADIX_BITS;
+    private static final int RADIX_MASK = RADIX - 1;
+
+    private final GraphRep graph;
+    private final ForkJoinPool pool;
+    // The work of each step is split in this many equally sized chunks
+    private final int chunks;
+
+    ParallelSetup(GraphRep graph, ForkJoinPool pool) {
+        this.graph = graph;
+        this.pool = pool;
+        this.chunks = pool.getParallelism();
+    }
+
+    /**
+     * Work on the range [from, to) which is the given chunk of all elements
+     */
+    private abstract static class ChunkAction {
+        abstract void run(int chunk, int from, int to);
+    }
+
+    /**
+     * Runs the action on the chunks [firstChunk, lastChunk) of count elements
+     * splitting them in halves until only one chunk is left
+     */
+    private final class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int count;
+        private final int firstChunk;
+        private final int lastChunk;
+        private final ChunkAction action;
+
+        ChunkTask(int count, int firstChunk, int lastChunk, ChunkAction action) {
+            this.count = count;
+            this.firstChunk = firstChunk;
+            this.lastChunk = lastChunk;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (lastChunk - firstChunk > 1) {
+                int middleChunk = (firstChunk + lastChunk) >>> 1;
+                invokeAll(new ChunkTask(count, firstChunk, middleChunk, action),
+                        new ChunkTask(count, middleChunk, lastChunk, action));
+                return;
+            }
+            int from = (int) ((long) count * firstChunk / chunks);
+            int to = (int) ((long) count * (firstChunk + 1) / chunks);
+            action.run(firstChunk, from, to);
+        }
+    }
+
+    private void forEachChunk(int count, ChunkAction action) {
+        pool.invoke(new ChunkTask(count, 0, chunks, action));
+    }
+
+    /**
+     * Stable sorts the given element ids by the unsigned value of keys[id] using a least
+     * significant digit radix sort, the result is either ids or a new array
+     */
+    private int[] sortByKey(int[] ids, int[] keys) {
+        int[] from = ids;
+        int[] to = new int[ids.length];
+        for (int shift = 0; shift < 32; shift += RADIX_BITS) {
+            if (radixPass(from, to, keys, shift)) {
+                int[] temp = from;
+                from = to;
+                to = temp;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * Distributes the ids in from into to by the digit of their key at shift,
+     * returns false without touching to if all keys share that digit
+     */
+    private boolean radixPass(final int[] from, final int[] to, final int[] keys, final int shift) {
+        // One histogram per chunk so each chunk can scatter its ids on its own
+        final int[][] positions = new int[chunks][RADIX];
+        forEachChunk(from.length, new ChunkAction() {
+            @Override
+            void run(int chunk, int begin, int end) {
+                int[] counts = positions[chunk];
+                for (int i = begin; i < end; i++) {
+                    counts[(keys[from[i]] >>> shift) & RADIX_MASK]++;
+                }
+            }
+        });
+
+        // Turn the counts into start positions, the ids of earlier chunks
+        // come first for each digit so the sort stays stable
+        int sum = 0;
+        for (int digit = 0; digit < RADIX; digit++) {
+            int digitCount = 0;
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                int count = positions[chunk][digit];
+                positions[chunk][digit] = sum + digitCount;
+                digitCount += count;
+            }
+            if (digitCount == from.length) {
+                return false;
+            }
+            sum += digitCount;
+        }
+
+        forEachChunk(from.length, new ChunkAction() {
+            @Override
+            void run(int chunk, int begin, int end) {
+                int[] position = positions[chunk];
+                for (int i = begin; i < end; i++) {
+                    int id = from[i];
+                    to[position[(keys[id] >>> shift) & RADIX_MASK]++] = id;
+                }
+            }
+        });
+        return true;
+    }
+
+    private int[] identity(int count) {
+        final int[] ids = new int[count];
+        forEachChunk(count, new ChunkAction() {
+            @Override
+            void run(int chunk, int from, int to) {
+                for (int i = from; i < to; i++) {
+                    ids[i] = i;
+                }
+            }
+        });
+        return ids;
+    }
+
+    /**
+     * Computes newIds with newIds[order[i]] = i
+     */
+    private int[] inverse(final int[] order) {
+        final int[] newIds = new int[order.length];
+        forEachChunk(order.length, new ChunkAction() {
+            @Override
+            void run(int chunk, int from, int to) {
+                for (int i = from; i < to; i++) {
+                    newIds[order[i]] = i;
+                }
+            }
+        });
+        return newIds;
+    }
+
+    /**
+     * Reorders the buffers so that the value at i becomes the one previously at order[i]
+     */
+    private void permute(final int[] order, IntBuffer... buffers) {
+        final int[] temp = new int[order.length];
+        for (final IntBuffer buffer : buffers) {
+            forEachChunk(order.length, new ChunkAction() {
+                @Override
+                void run(int chunk, int from, int to) {
+                    for (int i = from; i < to; i++) {
+                        temp[i] = buffer.get(i);
+                    }
+                }
+            });
+            forEachChunk(order.length, new ChunkAction() {
+                @Override
+                void run(int chunk, int from, int to) {
+                    for (int i = from; i < to; i++) {
+                        buffer.put(i, temp[order[i]]);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Replaces all non negative ids in the buffer by their new id
+     */
+    private void renumber(final IntBuffer buffer, final int[] newIds) {
+        forEachChunk(buffer.limit(), new ChunkAction() {
+            @Override
+            void run(int chunk, int from, int to) {
+                for (int i = from; i < to; i++) {
+                    int oldId = buffer.get(i);
+                    if (oldId >= 0) {
+                        buffer.put(i, newIds[oldId]);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Sorts the nodes by descending rank and renumbers the edges' sources and targets
+     */
+    void sortNodesByRank() {
+        final int[] keys = new int[graph.getNodeCount()];
+        forEachChunk(keys.length, new ChunkAction() {
+            @Override
+            void run(int chunk, int from, int to) {
+                for (int i = from; i < to; i++) {
+                    // descending signed rank as ascending unsigned key
+                    keys[i] = graph.rank.get(i) ^ Integer.MAX_VALUE;
+                }
+            }
+        });
+        int[] order = sortByKey(identity(keys.length), keys);
+        permute(order, graph.lat, graph.lon, graph.rank, graph.height);
+
+        int[] newIds = inverse(order);
+        renumber(graph.src, newIds);
+        renumber(graph.trgt, newIds);
+    }
+
+    /**
+     * Reorders the nodes including their coordinates so that new id i is the node
+     * previously at order[i] and renumbers the edges' sources and targets
+     *
+     * @return the new ids of the nodes indexed by their old id
+     */
+    int[] renumberNodes(int[] order) {
+        permute(order, graph.lat, graph.lon, graph.rank, graph.height, graph.xPos, graph.yPos);
+
+        int[] newIds = inverse(order);
+        renumber(graph.src, newIds);
+        renumber(graph.trgt, newIds);
+        return newIds;
+    }
+
+    /**
+     * Sorts the out edges by source and ascending target rank and renumbers the shortcutted edges
+     */
+    void sortOutEdges() {
+        final int[] keys = new int[graph.getEdgeCount()];
+        forEachChunk(keys.length, new ChunkAction() {
+            @Override
+            void run(int chunk, int from, int to) {
+                for (int i = from; i < to; i++) {
+                    keys[i] = graph.rank.get(graph.trgt.get(i)) ^ Integer.MIN_VALUE;
+                }
+            }
+        });
+        int[] order = sortByKey(identity(keys.length), keys);
+        forEachChunk(keys.length, new ChunkAction() {
+            @Override
+            void run(int chunk, int from, int to) {
+                for (int i = from; i < to; i++) {
+                    keys[i] = graph.src.get(i) ^ Integer.MIN_VALUE;
+                }
+            }
+        });
+        order = sortByKey(order, keys);
+        permute(order, graph.src, graph.trgt, graph.dist, graph.euclidianDist, graph.shortedEdge1, graph.shortedEdge2);
+
+        int[] newIds = inverse(order);
+        renumber(graph.shortedEdge1, newIds);
+        renumber(graph.shortedEdge2, newIds);
+    }
+
+    /**
+     * Computes the in edge mapping, the out edge ids sorted by target and descending source rank
+     */
+    int[] computeMappingInToOut() {
+        final int[] keys = new int[graph.getEdgeCount()];
+        forEachChunk(keys.length, new ChunkAction() {
+            @Override
+            void run(int chunk, int from, int to) {
+                for (int i = from; i < to; i++) {
+                    keys[i] = graph.rank.get(graph.src.get(i)) ^ Integer.MAX_VALUE;
+                }
+            }
+        });
+        int[] mapping = sortByKey(identity(keys.length), keys);
+        forEachChunk(keys.length, new ChunkAction() {
+            @Override
+            void run(int chunk, int from, int to) {
+                for (int i = from; i < to; i++) {
+                    keys[i] = graph.trgt.get(i) ^ Integer.MIN_VALUE;
+                }
+            }
+        });
+        return sortByKey(mapping, keys);
+    }
+
+    /**
+     * Computes the xy coordinates, the maximum rank and the bounding box with the same
+     * arithmetic as GraphRep.computeXYCoords() but projecting the longitudes only once
+     */
+    void computeXYCoords() {
+        final int nodeCount = graph.getNodeCount();
+        final double[] projectedX = new double[nodeCount];
+        final double[] minX = new double[chunks];
+        final double[] minY = new double[chunks];
+        final double[] maxY = new double[chunks];
+        final int[] maxRanks = new int[chunks];
+
+        // Find min/max
+        forEachChunk(nodeCount, new ChunkAction() {
+            @Override
+            void run(int chunk, int from, int to) {
+                double chunkMinX = Double.MAX_VALUE;
+                double chunkMinY = Double.MAX_VALUE;
+                double chunkMaxY = Double.MIN_VALUE;
+                int chunkMaxRank = Integer.MIN_VALUE;
+                for (int i = from; i < to; i++) {
+                    projectedX[i] = graph.lon2x(graph.lon.get(i) / 10_000_000.0);
+                    int x = (int) projectedX[i];
+                    int y = (int) (graph.lat.get(i) / 10_000_000.0);
+                    chunkMinX = Math.min(chunkMinX, x);
+                    chunkMinY = Math.min(chunkMinY, y);
+                    chunkMaxY = Math.max(chunkMaxY, y);
+                    chunkMaxRank = Math.max(chunkMaxRank, graph.rank.get(i));
+                }
+                minX[chunk] = chunkMinX;
+                minY[chunk] = chunkMinY;
+                maxY[chunk] = chunkMaxY;
+                maxRanks[chunk] = chunkMaxRank;
+            }
+        });
+        double allMinX = Double.MAX_VALUE;
+        double allMinY = Double.MAX_VALUE;
+        double allMaxY = Double.MIN_VALUE;
+        int maxRank = graph.getMaxRank();
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            allMinX = Math.min(allMinX, minX[chunk]);
+            allMinY = Math.min(allMinY, minY[chunk]);
+            allMaxY = Math.max(allMaxY, maxY[chunk]);
+            maxRank = Math.max(maxRank, maxRanks[chunk]);
+        }
+
+        // Compute the coordinates
+        final double boundMinX = allMinX;
+        final double boundMinY = allMinY;
+        final int boundHeight = GraphRep.getXYDistance(allMinX, allMinY, allMinX, allMaxY);
+        final int[] minXfinal = new int[chunks];
+        final int[] minYfinal = new int[chunks];
+        final int[] maxXfinal = new int[chunks];
+        final int[] maxYfinal = new int[chunks];
+        forEachChunk(nodeCount, new ChunkAction() {
+            @Override
+            void run(int chunk, int from, int to) {
+                int chunkMinX = Integer.MAX_VALUE;
+                int chunkMinY = Integer.MAX_VALUE;
+                int chunkMaxX = Integer.MIN_VALUE;
+                int chunkMaxY = Integer.MIN_VALUE;
+                for (int i = from; i < to; i++) {
+                    double y = (graph.lat.get(i) / 10_000_000.0);
+                    int xPos = GraphRep.getXYDistance(projectedX[i], boundMinY, boundMinX, boundMinY);
+                    int yPos = boundHeight - GraphRep.getXYDistance(boundMinX, y, boundMinX, boundMinY);
+                    chunkMinX = Math.min(chunkMinX, xPos);
+                    chunkMinY = Math.min(chunkMinY, yPos);
+                    chunkMaxX = Math.max(chunkMaxX, xPos);
+                    chunkMaxY = Math.max(chunkMaxY, yPos);
+                    graph.xPos.put(i, xPos);
+                    graph.yPos.put(i, yPos);
+                }
+                minXfinal[chunk] = chunkMinX;
+                minYfinal[chunk] = chunkMinY;
+                maxXfinal[chunk] = chunkMaxX;
+                maxYfinal[chunk] = chunkMaxY;
+            }
+        });
+        int bboxMinX = Integer.MAX_VALUE;
+        int bboxMinY = Integer.MAX_VALUE;
+        int bboxMaxX = Integer.MIN_VALUE;
+        int bboxMaxY = Integer.MIN_VALUE;
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            bboxMinX = Math.min(bboxMinX, minXfinal[chunk]);
+            bboxMinY = Math.min(bboxMinY, minYfinal[chunk]);
+            bboxMaxX = Math.max(bboxMaxX, maxXfinal[chunk]);
+            bboxMaxY = Math.max(bboxMaxY, maxYfinal[chunk]);
+        }
+        graph.setDerivedNodeData(maxRank, new BoundingBox(bboxMinX, bboxMinY, bboxMaxX - bboxMinX, bboxMaxY - bboxMinY));
+    }
+
+    /**
+     * For every edge finds the first out edge of its target leading back to its source
+     * with the same length or -1, GraphRep matches them up in edge order
+     */
+    int[] computeReverseCandidates() {
+        final int[] candidates = new int[graph.getEdgeCount()];
+        forEachChunk(candidates.length, new ChunkAction() {
+            @Override
+            void run(int chunk, int from, int to) {
+                for (int edgeId = from; edgeId < to; edgeId++) {
+                    candidates[edgeId] = -1;
+                    int trgt = graph.getTarget(edgeId);
+                    int src = graph.getSource(edgeId);
+                    for (int edgeNum = 0; edgeNum < graph.getOutEdgeCount(trgt); edgeNum++) {
+                        int otherEdgeId = graph.getOutEdgeId(trgt, edgeNum);
+                        if (src == graph.getTarget(otherEdgeId) && graph.getDist(edgeId) == graph.getDist(otherEdgeId)) {
+                            candidates[edgeId] = otherEdgeId;
+                            break;
+                        }
+                    }
+                }
+            }
+        });
+        return candidates;
+    }
+
+    /**
+     * Builds the lat, lon BoundingBoxPriorityTree on the pool while the xy one is built
+     * by the calling thread
+     */
+    void buildBBoxPriorityTrees() {
+        Future<BBoxPriorityTree> latLonTree = pool.submit(new Callable<BBoxPriorityTree>() {
+            @Override
+            public BBoxPriorityTree call() {
+                // TODO need to fix behavior at merdian/poles
+                return new BBoxPriorityTree(graph.lon, graph.lat, graph.rank, true);
+            }
+        });
+        BBoxPriorityTree xyTree = new BBoxPriorityTree(graph.xPos, graph.yPos, graph.rank, false);
+        try {
+            graph.setBBoxPriorityTrees(xyTree, latLonTree.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while building the BoundingBoxPriorityTrees", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Building the BoundingBoxPriorityTrees failed", e.getCause());
+        }
+    }
+}
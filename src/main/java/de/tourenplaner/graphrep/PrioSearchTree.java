@@ -6,6 +6,8 @@ package de.tourenplaner.graphrep;
 
 import com.carrotsearch.hppc.IntArrayList;
 
+import java.nio.IntBuffer;
+
 /**
  * PrioSearchTree stores key, value pairs according to an associated priority
  * and allows effieciently querying for pairs with priority greater than
@@ -15,12 +17,12 @@ import com.carrotsearch.hppc.IntArrayList;
  */
 public class PrioSearchTree {
 
-    int[] treeKey;
-    int[] treePrio;
-    int[] treeInf;
-    int[] heapKey;
-    int[] heapPrio;
-    int[] heapInf;
+    final IntBuffer treeKey;
+    final IntBuffer treePrio;
+    final IntBuffer treeInf;
+    final IntBuffer heapKey;
+    final IntBuffer heapPrio;
+    final IntBuffer heapInf;
     boolean[] stored;
     int[] subTreeSize;
 
@@ -45,9 +47,9 @@ public class PrioSearchTree {
         assert (priomaxpos != -1);
 
         // store the prio-point
-        heapKey[treePos] = inpKey[priomaxpos];
-        heapPrio[treePos] = inpPrio[priomaxpos];
-        heapInf[treePos] = inpInf[priomaxpos];
+        heapKey.put(treePos, inpKey[priomaxpos]);
+        heapPrio.put(treePos, inpPrio[priomaxpos]);
+        heapInf.put(treePos, inpInf[priomaxpos]);
         stored[priomaxpos] = true;
 
 
@@ -56,7 +58,7 @@ public class PrioSearchTree {
         int leftcounter = 0;
         int leftsize = 0;
 
-        if (2 * treePos + 1 < treeKey.length) // figure out size of left subtree
+        if (2 * treePos + 1 < treeKey.limit()) // figure out size of left subtree
         {
             leftsize += subTreeSize[2 * treePos + 1];
         }
@@ -69,16 +71,16 @@ public class PrioSearchTree {
             }
             curpos++;
         }
-        treeKey[treePos] = inpKey[splitpos];
-        treePrio[treePos] = inpPrio[splitpos];
-        treeInf[treePos] = inpInf[splitpos];
+        treeKey.put(treePos, inpKey[splitpos]);
+        treePrio.put(treePos, inpPrio[splitpos]);
+        treeInf.put(treePos, inpInf[splitpos]);
         stored[splitpos] = true;
 
         if (leftsize > 0) {
             initArray(inpKey, inpPrio, inpInf, 2 * treePos + 1, arrStart, splitpos - 1);
         }
 
-        if (2 * treePos + 2 < treeKey.length) {
+        if (2 * treePos + 2 < treeKey.limit()) {
             initArray(inpKey, inpPrio, inpInf, 2 * treePos + 2, splitpos + 1, arrEnd);
         }
     }
@@ -86,37 +88,37 @@ public class PrioSearchTree {
     private void queryPSTleft(int lower, int prio, int pos, IntArrayList dataKey, IntArrayList dataPrio, IntArrayList dataInf) // return everything below the tree at pos which is larger than lower and has priority >=prio
     // result consists of individual data items 
     {
-        if (pos > treeKey.length - 1) {
+        if (pos > treeKey.limit() - 1) {
             return;
         }
         // if prio point has already too small priority, abort the query
-        if (heapPrio[pos] < prio) {
+        if (heapPrio.get(pos) < prio) {
             return;
         }
         // check if current prioPoint should be reported
-        if (heapKey[pos] >= lower) {
-            dataKey.add(heapKey[pos]);
-            dataPrio.add(heapPrio[pos]);
-            dataInf.add(heapInf[pos]);
+        if (heapKey.get(pos) >= lower) {
+            dataKey.add(heapKey.get(pos));
+            dataPrio.add(heapPrio.get(pos));
+            dataInf.add(heapInf.get(pos));
         }
 
-        if (treeKey[pos] >= lower) {
-            if (2 * pos + 1 < treeKey.length) {
+        if (treeKey.get(pos) >= lower) {
+            if (2 * pos + 1 < treeKey.limit()) {
                 queryPSTleft(lower, prio, 2 * pos + 1, dataKey, dataPrio, dataInf);
             }
             // check if current splitPoint should be reported
 
-            if (treePrio[pos] >= prio) {
-                dataKey.add(treeKey[pos]);
-                dataPrio.add(treePrio[pos]);
-                dataInf.add(treeInf[pos]);
+            if (treePrio.get(pos) >= prio) {
+                dataKey.add(treeKey.get(pos));
+                dataPrio.add(treePrio.get(pos));
+                dataInf.add(treeInf.get(pos));
             }
 
-            if (2 * pos + 2 < treeKey.length) {
+            if (2 * pos + 2 < treeKey.limit()) {
                 reportSubtreePrio(2 * pos + 2, prio, dataKey, dataPrio, dataInf);
             }
         } else {/* if (keys[pos]<lower) */
-            if (2 * pos + 2 < treeKey.length) {
+            if (2 * pos + 2 < treeKey.limit()) {
                 queryPSTleft(lower, prio, 2 * pos + 2, dataKey, dataPrio, dataInf);
             }
         }
@@ -125,38 +127,38 @@ public class PrioSearchTree {
     private void queryPSTright(int upper, int prio, int pos, IntArrayList dataKey, IntArrayList dataPrio, IntArrayList dataInf) // return everything below the tree at pos which is smaller than upper and has priority >=prio
     // result consists of individual data items 
     {
-        if (pos > treeKey.length - 1) {
+        if (pos > treeKey.limit() - 1) {
             return;
         }
         // if prio point has already too small priority, abort the query
-        if (heapPrio[pos] < prio) {
+        if (heapPrio.get(pos) < prio) {
             return;
         }
         // check if current prioPoint should be reported
-        if (heapKey[pos] <= upper) {
-            dataKey.add(heapKey[pos]);
-            dataPrio.add(heapPrio[pos]);
-            dataInf.add(heapInf[pos]);
+        if (heapKey.get(pos) <= upper) {
+            dataKey.add(heapKey.get(pos));
+            dataPrio.add(heapPrio.get(pos));
+            dataInf.add(heapInf.get(pos));
         }
 
-        if (treeKey[pos] <= upper) {
-            if (2 * pos + 1 < treeKey.length) { // prio-report left subtree
+        if (treeKey.get(pos) <= upper) {
+            if (2 * pos + 1 < treeKey.limit()) { // prio-report left subtree
                 reportSubtreePrio(2 * pos + 1, prio, dataKey, dataPrio, dataInf);
 
             }
             // check if current splitPoint should be reported
 
-            if (treePrio[pos] >= prio) {
-                dataKey.add(treeKey[pos]);
-                dataPrio.add(treePrio[pos]);
-                dataInf.add(treeInf[pos]);
+            if (treePrio.get(pos) >= prio) {
+                dataKey.add(treeKey.get(pos));
+                dataPrio.add(treePrio.get(pos));
+                dataInf.add(treeInf.get(pos));
             }
-            if (2 * pos + 2 < treeKey.length) {
+            if (2 * pos + 2 < treeKey.limit()) {
                 queryPSTright(upper, prio, 2 * pos + 2, dataKey, dataPrio, dataInf);
 
             }
         } else {// if (keys[pos] > upper)
-            if (2 * pos + 1 < treeKey.length) {
+            if (2 * pos + 1 < treeKey.limit()) {
                 queryPSTright(upper, prio, 2 * pos + 1, dataKey, dataPrio, dataInf);
             }
         }
@@ -168,34 +170,34 @@ public class PrioSearchTree {
     public void queryPST(int lower, int upper, int prio, int pos, IntArrayList dataKey, IntArrayList dataPrio, IntArrayList dataInf) {
         // starting at subtree rooted at pos, returns everything between lower and upper with priority >=prio
         // result comes as vector of individual data items 
-        if (pos > treeKey.length - 1) {
+        if (pos > treeKey.limit() - 1) {
             return;
         }
         // if prio point has already too small priority, abort the query
-        if (heapPrio[pos] < prio) {
+        if (heapPrio.get(pos) < prio) {
             return;
         }
 
         // check if current prioPoint should be reported
-        if (/* (heapPrio[pos] >= prio) &&*/ heapKey[pos] >= lower && heapKey[pos] <= upper) {
-            dataKey.add(heapKey[pos]);
-            dataPrio.add(heapPrio[pos]);
-            dataInf.add(heapInf[pos]);
+        if (/* (heapPrio.get(pos) >= prio) &&*/ heapKey.get(pos) >= lower && heapKey.get(pos) <= upper) {
+            dataKey.add(heapKey.get(pos));
+            dataPrio.add(heapPrio.get(pos));
+            dataInf.add(heapInf.get(pos));
         }
 
-        if (treeKey[pos] < lower) // descend into right subtree
+        if (treeKey.get(pos) < lower) // descend into right subtree
         {
             queryPST(lower, upper, prio, 2 * pos + 2, dataKey, dataPrio, dataInf);
-        } else if (treeKey[pos] > upper) // descend into left subtree
+        } else if (treeKey.get(pos) > upper) // descend into left subtree
         {
             queryPST(lower, upper, prio, 2 * pos + 1, dataKey, dataPrio, dataInf);
         } else // we have a split
         {
             queryPSTleft(lower, prio, 2 * pos + 1, dataKey, dataPrio, dataInf);    // report everything in the left subtree larger than lower
-            if (treePrio[pos] >= prio) {          // if prio is ok, split item itself should be reported
-                dataKey.add(treeKey[pos]);
-                dataPrio.add(treePrio[pos]);
-                dataInf.add(treeInf[pos]);
+            if (treePrio.get(pos) >= prio) {          // if prio is ok, split item itself should be reported
+                dataKey.add(treeKey.get(pos));
+                dataPrio.add(treePrio.get(pos));
+                dataInf.add(treeInf.get(pos));
             }
             queryPSTright(upper, prio, 2 * pos + 2, dataKey, dataPrio, dataInf);    // report everything in the right subtree smaller than upper
         }
@@ -204,41 +206,41 @@ public class PrioSearchTree {
 
     private void reportSubtreePrio(int pos, int prio, IntArrayList dataKey, IntArrayList dataPrio, IntArrayList dataInf) // appends the actual items in the subtree rooted at pos at the end as long as prio matches
     {
-        assert (pos <= treeKey.length - 1);
+        assert (pos <= treeKey.limit() - 1);
 
         // if prio gets too small, abort
-        if (heapPrio[pos] < prio) {
+        if (heapPrio.get(pos) < prio) {
             return;
         }
 
         // report prio-item
-        dataKey.add(heapKey[pos]);
-        dataPrio.add(heapPrio[pos]);
-        dataInf.add(heapInf[pos]);
+        dataKey.add(heapKey.get(pos));
+        dataPrio.add(heapPrio.get(pos));
+        dataInf.add(heapInf.get(pos));
 
 
         // check if split item should be reported
-        if (treePrio[pos] >= prio) {
-            dataKey.add(treeKey[pos]);
-            dataPrio.add(treePrio[pos]);
-            dataInf.add(treeInf[pos]);
+        if (treePrio.get(pos) >= prio) {
+            dataKey.add(treeKey.get(pos));
+            dataPrio.add(treePrio.get(pos));
+            dataInf.add(treeInf.get(pos));
         }
 
 
-        if (2 * pos + 1 < heapKey.length) {
+        if (2 * pos + 1 < heapKey.limit()) {
             reportSubtreePrio(2 * pos + 1, prio, dataKey, dataPrio, dataInf);
         }
-        if (2 * pos + 2 < heapKey.length) {
+        if (2 * pos + 2 < heapKey.limit()) {
             reportSubtreePrio(2 * pos + 2, prio, dataKey, dataPrio, dataInf);
         }
     }
 
     private int initSubTreeSize(int pos) {
         subTreeSize[pos] = 2;
-        if (2 * pos + 1 < treeKey.length) {
+        if (2 * pos + 1 < treeKey.limit()) {
             subTreeSize[pos] += initSubTreeSize(2 * pos + 1);
         }
-        if (2 * pos + 2 < treeKey.length) {
+        if (2 * pos + 2 < treeKey.limit()) {
             subTreeSize[pos] += initSubTreeSize(2 * pos + 2);
         }
         return subTreeSize[pos];
@@ -259,12 +261,12 @@ public class PrioSearchTree {
          assert(get<1>(inpData[i])>=0);
          }*/
 
-        treeKey = new int[inpKey.length / 2];
-        treePrio = new int[inpKey.length / 2];
-        treeInf = new int[inpKey.length / 2];
-        heapKey = new int[inpKey.length / 2];
-        heapPrio = new int[inpKey.length / 2];
-        heapInf = new int[inpKey.length / 2];
+        treeKey = IntBuffer.allocate(inpKey.length / 2);
+        treePrio = IntBuffer.allocate(inpKey.length / 2);
+        treeInf = IntBuffer.allocate(inpKey.length / 2);
+        heapKey = IntBuffer.allocate(inpKey.length / 2);
+        heapPrio = IntBuffer.allocate(inpKey.length / 2);
+        heapInf = IntBuffer.allocate(inpKey.length / 2);
 
         stored = new boolean[inpKey.length];
         subTreeSize = new int[inpKey.length / 2];
@@ -282,4 +284,26 @@ public class PrioSearchTree {
         stored = null;
         subTreeSize = null;
     }
+
+    /**
+     * Creates a PrioritySearchTree directly on the arrays of an already built tree,
+     * all of them need to have the same size. This is used to load the tree from a graph dump
+     */
+    PrioSearchTree(IntBuffer treeKey, IntBuffer treePrio, IntBuffer treeInf, IntBuffer heapKey, IntBuffer heapPrio, IntBuffer heapInf) {
+        assert treeKey.limit() == treePrio.limit() && treeKey.limit() == treeInf.limit();
+        assert treeKey.limit() == heapKey.limit() && treeKey.limit() == heapPrio.limit() && treeKey.limit() == heapInf.limit();
+        this.treeKey = treeKey;
+        this.treePrio = treePrio;
+        this.treeInf = treeInf;
+        this.heapKey = heapKey;
+        this.heapPrio = heapPrio;
+        this.heapInf = heapInf;
+    }
+
+    /**
+     * Gets the number of entries in each of the tree and heap arrays
+     */
+    int size() {
+        return treeKey.limit();
+    }
 }
@@ -6,6 +6,8 @@ package de.tourenplaner.graphrep;
 
 import com.carrotsearch.hppc.IntArrayList;
 
+import java.nio.IntBuffer;
+
 /**
  * RangeTree stores key, value pairs of ints for fast range access on the key values.
  * Instead of using a pointer based tree all data is stored in continues arrays.
@@ -15,18 +17,18 @@ import com.carrotsearch.hppc.IntArrayList;
 public final class RangeTree {
     // treeKey stores the key information such that treeKey[i] is the key
     // for treeInf[i]
-    private final int[] treeKey;
+    private final IntBuffer treeKey;
     // treeInf[i] stores the value for treeKey[i]
-    private final int[] treeInf;
+    private final IntBuffer treeInf;
 
     private int initArray(int[] inpKey, int[] inpInf, int treePos, int arrPos) {
-        if (2 * treePos + 1 < treeKey.length) {
+        if (2 * treePos + 1 < treeKey.limit()) {
             arrPos = initArray(inpKey, inpInf, 2 * treePos + 1, arrPos);
         }
-        treeKey[treePos] = inpKey[arrPos];
-        treeInf[treePos] = inpInf[arrPos];
+        treeKey.put(treePos, inpKey[arrPos]);
+        treeInf.put(treePos, inpInf[arrPos]);
         arrPos++;
-        if (2 * treePos + 2 < treeKey.length) {
+        if (2 * treePos + 2 < treeKey.limit()) {
             arrPos = initArray(inpKey, inpInf, 2 * treePos + 2, arrPos);
         }
         return arrPos;
@@ -39,15 +41,15 @@ public final class RangeTree {
      * contained in the result which are stored in batches.
      */
     private void batchQueryLeft(int lower, int pos, IntArrayList batches, IntArrayList keyItems, IntArrayList infItems) {
-        if (pos > treeKey.length - 1) {
+        if (pos > treeKey.limit() - 1) {
             return;
         }
-        if (treeKey[pos] >= lower) {
+        if (treeKey.get(pos) >= lower) {
             batchQueryLeft(lower, 2 * pos + 1, batches, keyItems, infItems);
-            keyItems.add(treeKey[pos]);
-            infItems.add(treeInf[pos]);
+            keyItems.add(treeKey.get(pos));
+            infItems.add(treeInf.get(pos));
 
-            if (2 * pos + 2 < treeKey.length) {
+            if (2 * pos + 2 < treeKey.limit()) {
                 batches.add(2 * pos + 2);
             }
         } else // if (keys[pos]<lower)
@@ -62,14 +64,14 @@ public final class RangeTree {
      * contained in the result which are stored in batches.
      */
     private void batchQueryRight(int upper, int pos, IntArrayList batches, IntArrayList keyItems, IntArrayList infItems) {
-        if (pos > treeKey.length - 1) {
+        if (pos > treeKey.limit() - 1) {
             return;
         }
-        if (treeKey[pos] <= upper) {
-            keyItems.add(treeKey[pos]);
-            infItems.add(treeInf[pos]);
+        if (treeKey.get(pos) <= upper) {
+            keyItems.add(treeKey.get(pos));
+            infItems.add(treeInf.get(pos));
 
-            if (2 * pos + 1 < treeKey.length) {
+            if (2 * pos + 1 < treeKey.limit()) {
                 batches.add(2 * pos + 1);
             }
             batchQueryRight(upper, 2 * pos + 2, batches, keyItems, infItems);
@@ -87,15 +89,15 @@ public final class RangeTree {
     public void batchQuery(int lower, int upper, int pos, IntArrayList batches, IntArrayList keyItems, IntArrayList infItems) {
         // starting at subtree rooted at pos, returns everything between lower and upper
         // in batches (heads of subtrees) and individual infs
-        if ((treeKey[pos] < lower) && (2 * pos + 2 < treeKey.length))
+        if ((treeKey.get(pos) < lower) && (2 * pos + 2 < treeKey.limit()))
             batchQuery(lower, upper, 2 * pos + 2, batches, keyItems, infItems);
-        else if ((treeKey[pos] > upper) && (2 * pos + 1 < treeKey.length))
+        else if ((treeKey.get(pos) > upper) && (2 * pos + 1 < treeKey.limit()))
             batchQuery(lower, upper, 2 * pos + 1, batches, keyItems, infItems);
-        else if (treeKey[pos] > lower && treeKey[pos] < upper)// we have a split
+        else if (treeKey.get(pos) > lower && treeKey.get(pos) < upper)// we have a split
         {
             batchQueryLeft(lower, 2 * pos + 1, batches, keyItems, infItems);    // report everything in the left subtree larger then lower
-            keyItems.add(treeKey[pos]);    // split item itself should be reported
-            infItems.add(treeInf[pos]);
+            keyItems.add(treeKey.get(pos));    // split item itself should be reported
+            infItems.add(treeInf.get(pos));
             batchQueryRight(upper, 2 * pos + 2, batches, keyItems, infItems);    // report everything in the right subtree smaller than upper
         }
     }
@@ -104,12 +106,12 @@ public final class RangeTree {
      * Appends all items and their keys stored in the subtree rooted at pos to keyItems and infItems
      */
     public void reportSubtree(int pos, IntArrayList keyItems, IntArrayList infItems) {
-        if (pos > treeKey.length - 1) {
+        if (pos > treeKey.limit() - 1) {
             return;
         }
         reportSubtree(2 * pos + 1, keyItems, infItems);
-        keyItems.add(treeKey[pos]);
-        infItems.add(treeInf[pos]);
+        keyItems.add(treeKey.get(pos));
+        infItems.add(treeInf.get(pos));
         reportSubtree(2 * pos + 2, keyItems, infItems);
     }
 
@@ -123,10 +125,28 @@ public final class RangeTree {
         for (int i = 0; i < inpKey.length - 1; i++) {
             assert (inpKey[i] <= inpKey[i + 1]);
         }
-        treeKey = new int[inpKey.length];
-        treeInf = new int[inpKey.length];
+        treeKey = IntBuffer.allocate(inpKey.length);
+        treeInf = IntBuffer.allocate(inpKey.length);
         initArray(inpKey, inpInf, 0, 0);
     }
 
+    /**
+     * Creates a RangeTree directly on the arrays of an already built tree, this is
+     * used to load the tree from a graph dump
+     */
+    RangeTree(IntBuffer treeKey, IntBuffer treeInf) {
+        assert treeKey.limit() == treeInf.limit();
+        this.treeKey = treeKey;
+        this.treeInf = treeInf;
+    }
+
+    IntBuffer getTreeKey() {
+        return treeKey;
+    }
+
+    IntBuffer getTreeInf() {
+        return treeInf;
+    }
+
 
 }
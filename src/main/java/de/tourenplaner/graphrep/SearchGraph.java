@@ -0,0 +1,205 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.graphrep;
+
+import java.nio.IntBuffer;
+import java.util.logging.Logger;
+
+/**
+ * Compact representation of the upward part of a GraphRep for the CH searches.
+ * <p/>
+ * For every node the upward out edges (target rank >= node rank) and the upward
+ * in edges (source rank >= node rank) are stored contiguously as (other node, dist)
+ * records so relaxing a node reads one cache line after another instead of
+ * offsetOut, trgt, dist and rank (and mappingInToOut for in edges).
+ * As only upward edges are stored there is no need to check ranks while iterating.
+ * <p/>
+ * The records of a node are addressed with indices in [getOutBegin(node), getOutEnd(node))
+ * and [getInBegin(node), getInEnd(node)) respectively. Out records are stored in descending
+ * target rank order and in records in descending source rank order, just the order
+ * in which the CH searches visit them in the GraphRep.
+ * The edgeId of a record is only computed on demand as it's only needed
+ * when a node gets labeled.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public final class SearchGraph {
+    private static Logger log = Logger.getLogger("de.tourenplaner.graphrep");
+
+    private final GraphRep graph;
+
+    // (nodeCount+1) offsets into the records
+    private final IntBuffer outOffset;
+    private final IntBuffer inOffset;
+
+    // interleaved (target, dist) and (source, dist) records
+    private final IntBuffer outData;
+    private final IntBuffer inData;
+
+    /**
+     * Builds the SearchGraph for the given graph, the graph needs to be set up
+     * (or loaded from a dump) already
+     */
+    SearchGraph(GraphRep graph, GraphStorage storage) {
+        this.graph = graph;
+        int nodeCount = graph.getNodeCount();
+        int[] outOffsetArray = new int[nodeCount + 1];
+        int[] inOffsetArray = new int[nodeCount + 1];
+
+        int outCount = 0;
+        int inCount = 0;
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+            outOffsetArray[nodeId] = outCount;
+            inOffsetArray[nodeId] = inCount;
+            outCount += countUpOut(nodeId);
+            inCount += countUpIn(nodeId);
+        }
+        outOffsetArray[nodeCount] = outCount;
+        inOffsetArray[nodeCount] = inCount;
+
+        outOffset = storage.wrap(outOffsetArray);
+        inOffset = storage.wrap(inOffsetArray);
+        outData = storage.allocate(2 * outCount);
+        inData = storage.allocate(2 * inCount);
+
+        int outPos = 0;
+        int inPos = 0;
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+            int rank = graph.getRank(nodeId);
+            // out edges are sorted by target rank ascending
+            for (int i = graph.getOutEdgeCount(nodeId) - 1; i >= 0; i--) {
+                int edgeId = graph.getOutEdgeId(nodeId, i);
+                int target = graph.getTarget(edgeId);
+                if (graph.getRank(target) < rank) {
+                    break;
+                }
+                outData.put(outPos++, target);
+                outData.put(outPos++, graph.getDist(edgeId));
+            }
+            // in edges are sorted by source rank descending
+            for (int i = 0; i < graph.getInEdgeCount(nodeId); i++) {
+                int edgeId = graph.getInEdgeId(nodeId, i);
+                int source = graph.getSource(edgeId);
+                if (graph.getRank(source) < rank) {
+                    break;
+                }
+                inData.put(inPos++, source);
+                inData.put(inPos++, graph.getDist(edgeId));
+            }
+        }
+        log.info("Search graph with " + outCount + " upward out and " + inCount + " upward in edges uses " +
+                (4L * (2 * (nodeCount + 1) + 2 * outCount + 2 * inCount)) / (1024 * 1024) + " MiB");
+    }
+
+    private int countUpOut(int nodeId) {
+        int rank = graph.getRank(nodeId);
+        int count = 0;
+        for (int i = graph.getOutEdgeCount(nodeId) - 1; i >= 0; i--) {
+            if (graph.getRank(graph.getTarget(graph.getOutEdgeId(nodeId, i))) < rank) {
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    private int countUpIn(int nodeId) {
+        int rank = graph.getRank(nodeId);
+        int count = 0;
+        for (int i = 0; i < graph.getInEdgeCount(nodeId); i++) {
+            if (graph.getRank(graph.getSource(graph.getInEdgeId(nodeId, i))) < rank) {
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Gets the index of the first upward out record of the given node
+     */
+    public final int getOutBegin(int nodeId) {
+        return outOffset.get(nodeId);
+    }
+
+    /**
+     * Gets the index after the last upward out record of the given node
+     */
+    public final int getOutEnd(int nodeId) {
+        return outOffset.get(nodeId + 1);
+    }
+
+    /**
+     * Gets the target node of the out record with the given index
+     */
+    public final int getOutTarget(int index) {
+        return outData.get(2 * index);
+    }
+
+    /**
+     * Gets the dist of the out record with the given index
+     */
+    public final int getOutDist(int index) {
+        return outData.get(2 * index + 1);
+    }
+
+    /**
+     * Gets the edgeId in the GraphRep of the out record with the given index
+     * that belongs to the given node
+     */
+    public final int getOutEdgeId(int nodeId, int index) {
+        // out records are the last out edges of the node in reverse order
+        return graph.getOutEdgeId(nodeId, graph.getOutEdgeCount(nodeId) - 1 - (index - outOffset.get(nodeId)));
+    }
+
+    /**
+     * Gets the index of the first upward in record of the given node
+     */
+    public final int getInBegin(int nodeId) {
+        return inOffset.get(nodeId);
+    }
+
+    /**
+     * Gets the index after the last upward in record of the given node
+     */
+    public final int getInEnd(int nodeId) {
+        return inOffset.get(nodeId + 1);
+    }
+
+    /**
+     * Gets the source node of the in record with the given index
+     */
+    public final int getInSource(int index) {
+        return inData.get(2 * index);
+    }
+
+    /**
+     * Gets the dist of the in record with the given index
+     */
+    public final int getInDist(int index) {
+        return inData.get(2 * index + 1);
+    }
+
+    /**
+     * Gets the edgeId in the GraphRep of the in record with the given index
+     * that belongs to the given node
+     */
+    public final int getInEdgeId(int nodeId, int index) {
+        // in records are the first in edges of the node
+        return graph.getInEdgeId(nodeId, index - inOffset.get(nodeId));
+    }
+}
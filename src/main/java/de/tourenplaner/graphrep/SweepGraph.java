@@ -0,0 +1,348 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.graphrep;
+
+import com.carrotsearch.hppc.IntArrayDeque;
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntIntOpenHashMap;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Compact representation of the downward part of a GraphRep for PHAST like
+ * one-to-all searches.
+ * <p/>
+ * Nodes are addressed by their sweep position, the positions order the nodes
+ * by rank descending. For every position the downward in edges (source rank > node rank)
+ * are stored contiguously as (source position, dist) records, the source positions
+ * are always smaller than the position itself. So one pass over the positions in
+ * ascending order settles every node after all nodes it can be reached from downwards,
+ * reading the records strictly sequentially.
+ * <p/>
+ * As long as the node ids are sorted by rank the positions are the node ids,
+ * otherwise (e.g. after GraphRep.renumberNodesByLocality()) the mapping between
+ * both is stored as well.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public final class SweepGraph {
+    private static Logger log = Logger.getLogger("de.tourenplaner.graphrep");
+
+    private final int nodeCount;
+
+    // node id at a position and position of a node id, null if they are the same
+    private final IntBuffer nodeIds;
+    private final IntBuffer positions;
+
+    // (nodeCount+1) offsets into the records
+    private final IntBuffer offset;
+
+    // interleaved (source position, dist) records
+    private final IntBuffer data;
+
+    /**
+     * Builds the SweepGraph for the given graph, the graph needs to be set up
+     * (or loaded from a dump) already
+     */
+    SweepGraph(GraphRep graph, GraphStorage storage) {
+        nodeCount = graph.getNodeCount();
+        int[] nodeIdArray = sortByRank(graph);
+        int[] positionArray = null;
+        if (nodeIdArray != null) {
+            positionArray = new int[nodeCount];
+            for (int pos = 0; pos < nodeCount; pos++) {
+                positionArray[nodeIdArray[pos]] = pos;
+            }
+        }
+
+        int[] offsetArray = new int[nodeCount + 1];
+        int count = 0;
+        for (int pos = 0; pos < nodeCount; pos++) {
+            offsetArray[pos] = count;
+            count += countDownIn(graph, (nodeIdArray == null) ? pos : nodeIdArray[pos]);
+        }
+        offsetArray[nodeCount] = count;
+
+        offset = storage.wrap(offsetArray);
+        data = storage.allocate(2 * count);
+        int dataPos = 0;
+        for (int pos = 0; pos < nodeCount; pos++) {
+            int nodeId = (nodeIdArray == null) ? pos : nodeIdArray[pos];
+            int rank = graph.getRank(nodeId);
+            // in edges are sorted by source rank descending
+            for (int i = 0; i < graph.getInEdgeCount(nodeId); i++) {
+                int edgeId = graph.getInEdgeId(nodeId, i);
+                int source = graph.getSource(edgeId);
+                if (graph.getRank(source) <= rank) {
+                    break;
+                }
+                data.put(dataPos++, (positionArray == null) ? source : positionArray[source]);
+                data.put(dataPos++, graph.getDist(edgeId));
+            }
+        }
+
+        if (nodeIdArray != null) {
+            nodeIds = storage.wrap(nodeIdArray);
+            positions = storage.wrap(positionArray);
+        } else {
+            nodeIds = null;
+            positions = null;
+        }
+        log.info("Sweep graph with " + count + " downward edges uses " +
+                (4L * ((nodeCount + 1) + 2 * count + ((nodeIds == null) ? 0 : 2 * nodeCount))) / (1024 * 1024) + " MiB");
+    }
+
+    /**
+     * Gets the node ids sorted by rank descending or null if they are sorted already
+     */
+    private static int[] sortByRank(GraphRep graph) {
+        int nodeCount = graph.getNodeCount();
+        boolean sorted = true;
+        for (int i = 0; i < nodeCount - 1; i++) {
+            if (graph.getRank(i) < graph.getRank(i + 1)) {
+                sorted = false;
+                break;
+            }
+        }
+        if (sorted) {
+            return null;
+        }
+        // sort (rank, id) keys, higher ranks get smaller keys
+        long[] keys = new long[nodeCount];
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+            keys[nodeId] = ((long) (Integer.MAX_VALUE - graph.getRank(nodeId)) << 32) | nodeId;
+        }
+        Arrays.sort(keys);
+        int[] nodeIdArray = new int[nodeCount];
+        for (int pos = 0; pos < nodeCount; pos++) {
+            nodeIdArray[pos] = (int) keys[pos];
+        }
+        return nodeIdArray;
+    }
+
+    private static int countDownIn(GraphRep graph, int nodeId) {
+        int rank = graph.getRank(nodeId);
+        int count = 0;
+        for (int i = 0; i < graph.getInEdgeCount(nodeId); i++) {
+            if (graph.getRank(graph.getSource(graph.getInEdgeId(nodeId, i))) <= rank) {
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Gets the number of nodes which is also the number of positions
+     */
+    public final int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Gets the id of the node at the given sweep position
+     */
+    public final int getNodeId(int position) {
+        return (nodeIds == null) ? position : nodeIds.get(position);
+    }
+
+    /**
+     * Gets the sweep position of the node with the given id
+     */
+    public final int getPosition(int nodeId) {
+        return (positions == null) ? nodeId : positions.get(nodeId);
+    }
+
+    /**
+     * Returns true if the sweep positions are the node ids, so arrays indexed
+     * by position are indexed by node id as well
+     */
+    public final boolean isIdentity() {
+        return nodeIds == null;
+    }
+
+    /**
+     * Gets the index of the first downward in record at the given position
+     */
+    public final int getBegin(int position) {
+        return offset.get(position);
+    }
+
+    /**
+     * Gets the index after the last downward in record at the given position
+     */
+    public final int getEnd(int position) {
+        return offset.get(position + 1);
+    }
+
+    /**
+     * Gets the source position of the record with the given index
+     */
+    public final int getSource(int index) {
+        return data.get(2 * index);
+    }
+
+    /**
+     * Gets the dist of the record with the given index
+     */
+    public final int getDist(int index) {
+        return data.get(2 * index + 1);
+    }
+
+    /**
+     * Selects the part of the sweep graph needed to compute the dists of the
+     * given target nodes, that is the targets and every position they can be
+     * reached from downwards (RPHAST). The selection only depends on the targets
+     * so it can be reused for any number of sources.
+     *
+     * @param targetIds
+     * @return
+     */
+    public final Restriction restrict(int[] targetIds) {
+        IntIntOpenHashMap selected = new IntIntOpenHashMap(4 * targetIds.length);
+        IntArrayDeque stack = new IntArrayDeque(targetIds.length);
+        IntArrayList selectedPositions = new IntArrayList(targetIds.length);
+        for (int targetId : targetIds) {
+            int pos = getPosition(targetId);
+            if (!selected.containsKey(pos)) {
+                selected.put(pos, 0);
+                selectedPositions.add(pos);
+                stack.addFirst(pos);
+            }
+        }
+        while (!stack.isEmpty()) {
+            int pos = stack.removeFirst();
+            int end = getEnd(pos);
+            for (int i = getBegin(pos); i < end; i++) {
+                int source = getSource(i);
+                if (!selected.containsKey(source)) {
+                    selected.put(source, 0);
+                    selectedPositions.add(source);
+                    stack.addFirst(source);
+                }
+            }
+        }
+
+        int[] sorted = selectedPositions.toArray();
+        Arrays.sort(sorted);
+        // local indices are stored + 1 so 0 means not selected
+        int recordCount = 0;
+        for (int local = 0; local < sorted.length; local++) {
+            selected.put(sorted[local], local + 1);
+            recordCount += getEnd(sorted[local]) - getBegin(sorted[local]);
+        }
+        int[] localOffset = new int[sorted.length + 1];
+        int[] localData = new int[2 * recordCount];
+        int dataPos = 0;
+        for (int local = 0; local < sorted.length; local++) {
+            localOffset[local] = dataPos / 2;
+            int end = getEnd(sorted[local]);
+            for (int i = getBegin(sorted[local]); i < end; i++) {
+                localData[dataPos++] = selected.get(getSource(i)) - 1;
+                localData[dataPos++] = getDist(i);
+            }
+        }
+        localOffset[sorted.length] = recordCount;
+
+        int[] targetIndices = new int[targetIds.length];
+        for (int i = 0; i < targetIds.length; i++) {
+            targetIndices[i] = selected.get(getPosition(targetIds[i])) - 1;
+        }
+        return new Restriction(this, selected, localOffset, localData, targetIndices);
+    }
+
+    /**
+     * The part of a SweepGraph selected for a set of targets, nodes are addressed by
+     * their local index which orders them by sweep position just like in the full
+     * SweepGraph. Instances are immutable and can be shared between threads.
+     */
+    public static final class Restriction {
+        private final SweepGraph sweepGraph;
+        // local index + 1 by sweep position
+        private final IntIntOpenHashMap localIndices;
+        private final int[] offset;
+        private final int[] data;
+        private final int[] targetIndices;
+
+        private Restriction(SweepGraph sweepGraph, IntIntOpenHashMap localIndices, int[] offset, int[] data, int[] targetIndices) {
+            this.sweepGraph = sweepGraph;
+            this.localIndices = localIndices;
+            this.offset = offset;
+            this.data = data;
+            this.targetIndices = targetIndices;
+        }
+
+        /**
+         * Gets the number of selected nodes
+         */
+        public int size() {
+            return offset.length - 1;
+        }
+
+        /**
+         * Gets the local index of the given node or -1 if it isn't selected
+         */
+        public int getLocalIndex(int nodeId) {
+            return localIndices.get(sweepGraph.getPosition(nodeId)) - 1;
+        }
+
+        /**
+         * Gets the local index of the target with the given index in the
+         * array passed to restrict()
+         */
+        public int getTargetIndex(int target) {
+            return targetIndices[target];
+        }
+
+        /**
+         * Gets the number of targets
+         */
+        public int getTargetCount() {
+            return targetIndices.length;
+        }
+
+        /**
+         * Gets the index of the first downward in record of the given local node
+         */
+        public int getBegin(int local) {
+            return offset[local];
+        }
+
+        /**
+         * Gets the index after the last downward in record of the given local node
+         */
+        public int getEnd(int local) {
+            return offset[local + 1];
+        }
+
+        /**
+         * Gets the local source of the record with the given index
+         */
+        public int getSource(int index) {
+            return data[2 * index];
+        }
+
+        /**
+         * Gets the dist of the record with the given index
+         */
+        public int getDist(int index) {
+            return data[2 * index + 1];
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.graphrep;
+
+import com.carrotsearch.hppc.IntArrayDeque;
+import com.carrotsearch.hppc.IntArrayList;
+
+import java.nio.IntBuffer;
+import java.util.logging.Logger;
+
+/**
+ * Precomputed geometry of the shortcuts between high ranked nodes so paths
+ * using them don't need to be unpacked recursively.
+ * <p/>
+ * Every shortcut whose source and target have at least the given rank is stored
+ * fully unpacked as the (lat, lon) pairs of the sources of the original edges it
+ * consists of, in path order. That is just what the backtracking adds to a Way
+ * for it, so unpacking becomes a bulk copy. All pairs live in one contiguous buffer,
+ * a shortcut is found by binary search in the sorted ids of the stored shortcuts.
+ * <p/>
+ * Shortcuts of shortcuts are stored again in full, so the memory needed grows
+ * quickly with lower ranks, it's logged when building.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public final class UnpackedShortcuts {
+    private static Logger log = Logger.getLogger("de.tourenplaner.graphrep");
+
+    private final GraphRep graph;
+    private final int minRank;
+
+    // sorted ids of the stored shortcuts
+    private final IntBuffer edgeIds;
+    // (count+1) offsets into the points, in points not ints
+    private final IntBuffer offsets;
+    // euclidian length of the unpacked shortcuts
+    private final IntBuffer lengths;
+    // interleaved (lat, lon) pairs
+    private final IntBuffer coords;
+
+    /**
+     * Unpacks all shortcuts between nodes with at least the given rank, the graph
+     * needs to be set up (or loaded from a dump) already
+     *
+     * @throws IllegalArgumentException if the unpacked shortcuts don't fit into one buffer
+     */
+    UnpackedShortcuts(GraphRep graph, GraphStorage storage, int minRank) {
+        this.graph = graph;
+        this.minRank = minRank;
+
+        IntArrayList edgeIdList = new IntArrayList();
+        for (int edgeId = 0; edgeId < graph.getEdgeCount(); edgeId++) {
+            if (graph.getFirstShortcuttedEdge(edgeId) >= 0 && isAboveMinRank(edgeId)) {
+                edgeIdList.add(edgeId);
+            }
+        }
+
+        int count = edgeIdList.size();
+        int[] offsetArray = new int[count + 1];
+        int[] lengthArray = new int[count];
+        IntArrayDeque deque = new IntArrayDeque();
+        long pointCount = 0;
+        for (int i = 0; i < count; i++) {
+            offsetArray[i] = (int) pointCount;
+            deque.addFirst(edgeIdList.get(i));
+            int length = 0;
+            while (!deque.isEmpty()) {
+                int edgeId = deque.removeFirst();
+                int shortedEdge1 = graph.getFirstShortcuttedEdge(edgeId);
+                if (shortedEdge1 >= 0) {
+                    deque.addFirst(graph.getSecondShortcuttedEdge(edgeId));
+                    deque.addFirst(shortedEdge1);
+                } else {
+                    pointCount++;
+                    length += graph.getEuclidianDist(edgeId);
+                }
+            }
+            lengthArray[i] = length;
+            if (2 * pointCount > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("The shortcuts above rank " + minRank +
+                        " unpack to too many points, choose a higher rank");
+            }
+        }
+        offsetArray[count] = (int) pointCount;
+
+        edgeIds = storage.wrap(edgeIdList.toArray());
+        offsets = storage.wrap(offsetArray);
+        lengths = storage.wrap(lengthArray);
+        coords = storage.allocate(2 * (int) pointCount);
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            deque.addFirst(edgeIdList.get(i));
+            while (!deque.isEmpty()) {
+                int edgeId = deque.removeFirst();
+                int shortedEdge1 = graph.getFirstShortcuttedEdge(edgeId);
+                if (shortedEdge1 >= 0) {
+                    deque.addFirst(graph.getSecondShortcuttedEdge(edgeId));
+                    deque.addFirst(shortedEdge1);
+                } else {
+                    int source = graph.getSource(edgeId);
+                    coords.put(pos++, graph.getLat(source));
+                    coords.put(pos++, graph.getLon(source));
+                }
+            }
+        }
+        log.info("Unpacked " + count + " shortcuts above rank " + minRank + " to " + pointCount + " points using " +
+                (4L * (2 * count + 1 + count + 2 * pointCount)) / (1024 * 1024) + " MiB");
+    }
+
+    private boolean isAboveMinRank(int edgeId) {
+        return graph.getRank(graph.getSource(edgeId)) >= minRank && graph.getRank(graph.getTarget(edgeId)) >= minRank;
+    }
+
+    /**
+     * Gets the minimum rank of the source and target of the stored shortcuts
+     */
+    public int getMinRank() {
+        return minRank;
+    }
+
+    /**
+     * Gets the number of stored shortcuts
+     */
+    public int getShortcutCount() {
+        return edgeIds.limit();
+    }
+
+    /**
+     * Gets the index of the stored unpacked shortcut with the given edge id or -1
+     * if it isn't stored, the edge must be a shortcut
+     *
+     * @param edgeId
+     * @return
+     */
+    public int find(int edgeId) {
+        if (!isAboveMinRank(edgeId)) {
+            return -1;
+        }
+        int low = 0;
+        int high = edgeIds.limit() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midId = edgeIds.get(mid);
+            if (midId < edgeId) {
+                low = mid + 1;
+            } else if (midId > edgeId) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the number of points of the unpacked shortcut with the given index,
+     * that is the number of original edges
+     */
+    public int getPointCount(int index) {
+        return offsets.get(index + 1) - offsets.get(index);
+    }
+
+    /**
+     * Gets the euclidian length of the unpacked shortcut with the given index
+     */
+    public int getLength(int index) {
+        return lengths.get(index);
+    }
+
+    /**
+     * Copies the (lat, lon) pairs of the unpacked shortcut with the given index
+     * into dst starting at dstOffset
+     *
+     * @param index
+     * @param dst
+     * @param dstOffset
+     */
+    public void copyPoints(int index, int[] dst, int dstOffset) {
+        IntBuffer src = coords.duplicate();
+        src.position(2 * offsets.get(index));
+        src.get(dst, dstOffset, 2 * getPointCount(index));
+    }
+}
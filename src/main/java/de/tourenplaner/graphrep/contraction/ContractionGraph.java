@@ -0,0 +1,200 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.graphrep.contraction;
+
+import com.carrotsearch.hppc.IntArrayList;
+import de.tourenplaner.graphrep.GraphRep;
+
+/**
+ * The graph while it's contracted. It holds all edges created so far, the original ones
+ * first followed by the shortcuts, and the adjacency of the remaining (not yet contracted)
+ * nodes. Between two remaining nodes there is at most one edge in each direction in the
+ * adjacency, the shortest one, dominated edges are only kept for the result.
+ * <p/>
+ * Only the Contractor modifies it and only while no witness searches run, so the
+ * searches can read it from many threads.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+final class ContractionGraph {
+    private final int nodeCount;
+
+    // all edges, the original ones first
+    private final IntArrayList src;
+    private final IntArrayList trgt;
+    private final IntArrayList dist;
+    private final IntArrayList euclidianDist;
+    private final IntArrayList shortedEdge1;
+    private final IntArrayList shortedEdge2;
+
+    // edge ids of the edges between remaining nodes
+    private final IntArrayList[] outEdges;
+    private final IntArrayList[] inEdges;
+
+    private final boolean[] contracted;
+
+    /**
+     * Copies the edges of the given graph, they all need to be original edges
+     *
+     * @throws IllegalArgumentException if the graph contains shortcuts
+     */
+    ContractionGraph(GraphRep graph) {
+        this.nodeCount = graph.getNodeCount();
+        int edgeCount = graph.getEdgeCount();
+        // about as many shortcuts as original edges are typical for road graphs
+        src = new IntArrayList(2 * edgeCount);
+        trgt = new IntArrayList(2 * edgeCount);
+        dist = new IntArrayList(2 * edgeCount);
+        euclidianDist = new IntArrayList(2 * edgeCount);
+        shortedEdge1 = new IntArrayList(2 * edgeCount);
+        shortedEdge2 = new IntArrayList(2 * edgeCount);
+        outEdges = new IntArrayList[nodeCount];
+        inEdges = new IntArrayList[nodeCount];
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+            outEdges[nodeId] = new IntArrayList(graph.getOutEdgeCount(nodeId));
+            inEdges[nodeId] = new IntArrayList(graph.getInEdgeCount(nodeId));
+        }
+        contracted = new boolean[nodeCount];
+
+        for (int edgeId = 0; edgeId < edgeCount; edgeId++) {
+            if (graph.getFirstShortcuttedEdge(edgeId) >= 0) {
+                throw new IllegalArgumentException("The graph already contains shortcuts, edge " + edgeId + " is one");
+            }
+            addEdge(graph.getSource(edgeId), graph.getTarget(edgeId), graph.getDist(edgeId),
+                    graph.getEuclidianDist(edgeId), -1, -1);
+        }
+    }
+
+    /**
+     * Adds an edge and puts it into the adjacency unless there already is a shorter or equally
+     * long one between its nodes, a longer one is removed from the adjacency instead.
+     * Shortcuts that would be dominated aren't added at all
+     *
+     * @return the id of the new edge or -1 if the shortcut was dominated
+     */
+    int addEdge(int source, int target, int edgeDist, int edgeEuclidianDist, int first, int second) {
+        int existing = -1;
+        if (source != target) {
+            IntArrayList out = outEdges[source];
+            for (int i = 0; i < out.size(); i++) {
+                if (trgt.get(out.get(i)) == target) {
+                    existing = out.get(i);
+                    break;
+                }
+            }
+            if (existing >= 0 && dist.get(existing) <= edgeDist && first >= 0) {
+                return -1;
+            }
+        }
+
+        int edgeId = src.size();
+        src.add(source);
+        trgt.add(target);
+        dist.add(edgeDist);
+        euclidianDist.add(edgeEuclidianDist);
+        shortedEdge1.add(first);
+        shortedEdge2.add(second);
+
+        // Self loops are never part of shortest paths
+        if (source == target || (existing >= 0 && dist.get(existing) <= edgeDist)) {
+            return edgeId;
+        }
+        if (existing >= 0) {
+            remove(outEdges[source], existing);
+            remove(inEdges[target], existing);
+        }
+        outEdges[source].add(edgeId);
+        inEdges[target].add(edgeId);
+        return edgeId;
+    }
+
+    /**
+     * Marks the node as contracted, witness searches don't visit it any more
+     */
+    void markContracted(int nodeId) {
+        contracted[nodeId] = true;
+    }
+
+    /**
+     * Removes the edges of the contracted node from the adjacency of its neighbors
+     */
+    void removeNode(int nodeId) {
+        IntArrayList out = outEdges[nodeId];
+        for (int i = 0; i < out.size(); i++) {
+            remove(inEdges[trgt.get(out.get(i))], out.get(i));
+        }
+        IntArrayList in = inEdges[nodeId];
+        for (int i = 0; i < in.size(); i++) {
+            remove(outEdges[src.get(in.get(i))], in.get(i));
+        }
+        out.clear();
+        in.clear();
+    }
+
+    private static void remove(IntArrayList edges, int edgeId) {
+        for (int i = 0; i < edges.size(); i++) {
+            if (edges.get(i) == edgeId) {
+                edges.remove(i);
+                return;
+            }
+        }
+    }
+
+    boolean isContracted(int nodeId) {
+        return contracted[nodeId];
+    }
+
+    int getNodeCount() {
+        return nodeCount;
+    }
+
+    int getEdgeCount() {
+        return src.size();
+    }
+
+    IntArrayList getOutEdges(int nodeId) {
+        return outEdges[nodeId];
+    }
+
+    IntArrayList getInEdges(int nodeId) {
+        return inEdges[nodeId];
+    }
+
+    int getSource(int edgeId) {
+        return src.get(edgeId);
+    }
+
+    int getTarget(int edgeId) {
+        return trgt.get(edgeId);
+    }
+
+    int getDist(int edgeId) {
+        return dist.get(edgeId);
+    }
+
+    int getEuclidianDist(int edgeId) {
+        return euclidianDist.get(edgeId);
+    }
+
+    int getFirstShortcuttedEdge(int edgeId) {
+        return shortedEdge1.get(edgeId);
+    }
+
+    int getSecondShortcuttedEdge(int edgeId) {
+        return shortedEdge2.get(edgeId);
+    }
+}
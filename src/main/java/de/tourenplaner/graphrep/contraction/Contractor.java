@@ -0,0 +1,471 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.graphrep.contraction;
+
+import com.carrotsearch.hppc.IntArrayList;
+import de.tourenplaner.graphrep.GraphRep;
+import de.tourenplaner.graphrep.GraphStorage;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Builds a contraction hierarchy for a graph without ranks and shortcuts, the
+ * resulting GraphRep is set up and can be dumped like the graphs converted by
+ * tools/convert.cpp.
+ * <p/>
+ * The nodes are contracted in rounds. Every round contracts an independent set of the
+ * remaining nodes, those whose priority is smaller than the priorities of all their
+ * remaining neighbors, in parallel. For every pair of in and out neighbor a witness
+ * search looks for a path avoiding the contracted nodes that is at most as long as the
+ * path over the node, if there is none a shortcut is added. The witness searches are
+ * limited by hops and settled nodes, this only adds superfluous shortcuts. The shortcuts
+ * of a round are added and the priorities of the neighbors updated afterwards, so the
+ * result doesn't depend on the number of threads.
+ * <p/>
+ * The priority of a node is a weighted sum of its edge difference (shortcuts added
+ * minus edges removed by contracting it), the number of its contracted neighbors
+ * and its level (one more than the highest level of its contracted neighbors).
+ * The rank of a node is its position in the contraction order.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public final class Contractor {
+    private static Logger log = Logger.getLogger("de.tourenplaner.graphrep");
+
+    // The nodes are processed in chunks of this size, the results are merged in chunk order
+    private static final int CHUNK_SIZE = 256;
+
+    private final GraphRep input;
+    private final GraphStorage storage;
+    private final int threads;
+
+    private int hopLimit = 5;
+    private int settledLimit = 1000;
+    private int edgeDifferenceWeight = 2;
+    private int deletedNeighborsWeight = 1;
+    private int levelWeight = 1;
+
+    // state of the running contraction
+    private ContractionGraph graph;
+    private int[] priorities;
+    private int[] deletedNeighbors;
+    private int[] levels;
+    private ForkJoinPool pool;
+    private ThreadLocal<WitnessSearch> searches;
+
+    // metrics of the last contraction
+    private final Map<String, Object> stats;
+
+    /**
+     * Creates a Contractor for the given set up graph, the result is allocated
+     * with the given storage and contracted by the given number of threads
+     */
+    public Contractor(GraphRep input, GraphStorage storage, int threads) {
+        this.input = input;
+        this.storage = storage;
+        this.threads = Math.max(1, threads);
+        this.stats = new LinkedHashMap<String, Object>();
+    }
+
+    /**
+     * Sets the maximum number of edges of witness paths, defaults to 5
+     *
+     * @param hopLimit
+     */
+    public void setHopLimit(int hopLimit) {
+        this.hopLimit = hopLimit;
+    }
+
+    /**
+     * Sets the maximum number of nodes a witness search settles, defaults to 1000
+     *
+     * @param settledLimit
+     */
+    public void setSettledLimit(int settledLimit) {
+        this.settledLimit = settledLimit;
+    }
+
+    /**
+     * Sets the weights of the parts of the priority, defaults to 2, 1 and 1
+     *
+     * @param edgeDifference    weight of shortcuts added minus edges removed
+     * @param deletedNeighbors  weight of the number of contracted neighbors
+     * @param level             weight of the level of the node
+     */
+    public void setPriorityWeights(int edgeDifference, int deletedNeighbors, int level) {
+        this.edgeDifferenceWeight = edgeDifference;
+        this.deletedNeighborsWeight = deletedNeighbors;
+        this.levelWeight = level;
+    }
+
+    /**
+     * Gets the metrics of the last contraction: node, edge and shortcut counts, rounds,
+     * the highest level and the time in ms spent in every phase
+     *
+     * @return
+     */
+    public Map<String, Object> getStats() {
+        return stats;
+    }
+
+    /**
+     * Contracts the graph
+     *
+     * @return the contracted and set up graph
+     * @throws IllegalArgumentException if the graph already contains shortcuts
+     */
+    public GraphRep contract() {
+        long starttime = System.nanoTime();
+        int nodeCount = input.getNodeCount();
+        graph = new ContractionGraph(input);
+        priorities = new int[nodeCount];
+        deletedNeighbors = new int[nodeCount];
+        levels = new int[nodeCount];
+        int[] ranks = new int[nodeCount];
+        int[] touchedRound = new int[nodeCount];
+        pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        searches = new ThreadLocal<WitnessSearch>() {
+            @Override
+            protected WitnessSearch initialValue() {
+                return new WitnessSearch(graph);
+            }
+        };
+
+        long priorityTime = 0;
+        long independentSetTime = 0;
+        long contractTime = 0;
+        long applyTime = 0;
+        long updateTime = 0;
+        int rounds = 0;
+        int nextRank = 0;
+        int shortcuts = 0;
+        int maxLevel = 0;
+        try {
+            final int[] remaining = new int[nodeCount];
+            for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+                remaining[nodeId] = nodeId;
+            }
+            int remainingCount = nodeCount;
+            long time = System.nanoTime();
+            updatePriorities(remaining, remainingCount);
+            priorityTime += System.nanoTime() - time;
+            log.info("Contracting " + nodeCount + " nodes and " + graph.getEdgeCount() + " edges with " + threads +
+                    " threads, initial priorities took " + priorityTime / 1000000 + " ms");
+
+            int nextProgress = nodeCount / 10;
+            while (remainingCount > 0) {
+                rounds++;
+                time = System.nanoTime();
+                final int[] independentSet = selectIndependentSet(remaining, remainingCount);
+                for (int nodeId : independentSet) {
+                    graph.markContracted(nodeId);
+                }
+                long selectedTime = System.nanoTime();
+                independentSetTime += selectedTime - time;
+
+                final IntArrayList[] chunkShortcuts = new IntArrayList[chunkCount(independentSet.length)];
+                parallel(independentSet.length, new ChunkAction() {
+                    @Override
+                    public void run(int chunk, int from, int to) {
+                        WitnessSearch search = searches.get();
+                        IntArrayList found = new IntArrayList();
+                        for (int i = from; i < to; i++) {
+                            contract(search, independentSet[i], found);
+                        }
+                        chunkShortcuts[chunk] = found;
+                    }
+                });
+                long contractedTime = System.nanoTime();
+                contractTime += contractedTime - selectedTime;
+
+                // Add the shortcuts and remove the contracted nodes, remembering their neighbors
+                for (IntArrayList found : chunkShortcuts) {
+                    for (int i = 0; i < found.size(); i += 6) {
+                        if (graph.addEdge(found.get(i), found.get(i + 1), found.get(i + 2), found.get(i + 3),
+                                found.get(i + 4), found.get(i + 5)) >= 0) {
+                            shortcuts++;
+                        }
+                    }
+                }
+                IntArrayList touched = new IntArrayList();
+                for (int nodeId : independentSet) {
+                    ranks[nodeId] = nextRank++;
+                    maxLevel = Math.max(maxLevel, levels[nodeId]);
+                    IntArrayList out = graph.getOutEdges(nodeId);
+                    for (int i = 0; i < out.size(); i++) {
+                        touchNeighbor(nodeId, graph.getTarget(out.get(i)), rounds, touchedRound, touched);
+                    }
+                    IntArrayList in = graph.getInEdges(nodeId);
+                    for (int i = 0; i < in.size(); i++) {
+                        touchNeighbor(nodeId, graph.getSource(in.get(i)), rounds, touchedRound, touched);
+                    }
+                    graph.removeNode(nodeId);
+                }
+                int count = 0;
+                for (int i = 0; i < remainingCount; i++) {
+                    if (!graph.isContracted(remaining[i])) {
+                        remaining[count++] = remaining[i];
+                    }
+                }
+                remainingCount = count;
+                long appliedTime = System.nanoTime();
+                applyTime += appliedTime - contractedTime;
+
+                updatePriorities(touched.toArray(), touched.size());
+                updateTime += System.nanoTime() - appliedTime;
+
+                if (log.isLoggable(Level.FINE)) {
+                    log.fine("Round " + rounds + " contracted " + independentSet.length + " nodes, " +
+                            remainingCount + " remaining, " + shortcuts + " shortcuts");
+                }
+                if (nodeCount - remainingCount >= nextProgress && remainingCount > 0) {
+                    log.info("Contracted " + (nodeCount - remainingCount) + " of " + nodeCount + " nodes in " +
+                            rounds + " rounds, " + shortcuts + " shortcuts, " +
+                            (System.nanoTime() - starttime) / 1000000 + " ms");
+                    nextProgress = (nodeCount - remainingCount) + nodeCount / 10;
+                }
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+            pool = null;
+            searches = null;
+        }
+
+        long time = System.nanoTime();
+        int edgeCount = graph.getEdgeCount();
+        GraphRep result = new GraphRep(nodeCount, edgeCount, storage);
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+            result.setNodeData(nodeId, input.getLat(nodeId), input.getLon(nodeId), input.getHeight(nodeId));
+            result.setRank(nodeId, ranks[nodeId]);
+        }
+        for (int edgeId = 0; edgeId < edgeCount; edgeId++) {
+            result.setEdgeData(edgeId, graph.getSource(edgeId), graph.getTarget(edgeId), graph.getDist(edgeId),
+                    graph.getEuclidianDist(edgeId));
+            result.setShortcutData(edgeId, graph.getFirstShortcuttedEdge(edgeId), graph.getSecondShortcuttedEdge(edgeId));
+        }
+        graph = null;
+        result.setup(threads);
+        long setupTime = System.nanoTime() - time;
+
+        stats.clear();
+        stats.put("nodes", nodeCount);
+        stats.put("edges", edgeCount - shortcuts);
+        stats.put("shortcuts", shortcuts);
+        stats.put("rounds", rounds);
+        stats.put("maxlevel", maxLevel);
+        stats.put("prioritiesms", (priorityTime + updateTime) / 1000000);
+        stats.put("independentsetms", independentSetTime / 1000000);
+        stats.put("witnesssearchms", contractTime / 1000000);
+        stats.put("applyms", applyTime / 1000000);
+        stats.put("setupms", setupTime / 1000000);
+        stats.put("totalms", (System.nanoTime() - starttime) / 1000000);
+        log.info("Contraction finished " + stats);
+        return result;
+    }
+
+    /**
+     * Counts the contracted neighbor and raises its level, it's added to touched once per round
+     */
+    private void touchNeighbor(int nodeId, int neighbor, int round, int[] touchedRound, IntArrayList touched) {
+        deletedNeighbors[neighbor]++;
+        levels[neighbor] = Math.max(levels[neighbor], levels[nodeId] + 1);
+        if (touchedRound[neighbor] != round) {
+            touchedRound[neighbor] = round;
+            touched.add(neighbor);
+        }
+    }
+
+    /**
+     * Computes the priorities of the first count nodes in parallel
+     */
+    private void updatePriorities(final int[] nodes, int count) {
+        parallel(count, new ChunkAction() {
+            @Override
+            public void run(int chunk, int from, int to) {
+                WitnessSearch search = searches.get();
+                for (int i = from; i < to; i++) {
+                    int nodeId = nodes[i];
+                    int edgeDifference = contract(search, nodeId, null) -
+                            graph.getInEdges(nodeId).size() - graph.getOutEdges(nodeId).size();
+                    priorities[nodeId] = edgeDifferenceWeight * edgeDifference +
+                            deletedNeighborsWeight * deletedNeighbors[nodeId] + levelWeight * levels[nodeId];
+                }
+            }
+        });
+    }
+
+    /**
+     * Selects the remaining nodes ordered before all their remaining neighbors
+     */
+    private int[] selectIndependentSet(final int[] remaining, int remainingCount) {
+        final IntArrayList[] chunkNodes = new IntArrayList[chunkCount(remainingCount)];
+        parallel(remainingCount, new ChunkAction() {
+            @Override
+            public void run(int chunk, int from, int to) {
+                IntArrayList selected = new IntArrayList();
+                for (int i = from; i < to; i++) {
+                    if (isLocalMinimum(remaining[i])) {
+                        selected.add(remaining[i]);
+                    }
+                }
+                chunkNodes[chunk] = selected;
+            }
+        });
+        IntArrayList independentSet = new IntArrayList();
+        for (IntArrayList selected : chunkNodes) {
+            for (int i = 0; i < selected.size(); i++) {
+                independentSet.add(selected.get(i));
+            }
+        }
+        return independentSet.toArray();
+    }
+
+    private boolean isLocalMinimum(int nodeId) {
+        IntArrayList out = graph.getOutEdges(nodeId);
+        for (int i = 0; i < out.size(); i++) {
+            int neighbor = graph.getTarget(out.get(i));
+            if (neighbor != nodeId && !before(nodeId, neighbor)) {
+                return false;
+            }
+        }
+        IntArrayList in = graph.getInEdges(nodeId);
+        for (int i = 0; i < in.size(); i++) {
+            int neighbor = graph.getSource(in.get(i));
+            if (neighbor != nodeId && !before(nodeId, neighbor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Orders by priority, ties are broken by a hash of the ids so nodes of equal
+     * priority in one area get contracted in the same round
+     */
+    private boolean before(int a, int b) {
+        if (priorities[a] != priorities[b]) {
+            return priorities[a] < priorities[b];
+        }
+        int hashA = a * 0x9E3779B9;
+        int hashB = b * 0x9E3779B9;
+        return hashA < hashB || (hashA == hashB && a < b);
+    }
+
+    /**
+     * Finds the shortcuts needed when contracting the given node and adds them to
+     * shortcuts as source, target, dist, euclidianDist, first and second shortcutted edge
+     * unless it's null
+     *
+     * @return the number of shortcuts needed
+     */
+    private int contract(WitnessSearch search, int nodeId, IntArrayList shortcuts) {
+        IntArrayList in = graph.getInEdges(nodeId);
+        IntArrayList out = graph.getOutEdges(nodeId);
+        int maxOutDist = 0;
+        for (int i = 0; i < out.size(); i++) {
+            maxOutDist = Math.max(maxOutDist, graph.getDist(out.get(i)));
+        }
+
+        int count = 0;
+        for (int i = 0; i < in.size(); i++) {
+            int firstEdge = in.get(i);
+            int source = graph.getSource(firstEdge);
+            int firstDist = graph.getDist(firstEdge);
+            search.run(source, nodeId, firstDist + maxOutDist, hopLimit, settledLimit);
+            for (int j = 0; j < out.size(); j++) {
+                int secondEdge = out.get(j);
+                int target = graph.getTarget(secondEdge);
+                if (target == source) {
+                    continue;
+                }
+                int shortcutDist = firstDist + graph.getDist(secondEdge);
+                if (search.getDist(target) > shortcutDist) {
+                    count++;
+                    if (shortcuts != null) {
+                        shortcuts.add(source);
+                        shortcuts.add(target);
+                        shortcuts.add(shortcutDist);
+                        shortcuts.add(graph.getEuclidianDist(firstEdge) + graph.getEuclidianDist(secondEdge));
+                        shortcuts.add(firstEdge);
+                        shortcuts.add(secondEdge);
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Work on the range [from, to) which is the given chunk of all elements
+     */
+    private interface ChunkAction {
+        void run(int chunk, int from, int to);
+    }
+
+    private static int chunkCount(int count) {
+        return (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+
+    /**
+     * Runs the action on all chunks of count elements, in parallel if there is more than one
+     */
+    private void parallel(final int count, final ChunkAction action) {
+        final int chunks = chunkCount(count);
+        if (pool == null || chunks <= 1) {
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                action.run(chunk, chunk * CHUNK_SIZE, Math.min(count, (chunk + 1) * CHUNK_SIZE));
+            }
+            return;
+        }
+        // a few tasks per thread, each working on every taskCount-th chunk
+        final int taskCount = Math.min(chunks, 4 * threads);
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(taskCount);
+        for (int task = 0; task < taskCount; task++) {
+            final int firstChunk = task;
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int chunk = firstChunk; chunk < chunks; chunk += taskCount) {
+                        action.run(chunk, chunk * CHUNK_SIZE, Math.min(count, (chunk + 1) * CHUNK_SIZE));
+                    }
+                    return null;
+                }
+            });
+        }
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while contracting", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Contracting failed", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.graphrep.contraction;
+
+import com.carrotsearch.hppc.IntArrayList;
+import de.tourenplaner.algorithms.Heap;
+
+import java.util.Arrays;
+
+/**
+ * A Dijkstra search looking for witnesses, paths that make a shortcut over a
+ * contracted node unnecessary. It's limited by distance, by the number of edges
+ * (hops) of the paths and by the number of settled nodes, so it may miss witnesses
+ * which only adds superfluous shortcuts. Every thread uses its own WitnessSearch,
+ * the labels are reset in constant time by a new stamp.
+ *
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+final class WitnessSearch {
+    private final ContractionGraph graph;
+    private final Heap heap;
+    private final int[] dists;
+    private final int[] hops;
+    private final int[] stamps;
+    private int stamp;
+
+    WitnessSearch(ContractionGraph graph) {
+        this.graph = graph;
+        this.heap = new Heap();
+        this.dists = new int[graph.getNodeCount()];
+        this.hops = new int[graph.getNodeCount()];
+        this.stamps = new int[graph.getNodeCount()];
+    }
+
+    /**
+     * Searches from the source node over remaining nodes other than the ignored one
+     * until all nodes up to maxDist or settledLimit nodes are settled, paths
+     * have at most hopLimit edges
+     */
+    void run(int source, int ignored, int maxDist, int hopLimit, int settledLimit) {
+        if (++stamp == 0) {
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+        heap.resetHeap();
+        setLabel(source, 0, 0);
+        heap.insert(source, 0);
+        int settled = 0;
+        while (!heap.isEmpty() && settled < settledLimit) {
+            int nodeId = heap.peekMinId();
+            int nodeDist = heap.peekMinDist();
+            heap.removeMin();
+            if (nodeDist > dists[nodeId]) {
+                continue;
+            }
+            if (nodeDist > maxDist) {
+                break;
+            }
+            settled++;
+            if (hops[nodeId] >= hopLimit) {
+                continue;
+            }
+            IntArrayList out = graph.getOutEdges(nodeId);
+            for (int i = 0; i < out.size(); i++) {
+                int edgeId = out.get(i);
+                int target = graph.getTarget(edgeId);
+                if (target == ignored || graph.isContracted(target)) {
+                    continue;
+                }
+                int tempDist = nodeDist + graph.getDist(edgeId);
+                if (tempDist < getDist(target)) {
+                    setLabel(target, tempDist, hops[nodeId] + 1);
+                    heap.insert(target, tempDist);
+                }
+            }
+        }
+    }
+
+    private void setLabel(int nodeId, int dist, int hopCount) {
+        stamps[nodeId] = stamp;
+        dists[nodeId] = dist;
+        hops[nodeId] = hopCount;
+    }
+
+    /**
+     * Gets the distance the last search found to the node, Integer.MAX_VALUE if it wasn't reached
+     */
+    int getDist(int nodeId) {
+        return stamps[nodeId] == stamp ? dists[nodeId] : Integer.MAX_VALUE;
+    }
+}
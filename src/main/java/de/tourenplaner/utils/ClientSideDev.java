@@ -10,7 +10,7 @@ import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import de.tourenplaner.algorithms.DijkstraStructs;
 import de.tourenplaner.algorithms.Heap;
 import de.tourenplaner.graphrep.GraphRep;
-import de.tourenplaner.graphrep.GraphRepBinaryReader;
+import de.tourenplaner.graphrep.GraphRepMappedReader;
 import de.tourenplaner.graphrep.GridNN;
 
 import java.io.FileInputStream;
@@ -186,7 +186,7 @@ public class ClientSideDev {
             System.exit(1);
         }
         try {
-            GraphRep graph = new GraphRepBinaryReader().createGraphRep(new FileInputStream(args[0]));
+            GraphRep graph = new GraphRepMappedReader().createGraphRep(new FileInputStream(args[0]));
             graph.setNNSearcher(new GridNN(graph));
 
             int stgtId = graph.getIdForCoordinates(487786110, 91794440);
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.algorithms;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+/**
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class DijkstraStructsPoolTest {
+
+	@Test
+	public final void testReuse() {
+		DijkstraStructsPool pool = new DijkstraStructsPool(10, 20, 2);
+		DijkstraStructs first = pool.borrowStructs();
+		DijkstraStructs second = pool.borrowStructs();
+		assertTrue(first != second);
+		pool.returnStructs(first);
+		assertSame(first, pool.borrowStructs());
+	}
+
+	@Test
+	public final void testBlocksAtCap() throws Exception {
+		final DijkstraStructsPool pool = new DijkstraStructsPool(10, 20, 1);
+		DijkstraStructs borrowed = pool.borrowStructs();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<DijkstraStructs> waiting = executor.submit(new Callable<DijkstraStructs>() {
+				@Override
+				public DijkstraStructs call() {
+					return pool.borrowStructs();
+				}
+			});
+			try {
+				waiting.get(100, TimeUnit.MILLISECONDS);
+				throw new AssertionError("Borrowed more than maxStructs");
+			} catch (TimeoutException expected) {
+				// still blocked as the only instance is borrowed
+			}
+			pool.returnStructs(borrowed);
+			assertSame(borrowed, waiting.get(10, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.algorithms;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class SearchLabelsTest {
+
+	@Test
+	public final void testUnreached() {
+		SearchLabels labels = new SearchLabels(10);
+		assertEquals(10, labels.size());
+		for (int i = 0; i < labels.size(); i++) {
+			assertEquals(false, labels.isReached(i));
+			assertEquals(Integer.MAX_VALUE, labels.getDist(i));
+			assertEquals(-1, labels.getPrevEdge(i));
+		}
+	}
+
+	@Test
+	public final void testSet() {
+		SearchLabels labels = new SearchLabels(10);
+		labels.setDistAndPrev(3, 42, 7);
+		labels.setDist(5, 23);
+		assertEquals(true, labels.isReached(3));
+		assertEquals(42, labels.getDist(3));
+		assertEquals(7, labels.getPrevEdge(3));
+		assertEquals(23, labels.getDist(5));
+		assertEquals(-1, labels.getPrevEdge(5));
+
+		// setDist keeps the prev edge of a labeled node
+		labels.setDist(3, 17);
+		assertEquals(17, labels.getDist(3));
+		assertEquals(7, labels.getPrevEdge(3));
+		assertEquals(false, labels.isReached(4));
+	}
+
+	@Test
+	public final void testReset() {
+		SearchLabels labels = new SearchLabels(10);
+		labels.setDistAndPrev(3, 42, 7);
+		labels.reset();
+		assertEquals(false, labels.isReached(3));
+		assertEquals(Integer.MAX_VALUE, labels.getDist(3));
+		assertEquals(-1, labels.getPrevEdge(3));
+
+		// a label of an old search must not leak into the prev edge
+		labels.setDist(3, 1);
+		assertEquals(-1, labels.getPrevEdge(3));
+	}
+
+	@Test
+	public final void testStampWrapAround() {
+		SearchLabels labels = new SearchLabels(10, Integer.MAX_VALUE - 1);
+		labels.setDist(1, 11);
+		labels.reset();
+		labels.setDist(2, 22);
+		assertEquals(false, labels.isReached(1));
+		// the stamps wrap around here, labels of both old searches must be gone
+		labels.reset();
+		assertEquals(false, labels.isReached(1));
+		assertEquals(false, labels.isReached(2));
+		labels.setDist(1, 5);
+		assertEquals(5, labels.getDist(1));
+		for (int i = 0; i < 3; i++) {
+			labels.reset();
+			assertEquals(false, labels.isReached(1));
+		}
+	}
+}
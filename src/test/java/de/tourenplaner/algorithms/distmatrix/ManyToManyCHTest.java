@@ -0,0 +1,143 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.tourenplaner.algorithms.distmatrix;
+
+import de.tourenplaner.algorithms.CancellationToken;
+import de.tourenplaner.algorithms.ComputeCancelledException;
+import de.tourenplaner.algorithms.DijkstraStructs;
+import de.tourenplaner.algorithms.Heap;
+import de.tourenplaner.graphrep.GraphRep;
+import de.tourenplaner.graphrep.TestGraphReader;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class ManyToManyCHTest {
+
+    /**
+     * Plain Dijkstra on the original edges only
+     */
+    private static int[] dijkstra(GraphRep graph, int srcId) {
+        int[] dists = new int[graph.getNodeCount()];
+        Arrays.fill(dists, Integer.MAX_VALUE);
+        dists[srcId] = 0;
+        Heap heap = new Heap();
+        heap.insert(srcId, 0);
+        while (!heap.isEmpty()) {
+            int nodeId = heap.peekMinId();
+            int nodeDist = heap.peekMinDist();
+            heap.removeMin();
+            if (nodeDist > dists[nodeId]) {
+                continue;
+            }
+            for (int i = 0; i < graph.getOutEdgeCount(nodeId); i++) {
+                int edgeId = graph.getOutEdgeId(nodeId, i);
+                if (graph.getFirstShortcuttedEdge(edgeId) >= 0) {
+                    continue;
+                }
+                int targetId = graph.getTarget(edgeId);
+                int tempDist = nodeDist + graph.getDist(edgeId);
+                if (tempDist < dists[targetId]) {
+                    dists[targetId] = tempDist;
+                    heap.insert(targetId, tempDist);
+                }
+            }
+        }
+        return dists;
+    }
+
+    private static void checkDistMatrix(GraphRep graph, DistMatrixWorkers workers, int maxPoints)
+            throws ComputeCancelledException {
+        ManyToManyCH manyToMany = new ManyToManyCH(graph, new DijkstraStructs(graph.getNodeCount(), graph.getEdgeCount()), workers);
+        Random random = new Random(1337);
+        for (int testCase = 0; testCase < 5; testCase++) {
+            int[] sourceIds = new int[1 + random.nextInt(maxPoints)];
+            int[] targetIds = new int[1 + random.nextInt(maxPoints)];
+            for (int i = 0; i < sourceIds.length; i++) {
+                sourceIds[i] = random.nextInt(graph.getNodeCount());
+            }
+            for (int i = 0; i < targetIds.length; i++) {
+                targetIds[i] = random.nextInt(graph.getNodeCount());
+            }
+
+            int[][] distmat = manyToMany.computeDistMatrix(sourceIds, targetIds, CancellationToken.NONE);
+            assertEquals(sourceIds.length, distmat.length);
+            for (int i = 0; i < sourceIds.length; i++) {
+                int[] expected = dijkstra(graph, sourceIds[i]);
+                assertEquals(targetIds.length, distmat[i].length);
+                for (int j = 0; j < targetIds.length; j++) {
+                    assertEquals("Wrong distance from " + sourceIds[i] + " to " + targetIds[j],
+                            expected[targetIds[j]], distmat[i][j]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public final void testDistMatrix() throws ComputeCancelledException {
+        checkDistMatrix(new TestGraphReader().readTestGraph(), null, 20);
+    }
+
+    @Test
+    public final void testDistMatrixSearchGraph() throws ComputeCancelledException {
+        GraphRep graph = new TestGraphReader().readTestGraph();
+        graph.setupSearchGraph();
+        checkDistMatrix(graph, null, 20);
+    }
+
+    @Test
+    public final void testDistMatrixParallel() throws ComputeCancelledException {
+        GraphRep graph = new TestGraphReader().readTestGraph();
+        DistMatrixWorkers workers = new DistMatrixWorkers(graph, 4);
+        checkDistMatrix(graph, workers, 60);
+        graph.setupSearchGraph();
+        checkDistMatrix(graph, workers, 60);
+    }
+
+    @Test
+    public final void testCancelled() {
+        GraphRep graph = new TestGraphReader().readTestGraph();
+        int[] ids = new int[200];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i;
+        }
+        CancellationToken cancellation = new CancellationToken();
+        cancellation.cancel();
+        DistMatrixWorkers workers = new DistMatrixWorkers(graph, 4);
+        for (DistMatrixWorkers matrixWorkers : new DistMatrixWorkers[]{null, workers}) {
+            ManyToManyCH manyToMany = new ManyToManyCH(graph,
+                    new DijkstraStructs(graph.getNodeCount(), graph.getEdgeCount()), matrixWorkers);
+            try {
+                manyToMany.computeDistMatrix(ids, ids, cancellation);
+                fail("The computation was cancelled");
+            } catch (ComputeCancelledException expected) {
+            }
+            // the buckets are cleared for the next computation
+            try {
+                checkDistMatrix(graph, matrixWorkers, 20);
+            } catch (ComputeCancelledException e) {
+                fail(e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.algorithms.distmatrix;
+
+import de.tourenplaner.algorithms.DijkstraStructs;
+import de.tourenplaner.algorithms.Heap;
+import de.tourenplaner.graphrep.GraphRep;
+import de.tourenplaner.graphrep.TestGraphReader;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class PHASTTest {
+
+    /**
+     * Plain Dijkstra on the original edges only
+     */
+    private static int[] dijkstra(GraphRep graph, int srcId) {
+        int[] dists = new int[graph.getNodeCount()];
+        Arrays.fill(dists, Integer.MAX_VALUE);
+        dists[srcId] = 0;
+        Heap heap = new Heap();
+        heap.insert(srcId, 0);
+        while (!heap.isEmpty()) {
+            int nodeId = heap.peekMinId();
+            int nodeDist = heap.peekMinDist();
+            heap.removeMin();
+            if (nodeDist > dists[nodeId]) {
+                continue;
+            }
+            for (int i = 0; i < graph.getOutEdgeCount(nodeId); i++) {
+                int edgeId = graph.getOutEdgeId(nodeId, i);
+                if (graph.getFirstShortcuttedEdge(edgeId) >= 0) {
+                    continue;
+                }
+                int targetId = graph.getTarget(edgeId);
+                int tempDist = nodeDist + graph.getDist(edgeId);
+                if (tempDist < dists[targetId]) {
+                    dists[targetId] = tempDist;
+                    heap.insert(targetId, tempDist);
+                }
+            }
+        }
+        return dists;
+    }
+
+    private static void checkOneToAll(GraphRep graph) {
+        PHAST phast = new PHAST(graph, new DijkstraStructs(graph.getNodeCount(), graph.getEdgeCount()));
+        Random random = new Random(42);
+        int[] dists = new int[graph.getNodeCount()];
+        for (int testCase = 0; testCase < 5; testCase++) {
+            int srcId = random.nextInt(graph.getNodeCount());
+            phast.oneToAll(srcId, dists);
+            assertArrayEquals("Wrong distances from " + srcId, dijkstra(graph, srcId), dists);
+        }
+    }
+
+    private static void checkDistMatrix(GraphRep graph, DistMatrixWorkers workers, int maxPoints) {
+        PHAST phast = new PHAST(graph, new DijkstraStructs(graph.getNodeCount(), graph.getEdgeCount()), workers);
+        Random random = new Random(1337);
+        for (int testCase = 0; testCase < 5; testCase++) {
+            int[] sourceIds = new int[1 + random.nextInt(maxPoints)];
+            int[] targetIds = new int[1 + random.nextInt(maxPoints)];
+            for (int i = 0; i < sourceIds.length; i++) {
+                sourceIds[i] = random.nextInt(graph.getNodeCount());
+            }
+            for (int i = 0; i < targetIds.length; i++) {
+                targetIds[i] = random.nextInt(graph.getNodeCount());
+            }
+
+            int[][] distmat = phast.computeDistMatrix(sourceIds, targetIds);
+            assertEquals(sourceIds.length, distmat.length);
+            for (int i = 0; i < sourceIds.length; i++) {
+                int[] expected = dijkstra(graph, sourceIds[i]);
+                assertEquals(targetIds.length, distmat[i].length);
+                for (int j = 0; j < targetIds.length; j++) {
+                    assertEquals("Wrong distance from " + sourceIds[i] + " to " + targetIds[j],
+                            expected[targetIds[j]], distmat[i][j]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public final void testOneToAll() {
+        GraphRep graph = new TestGraphReader().readTestGraph();
+        graph.setupSweepGraph();
+        checkOneToAll(graph);
+        graph.setupSearchGraph();
+        checkOneToAll(graph);
+    }
+
+    @Test
+    public final void testOneToAllRenumbered() {
+        GraphRep graph = new TestGraphReader().readTestGraph();
+        graph.renumberNodesByLocality(1000, 2);
+        graph.setupSweepGraph();
+        checkOneToAll(graph);
+        checkDistMatrix(graph, null, 20);
+    }
+
+    @Test
+    public final void testDistMatrix() {
+        GraphRep graph = new TestGraphReader().readTestGraph();
+        graph.setupSweepGraph();
+        checkDistMatrix(graph, null, 20);
+    }
+
+    @Test
+    public final void testDistMatrixParallel() {
+        GraphRep graph = new TestGraphReader().readTestGraph();
+        graph.setupSweepGraph();
+        DistMatrixWorkers workers = new DistMatrixWorkers(graph, 4);
+        checkDistMatrix(graph, workers, 60);
+        graph.setupSearchGraph();
+        checkDistMatrix(graph, workers, 60);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.algorithms.isochrone;
+
+import com.carrotsearch.hppc.IntArrayList;
+import de.tourenplaner.algorithms.DijkstraStructs;
+import de.tourenplaner.algorithms.Heap;
+import de.tourenplaner.algorithms.bbbundle.BoundingBox;
+import de.tourenplaner.graphrep.GraphRep;
+import de.tourenplaner.graphrep.TestGraphReader;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class IsochroneTest {
+
+    /**
+     * Plain Dijkstra on the original edges only
+     */
+    private static int[] dijkstra(GraphRep graph, int srcId) {
+        int[] dists = new int[graph.getNodeCount()];
+        Arrays.fill(dists, Integer.MAX_VALUE);
+        dists[srcId] = 0;
+        Heap heap = new Heap();
+        heap.insert(srcId, 0);
+        while (!heap.isEmpty()) {
+            int nodeId = heap.peekMinId();
+            int nodeDist = heap.peekMinDist();
+            heap.removeMin();
+            if (nodeDist > dists[nodeId]) {
+                continue;
+            }
+            for (int i = 0; i < graph.getOutEdgeCount(nodeId); i++) {
+                int edgeId = graph.getOutEdgeId(nodeId, i);
+                if (graph.getFirstShortcuttedEdge(edgeId) >= 0) {
+                    continue;
+                }
+                int targetId = graph.getTarget(edgeId);
+                int tempDist = nodeDist + graph.getDist(edgeId);
+                if (tempDist < dists[targetId]) {
+                    dists[targetId] = tempDist;
+                    heap.insert(targetId, tempDist);
+                }
+            }
+        }
+        return dists;
+    }
+
+    private static void checkReached(int[] dists, int maxDist, IntArrayList reached, IntArrayList reachedDists,
+                                     boolean[] considered) {
+        boolean[] isReached = new boolean[dists.length];
+        for (int i = 0; i < reached.size(); i++) {
+            int nodeId = reached.get(i);
+            assertTrue(considered[nodeId]);
+            assertEquals(dists[nodeId], reachedDists.get(i));
+            isReached[nodeId] = true;
+        }
+        for (int nodeId = 0; nodeId < dists.length; nodeId++) {
+            assertEquals("Wrong result for " + nodeId, considered[nodeId] && dists[nodeId] <= maxDist, isReached[nodeId]);
+        }
+    }
+
+    @Test
+    public final void testReachedNodes() {
+        GraphRep graph = (new TestGraphReader()).readTestGraph();
+        graph.setupSweepGraph();
+        Isochrone isochrone = new Isochrone(graph, new DijkstraStructs(graph.getNodeCount(), graph.getEdgeCount()));
+        boolean[] all = new boolean[graph.getNodeCount()];
+        Arrays.fill(all, true);
+        Random random = new Random(42);
+        for (int testCase = 0; testCase < 5; testCase++) {
+            int srcId = random.nextInt(graph.getNodeCount());
+            int[] dists = dijkstra(graph, srcId);
+            int maxDist = dists[random.nextInt(graph.getNodeCount())];
+            if (maxDist == Integer.MAX_VALUE) {
+                maxDist = 10000;
+            }
+            IntArrayList reachedDists = new IntArrayList();
+            IntArrayList reached = isochrone.reachedNodes(srcId, maxDist, null, reachedDists);
+            checkReached(dists, maxDist, reached, reachedDists, all);
+
+            // a box around the source covering a quarter of the graph's extent
+            int minLat = Integer.MAX_VALUE, maxLat = Integer.MIN_VALUE;
+            int minLon = Integer.MAX_VALUE, maxLon = Integer.MIN_VALUE;
+            for (int nodeId = 0; nodeId < graph.getNodeCount(); nodeId++) {
+                minLat = Math.min(minLat, graph.getLat(nodeId));
+                maxLat = Math.max(maxLat, graph.getLat(nodeId));
+                minLon = Math.min(minLon, graph.getLon(nodeId));
+                maxLon = Math.max(maxLon, graph.getLon(nodeId));
+            }
+            int width = (maxLon - minLon) / 2;
+            int height = (maxLat - minLat) / 2;
+            BoundingBox bbox = new BoundingBox(graph.getLon(srcId) - width / 2, graph.getLat(srcId) - height / 2,
+                    width, height);
+            boolean[] inBox = new boolean[graph.getNodeCount()];
+            for (int nodeId = 0; nodeId < graph.getNodeCount(); nodeId++) {
+                inBox[nodeId] = bbox.contains(graph.getLon(nodeId), graph.getLat(nodeId));
+            }
+            reachedDists.clear();
+            reached = isochrone.reachedNodes(srcId, maxDist, bbox, reachedDists);
+            checkReached(dists, maxDist, reached, reachedDists, inBox);
+        }
+    }
+
+    @Test
+    public final void testBoundary() {
+        GraphRep graph = (new TestGraphReader()).readTestGraph();
+        graph.setupSweepGraph();
+        Isochrone isochrone = new Isochrone(graph, new DijkstraStructs(graph.getNodeCount(), graph.getEdgeCount()));
+        int srcId = new Random(42).nextInt(graph.getNodeCount());
+        IntArrayList reached = isochrone.reachedNodes(srcId, 20000, null, new IntArrayList());
+        IntArrayList polygon = Isochrone.boundary(graph, srcId, reached);
+        assertTrue(polygon.size() <= Isochrone.SECTORS);
+        boolean[] isReached = new boolean[graph.getNodeCount()];
+        for (int i = 0; i < reached.size(); i++) {
+            isReached[reached.get(i)] = true;
+        }
+        for (int i = 0; i < polygon.size(); i++) {
+            assertTrue(isReached[polygon.get(i)]);
+        }
+        if (reached.size() > 1) {
+            assertTrue(polygon.size() >= 1 && polygon.get(0) != srcId);
+        }
+
+        // nothing but the source reached
+        IntArrayList onlySource = new IntArrayList();
+        onlySource.add(srcId);
+        polygon = Isochrone.boundary(graph, srcId, onlySource);
+        assertEquals(1, polygon.size());
+        assertEquals(srcId, polygon.get(0));
+    }
+}
@@ -109,5 +109,53 @@ public class ConstrainedSPTest {
         assertEquals(30000000,resultWay.getPointLon(4));
 
     }
+
+    @Test
+    public void testComputeWithLandmarks() throws Exception {
+        GraphRepReader graphRepTextReader = new GraphRepTextReader();
+
+        String testFile = new String("8\n18\n10000000 10000000 20 0\n20000000 20000000 5 0\n20000000 10000000 10 0\n10000000 20000000 100 0\n30000000 10000000 40 0\n30000000 20000000 45 0\n20000000 30000000 30 0\n10000000 30000000 50 0\n0 1 0 4 -1 -1\n0 2 0 2 -1 -1\n0 3 0 3 -1 -1\n1 0 0 4 -1 -1\n1 6 0 2 -1 -1\n2 0 0 2 -1 -1\n2 4 0 3 -1 -1\n3 0 0 3 -1 -1\n3 7 0 4 -1 -1\n4 2 0 2 -1 -1\n4 5 0 4 -1 -1\n5 4 0 4 -1 -1\n5 7 0 5 -1 -1\n6 1 0 2 -1 -1\n6 7 0 3 -1 -1\n7 6 0 3 -1 -1\n7 5 0 5 -1 -1\n7 3 0 4 -1 -1");
+        GraphRep graphRep = graphRepTextReader.createGraphRep(new ByteArrayInputStream(testFile.getBytes()));
+        graphRep.setupLandmarks(3, 1);
+        ConstrainedSP constrainedSP = (ConstrainedSP) new ConstrainedSPFactory(graphRep).createAlgorithm();
+
+        RequestPoints points = new RequestPoints();
+        points.addPoint(10000000, 10000000);
+        points.addPoint(10000000, 30000000);
+
+        // the A* searches find the same paths as the Dijkstra searches
+        int[] maxAltitudeDifferences = {90, 60, 44, 30};
+        int[] altitudeDiffs = {80, 45, 40, 40};
+        int[] distances = {7, 9, 14, 14};
+        for (int i = 0; i < maxAltitudeDifferences.length; i++) {
+            Way resultWay = new Way();
+            assertEquals(altitudeDiffs[i], constrainedSP.cSP(points, resultWay, maxAltitudeDifferences[i]));
+            assertEquals(distances[i], resultWay.getDistance());
+        }
+    }
+
+    @Test
+    public void testComputeTruncatesWithoutLandmarks() throws Exception {
+        GraphRepReader graphRepTextReader = new GraphRepTextReader();
+
+        // rounding the weights up would find the path 0 7 2 9 with altitude difference 21 and distance 10
+        String testFile = new String("10\n26\n10000000 10000000 25 0\n10001000 10000000 19 0\n10002000 10000000 30 0\n10003000 10000000 20 0\n10004000 10000000 9 0\n10005000 10000000 55 0\n10006000 10000000 16 0\n10007000 10000000 11 0\n10008000 10000000 9 0\n10009000 10000000 32 0\n0 4 0 3 -1 -1\n0 5 0 1 -1 -1\n0 7 0 7 -1 -1\n1 0 0 2 -1 -1\n1 3 0 6 -1 -1\n1 5 0 5 -1 -1\n1 9 0 6 -1 -1\n2 0 0 2 -1 -1\n2 4 0 1 -1 -1\n2 9 0 2 -1 -1\n3 2 0 9 -1 -1\n3 6 0 7 -1 -1\n3 7 0 1 -1 -1\n4 2 0 5 -1 -1\n4 5 0 8 -1 -1\n4 6 0 2 -1 -1\n4 7 0 1 -1 -1\n5 2 0 1 -1 -1\n6 8 0 2 -1 -1\n7 1 0 3 -1 -1\n7 2 0 1 -1 -1\n7 6 0 3 -1 -1\n8 0 0 2 -1 -1\n8 9 0 5 -1 -1\n9 2 0 5 -1 -1\n9 7 0 8 -1 -1");
+        GraphRep graphRep = graphRepTextReader.createGraphRep(new ByteArrayInputStream(testFile.getBytes()));
+        ConstrainedSP constrainedSP = (ConstrainedSP) new ConstrainedSPFactory(graphRep).createAlgorithm();
+
+        RequestPoints points = new RequestPoints();
+        points.addPoint(10000000, 10000000);
+        points.addPoint(10009000, 10000000);
+
+        Way resultWay = new Way();
+        int altitudeDiff = constrainedSP.cSP(points, resultWay, 30);
+        assertEquals(23, altitudeDiff);
+        assertEquals(7, resultWay.getDistance());
+        assertEquals(5, resultWay.size());
+        assertEquals(10000000, resultWay.getPointLat(0));
+        assertEquals(10004000, resultWay.getPointLat(1));
+        assertEquals(10007000, resultWay.getPointLat(2));
+        assertEquals(10002000, resultWay.getPointLat(3));
+        assertEquals(10009000, resultWay.getPointLat(4));
+    }
 }
-                            
\ No newline at end of file
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.algorithms.npcomplete;
+
+import de.tourenplaner.algorithms.CancellationToken;
+import de.tourenplaner.algorithms.ComputeCancelledException;
+import de.tourenplaner.utils.StaticMath;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class TourOptimizerTest {
+
+    /**
+     * Random points in the plane with slightly asymmetric distances like on a road graph
+     */
+    private static int[][] createDistMatrix(Random random, int n) {
+        int[] x = new int[n];
+        int[] y = new int[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = random.nextInt(10000);
+            y[i] = random.nextInt(10000);
+        }
+        int[][] distmat = new int[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                if (i != j) {
+                    distmat[i][j] = (int) Math.hypot(x[i] - x[j], y[i] - y[j]) + random.nextInt(500);
+                }
+            }
+        }
+        return distmat;
+    }
+
+    private static void checkTour(int n, int[] tour) {
+        assertEquals(n, tour.length);
+        assertEquals(0, tour[0]);
+        boolean[] seen = new boolean[n];
+        for (int point : tour) {
+            assertTrue(!seen[point]);
+            seen[point] = true;
+        }
+    }
+
+    private static long bruteForce(int[][] distmat) {
+        // permute everything but the fixed start
+        int[] perm = new int[distmat.length - 1];
+        for (int i = 0; i < perm.length; i++) {
+            perm[i] = i + 1;
+        }
+        int[] tour = new int[distmat.length];
+        long best = Long.MAX_VALUE;
+        do {
+            System.arraycopy(perm, 0, tour, 1, perm.length);
+            best = Math.min(best, TourOptimizer.tourLength(distmat, tour));
+        } while (StaticMath.nextPerm(perm));
+        return best;
+    }
+
+    @Test
+    public final void testHeldKarp() {
+        Random random = new Random(42);
+        for (int n = 1; n <= 9; n++) {
+            int[][] distmat = createDistMatrix(random, n);
+            int[] tour = TourOptimizer.heldKarp(distmat);
+            checkTour(n, tour);
+            if (n > 1) {
+                assertEquals(bruteForce(distmat), TourOptimizer.tourLength(distmat, tour));
+            }
+        }
+    }
+
+    @Test
+    public final void testLocalSearch() throws ComputeCancelledException {
+        Random random = new Random(42);
+        for (int n : new int[]{5, 17, 100, 300}) {
+            int[][] distmat = createDistMatrix(random, n);
+            int[] tour = TourOptimizer.nearestNeighborTour(distmat);
+            checkTour(n, tour);
+            long nnLength = TourOptimizer.tourLength(distmat, tour);
+            TourOptimizer.localSearch(distmat, tour, Long.MAX_VALUE, CancellationToken.NONE);
+            checkTour(n, tour);
+            assertTrue(TourOptimizer.tourLength(distmat, tour) <= nnLength);
+        }
+    }
+
+    @Test
+    public final void testLocalSearchNearOptimal() throws ComputeCancelledException {
+        Random random = new Random(1337);
+        int[][] distmat = createDistMatrix(random, TourOptimizer.MAX_EXACT);
+        long optimal = TourOptimizer.tourLength(distmat, TourOptimizer.heldKarp(distmat));
+        int[] tour = TourOptimizer.localSearch(distmat, TourOptimizer.nearestNeighborTour(distmat), Long.MAX_VALUE, CancellationToken.NONE);
+        assertTrue(TourOptimizer.tourLength(distmat, tour) <= optimal * 11 / 10);
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.algorithms.shortestpath;
+
+import de.tourenplaner.algorithms.ComputeException;
+import de.tourenplaner.algorithms.DijkstraStructs;
+import de.tourenplaner.computecore.RequestPoints;
+import de.tourenplaner.computecore.Way;
+import de.tourenplaner.graphrep.GraphRep;
+import de.tourenplaner.graphrep.TestGraphReader;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class LegCacheTest {
+
+    private static Way createWay(int numPoints, int distance) {
+        Way way = new Way();
+        for (int i = 0; i < numPoints; i++) {
+            way.addPoint(i, -i);
+        }
+        way.setDistance(distance);
+        way.setTravelTime(distance / 10.0);
+        return way;
+    }
+
+    private static RequestPoints createPoints(GraphRep graph, int[] ids) {
+        RequestPoints points = new RequestPoints();
+        for (int i = 0; i < ids.length; i++) {
+            points.addPoint(graph.getLat(ids[i]), graph.getLon(ids[i]), new HashMap<String, Object>());
+            points.setPointId(i, ids[i]);
+        }
+        return points;
+    }
+
+    @Test
+    public final void testCopyLeg() {
+        GraphRep graph = (new TestGraphReader()).readTestGraph();
+        LegCache cache = new LegCache(graph, 1000);
+        Way result = new Way();
+        assertFalse(cache.copyLeg(graph, 1, 2, result));
+
+        Way way = createWay(5, 100);
+        cache.putLeg(graph, 1, 2, way);
+        // the cache keeps a copy
+        way.setPointLat(0, 42);
+        assertFalse(cache.copyLeg(graph, 2, 1, result));
+        assertTrue(cache.copyLeg(graph, 1, 2, result));
+        assertEquals(5, result.size());
+        assertEquals(0, result.getPointLat(0));
+        assertEquals(-4, result.getPointLon(4));
+        assertEquals(100, result.getDistance());
+        assertEquals(10.0, result.getTravelTime(), 0.0);
+
+        assertEquals(1L, cache.getStats().get("hits"));
+        assertEquals(2L, cache.getStats().get("misses"));
+    }
+
+    @Test
+    public final void testEviction() {
+        GraphRep graph = (new TestGraphReader()).readTestGraph();
+        LegCache cache = new LegCache(graph, 1600);
+        for (int i = 0; i < 1000; i++) {
+            cache.putLeg(graph, i, i + 1, createWay(10, i));
+        }
+        assertTrue((Long) cache.getStats().get("points") <= 1600);
+        assertTrue((Long) cache.getStats().get("evictions") > 0);
+        assertEquals(1000 - cache.size(), ((Long) cache.getStats().get("evictions")).intValue());
+        // the most recent legs survive
+        assertTrue(cache.copyLeg(graph, 999, 1000, new Way()));
+    }
+
+    @Test
+    public final void testInvalidate() {
+        GraphRep graph = (new TestGraphReader()).readTestGraph();
+        GraphRep newGraph = (new TestGraphReader()).readTestGraph();
+        LegCache cache = new LegCache(graph, 1000);
+        cache.putLeg(graph, 1, 2, createWay(5, 100));
+        cache.invalidate(newGraph);
+        assertEquals(0, cache.size());
+        // legs of the replaced graph are neither stored nor returned
+        cache.putLeg(graph, 1, 2, createWay(5, 100));
+        assertEquals(0, cache.size());
+        cache.putLeg(newGraph, 1, 2, createWay(5, 100));
+        assertFalse(cache.copyLeg(graph, 1, 2, new Way()));
+        assertTrue(cache.copyLeg(newGraph, 1, 2, new Way()));
+    }
+
+    @Test
+    public final void testCachedPaths() throws ComputeException, IllegalAccessException {
+        GraphRep graph = (new TestGraphReader()).readTestGraph();
+        LegCache cache = new LegCache(graph, 1000000);
+        ShortestPathBDCH expected = new ShortestPathBDCH(graph, new DijkstraStructs(graph.getNodeCount(), graph.getEdgeCount()));
+        ShortestPathBDCH bdch = new ShortestPathBDCH(graph, new DijkstraStructs(graph.getNodeCount(), graph.getEdgeCount()), cache);
+        ShortestPathCH ch = new ShortestPathCH(graph, new DijkstraStructs(graph.getNodeCount(), graph.getEdgeCount()), cache);
+        Random random = new Random(42);
+        int[] ids = new int[4];
+        for (int i = 0; i < 20; i++) {
+            for (int j = 0; j < ids.length; j++) {
+                ids[j] = random.nextInt(graph.getNodeCount());
+            }
+            List<Way> expectedWays = new ArrayList<Way>();
+            int expectedDistance;
+            try {
+                expectedDistance = expected.shortestPath(createPoints(graph, ids), expectedWays, true);
+            } catch (ComputeException e) {
+                // no path in the test graph
+                continue;
+            }
+            // the first run fills the cache, the tour reuses the legs of the path
+            for (int run = 0; run < 2; run++) {
+                List<Way> ways = new ArrayList<Way>();
+                assertEquals(expectedDistance, bdch.shortestPath(createPoints(graph, ids), ways, true));
+                assertSameWays(expectedWays, ways);
+                ways.clear();
+                assertEquals(expectedDistance, ch.shortestPath(createPoints(graph, ids), ways, true));
+                assertSameWays(expectedWays, ways);
+            }
+        }
+        assertTrue((Long) cache.getStats().get("hits") > 0);
+    }
+
+    private static void assertSameWays(List<Way> expected, List<Way> ways) {
+        assertEquals(expected.size(), ways.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Way expectedWay = expected.get(i);
+            Way way = ways.get(i);
+            assertEquals(expectedWay.getDistance(), way.getDistance());
+            assertEquals(expectedWay.getTravelTime(), way.getTravelTime(), 0.0);
+            assertEquals(expectedWay.size(), way.size());
+            for (int j = 0; j < expectedWay.size(); j++) {
+                assertEquals(expectedWay.getPointLat(j), way.getPointLat(j));
+                assertEquals(expectedWay.getPointLon(j), way.getPointLon(j));
+            }
+        }
+    }
+}
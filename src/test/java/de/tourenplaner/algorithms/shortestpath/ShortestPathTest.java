@@ -17,6 +17,8 @@
 package de.tourenplaner.algorithms.shortestpath;
 
 import com.carrotsearch.hppc.IntArrayList;
+import de.tourenplaner.algorithms.CancellationToken;
+import de.tourenplaner.algorithms.ComputeCancelledException;
 import de.tourenplaner.algorithms.ComputeException;
 import de.tourenplaner.algorithms.GraphAlgorithmFactory;
 import de.tourenplaner.computecore.RequestPoint;
@@ -32,6 +34,7 @@ import java.util.List;
 import java.util.Random;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
 
 /**
  * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
@@ -166,5 +169,37 @@ public class ShortestPathTest {
 
         runTestCases(shortestPathCH);
     }
+
+    @Test
+    public void testShortestPathBDCHSearchGraph() throws Exception {
+        prepareTestRun();
+        graph.setupSearchGraph();
+        GraphAlgorithmFactory fac = new ShortestPathBDCHFactory(graph);
+        ShortestPath shortestPathCH = (ShortestPath) fac.createAlgorithm();
+
+        runTestCases(shortestPathCH);
+    }
+
+    @Test
+    public void testShortestPathCancelled() throws Exception {
+        prepareTestRun();
+        GraphAlgorithmFactory fac = new ShortestPathFactory(graph);
+        ShortestPath shortestPath = (ShortestPath) fac.createAlgorithm();
+        CancellationToken cancellation = new CancellationToken();
+        cancellation.cancel();
+        shortestPath.setCancellation(cancellation);
+        int cancelled = 0;
+        for (int i = 0; i < 10; i++) {
+            try {
+                runTestCase(shortestPath, 2, false);
+            } catch (ComputeCancelledException e) {
+                cancelled++;
+            }
+        }
+        assertTrue("No search was cancelled", cancelled > 0);
+
+        // the cancelled searches must have returned their DijkstraStructs
+        shortestPath.setCancellation(CancellationToken.NONE);
+        runTestCases(shortestPath);
+    }
 }
-                            
\ No newline at end of file
@@ -47,34 +47,34 @@ public class GraphRepBinaryReaderTest {
 
             assertEquals(14505, graphRep.getNodeCount());
             assertEquals(59600, graphRep.getEdgeCount());
-            assertEquals(4.84878025E8, graphRep.lat[0], 0.01);
-            assertEquals(4.84748005E8, graphRep.lat[100], 0.01);
-            assertEquals(4.84010105E8, graphRep.lat[1000], 0.01);
-            assertEquals(4.84724514E8, graphRep.lat[14504], 0.01);
-
-            assertEquals(9.1901961E7, graphRep.lon[0], 0.01);
-            assertEquals(9.1363799E7, graphRep.lon[100], 0.01);
-            assertEquals(9.0469706E7, graphRep.lon[1000], 0.01);
-            assertEquals(9.1529005E7, graphRep.lon[14504], 0.01);
-
-            assertEquals(386, graphRep.height[0]);
-            assertEquals(435, graphRep.height[100]);
-            assertEquals(475, graphRep.height[1000]);
-            assertEquals(430, graphRep.height[14504]);
-
-            assertEquals(0, graphRep.src[0]);
-            assertEquals(0, graphRep.src[1]);
-            assertEquals(0, graphRep.src[2]);
-            assertEquals(25, graphRep.src[100]);
-            assertEquals(221, graphRep.src[1000]);
-            assertEquals(3027, graphRep.src[14504]);
-
-            assertEquals(1, graphRep.trgt[0]);
-            assertEquals(1823, graphRep.trgt[1]);
-            assertEquals(1824, graphRep.trgt[2]);
-            assertEquals(1949, graphRep.trgt[100]);
-            assertEquals(222, graphRep.trgt[1000]);
-            assertEquals(3238, graphRep.trgt[14504]);
+            assertEquals(4.84878025E8, graphRep.lat.get(0), 0.01);
+            assertEquals(4.84748005E8, graphRep.lat.get(100), 0.01);
+            assertEquals(4.84010105E8, graphRep.lat.get(1000), 0.01);
+            assertEquals(4.84724514E8, graphRep.lat.get(14504), 0.01);
+
+            assertEquals(9.1901961E7, graphRep.lon.get(0), 0.01);
+            assertEquals(9.1363799E7, graphRep.lon.get(100), 0.01);
+            assertEquals(9.0469706E7, graphRep.lon.get(1000), 0.01);
+            assertEquals(9.1529005E7, graphRep.lon.get(14504), 0.01);
+
+            assertEquals(386, graphRep.height.get(0));
+            assertEquals(435, graphRep.height.get(100));
+            assertEquals(475, graphRep.height.get(1000));
+            assertEquals(430, graphRep.height.get(14504));
+
+            assertEquals(0, graphRep.src.get(0));
+            assertEquals(0, graphRep.src.get(1));
+            assertEquals(0, graphRep.src.get(2));
+            assertEquals(25, graphRep.src.get(100));
+            assertEquals(221, graphRep.src.get(1000));
+            assertEquals(3027, graphRep.src.get(14504));
+
+            assertEquals(1, graphRep.trgt.get(0));
+            assertEquals(1823, graphRep.trgt.get(1));
+            assertEquals(1824, graphRep.trgt.get(2));
+            assertEquals(1949, graphRep.trgt.get(100));
+            assertEquals(222, graphRep.trgt.get(1000));
+            assertEquals(3238, graphRep.trgt.get(14504));
 
             assertEquals(22, graphRep.getEuclidianDist(0));
             assertEquals(99, graphRep.getEuclidianDist(1));
@@ -83,24 +83,24 @@ public class GraphRepBinaryReaderTest {
             assertEquals(36, graphRep.getEuclidianDist(1000));
             assertEquals(38, graphRep.getEuclidianDist(14504));
 
-            assertEquals(22, graphRep.dist[0]);
-            assertEquals(124, graphRep.dist[1]);
-            assertEquals(66, graphRep.dist[2]);
-            assertEquals(116, graphRep.dist[100]);
-            assertEquals(36, graphRep.dist[1000]);
-            assertEquals(38, graphRep.dist[14504]);
-
-            assertEquals(0, graphRep.offsetOut[0]);
-            assertEquals(5, graphRep.offsetOut[1]);
-            assertEquals(444, graphRep.offsetOut[100]);
-            assertEquals(5045, graphRep.offsetOut[1000]);
-            assertEquals(59599, graphRep.offsetOut[14504]);
-
-            assertEquals(0, graphRep.offsetIn[0]);
-            assertEquals(5, graphRep.offsetIn[1]);
-            assertEquals(444, graphRep.offsetIn[100]);
-            assertEquals(4961, graphRep.offsetIn[1000]);
-            assertEquals(59599, graphRep.offsetIn[14504]);
+            assertEquals(22, graphRep.dist.get(0));
+            assertEquals(124, graphRep.dist.get(1));
+            assertEquals(66, graphRep.dist.get(2));
+            assertEquals(116, graphRep.dist.get(100));
+            assertEquals(36, graphRep.dist.get(1000));
+            assertEquals(38, graphRep.dist.get(14504));
+
+            assertEquals(0, graphRep.offsetOut.get(0));
+            assertEquals(5, graphRep.offsetOut.get(1));
+            assertEquals(444, graphRep.offsetOut.get(100));
+            assertEquals(5045, graphRep.offsetOut.get(1000));
+            assertEquals(59599, graphRep.offsetOut.get(14504));
+
+            assertEquals(0, graphRep.offsetIn.get(0));
+            assertEquals(5, graphRep.offsetIn.get(1));
+            assertEquals(444, graphRep.offsetIn.get(100));
+            assertEquals(4961, graphRep.offsetIn.get(1000));
+            assertEquals(59599, graphRep.offsetIn.get(14504));
         } catch (IOException e) {
             fail(e.getMessage());
         }
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.graphrep;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class GraphRepCompactTest {
+
+    private static void assertSameGraph(GraphRep expected, GraphRep actual) {
+        assertEquals(expected.getNodeCount(), actual.getNodeCount());
+        assertEquals(expected.getEdgeCount(), actual.getEdgeCount());
+        for (int i = 0; i < expected.getNodeCount(); i++) {
+            assertEquals(expected.getHeight(i), actual.getHeight(i));
+            assertEquals(expected.getRank(i), actual.getRank(i));
+            assertEquals(expected.getOutEdgeCount(i), actual.getOutEdgeCount(i));
+        }
+        for (int i = 0; i < expected.getEdgeCount(); i++) {
+            assertEquals(expected.getSource(i), actual.getSource(i));
+            assertEquals(expected.getTarget(i), actual.getTarget(i));
+            assertEquals(expected.getDist(i), actual.getDist(i));
+            if (expected.getFirstShortcuttedEdge(i) >= 0) {
+                assertEquals(expected.getFirstShortcuttedEdge(i), actual.getFirstShortcuttedEdge(i));
+                assertEquals(expected.getSecondShortcuttedEdge(i), actual.getSecondShortcuttedEdge(i));
+            } else {
+                assertEquals(-1, actual.getFirstShortcuttedEdge(i));
+            }
+        }
+    }
+
+    @Test
+    public final void testCompact() {
+        GraphRep expected = (new TestGraphReader()).readTestGraph();
+        GraphRep graph = (new TestGraphReader()).readTestGraph();
+        graph.compact();
+        assertTrue(graph.isCompact());
+        assertSameGraph(expected, graph);
+    }
+
+    @Test
+    public final void testCompactOffHeap() {
+        GraphRep expected = (new TestGraphReader()).readTestGraph();
+        GraphRep graph = (new TestGraphReader()).readTestGraph();
+        // Mess up the heights and shortcuts so they need the int fallback and exceptions
+        graph.setNodeData(0, graph.getLat(0), graph.getLon(0), 100000);
+        expected.setNodeData(0, expected.getLat(0), expected.getLon(0), 100000);
+        for (int i = 0; i < graph.getEdgeCount(); i += 7) {
+            graph.setShortcutData(i, i / 2, i / 3);
+            expected.setShortcutData(i, i / 2, i / 3);
+        }
+        GraphRep offHeap = new GraphRep(graph.getNodeCount(), graph.getEdgeCount(), GraphStorage.OFFHEAP);
+        for (int i = 0; i < graph.getNodeCount(); i++) {
+            offHeap.setNodeData(i, graph.getLat(i), graph.getLon(i), graph.getHeight(i));
+            offHeap.setRank(i, graph.getRank(i));
+        }
+        for (int i = 0; i < graph.getEdgeCount(); i++) {
+            offHeap.setEdgeData(i, graph.getSource(i), graph.getTarget(i), graph.getDist(i), graph.getEuclidianDist(i));
+            offHeap.setShortcutData(i, graph.getFirstShortcuttedEdge(i), graph.getSecondShortcuttedEdge(i));
+        }
+        offHeap.setup(1);
+        offHeap.compact();
+        assertSameGraph(expected, offHeap);
+    }
+
+    @Test
+    public final void testCompactTargetsWidths() {
+        // blocks with equal, small and the widest possible differences and a partial last block
+        int edgeCount = 3 * CompactTargets.BLOCK_SIZE + 5;
+        IntBuffer src = IntBuffer.allocate(edgeCount);
+        IntBuffer trgt = IntBuffer.allocate(edgeCount);
+        Random random = new Random(42);
+        for (int i = 0; i < edgeCount; i++) {
+            int block = i / CompactTargets.BLOCK_SIZE;
+            src.put(i, random.nextInt(1000000));
+            if (block == 0) {
+                trgt.put(i, src.get(i) + 3);
+            } else if (block == 1) {
+                trgt.put(i, src.get(i) - 5 + random.nextInt(11));
+            } else {
+                src.put(i, (i & 1) == 0 ? 0 : Integer.MAX_VALUE);
+                trgt.put(i, (i & 1) == 0 ? Integer.MAX_VALUE : 0);
+            }
+        }
+        for (GraphStorage storage : GraphStorage.values()) {
+            CompactTargets targets = new CompactTargets(src, trgt, edgeCount, storage);
+            for (int i = 0; i < edgeCount; i++) {
+                assertEquals(trgt.get(i), targets.get(i, src.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public final void testCompactCantBeDumped() {
+        GraphRep graph = (new TestGraphReader()).readTestGraph();
+        graph.compact();
+        try {
+            new GraphRepMappedWriter().writeGraphRep(new ByteArrayOutputStream(), graph);
+            fail("Compact graph was dumped");
+        } catch (IOException expected) {
+            // that's what we want
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.graphrep;
+
+import com.carrotsearch.hppc.IntArrayList;
+import de.tourenplaner.algorithms.bbbundle.BoundingBox;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class GraphRepMappedReaderTest {
+
+    @Test
+    public final void testCreateGraphRep() {
+        GraphRep graphRepInitial = (new TestGraphReader()).readTestGraph();
+        File dump = null;
+        try {
+            dump = File.createTempFile("tourenplaner", ".dat");
+            (new GraphRepMappedWriter()).writeGraphRep(new FileOutputStream(dump), graphRepInitial);
+            GraphRep graphRep = (new GraphRepMappedReader()).createGraphRep(new FileInputStream(dump));
+            assertGraphsEqual(graphRepInitial, graphRep);
+        } catch (IOException e) {
+            fail(e.getMessage());
+        } finally {
+            if (dump != null) {
+                dump.delete();
+            }
+        }
+    }
+
+    @Test
+    public final void testReadVersion2() {
+        GraphRep graphRepInitial = (new TestGraphReader()).readTestGraph();
+        File dump = null;
+        try {
+            dump = File.createTempFile("tourenplaner", ".dat");
+            (new GraphRepBinaryWriter()).writeGraphRep(new FileOutputStream(dump), graphRepInitial);
+            GraphRep graphRep = (new GraphRepMappedReader()).createGraphRep(new FileInputStream(dump));
+            assertEquals(graphRepInitial.getNodeCount(), graphRep.getNodeCount());
+            assertEquals(graphRepInitial.getEdgeCount(), graphRep.getEdgeCount());
+            for (int i = 0; i < graphRep.getEdgeCount(); i++) {
+                assertEquals(graphRepInitial.getDist(i), graphRep.getDist(i));
+            }
+        } catch (IOException e) {
+            fail(e.getMessage());
+        } finally {
+            if (dump != null) {
+                dump.delete();
+            }
+        }
+    }
+
+    @Test
+    public final void testSpatialIndexes() {
+        GraphRep graphRepInitial = (new TestGraphReader()).readTestGraph();
+        File dump = null;
+        try {
+            dump = File.createTempFile("tourenplaner", ".dat");
+            (new GraphRepMappedWriter()).writeGraphRep(new FileOutputStream(dump), graphRepInitial);
+            GraphRep graphRep = (new GraphRepMappedReader()).createGraphRep(new FileInputStream(dump));
+            assertNotNull(graphRep.getXYBBoxPriorityTree());
+            assertNotNull(graphRep.getLatLonBBoxSearchTree());
+
+            Random random = new Random(42);
+            for (int i = 0; i < 100; i++) {
+                int id = random.nextInt(graphRep.getNodeCount());
+                int size = 1 << random.nextInt(24);
+                int priority = random.nextInt(graphRep.getMaxRank() + 1);
+
+                BoundingBox bbox = new BoundingBox(graphRep.getLon(id) - size / 2, graphRep.getLat(id) - size / 2, size, size);
+                assertQueriesEqual(graphRepInitial.getLatLonBBoxSearchTree(), graphRep.getLatLonBBoxSearchTree(), bbox, priority);
+                assertEquals(graphRepInitial.getIdForCoordinates(graphRep.getLat(id), graphRep.getLon(id)),
+                        graphRep.getIdForCoordinates(graphRep.getLat(id), graphRep.getLon(id)));
+
+                bbox = new BoundingBox(graphRep.getXPos(id) - size / 2, graphRep.getYPos(id) - size / 2, size, size);
+                assertQueriesEqual(graphRepInitial.getXYBBoxPriorityTree(), graphRep.getXYBBoxPriorityTree(), bbox, priority);
+            }
+        } catch (IOException e) {
+            fail(e.getMessage());
+        } finally {
+            if (dump != null) {
+                dump.delete();
+            }
+        }
+    }
+
+    private static void assertQueriesEqual(BBoxPriorityTree expected, BBoxPriorityTree actual, BoundingBox bbox, int priority) {
+        IntArrayList expectedIds = expected.queryBbox(bbox, priority);
+        IntArrayList actualIds = actual.queryBbox(bbox, priority);
+        int[] expectedArray = expectedIds.toArray();
+        int[] actualArray = actualIds.toArray();
+        Arrays.sort(expectedArray);
+        Arrays.sort(actualArray);
+        assertArrayEquals(expectedArray, actualArray);
+    }
+
+    private static void assertGraphsEqual(GraphRep expected, GraphRep actual) {
+        assertEquals(expected.getNodeCount(), actual.getNodeCount());
+        assertEquals(expected.getEdgeCount(), actual.getEdgeCount());
+        assertEquals(expected.getMaxRank(), actual.getMaxRank());
+        assertEquals(expected.getBbox().x, actual.getBbox().x);
+        assertEquals(expected.getBbox().y, actual.getBbox().y);
+        assertEquals(expected.getBbox().width, actual.getBbox().width);
+        assertEquals(expected.getBbox().height, actual.getBbox().height);
+
+        for (int i = 0; i < expected.getNodeCount(); i++) {
+            assertEquals(expected.getLat(i), actual.getLat(i));
+            assertEquals(expected.getLon(i), actual.getLon(i));
+            assertEquals(expected.getHeight(i), actual.getHeight(i));
+            assertEquals(expected.getRank(i), actual.getRank(i));
+            assertEquals(expected.getXPos(i), actual.getXPos(i));
+            assertEquals(expected.getYPos(i), actual.getYPos(i));
+            assertEquals(expected.getOutEdgeCount(i), actual.getOutEdgeCount(i));
+            assertEquals(expected.getInEdgeCount(i), actual.getInEdgeCount(i));
+            for (int edgeNum = 0; edgeNum < expected.getOutEdgeCount(i); edgeNum++) {
+                assertEquals(expected.getOutEdgeId(i, edgeNum), actual.getOutEdgeId(i, edgeNum));
+            }
+            for (int edgeNum = 0; edgeNum < expected.getInEdgeCount(i); edgeNum++) {
+                assertEquals(expected.getInEdgeId(i, edgeNum), actual.getInEdgeId(i, edgeNum));
+            }
+        }
+
+        for (int i = 0; i < expected.getEdgeCount(); i++) {
+            assertEquals(expected.getSource(i), actual.getSource(i));
+            assertEquals(expected.getTarget(i), actual.getTarget(i));
+            assertEquals(expected.getDist(i), actual.getDist(i));
+            assertEquals(expected.getEuclidianDist(i), actual.getEuclidianDist(i));
+            assertEquals(expected.getFirstShortcuttedEdge(i), actual.getFirstShortcuttedEdge(i));
+            assertEquals(expected.getSecondShortcuttedEdge(i), actual.getSecondShortcuttedEdge(i));
+            assertEquals(expected.getReverseEdgeId(i), actual.getReverseEdgeId(i));
+        }
+    }
+}
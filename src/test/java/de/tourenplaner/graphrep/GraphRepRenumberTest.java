@@ -0,0 +1,136 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package de.tourenplaner.graphrep;
+
+import de.tourenplaner.algorithms.ComputeException;
+import de.tourenplaner.algorithms.DijkstraStructs;
+import de.tourenplaner.algorithms.shortestpath.ShortestPathBDCH;
+import de.tourenplaner.algorithms.shortestpath.ShortestPathCH;
+import de.tourenplaner.computecore.RequestPoints;
+import de.tourenplaner.computecore.Way;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class GraphRepRenumberTest {
+    private static final int CORE_SIZE = 500;
+
+    @Test
+    public final void testRenumberKeepsGraph() {
+        GraphRep expected = (new TestGraphReader()).readTestGraph();
+        GraphRep graph = (new TestGraphReader()).readTestGraph();
+        int[] newIds = graph.renumberNodesByLocality(CORE_SIZE, 3);
+
+        for (int i = 0; i < expected.getNodeCount(); i++) {
+            int newId = newIds[i];
+            if (i < CORE_SIZE) {
+                assertEquals(i, newId);
+            }
+            assertEquals(expected.getLat(i), graph.getLat(newId));
+            assertEquals(expected.getLon(i), graph.getLon(newId));
+            assertEquals(expected.getRank(i), graph.getRank(newId));
+            assertEquals(expected.getXPos(i), graph.getXPos(newId));
+            assertEquals(expected.getOutEdgeCount(i), graph.getOutEdgeCount(newId));
+            assertEquals(expected.getInEdgeCount(i), graph.getInEdgeCount(newId));
+            // Out edges are still sorted by target rank so they match up one by one
+            for (int edgeNum = 0; edgeNum < expected.getOutEdgeCount(i); edgeNum++) {
+                int expectedEdge = expected.getOutEdgeId(i, edgeNum);
+                int edge = graph.getOutEdgeId(newId, edgeNum);
+                assertEquals(newIds[expected.getTarget(expectedEdge)], graph.getTarget(edge));
+                assertEquals(expected.getDist(expectedEdge), graph.getDist(edge));
+            }
+            for (int edgeNum = 0; edgeNum < expected.getInEdgeCount(i); edgeNum++) {
+                int expectedEdge = expected.getInEdgeId(i, edgeNum);
+                int edge = graph.getInEdgeId(newId, edgeNum);
+                assertEquals(newIds[expected.getSource(expectedEdge)], graph.getSource(edge));
+                assertEquals(expected.getDist(expectedEdge), graph.getDist(edge));
+            }
+        }
+
+        for (int edgeId = 0; edgeId < graph.getEdgeCount(); edgeId++) {
+            int first = graph.getFirstShortcuttedEdge(edgeId);
+            if (first >= 0) {
+                int second = graph.getSecondShortcuttedEdge(edgeId);
+                assertEquals(graph.getSource(edgeId), graph.getSource(first));
+                assertEquals(graph.getTarget(first), graph.getSource(second));
+                assertEquals(graph.getTarget(edgeId), graph.getTarget(second));
+            }
+            int reverse = graph.getReverseEdgeId(edgeId);
+            if (reverse >= 0) {
+                assertEquals(graph.getSource(edgeId), graph.getTarget(reverse));
+                assertEquals(graph.getTarget(edgeId), graph.getSource(reverse));
+            }
+        }
+
+        // Nodes of later tiers have lower ranks than all nodes before them
+        int minRank = Integer.MAX_VALUE;
+        for (int i = 0; i < CORE_SIZE; i++) {
+            assertTrue(graph.getRank(i) < minRank);
+            minRank = graph.getRank(i);
+        }
+        assertTrue(graph.getRank(CORE_SIZE) < minRank);
+    }
+
+    @Test
+    public final void testRenumberKeepsDistances() throws IllegalAccessException, ComputeException {
+        GraphRep expected = (new TestGraphReader()).readTestGraph();
+        GraphRep graph = (new TestGraphReader()).readTestGraph();
+        graph.setupSearchGraph();
+        int[] newIds = graph.renumberNodesByLocality(CORE_SIZE, 1);
+
+        ShortestPathBDCH expectedBDCH = new ShortestPathBDCH(expected, new DijkstraStructs(expected.getNodeCount(), expected.getEdgeCount()));
+        ShortestPathBDCH bdch = new ShortestPathBDCH(graph, new DijkstraStructs(graph.getNodeCount(), graph.getEdgeCount()));
+        ShortestPathCH ch = new ShortestPathCH(graph, new DijkstraStructs(graph.getNodeCount(), graph.getEdgeCount()));
+        Random random = new Random(42);
+        for (int i = 0; i < 100; i++) {
+            int srcId = random.nextInt(expected.getNodeCount());
+            int trgtId = random.nextInt(expected.getNodeCount());
+            int dist = expectedBDCH.bddijkstra(srcId, trgtId);
+            assertEquals(dist, bdch.bddijkstra(newIds[srcId], newIds[trgtId]));
+            if (dist == Integer.MAX_VALUE) {
+                continue;
+            }
+
+            RequestPoints points = new RequestPoints();
+            points.addPoint(graph.getLat(newIds[srcId]), graph.getLon(newIds[srcId]), new HashMap<String, Object>());
+            points.addPoint(graph.getLat(newIds[trgtId]), graph.getLon(newIds[trgtId]), new HashMap<String, Object>());
+            points.setPointId(0, newIds[srcId]);
+            points.setPointId(1, newIds[trgtId]);
+            List<Way> ways = new ArrayList<Way>(1);
+            assertEquals(dist, ch.shortestPath(points, ways, false));
+            Way way = ways.get(0);
+            assertEquals(expected.getLat(trgtId), way.getPointLat(way.size() - 1));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public final void testCompactCantBeRenumbered() {
+        GraphRep graph = (new TestGraphReader()).readTestGraph();
+        graph.compact();
+        graph.renumberNodesByLocality(CORE_SIZE, 1);
+    }
+}
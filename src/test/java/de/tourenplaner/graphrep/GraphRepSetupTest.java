@@ -0,0 +1,108 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.graphrep;
+
+import org.junit.Test;
+
+import java.nio.IntBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class GraphRepSetupTest {
+
+    /**
+     * Creates an unsorted graph with many equal ranks, parallel edges and
+     * reverse edges so all the tie breaking of setup() is needed
+     */
+    private static GraphRep createRandomGraph(long seed, int nodeCount, int edgeCount) {
+        Random random = new Random(seed);
+        GraphRep graph = new GraphRep(nodeCount, edgeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            graph.setNodeData(i, 470000000 + random.nextInt(80000000), 60000000 + random.nextInt(90000000), random.nextInt(1000));
+            graph.setRank(i, random.nextInt(50));
+        }
+        int i = 0;
+        while (i < edgeCount) {
+            int src = random.nextInt(nodeCount);
+            int trgt = random.nextInt(nodeCount);
+            int dist = random.nextInt(100);
+            graph.setEdgeData(i, src, trgt, dist, dist);
+            i++;
+            // Reverse and parallel edges
+            if (i < edgeCount && random.nextBoolean()) {
+                graph.setEdgeData(i, trgt, src, dist, dist);
+                i++;
+            }
+            if (i < edgeCount && random.nextInt(10) == 0) {
+                graph.setEdgeData(i, src, trgt, dist, dist);
+                i++;
+            }
+        }
+        for (i = 0; i < edgeCount; i++) {
+            if (random.nextInt(4) == 0) {
+                graph.setShortcutData(i, random.nextInt(edgeCount), random.nextInt(edgeCount));
+            } else {
+                graph.setShortcutData(i, -1, -1);
+            }
+        }
+        return graph;
+    }
+
+    private static void assertBuffersEqual(IntBuffer expected, IntBuffer actual) {
+        assertEquals(expected.limit(), actual.limit());
+        for (int i = 0; i < expected.limit(); i++) {
+            assertEquals(expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    public final void testParallelSetupMatchesSequential() {
+        for (int threads : new int[]{2, 3, 8}) {
+            GraphRep sequential = createRandomGraph(42 + threads, 3000, 20000);
+            GraphRep parallel = createRandomGraph(42 + threads, 3000, 20000);
+            sequential.setup(1);
+            parallel.setup(threads);
+
+            assertBuffersEqual(sequential.lat, parallel.lat);
+            assertBuffersEqual(sequential.lon, parallel.lon);
+            assertBuffersEqual(sequential.height, parallel.height);
+            assertBuffersEqual(sequential.rank, parallel.rank);
+            assertBuffersEqual(sequential.xPos, parallel.xPos);
+            assertBuffersEqual(sequential.yPos, parallel.yPos);
+            assertBuffersEqual(sequential.src, parallel.src);
+            assertBuffersEqual(sequential.trgt, parallel.trgt);
+            assertBuffersEqual(sequential.dist, parallel.dist);
+            assertBuffersEqual(sequential.euclidianDist, parallel.euclidianDist);
+            assertBuffersEqual(sequential.shortedEdge1, parallel.shortedEdge1);
+            assertBuffersEqual(sequential.shortedEdge2, parallel.shortedEdge2);
+            assertBuffersEqual(sequential.mappingInToOut, parallel.mappingInToOut);
+            assertBuffersEqual(sequential.offsetIn, parallel.offsetIn);
+            assertBuffersEqual(sequential.offsetOut, parallel.offsetOut);
+            assertBuffersEqual(sequential.reverseMap, parallel.reverseMap);
+
+            assertEquals(sequential.getMaxRank(), parallel.getMaxRank());
+            assertEquals(sequential.getBbox().x, parallel.getBbox().x);
+            assertEquals(sequential.getBbox().y, parallel.getBbox().y);
+            assertEquals(sequential.getBbox().width, parallel.getBbox().width);
+            assertEquals(sequential.getBbox().height, parallel.getBbox().height);
+        }
+    }
+}
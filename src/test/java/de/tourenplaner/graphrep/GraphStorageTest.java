@@ -0,0 +1,78 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.graphrep;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class GraphStorageTest {
+
+    @Test
+    public final void testStorage() {
+        for (GraphStorage storage : GraphStorage.values()) {
+            IntBuffer buffer = storage.allocate(10);
+            assertEquals(10, buffer.limit());
+            for (int i = 0; i < 10; i++) {
+                assertEquals(0, buffer.get(i));
+                buffer.put(i, -i);
+            }
+            assertEquals(-9, buffer.get(9));
+
+            IntBuffer wrapped = storage.wrap(new int[]{3, 1, 4});
+            assertEquals(3, wrapped.limit());
+            assertEquals(3, wrapped.get(0));
+            assertEquals(4, wrapped.get(2));
+        }
+        assertTrue(GraphStorage.OFFHEAP.allocate(1).isDirect());
+        assertEquals(GraphStorage.OFFHEAP, GraphStorage.fromConfigName("offheap"));
+        assertEquals(GraphStorage.HEAP, GraphStorage.fromConfigName("heap"));
+        assertEquals(GraphStorage.HEAP, GraphStorage.fromConfigName("nonsense"));
+    }
+
+    @Test
+    public final void testOffHeapGraph() {
+        try {
+            GraphRep heapGraph = new GraphRepTextReader().createGraphRep(getClass().getResourceAsStream("/15k_ch.txt"));
+            GraphRep offHeapGraph = new GraphRepTextReader(GraphStorage.OFFHEAP).createGraphRep(getClass().getResourceAsStream("/15k_ch.txt"));
+            assertTrue(offHeapGraph.lat.isDirect());
+            assertTrue(offHeapGraph.getOffsetOut().isDirect());
+            assertEquals(heapGraph.getNodeCount(), offHeapGraph.getNodeCount());
+            for (int i = 0; i < heapGraph.getNodeCount(); i++) {
+                assertEquals(heapGraph.getLat(i), offHeapGraph.getLat(i));
+                assertEquals(heapGraph.getRank(i), offHeapGraph.getRank(i));
+                assertEquals(heapGraph.getOutEdgeCount(i), offHeapGraph.getOutEdgeCount(i));
+                assertEquals(heapGraph.getInEdgeCount(i), offHeapGraph.getInEdgeCount(i));
+            }
+            for (int i = 0; i < heapGraph.getEdgeCount(); i++) {
+                assertEquals(heapGraph.getTarget(i), offHeapGraph.getTarget(i));
+                assertEquals(heapGraph.getDist(i), offHeapGraph.getDist(i));
+                assertEquals(heapGraph.getReverseEdgeId(i), offHeapGraph.getReverseEdgeId(i));
+            }
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.graphrep;
+
+import de.tourenplaner.algorithms.CancellationToken;
+import de.tourenplaner.algorithms.DijkstraStructs;
+import de.tourenplaner.algorithms.SearchLabels;
+import de.tourenplaner.algorithms.distmatrix.ManyToManyCH;
+import de.tourenplaner.algorithms.shortestpath.ShortestPathNoCH;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class HubLabelsTest {
+
+    @Test
+    public final void testDistances() throws Exception {
+        GraphRep graph = (new TestGraphReader()).readTestGraph();
+        graph.setupHubLabels(4);
+        HubLabels hubLabels = graph.getHubLabels();
+        assertEquals(graph.getNodeCount(), hubLabels.getStats().get("nodes"));
+        assertTrue((Double) hubLabels.getStats().get("averagelabelsize") >= 1.0);
+        for (int nodeId = 0; nodeId < graph.getNodeCount(); nodeId++) {
+            // every node is its own hub
+            assertTrue(hubLabels.getLabelSize(nodeId, true) >= 1);
+            assertTrue(hubLabels.getLabelSize(nodeId, false) >= 1);
+        }
+
+        DijkstraStructs ds = new DijkstraStructs(graph.getNodeCount(), graph.getEdgeCount());
+        ShortestPathNoCH dijkstra = new ShortestPathNoCH(graph, ds);
+        Random random = new Random(42);
+        for (int i = 0; i < 300; i++) {
+            int srcId = random.nextInt(graph.getNodeCount());
+            int trgtId = random.nextInt(graph.getNodeCount());
+            SearchLabels labels = ds.borrowSearchLabels();
+            if (dijkstra.dijkstraStopAtDest(labels, srcId, trgtId)) {
+                assertEquals(labels.getDist(trgtId), hubLabels.distance(srcId, trgtId));
+            } else {
+                assertEquals(Integer.MAX_VALUE, hubLabels.distance(srcId, trgtId));
+            }
+            ds.returnSearchLabels();
+        }
+    }
+
+    @Test
+    public final void testDistMatrix() throws Exception {
+        GraphRep graph = (new TestGraphReader()).readTestGraph();
+        graph.setupHubLabels(1);
+        ManyToManyCH manyToMany = new ManyToManyCH(graph, new DijkstraStructs(graph.getNodeCount(), graph.getEdgeCount()));
+
+        Random random = new Random(23);
+        int[] sourceIds = new int[20];
+        int[] targetIds = new int[30];
+        for (int i = 0; i < sourceIds.length; i++) {
+            sourceIds[i] = random.nextInt(graph.getNodeCount());
+        }
+        for (int i = 0; i < targetIds.length; i++) {
+            targetIds[i] = random.nextInt(graph.getNodeCount());
+        }
+        int[][] expected = manyToMany.computeDistMatrix(sourceIds, targetIds, CancellationToken.NONE);
+        int[][] distmat = graph.getHubLabels().computeDistMatrix(sourceIds, targetIds);
+        for (int i = 0; i < sourceIds.length; i++) {
+            assertArrayEquals(expected[i], distmat[i]);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.graphrep;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.tourenplaner.algorithms.IndexedHeap;
+
+/**
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class IndexedHeapTest {
+
+	private static IndexedHeap createHeap() {
+		IndexedHeap heap = new IndexedHeap(100000, 2);
+		heap.insertOrDecrease(23456, 65432);
+		heap.insertOrDecrease(12345, 54321);
+		heap.insertOrDecrease(34567, 76543);
+		heap.insertOrDecrease(97221, 98742);
+		heap.insertOrDecrease(3543, 72987);
+		return heap;
+	}
+
+	@Test
+	public final void testInsert() {
+		IndexedHeap heap = createHeap();
+
+		assertEquals(5, heap.size());
+		assertEquals(12345, heap.peekMinId());
+		assertEquals(54321, heap.peekMinDist());
+		assertEquals(true, heap.contains(3543));
+		assertEquals(false, heap.contains(3544));
+	}
+
+	@Test
+	public final void testDecrease() {
+		IndexedHeap heap = createHeap();
+
+		assertEquals(false, heap.insertOrDecrease(97221, 99999));
+		assertEquals(false, heap.insertOrDecrease(97221, 98742));
+		assertEquals(true, heap.insertOrDecrease(97221, 100));
+		assertEquals(5, heap.size());
+		assertEquals(97221, heap.peekMinId());
+		assertEquals(100, heap.peekMinDist());
+		heap.removeMin();
+		assertEquals(false, heap.contains(97221));
+		assertEquals(12345, heap.peekMinId());
+	}
+
+	@Test
+	public final void testRemoveMin() {
+		IndexedHeap heap = createHeap();
+
+		heap.removeMin();
+		assertEquals(23456, heap.peekMinId());
+		assertEquals(65432, heap.peekMinDist());
+		heap.removeMin();
+		heap.removeMin();
+		assertEquals(34567, heap.peekMinId());
+		assertEquals(76543, heap.peekMinDist());
+		heap.removeMin();
+		heap.removeMin();
+		assertEquals(true, heap.isEmpty());
+	}
+
+	@Test
+	public final void testRandom() {
+		Random rand = new Random(42);
+		int[] dists = new int[1000];
+		IndexedHeap heap = new IndexedHeap(dists.length);
+		for (int i = 0; i < dists.length; i++) {
+			dists[i] = Integer.MAX_VALUE;
+		}
+		for (int i = 0; i < 5000; i++) {
+			int id = rand.nextInt(dists.length);
+			int dist = rand.nextInt(100000);
+			heap.insertOrDecrease(id, dist);
+			dists[id] = Math.min(dists[id], dist);
+		}
+		int lastDist = -1;
+		while (!heap.isEmpty()) {
+			int id = heap.peekMinId();
+			assertEquals(dists[id], heap.peekMinDist());
+			assertEquals(true, heap.peekMinDist() >= lastDist);
+			lastDist = heap.peekMinDist();
+			dists[id] = Integer.MAX_VALUE;
+			heap.removeMin();
+		}
+		for (int dist : dists) {
+			assertEquals(Integer.MAX_VALUE, dist);
+		}
+	}
+
+	@Test
+	public final void testResetHeap() {
+		IndexedHeap heap = createHeap();
+
+		heap.resetHeap();
+
+		assertEquals(true, heap.isEmpty());
+		assertEquals(false, heap.contains(12345));
+		assertEquals(true, heap.insertOrDecrease(12345, 99999));
+		assertEquals(99999, heap.peekMinDist());
+	}
+
+}
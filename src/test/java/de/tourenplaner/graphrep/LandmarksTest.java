@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.graphrep;
+
+import de.tourenplaner.algorithms.DijkstraStructs;
+import de.tourenplaner.algorithms.SearchLabels;
+import de.tourenplaner.algorithms.shortestpath.ShortestPathNoCH;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class LandmarksTest {
+
+    @Test
+    public final void testAStarFindsShortestPaths() throws Exception {
+        GraphRep expected = (new TestGraphReader()).readTestGraph();
+        GraphRep graph = (new TestGraphReader()).readTestGraph();
+        graph.setupLandmarks(8, 2);
+        Landmarks landmarks = graph.getLandmarks();
+        assertEquals(8, landmarks.getCount());
+
+        DijkstraStructs expectedDs = new DijkstraStructs(expected.getNodeCount(), expected.getEdgeCount());
+        DijkstraStructs ds = new DijkstraStructs(graph.getNodeCount(), graph.getEdgeCount());
+        ShortestPathNoCH expectedSP = new ShortestPathNoCH(expected, expectedDs);
+        ShortestPathNoCH sp = new ShortestPathNoCH(graph, ds);
+
+        Random rand = new Random(42);
+        for (int i = 0; i < 100; i++) {
+            int srcId = rand.nextInt(graph.getNodeCount());
+            int trgtId = rand.nextInt(graph.getNodeCount());
+
+            SearchLabels expectedLabels = expectedDs.borrowSearchLabels();
+            SearchLabels labels = ds.borrowSearchLabels();
+            boolean found = expectedSP.dijkstraStopAtDest(expectedLabels, srcId, trgtId);
+            assertEquals(found, sp.dijkstraStopAtDest(labels, srcId, trgtId));
+            if (found) {
+                int dist = expectedLabels.getDist(trgtId);
+                assertEquals(dist, labels.getDist(trgtId));
+                assertTrue(landmarks.potential(srcId, trgtId, false).get(srcId) <= dist);
+            }
+            expectedDs.returnSearchLabels();
+            ds.returnSearchLabels();
+        }
+    }
+
+    @Test
+    public final void testMappedDump() {
+        GraphRep graphInitial = (new TestGraphReader()).readTestGraph();
+        graphInitial.setupLandmarks(4, 1);
+        Landmarks expected = graphInitial.getLandmarks();
+        File dump = null;
+        try {
+            dump = File.createTempFile("tourenplaner", ".dat");
+            (new GraphRepMappedWriter()).writeGraphRep(new FileOutputStream(dump), graphInitial);
+            GraphRep graph = (new GraphRepMappedReader()).createGraphRep(new FileInputStream(dump));
+            Landmarks landmarks = graph.getLandmarks();
+            assertNotNull(landmarks);
+            assertEquals(expected.getCount(), landmarks.getCount());
+            for (int l = 0; l < landmarks.getCount(); l++) {
+                assertEquals(expected.getNodeId(l), landmarks.getNodeId(l));
+            }
+            assertEquals(expected.getDistFrom(), landmarks.getDistFrom());
+            assertEquals(expected.getDistTo(), landmarks.getDistTo());
+            assertEquals(expected.getEuclidianFrom(), landmarks.getEuclidianFrom());
+            assertEquals(expected.getEuclidianTo(), landmarks.getEuclidianTo());
+        } catch (IOException e) {
+            fail(e.getMessage());
+        } finally {
+            if (dump != null) {
+                dump.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.graphrep;
+
+import de.tourenplaner.algorithms.DijkstraStructs;
+import de.tourenplaner.algorithms.SearchLabels;
+import de.tourenplaner.algorithms.shortestpath.ShortestPathBDCH;
+import de.tourenplaner.algorithms.shortestpath.ShortestPathNoCH;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class MetricCustomizerTest {
+
+    @Test
+    public final void testCustomizeBaseMetric() throws Exception {
+        GraphRep base = (new TestGraphReader()).readTestGraph();
+        MetricCustomizer customizer = new MetricCustomizer(base, GraphStorage.HEAP, 2, 4.0);
+        GraphRep graph = customizer.customize(customizer.getBaseWeights());
+
+        ShortestPathBDCH expected = new ShortestPathBDCH(base, new DijkstraStructs(base.getNodeCount(), base.getEdgeCount()));
+        ShortestPathBDCH bdch = new ShortestPathBDCH(graph, new DijkstraStructs(graph.getNodeCount(), graph.getEdgeCount()));
+        Random random = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            int srcId = random.nextInt(base.getNodeCount());
+            int trgtId = random.nextInt(base.getNodeCount());
+            assertEquals(expected.bddijkstra(srcId, trgtId), bdch.bddijkstra(srcId, trgtId));
+        }
+    }
+
+    @Test
+    public final void testCustomizeNewMetric() throws Exception {
+        GraphRep base = (new TestGraphReader()).readTestGraph();
+        MetricCustomizer customizer = new MetricCustomizer(base, GraphStorage.HEAP, 2, 4.0);
+        Random random = new Random(42);
+        int[] weights = customizer.readWeights(new ByteArrayInputStream(new byte[0]));
+        for (int edgeId = 0; edgeId < weights.length; edgeId++) {
+            // a traffic update slows down some roads
+            if (random.nextInt(10) == 0) {
+                weights[edgeId] = weights[edgeId] * (1 + random.nextInt(3));
+            }
+        }
+        assertShortestPaths(base, weights, customizer.customize(weights), random);
+    }
+
+    @Test
+    public final void testCustomizeClosedRoads() throws Exception {
+        GraphRep base = (new TestGraphReader()).readTestGraph();
+        MetricCustomizer customizer = new MetricCustomizer(base, GraphStorage.HEAP, 2, 4.0);
+        Random random = new Random(23);
+        StringBuilder closures = new StringBuilder();
+        for (int edgeId = 0; edgeId < base.getEdgeCount(); edgeId++) {
+            if (base.getFirstShortcuttedEdge(edgeId) < 0 && random.nextInt(20) == 0) {
+                closures.append(edgeId).append(" -1\n");
+            }
+        }
+        int[] weights = customizer.readWeights(new ByteArrayInputStream(closures.toString().getBytes("UTF-8")));
+        GraphRep graph = customizer.customize(weights);
+        assertTrue(graph.getEdgeCount() < base.getEdgeCount());
+        assertShortestPaths(base, weights, graph, random);
+    }
+
+    /**
+     * Checks that the customized graph is made of the open original edges and that the
+     * CH search finds exactly the dists Dijkstra finds on the original edges
+     */
+    private static void assertShortestPaths(GraphRep base, int[] weights, GraphRep graph, Random random) throws Exception {
+        int originalCount = 0;
+        Map<Long, Integer> originals = new HashMap<Long, Integer>();
+        for (int edgeId = 0; edgeId < base.getEdgeCount(); edgeId++) {
+            if (base.getFirstShortcuttedEdge(edgeId) < 0 && weights[edgeId] < MetricCustomizer.CLOSED) {
+                originalCount++;
+                long key = ((long) base.getSource(edgeId) << 32) | base.getTarget(edgeId);
+                Integer dist = originals.get(key);
+                if (dist == null || weights[edgeId] < dist) {
+                    originals.put(key, weights[edgeId]);
+                }
+            }
+        }
+        int graphOriginalCount = 0;
+        for (int edgeId = 0; edgeId < graph.getEdgeCount(); edgeId++) {
+            if (graph.getFirstShortcuttedEdge(edgeId) < 0) {
+                graphOriginalCount++;
+                long key = ((long) graph.getSource(edgeId) << 32) | graph.getTarget(edgeId);
+                assertEquals(originals.get(key), Integer.valueOf(graph.getDist(edgeId)));
+            } else {
+                assertEquals(graph.getDist(graph.getFirstShortcuttedEdge(edgeId))
+                        + graph.getDist(graph.getSecondShortcuttedEdge(edgeId)), graph.getDist(edgeId));
+            }
+        }
+        // shortcuts don't replace roads, the algorithms ignoring shortcuts need them all
+        assertEquals(originals.size(), graphOriginalCount);
+
+        // the open original edges with the new weights, the ranks keep the node ids
+        GraphRep plain = new GraphRep(base.getNodeCount(), originalCount);
+        for (int nodeId = 0; nodeId < base.getNodeCount(); nodeId++) {
+            plain.setNodeData(nodeId, base.getLat(nodeId), base.getLon(nodeId), base.getHeight(nodeId));
+            plain.setRank(nodeId, base.getRank(nodeId));
+        }
+        int plainEdgeId = 0;
+        for (int edgeId = 0; edgeId < base.getEdgeCount(); edgeId++) {
+            if (base.getFirstShortcuttedEdge(edgeId) < 0 && weights[edgeId] < MetricCustomizer.CLOSED) {
+                plain.setEdgeData(plainEdgeId++, base.getSource(edgeId), base.getTarget(edgeId),
+                        weights[edgeId], base.getEuclidianDist(edgeId));
+            }
+        }
+        plain.setup(1);
+
+        DijkstraStructs ds = new DijkstraStructs(plain.getNodeCount(), plain.getEdgeCount());
+        ShortestPathNoCH dijkstra = new ShortestPathNoCH(plain, ds);
+        DijkstraStructs graphDs = new DijkstraStructs(graph.getNodeCount(), graph.getEdgeCount());
+        ShortestPathNoCH graphDijkstra = new ShortestPathNoCH(graph, graphDs);
+        ShortestPathBDCH bdch = new ShortestPathBDCH(graph, new DijkstraStructs(graph.getNodeCount(), graph.getEdgeCount()));
+        for (int i = 0; i < 300; i++) {
+            int srcId = random.nextInt(base.getNodeCount());
+            int trgtId = random.nextInt(base.getNodeCount());
+            SearchLabels labels = ds.borrowSearchLabels();
+            int expected = dijkstra.dijkstraStopAtDest(labels, srcId, trgtId) ? labels.getDist(trgtId) : Integer.MAX_VALUE;
+            ds.returnSearchLabels();
+            assertEquals(expected, bdch.bddijkstra(srcId, trgtId));
+
+            // Dijkstra on the customized graph only uses its original edges
+            labels = graphDs.borrowSearchLabels();
+            int found = graphDijkstra.dijkstraStopAtDest(labels, srcId, trgtId) ? labels.getDist(trgtId) : Integer.MAX_VALUE;
+            graphDs.returnSearchLabels();
+            assertEquals(expected, found);
+        }
+    }
+
+    @Test
+    public final void testFillInBound() throws Exception {
+        GraphRep base = (new TestGraphReader()).readTestGraph();
+        try {
+            new MetricCustomizer(base, GraphStorage.HEAP, 1, 1.0);
+            fail("The test graph's order needs more arcs than it has edges");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public final void testReadWeights() throws IOException {
+        GraphRep base = (new TestGraphReader()).readTestGraph();
+        MetricCustomizer customizer = new MetricCustomizer(base, GraphStorage.HEAP, 1, 4.0);
+        int original = 0;
+        while (base.getFirstShortcuttedEdge(original) >= 0) {
+            original++;
+        }
+        int[] weights = customizer.readWeights(new ByteArrayInputStream(("# closures\n" + original + " -1\n").getBytes("UTF-8")));
+        assertEquals(MetricCustomizer.CLOSED, weights[original]);
+        assertEquals(base.getDist(original + 1), weights[original + 1]);
+
+        int shortcut = 0;
+        while (base.getFirstShortcuttedEdge(shortcut) < 0) {
+            shortcut++;
+        }
+        try {
+            customizer.readWeights(new ByteArrayInputStream((shortcut + " 10\n").getBytes("UTF-8")));
+            fail("Shortcuts can't be weighted");
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.graphrep;
+
+import com.carrotsearch.hppc.IntArrayDeque;
+import com.carrotsearch.hppc.IntArrayList;
+import de.tourenplaner.algorithms.ComputeException;
+import de.tourenplaner.algorithms.DijkstraStructs;
+import de.tourenplaner.algorithms.shortestpath.ShortestPathBDCH;
+import de.tourenplaner.algorithms.shortestpath.ShortestPathCH;
+import de.tourenplaner.computecore.RequestPoints;
+import de.tourenplaner.computecore.Way;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class UnpackedShortcutsTest {
+    // nodes are sorted by rank so this stores the shortcuts between the 2000 highest nodes
+    private static final int MIN_RANK_NODE = 2000;
+
+    @Test
+    public final void testUnpackedShortcuts() {
+        GraphRep graph = (new TestGraphReader()).readTestGraph();
+        int minRank = graph.getRank(MIN_RANK_NODE);
+        graph.setupUnpackedShortcuts(minRank);
+        UnpackedShortcuts shortcuts = graph.getUnpackedShortcuts();
+        assertTrue(shortcuts.getShortcutCount() > 0);
+
+        int found = 0;
+        IntArrayDeque deque = new IntArrayDeque();
+        for (int edgeId = 0; edgeId < graph.getEdgeCount(); edgeId++) {
+            if (graph.getFirstShortcuttedEdge(edgeId) < 0) {
+                continue;
+            }
+            int index = shortcuts.find(edgeId);
+            boolean aboveMinRank = graph.getRank(graph.getSource(edgeId)) >= minRank &&
+                    graph.getRank(graph.getTarget(edgeId)) >= minRank;
+            assertEquals(aboveMinRank, index >= 0);
+            if (index < 0) {
+                continue;
+            }
+            found++;
+
+            IntArrayList expected = new IntArrayList();
+            int length = 0;
+            deque.addFirst(edgeId);
+            while (!deque.isEmpty()) {
+                int current = deque.removeFirst();
+                if (graph.getFirstShortcuttedEdge(current) >= 0) {
+                    deque.addFirst(graph.getSecondShortcuttedEdge(current));
+                    deque.addFirst(graph.getFirstShortcuttedEdge(current));
+                } else {
+                    expected.add(graph.getLat(graph.getSource(current)));
+                    expected.add(graph.getLon(graph.getSource(current)));
+                    length += graph.getEuclidianDist(current);
+                }
+            }
+            assertEquals(expected.size() / 2, shortcuts.getPointCount(index));
+            assertEquals(length, shortcuts.getLength(index));
+            Way way = new Way();
+            way.addPoint(1, 2);
+            way.addPoints(shortcuts, index);
+            assertEquals(1 + expected.size() / 2, way.size());
+            for (int i = 0; i < expected.size() / 2; i++) {
+                assertEquals(expected.get(2 * i), way.getPointLat(i + 1));
+                assertEquals(expected.get(2 * i + 1), way.getPointLon(i + 1));
+            }
+        }
+        assertEquals(shortcuts.getShortcutCount(), found);
+    }
+
+    @Test
+    public final void testPathsUnchanged() throws IllegalAccessException, ComputeException {
+        GraphRep expected = (new TestGraphReader()).readTestGraph();
+        GraphRep graph = (new TestGraphReader()).readTestGraph();
+        graph.setupUnpackedShortcuts(graph.getRank(MIN_RANK_NODE));
+
+        ShortestPathBDCH expectedBDCH = new ShortestPathBDCH(expected, new DijkstraStructs(expected.getNodeCount(), expected.getEdgeCount()));
+        ShortestPathBDCH bdch = new ShortestPathBDCH(graph, new DijkstraStructs(graph.getNodeCount(), graph.getEdgeCount()));
+        ShortestPathCH ch = new ShortestPathCH(graph, new DijkstraStructs(graph.getNodeCount(), graph.getEdgeCount()));
+        Random random = new Random(42);
+        for (int i = 0; i < 100; i++) {
+            int srcId = random.nextInt(expected.getNodeCount());
+            int trgtId = random.nextInt(expected.getNodeCount());
+            if (expectedBDCH.bddijkstra(srcId, trgtId) == Integer.MAX_VALUE) {
+                continue;
+            }
+
+            List<Way> expectedWays = new ArrayList<Way>(1);
+            expectedBDCH.shortestPath(createPoints(expected, srcId, trgtId), expectedWays, false);
+            List<Way> ways = new ArrayList<Way>(1);
+            bdch.shortestPath(createPoints(graph, srcId, trgtId), ways, false);
+            assertSameWay(expectedWays.get(0), ways.get(0));
+
+            ways.clear();
+            ch.shortestPath(createPoints(graph, srcId, trgtId), ways, false);
+            assertEquals(expectedWays.get(0).getDistance(), ways.get(0).getDistance());
+        }
+    }
+
+    private static RequestPoints createPoints(GraphRep graph, int srcId, int trgtId) {
+        RequestPoints points = new RequestPoints();
+        points.addPoint(graph.getLat(srcId), graph.getLon(srcId), new HashMap<String, Object>());
+        points.addPoint(graph.getLat(trgtId), graph.getLon(trgtId), new HashMap<String, Object>());
+        points.setPointId(0, srcId);
+        points.setPointId(1, trgtId);
+        return points;
+    }
+
+    private static void assertSameWay(Way expected, Way way) {
+        assertEquals(expected.getDistance(), way.getDistance());
+        assertEquals(expected.size(), way.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getPointLat(i), way.getPointLat(i));
+            assertEquals(expected.getPointLon(i), way.getPointLon(i));
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2012 ToureNPlaner
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package de.tourenplaner.graphrep.contraction;
+
+import de.tourenplaner.algorithms.DijkstraStructs;
+import de.tourenplaner.algorithms.SearchLabels;
+import de.tourenplaner.algorithms.shortestpath.ShortestPathBDCH;
+import de.tourenplaner.algorithms.shortestpath.ShortestPathNoCH;
+import de.tourenplaner.graphrep.GraphRep;
+import de.tourenplaner.graphrep.GraphStorage;
+import de.tourenplaner.graphrep.TestGraphReader;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Christoph Haag, Sascha Meusel, Niklas Schnelle, Peter Vollmer
+ */
+public class ContractorTest {
+
+    @Test
+    public final void testContractedGraphFindsShortestPaths() throws Exception {
+        GraphRep base = (new TestGraphReader()).readTestGraph();
+        Contractor contractor = new Contractor(plainGraph(base), GraphStorage.HEAP, 2);
+        GraphRep graph = contractor.contract();
+        assertEquals(base.getNodeCount(), contractor.getStats().get("nodes"));
+
+        // every shortcut is as long as its two edges, the ranks are unique and sorted descending
+        for (int edgeId = 0; edgeId < graph.getEdgeCount(); edgeId++) {
+            int first = graph.getFirstShortcuttedEdge(edgeId);
+            if (first >= 0) {
+                int second = graph.getSecondShortcuttedEdge(edgeId);
+                assertEquals(graph.getDist(first) + graph.getDist(second), graph.getDist(edgeId));
+                assertEquals(graph.getSource(edgeId), graph.getSource(first));
+                assertEquals(graph.getTarget(first), graph.getSource(second));
+                assertEquals(graph.getTarget(edgeId), graph.getTarget(second));
+            }
+        }
+        for (int nodeId = 1; nodeId < graph.getNodeCount(); nodeId++) {
+            assertTrue(graph.getRank(nodeId - 1) > graph.getRank(nodeId));
+        }
+
+        // setup() renumbered the nodes by rank, shortcuts don't change the distances
+        // checked by the Dijkstra as they are as long as their edges
+        DijkstraStructs ds = new DijkstraStructs(graph.getNodeCount(), graph.getEdgeCount());
+        ShortestPathNoCH dijkstra = new ShortestPathNoCH(graph, ds);
+        ShortestPathBDCH bdch = new ShortestPathBDCH(graph, new DijkstraStructs(graph.getNodeCount(), graph.getEdgeCount()));
+        Random random = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            int srcId = random.nextInt(base.getNodeCount());
+            int trgtId = random.nextInt(base.getNodeCount());
+            SearchLabels labels = ds.borrowSearchLabels();
+            if (dijkstra.dijkstraStopAtDest(labels, srcId, trgtId)) {
+                assertEquals(labels.getDist(trgtId), bdch.bddijkstra(srcId, trgtId));
+            }
+            ds.returnSearchLabels();
+        }
+    }
+
+    @Test
+    public final void testResultIndependentOfThreads() {
+        GraphRep base = (new TestGraphReader()).readTestGraph();
+        Contractor contractor = new Contractor(plainGraph(base), GraphStorage.HEAP, 1);
+        contractor.setHopLimit(3);
+        GraphRep expected = contractor.contract();
+        contractor = new Contractor(plainGraph(base), GraphStorage.HEAP, 4);
+        contractor.setHopLimit(3);
+        GraphRep graph = contractor.contract();
+
+        assertEquals(expected.getEdgeCount(), graph.getEdgeCount());
+        for (int nodeId = 0; nodeId < graph.getNodeCount(); nodeId++) {
+            assertEquals(expected.getRank(nodeId), graph.getRank(nodeId));
+        }
+        for (int edgeId = 0; edgeId < graph.getEdgeCount(); edgeId++) {
+            assertEquals(expected.getSource(edgeId), graph.getSource(edgeId));
+            assertEquals(expected.getTarget(edgeId), graph.getTarget(edgeId));
+            assertEquals(expected.getDist(edgeId), graph.getDist(edgeId));
+            assertEquals(expected.getFirstShortcuttedEdge(edgeId), graph.getFirstShortcuttedEdge(edgeId));
+        }
+    }
+
+    @Test
+    public final void testRejectsShortcuts() {
+        try {
+            new Contractor((new TestGraphReader()).readTestGraph(), GraphStorage.HEAP, 1).contract();
+            fail("Graphs with shortcuts can't be contracted");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /**
+     * Copies the original edges of the given graph, the copy has no ranks and shortcuts
+     */
+    private static GraphRep plainGraph(GraphRep base) {
+        int edgeCount = 0;
+        for (int edgeId = 0; edgeId < base.getEdgeCount(); edgeId++) {
+            if (base.getFirstShortcuttedEdge(edgeId) < 0) {
+                edgeCount++;
+            }
+        }
+        GraphRep plain = new GraphRep(base.getNodeCount(), edgeCount, GraphStorage.HEAP);
+        for (int nodeId = 0; nodeId < base.getNodeCount(); nodeId++) {
+            plain.setNodeData(nodeId, base.getLat(nodeId), base.getLon(nodeId), base.getHeight(nodeId));
+        }
+        int plainId = 0;
+        for (int edgeId = 0; edgeId < base.getEdgeCount(); edgeId++) {
+            if (base.getFirstShortcuttedEdge(edgeId) < 0) {
+                plain.setEdgeData(plainId++, base.getSource(edgeId), base.getTarget(edgeId), base.getDist(edgeId),
+                        base.getEuclidianDist(edgeId));
+            }
+        }
+        plain.setup(1);
+        return plain;
+    }
+}